@@ -7,6 +7,7 @@ import edu.illinois.library.cantaloupe.cache.CacheWorkerRunner;
 import edu.illinois.library.cantaloupe.config.ConfigurationFactory;
 import edu.illinois.library.cantaloupe.logging.LoggerUtil;
 import edu.illinois.library.cantaloupe.image.Identifier;
+import edu.illinois.library.cantaloupe.processor.ProcessorFactory;
 import edu.illinois.library.cantaloupe.script.DelegateScriptDisabledException;
 import edu.illinois.library.cantaloupe.script.ScriptEngineFactory;
 import org.restlet.data.Protocol;
@@ -174,6 +175,7 @@ public class EntryServlet extends ServerServlet {
         CacheWorkerRunner.stop();
         ConfigurationFactory.getInstance().stopWatching();
         ThreadPool.getInstance().shutdown();
+        ProcessorFactory.shutdown();
         try {
             ScriptEngineFactory.getScriptEngine().stopWatching();
         } catch (DelegateScriptDisabledException e) {
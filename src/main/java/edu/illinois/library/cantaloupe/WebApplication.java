@@ -5,11 +5,14 @@ import edu.illinois.library.cantaloupe.config.ConfigurationException;
 import edu.illinois.library.cantaloupe.config.ConfigurationFactory;
 import edu.illinois.library.cantaloupe.logging.velocity.Slf4jLogChute;
 import edu.illinois.library.cantaloupe.operation.ValidationException;
+import edu.illinois.library.cantaloupe.processor.ProcessorSaturatedException;
 import edu.illinois.library.cantaloupe.processor.UnsupportedOutputFormatException;
 import edu.illinois.library.cantaloupe.resource.AbstractResource;
 import edu.illinois.library.cantaloupe.resource.LandingResource;
 import edu.illinois.library.cantaloupe.resource.admin.AdminResource;
 import edu.illinois.library.cantaloupe.resource.api.APIResource;
+import edu.illinois.library.cantaloupe.resource.api.CacheResource;
+import edu.illinois.library.cantaloupe.resource.api.PurgeJobResource;
 import org.apache.velocity.app.Velocity;
 import org.apache.velocity.runtime.RuntimeConstants;
 import org.apache.velocity.runtime.resource.loader.ClasspathResourceLoader;
@@ -36,6 +39,7 @@ import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.nio.file.AccessDeniedException;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.logging.Level;
@@ -99,6 +103,12 @@ public class WebApplication extends Application {
                 status = new Status(Status.CLIENT_ERROR_NOT_FOUND, t);
             } else if (t instanceof AccessDeniedException) {
                 status = new Status(Status.CLIENT_ERROR_FORBIDDEN, t);
+            } else if (t instanceof ProcessorSaturatedException) {
+                status = new Status(Status.SERVER_ERROR_SERVICE_UNAVAILABLE, t);
+                final int retryAfter =
+                        ((ProcessorSaturatedException) t).getRetryAfterSeconds();
+                response.setRetryAfter(new Date(
+                        System.currentTimeMillis() + retryAfter * 1000L));
             } else {
                 status = new Status(Status.SERVER_ERROR_INTERNAL, t);
             }
@@ -290,7 +300,15 @@ public class WebApplication extends Application {
             ChallengeAuthenticator apiAuth = createApiAuthenticator();
             apiAuth.setNext(APIResource.class);
             router.attach(CONFIGURATION_PATH, apiAuth);
-            router.attach(CACHE_PATH + "/{identifier}", apiAuth);
+
+            ChallengeAuthenticator cacheAuth = createApiAuthenticator();
+            cacheAuth.setNext(CacheResource.class);
+            router.attach(CACHE_PATH, cacheAuth);
+            router.attach(CACHE_PATH + "/{identifier}", cacheAuth);
+
+            ChallengeAuthenticator purgeJobAuth = createApiAuthenticator();
+            purgeJobAuth.setNext(PurgeJobResource.class);
+            router.attach(CACHE_PATH + "/jobs/{id}", purgeJobAuth);
         } catch (ConfigurationException e) {
             getLogger().log(Level.INFO, e.getMessage());
         }
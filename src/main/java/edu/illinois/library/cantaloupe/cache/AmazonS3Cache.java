@@ -1,20 +1,28 @@
 package edu.illinois.library.cantaloupe.cache;
 
 import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.iterable.S3Objects;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
 import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
 import com.amazonaws.services.s3.model.GetObjectRequest;
-import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
 import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
 import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.UploadPartRequest;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import edu.illinois.library.cantaloupe.config.Configuration;
 import edu.illinois.library.cantaloupe.image.Identifier;
 import edu.illinois.library.cantaloupe.operation.OperationList;
 import edu.illinois.library.cantaloupe.image.Info;
 import edu.illinois.library.cantaloupe.util.AWSClientFactory;
+import edu.illinois.library.cantaloupe.util.JMXUtil;
 import edu.illinois.library.cantaloupe.util.Stopwatch;
 import org.apache.commons.io.output.NullOutputStream;
 import org.apache.commons.lang.StringUtils;
@@ -25,18 +33,44 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 /**
+ * <p>Derivative images are uploaded in the background by a dedicated
+ * executor whose size is set by {@link #UPLOAD_THREADS_CONFIG_KEY}, so that
+ * closing an output stream doesn't hold up the request thread. Images larger
+ * than {@link #PART_SIZE} are streamed using multipart uploads.</p>
+ *
  * @see <a href="http://docs.aws.amazon.com/AWSSdkDocsJava/latest/DeveloperGuide/welcome.html">
  *     AWS SDK for Java</a>
  */
-class AmazonS3Cache implements DerivativeCache {
+class AmazonS3Cache implements DerivativeCache, AmazonS3CacheMBean {
 
     /**
      * <p>S3 does not allow uploads without a Content-Length header, which is
@@ -52,21 +86,46 @@ class AmazonS3Cache implements DerivativeCache {
      *
      * <p>Since it is therefore not possible to write an OutputStream of
      * unknown length to the S3 client as the {@link Cache} interface requires,
-     * this output stream buffers written data in a byte array before uploading
-     * it to S3.</p>
+     * this output stream buffers written data in parts of
+     * {@link #PART_SIZE}. Each full part is uploaded as part of a multipart
+     * upload as soon as it is filled, and at most
+     * {@link #MAX_PARTS_IN_FLIGHT} parts per stream are buffered at once;
+     * writes block until a part has finished uploading if necessary. Data
+     * smaller than one part is uploaded with a single request.</p>
+     *
+     * <p>All uploading happens on the upload executor. {@link #close()}
+     * returns without waiting for it to finish. An upload can be cancelled
+     * with {@link #cancel()}, e.g. because the object is being purged, in
+     * which case it is not completed.</p>
      */
     private static class AmazonS3OutputStream extends OutputStream {
 
         private static Logger logger = LoggerFactory.
                 getLogger(AmazonS3OutputStream.class);
 
-        // Buffers the data written to the instance.
-        private final ByteArrayOutputStream bufferStream =
+        // Buffers the part currently being written.
+        private ByteArrayOutputStream bufferStream =
                 new ByteArrayOutputStream();
         private final String bucketName;
+        /** Only set while holding {@link #completionLock}. */
+        private volatile boolean isCancelled = false;
+        private boolean isClosed = false;
+        /**
+         * Held while checking {@link #isCancelled} and completing the
+         * upload, so that {@link #cancel()} can't return while the object is
+         * being written.
+         */
+        private final Object completionLock = new Object();
         private final ObjectMetadata metadata;
         private final String objectKey;
+        private final List<CompletableFuture<PartETag>> partFutures =
+                new ArrayList<>();
+        private final Semaphore partPermits =
+                new Semaphore(MAX_PARTS_IN_FLIGHT);
         private final AmazonS3 s3;
+        private long totalLength = 0;
+        private CompletableFuture<String> uploadIdFuture;
+        private final Stopwatch watch = new Stopwatch();
 
         /**
          * @param s3            S3 client.
@@ -84,46 +143,191 @@ class AmazonS3Cache implements DerivativeCache {
             this.metadata = metadata;
         }
 
+        /**
+         * Prevents the upload from being completed. If it is being completed
+         * at the moment, waits for that to finish, so that the object can be
+         * deleted afterwards.
+         */
+        void cancel() {
+            synchronized (completionLock) {
+                isCancelled = true;
+            }
+        }
+
+        private void abort() {
+            if (uploadIdFuture == null) {
+                return;
+            }
+            try {
+                s3.abortMultipartUpload(new AbortMultipartUploadRequest(
+                        bucketName, objectKey, uploadIdFuture.join()));
+            } catch (RuntimeException e) {
+                // The upload ID may have never been obtained, or S3 may be
+                // unreachable; either way there is nothing else to do.
+                logger.warn("abort(): {}", e.getMessage());
+            }
+        }
+
         @Override
         public void close() throws IOException {
+            if (isClosed) {
+                return;
+            }
+            isClosed = true;
+            pendingUploadCount.incrementAndGet();
+
             final byte[] bytes = bufferStream.toByteArray();
-            metadata.setContentLength(bytes.length);
+            bufferStream = null;
+            totalLength += bytes.length;
+
+            final CompletableFuture<Void> upload;
+            if (uploadIdFuture == null) {
+                upload = CompletableFuture.runAsync(
+                        () -> complete(() -> putObject(bytes)),
+                        getUploadExecutor());
+            } else {
+                if (bytes.length > 0) {
+                    uploadPart(bytes);
+                }
+                final CompletableFuture<?>[] parts = partFutures.toArray(
+                        new CompletableFuture<?>[partFutures.size()]);
+                upload = CompletableFuture.allOf(parts).thenRunAsync(
+                        () -> complete(this::completeMultipartUpload),
+                        getUploadExecutor());
+            }
 
-            final ByteArrayInputStream s3Stream = new ByteArrayInputStream(
-                    bytes);
-            try {
-                final Stopwatch watch = new Stopwatch();
-                final PutObjectRequest request = new PutObjectRequest(
-                        bucketName, objectKey, s3Stream, metadata);
-                s3.putObject(request);
-                logger.info("Wrote {} bytes to {} in bucket {} in {} msec",
-                        bytes.length, objectKey, bucketName,
-                        watch.timeElapsed());
-            } catch (AmazonS3Exception e) {
-                throw new IOException(e.getMessage(), e);
-            } finally {
-                uploadingKeys.remove(objectKey);
+            upload.whenComplete((result, throwable) -> {
+                try {
+                    if (throwable != null && isCancelled) {
+                        logger.debug("Cancelled writing {} to bucket {}",
+                                objectKey, bucketName);
+                        abort();
+                    } else if (throwable != null) {
+                        failedUploadCount.incrementAndGet();
+                        logger.error("Failed to write {} to bucket {}: {}",
+                                objectKey, bucketName, throwable.getMessage());
+                        abort();
+                    } else {
+                        completedUploadCount.incrementAndGet();
+                        uploadedByteCount.addAndGet(totalLength);
+                        logger.info("Wrote {} bytes to {} in bucket {} in " +
+                                        "{} msec", totalLength, objectKey,
+                                bucketName, watch.timeElapsed());
+                    }
+                } finally {
+                    uploads.remove(objectKey, this);
+                    uploadingKeys.remove(objectKey);
+                    pendingUploadCount.decrementAndGet();
+                }
+            });
+        }
+
+        /**
+         * Runs the given task, which writes the object, unless the upload
+         * has been cancelled.
+         *
+         * @throws CancellationException If the upload has been cancelled.
+         */
+        private void complete(Runnable task) {
+            synchronized (completionLock) {
+                if (isCancelled) {
+                    throw new CancellationException(
+                            "Upload of " + objectKey + " was cancelled");
+                }
+                task.run();
             }
         }
 
+        private void completeMultipartUpload() {
+            final List<PartETag> etags = partFutures.stream().
+                    map(CompletableFuture::join).
+                    collect(Collectors.toList());
+            s3.completeMultipartUpload(new CompleteMultipartUploadRequest(
+                    bucketName, objectKey, uploadIdFuture.join(), etags));
+        }
+
         @Override
         public void flush() throws IOException {
             bufferStream.flush();
         }
 
+        private void putObject(byte[] bytes) {
+            metadata.setContentLength(bytes.length);
+            final PutObjectRequest request = new PutObjectRequest(
+                    bucketName, objectKey, new ByteArrayInputStream(bytes),
+                    metadata);
+            s3.putObject(request);
+        }
+
+        /**
+         * Uploads the current part if it is full.
+         */
+        private void uploadFullPart() throws IOException {
+            if (bufferStream.size() >= PART_SIZE) {
+                final byte[] bytes = bufferStream.toByteArray();
+                // Replace rather than reset the buffer, so that the old one
+                // can be collected.
+                bufferStream = new ByteArrayOutputStream();
+                totalLength += bytes.length;
+                uploadPart(bytes);
+            }
+        }
+
+        /**
+         * Submits the given part for uploading, initiating a multipart
+         * upload first if necessary.
+         */
+        private void uploadPart(byte[] bytes) throws IOException {
+            try {
+                partPermits.acquire();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException(e.getMessage());
+            }
+            if (uploadIdFuture == null) {
+                uploadIdFuture = CompletableFuture.supplyAsync(
+                        () -> s3.initiateMultipartUpload(
+                                new InitiateMultipartUploadRequest(
+                                        bucketName, objectKey, metadata)).
+                                getUploadId(),
+                        getUploadExecutor());
+            }
+            final int partNumber = partFutures.size() + 1;
+            final CompletableFuture<PartETag> partFuture =
+                    uploadIdFuture.thenApplyAsync(uploadId -> {
+                        final UploadPartRequest request = new UploadPartRequest().
+                                withBucketName(bucketName).
+                                withKey(objectKey).
+                                withUploadId(uploadId).
+                                withPartNumber(partNumber).
+                                withPartSize(bytes.length).
+                                withInputStream(new ByteArrayInputStream(bytes));
+                        return s3.uploadPart(request).getPartETag();
+                    }, getUploadExecutor());
+            partFuture.whenComplete((etag, throwable) -> partPermits.release());
+            partFutures.add(partFuture);
+        }
+
         @Override
         public void write(int b) throws IOException {
             bufferStream.write(b);
+            uploadFullPart();
         }
 
         @Override
         public void write(byte[] b) throws IOException {
-            bufferStream.write(b);
+            write(b, 0, b.length);
         }
 
         @Override
         public void write(byte[] b, int off, int len) throws IOException {
-            bufferStream.write(b, off, len);
+            while (len > 0) {
+                final int chunkLength =
+                        Math.min(len, PART_SIZE - bufferStream.size());
+                bufferStream.write(b, off, chunkLength);
+                off += chunkLength;
+                len -= chunkLength;
+                uploadFullPart();
+            }
         }
 
     }
@@ -137,26 +341,133 @@ class AmazonS3Cache implements DerivativeCache {
             "AmazonS3Cache.bucket.region";
     static final String OBJECT_KEY_PREFIX_CONFIG_KEY =
             "AmazonS3Cache.object_key_prefix";
+    static final String ENDPOINT_CONFIG_KEY = "AmazonS3Cache.endpoint";
     static final String SECRET_KEY_CONFIG_KEY = "AmazonS3Cache.secret_key";
+    static final String UPLOAD_THREADS_CONFIG_KEY =
+            "AmazonS3Cache.upload.threads";
+
+    private static final int DEFAULT_UPLOAD_THREADS = 4;
+
+    /**
+     * Maximum number of parts that a single output stream may have buffered
+     * or uploading at once.
+     */
+    private static final int MAX_PARTS_IN_FLIGHT = 4;
+
+    /**
+     * Maximum number of keys in a multi-object delete request, and number of
+     * keys listed per page during purges.
+     */
+    static final int MAX_DELETE_BATCH_SIZE = 1000;
+
+    /**
+     * Characters (spread across the printable ASCII range) at which the key
+     * space is split into ranges that are listed in parallel during purges.
+     */
+    private static final String PARTITION_CHARACTERS = "048CGKOSWaeimquy";
+
+    /**
+     * Number of threads that list and delete key ranges during a purge.
+     */
+    private static final int PURGE_THREADS = 8;
+
+    /**
+     * Size of each part of a multipart upload. 5 MB is the minimum allowed by
+     * S3.
+     */
+    static final int PART_SIZE = 5 * 1024 * 1024;
+
+    /**
+     * Number of upload tasks that may be queued per upload thread. When the
+     * queue is full, the submitting thread runs the task itself.
+     */
+    private static final int QUEUED_TASKS_PER_THREAD = 4;
 
     /** Lazy-initialized by {@link #getClientInstance} */
     private static AmazonS3 client;
 
+    /** Lazy-initialized by {@link #getUploadExecutor} */
+    private static ThreadPoolExecutor uploadExecutor;
+
     private static final Set<String> uploadingKeys =
             new ConcurrentSkipListSet<>();
 
+    /** Derivative image uploads in progress, by object key. */
+    private static final ConcurrentMap<String, AmazonS3OutputStream> uploads =
+            new ConcurrentHashMap<>();
+
+    private static final AtomicLong completedUploadCount = new AtomicLong(0);
+    private static final AtomicLong failedUploadCount = new AtomicLong(0);
+    private static final AtomicInteger pendingUploadCount =
+            new AtomicInteger(0);
+    private static final AtomicLong uploadedByteCount = new AtomicLong(0);
+
     static synchronized AmazonS3 getClientInstance() {
         if (client == null) {
             final Configuration config = Configuration.getInstance();
             final AWSClientFactory factory = new AWSClientFactory(
                     config.getString(ACCESS_KEY_ID_CONFIG_KEY),
                     config.getString(SECRET_KEY_CONFIG_KEY),
-                    config.getString(BUCKET_REGION_CONFIG_KEY));
+                    config.getString(BUCKET_REGION_CONFIG_KEY),
+                    config.getString(ENDPOINT_CONFIG_KEY, ""));
             client = factory.newClient();
         }
         return client;
     }
 
+    /**
+     * @return Executor on which all derivative image uploads run. It has a
+     *         fixed number of threads according to
+     *         {@link #UPLOAD_THREADS_CONFIG_KEY} and a bounded queue.
+     */
+    private static synchronized ThreadPoolExecutor getUploadExecutor() {
+        if (uploadExecutor == null) {
+            final int numThreads = Math.max(1, Configuration.getInstance().
+                    getInt(UPLOAD_THREADS_CONFIG_KEY, DEFAULT_UPLOAD_THREADS));
+            final AtomicInteger threadNumber = new AtomicInteger(0);
+            uploadExecutor = new ThreadPoolExecutor(
+                    numThreads, numThreads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(numThreads * QUEUED_TASKS_PER_THREAD),
+                    runnable -> {
+                        final Thread thread = new Thread(runnable,
+                                "AmazonS3Cache-upload-" +
+                                        threadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+            uploadExecutor.allowCoreThreadTimeOut(true);
+            JMXUtil.registerMBean(new AmazonS3Cache(),
+                    AmazonS3Cache.class.getSimpleName(), "uploads");
+        }
+        return uploadExecutor;
+    }
+
+    @Override
+    public int getActiveUploadCount() {
+        return getUploadExecutor().getActiveCount();
+    }
+
+    @Override
+    public long getCompletedUploadCount() {
+        return completedUploadCount.get();
+    }
+
+    @Override
+    public long getFailedUploadCount() {
+        return failedUploadCount.get();
+    }
+
+    @Override
+    public int getPendingUploadCount() {
+        return pendingUploadCount.get();
+    }
+
+    @Override
+    public long getUploadedByteCount() {
+        return uploadedByteCount.get();
+    }
+
     String getBucketName() {
         return Configuration.getInstance().getString(BUCKET_NAME_CONFIG_KEY);
     }
@@ -215,8 +526,10 @@ class AmazonS3Cache implements DerivativeCache {
             final ObjectMetadata metadata = new ObjectMetadata();
             metadata.setContentType(
                     opList.getOutputFormat().getPreferredMediaType().toString());
-            return new AmazonS3OutputStream(s3, bucketName, objectKey,
-                    metadata);
+            final AmazonS3OutputStream stream = new AmazonS3OutputStream(
+                    s3, bucketName, objectKey, metadata);
+            uploads.put(objectKey, stream);
+            return stream;
         }
         return new NullOutputStream();
     }
@@ -251,16 +564,168 @@ class AmazonS3Cache implements DerivativeCache {
         return StringUtils.stripEnd(prefix, "/") + "/";
     }
 
-    @Override
-    public void purge() throws CacheException {
+    /**
+     * Deletes the given objects using as few multi-object delete requests as
+     * possible.
+     *
+     * @return Number of objects deleted.
+     */
+    private static long deleteObjects(AmazonS3 s3, String bucketName,
+                                      List<String> keys) {
+        long count = 0;
+        for (int i = 0; i < keys.size(); i += MAX_DELETE_BATCH_SIZE) {
+            final List<String> batch = keys.subList(i,
+                    Math.min(i + MAX_DELETE_BATCH_SIZE, keys.size()));
+            final DeleteObjectsRequest request =
+                    new DeleteObjectsRequest(bucketName)
+                            .withKeys(batch.toArray(new String[batch.size()]))
+                            .withQuiet(true);
+            try {
+                s3.deleteObjects(request);
+                count += batch.size();
+            } catch (MultiObjectDeleteException e) {
+                logger.warn("deleteObjects(): failed to delete {} of {} " +
+                        "objects: {}", e.getErrors().size(), batch.size(),
+                        e.getMessage());
+                count += batch.size() - e.getErrors().size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * <p>Deletes all objects whose keys are greater than
+     * <code>startAfter</code> and less than or equal to <code>endAt</code>,
+     * within the given prefix, for which the given filter returns
+     * <code>true</code>.</p>
+     *
+     * <p>Objects are listed and deleted a page at a time, and the given job
+     * is checked for cancellation between pages.</p>
+     *
+     * @param prefix     Key prefix.
+     * @param startAfter Exclusive lower bound, or <code>null</code> to start
+     *                   at the beginning of the prefix.
+     * @param endAt      Inclusive upper bound, or <code>null</code> to
+     *                   continue to the end of the prefix.
+     * @param filter     Filter determining which objects to delete.
+     * @param job        Job to report progress to.
+     * @return Number of objects deleted.
+     */
+    private long deleteRange(String prefix,
+                             String startAfter,
+                             String endAt,
+                             Predicate<S3ObjectSummary> filter,
+                             PurgeJob job) {
         final AmazonS3 s3 = getClientInstance();
-        final ObjectListing listing = s3.listObjects(getBucketName(),
-                getObjectKeyPrefix());
-        int count = 0;
-        for (S3ObjectSummary summary : listing.getObjectSummaries()) {
-            s3.deleteObject(getBucketName(), summary.getKey());
-            count++;
+        final String bucketName = getBucketName();
+        final ListObjectsV2Request request = new ListObjectsV2Request()
+                .withBucketName(bucketName)
+                .withPrefix(prefix)
+                .withMaxKeys(MAX_DELETE_BATCH_SIZE);
+        if (startAfter != null) {
+            request.setStartAfter(startAfter);
         }
+
+        long count = 0;
+        boolean isAtEnd = false;
+        ListObjectsV2Result result;
+        do {
+            if (job.isCancelled()) {
+                break;
+            }
+            result = s3.listObjectsV2(request);
+            final List<String> keys = new ArrayList<>();
+            for (S3ObjectSummary summary : result.getObjectSummaries()) {
+                if (endAt != null && summary.getKey().compareTo(endAt) > 0) {
+                    isAtEnd = true;
+                    break;
+                }
+                if (filter.test(summary)) {
+                    keys.add(summary.getKey());
+                }
+            }
+            final long deletedCount = deleteObjects(s3, bucketName, keys);
+            job.addDeletedCount(deletedCount);
+            count += deletedCount;
+            request.setContinuationToken(result.getNextContinuationToken());
+        } while (!isAtEnd && result.isTruncated());
+        return count;
+    }
+
+    /**
+     * Deletes all objects under {@link #getObjectKeyPrefix()} for which the
+     * given filter returns <code>true</code>. The key space is divided into
+     * {@link #getPartitionBoundaries() ranges} that are listed and deleted
+     * in parallel.
+     *
+     * @return Number of objects deleted.
+     */
+    private long deleteAll(Predicate<S3ObjectSummary> filter)
+            throws CacheException {
+        final PurgeJob job = PurgeJob.current();
+        final String prefix = getObjectKeyPrefix();
+        final List<String> boundaries = getPartitionBoundaries();
+        final ExecutorService executor =
+                Executors.newFixedThreadPool(PURGE_THREADS);
+        try {
+            final List<Future<Long>> futures = new ArrayList<>();
+            for (int i = 0; i <= boundaries.size(); i++) {
+                final String startAfter = (i > 0) ?
+                        boundaries.get(i - 1) : null;
+                final String endAt = (i < boundaries.size()) ?
+                        boundaries.get(i) : null;
+                futures.add(executor.submit(() ->
+                        deleteRange(prefix, startAfter, endAt, filter, job)));
+            }
+            long count = 0;
+            for (Future<Long> future : futures) {
+                count += future.get();
+            }
+            return count;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CacheException(e.getMessage(), e);
+        } catch (ExecutionException e) {
+            throw new CacheException(e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return Sorted keys that divide the key space of the cache into
+     *         roughly even ranges, based on {@link #PARTITION_CHARACTERS}.
+     */
+    List<String> getPartitionBoundaries() {
+        final String prefix = getObjectKeyPrefix();
+        final List<String> boundaries = new ArrayList<>();
+        for (String dir : new String[] { "image/", "info/" }) {
+            for (char c : PARTITION_CHARACTERS.toCharArray()) {
+                boundaries.add(prefix + dir + c);
+            }
+        }
+        Collections.sort(boundaries);
+        return boundaries;
+    }
+
+    /**
+     * Cancels all uploads in progress whose object keys match the given
+     * filter, so that they won't write their objects after those have been
+     * purged.
+     */
+    private void cancelUploads(Predicate<String> filter) {
+        for (Map.Entry<String, AmazonS3OutputStream> entry :
+                uploads.entrySet()) {
+            if (filter.test(entry.getKey())) {
+                entry.getValue().cancel();
+            }
+        }
+    }
+
+    @Override
+    public void purge() throws CacheException {
+        cancelUploads(key -> true);
+        final long count = deleteAll(summary -> true);
         logger.info("purge(): deleted {} items", count);
     }
 
@@ -270,6 +735,7 @@ class AmazonS3Cache implements DerivativeCache {
     }
 
     private void purge(final String objectKey) {
+        cancelUploads(key -> key.equals(objectKey));
         final AmazonS3 s3 = getClientInstance();
         s3.deleteObject(getBucketName(), objectKey);
     }
@@ -277,25 +743,14 @@ class AmazonS3Cache implements DerivativeCache {
     @Override
     public void purgeExpired() throws CacheException {
         final Configuration config = Configuration.getInstance();
-        final AmazonS3 s3 = getClientInstance();
-        final String bucketName = getBucketName();
 
         Calendar c = Calendar.getInstance();
         c.add(Calendar.SECOND, 0 - config.getInt(Cache.TTL_CONFIG_KEY));
-        Date cutoffDate = c.getTime();
-
-        final S3Objects objects = S3Objects.withPrefix(s3, bucketName,
-                getObjectKeyPrefix());
-        int count = 0, deletedCount = 0;
-        for (S3ObjectSummary summary : objects) {
-            count++;
-            if (summary.getLastModified().before(cutoffDate)) {
-                deletedCount++;
-                s3.deleteObject(bucketName, summary.getKey());
-            }
-        }
-        logger.info("purgeExpired(): deleted {} of {} items",
-                deletedCount, count);
+        final Date cutoffDate = c.getTime();
+
+        final long count = deleteAll(summary ->
+                summary.getLastModified().before(cutoffDate));
+        logger.info("purgeExpired(): deleted {} items", count);
     }
 
     @Override
@@ -303,15 +758,17 @@ class AmazonS3Cache implements DerivativeCache {
         // purge the info
         purge(getObjectKey(identifier));
 
-        // purge images
-        final AmazonS3 s3 = getClientInstance();
-        final String bucketName = getBucketName();
-        final S3Objects objects = S3Objects.withPrefix(s3, bucketName,
-                getObjectKeyPrefix() + "image/" + identifier.toString());
-        int count = 0;
-        for (S3ObjectSummary summary : objects) {
-            count++;
-            s3.deleteObject(bucketName, summary.getKey());
+        // purge images. The identifier is always followed by one of these
+        // in OperationList.toString(), and matching it as a bare prefix
+        // would also match any identifier that begins with it.
+        final String imagePrefix =
+                getObjectKeyPrefix() + "image/" + identifier.toString();
+        long count = 0;
+        for (String separator : new String[] { "_", "." }) {
+            final String prefix = imagePrefix + separator;
+            cancelUploads(key -> key.startsWith(prefix));
+            count += deleteRange(prefix, null, null,
+                    summary -> true, PurgeJob.current());
         }
         logger.info("purge(Identifier): deleted {} items", count);
     }
@@ -0,0 +1,36 @@
+package edu.illinois.library.cantaloupe.cache;
+
+/**
+ * JMX management interface of {@link AmazonS3Cache}.
+ */
+public interface AmazonS3CacheMBean {
+
+    /**
+     * @return Number of upload threads that are currently busy.
+     */
+    int getActiveUploadCount();
+
+    /**
+     * @return Number of derivative images that have been uploaded
+     *         successfully.
+     */
+    long getCompletedUploadCount();
+
+    /**
+     * @return Number of derivative image uploads that have failed.
+     */
+    long getFailedUploadCount();
+
+    /**
+     * @return Number of derivative images whose output streams have been
+     *         closed but which have not finished uploading yet.
+     */
+    int getPendingUploadCount();
+
+    /**
+     * @return Total size of all derivative images that have been uploaded
+     *         successfully, in bytes.
+     */
+    long getUploadedByteCount();
+
+}
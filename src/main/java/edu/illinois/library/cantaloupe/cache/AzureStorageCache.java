@@ -26,10 +26,17 @@ import java.io.UnsupportedEncodingException;
 import java.net.URISyntaxException;
 import java.net.URLEncoder;
 import java.security.InvalidKeyException;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
 
 /**
  * @see <a href="https://github.com/azure/azure-storage-java">
@@ -98,6 +105,21 @@ class AzureStorageCache implements DerivativeCache {
     static final String OBJECT_KEY_PREFIX_CONFIG_KEY =
             "AzureStorageCache.object_key_prefix";
 
+    /**
+     * Characters that may begin a blob name after the {@link
+     * #getObjectKeyPrefix() prefix} and the <code>image/</code> or
+     * <code>info/</code> component: those that {@link URLEncoder} leaves
+     * alone, plus <code>+</code> and <code>%</code>.
+     */
+    private static final String ENCODED_NAME_CHARACTERS =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz" +
+                    "0123456789.-*_+%";
+
+    /**
+     * Number of threads that list and delete blobs during a purge.
+     */
+    private static final int PURGE_THREADS = 8;
+
     private static CloudBlobClient client;
 
     /**
@@ -253,28 +275,92 @@ class AzureStorageCache implements DerivativeCache {
         return StringUtils.stripEnd(prefix, "/") + "/";
     }
 
-    @Override
-    public void purge() throws CacheException {
-        final String containerName = getContainerName();
+    /**
+     * Deletes all blobs whose names start with the given prefix and for which
+     * the given filter returns <code>true</code>. The given job is checked
+     * for cancellation before each deletion.
+     *
+     * @return Number of blobs deleted.
+     */
+    private static long deleteBlobs(CloudBlobContainer container,
+                                    String prefix,
+                                    Predicate<CloudBlob> filter,
+                                    PurgeJob job) throws StorageException {
+        long count = 0;
+        for (ListBlobItem item : container.listBlobs(prefix, true)) {
+            if (job.isCancelled()) {
+                break;
+            }
+            if (item instanceof CloudBlob) {
+                CloudBlob blob = (CloudBlob) item;
+                if (filter.test(blob) && blob.deleteIfExists()) {
+                    job.addDeletedCount(1);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
 
+    /**
+     * Deletes all blobs under {@link #getObjectKeyPrefix()} for which the
+     * given filter returns <code>true</code>. Blob names are URL-encoded, so
+     * the name space is divided into one prefix per character that can
+     * begin an encoded name, and the prefixes are listed and deleted in
+     * parallel.
+     *
+     * @return Number of blobs deleted.
+     */
+    private long deleteAll(Predicate<CloudBlob> filter)
+            throws CacheException {
+        final PurgeJob job = PurgeJob.current();
         final CloudBlobClient client = getClientInstance();
-
+        final ExecutorService executor =
+                Executors.newFixedThreadPool(PURGE_THREADS);
         try {
             final CloudBlobContainer container =
-                    client.getContainerReference(containerName);
-            int count = 0;
-            for (ListBlobItem item : container.listBlobs(getObjectKeyPrefix(), true)) {
-                if (item instanceof CloudBlob) {
-                    CloudBlob blob = (CloudBlob) item;
-                    if (blob.deleteIfExists()) {
-                        count++;
-                    }
-                }
+                    client.getContainerReference(getContainerName());
+            final List<Future<Long>> futures = new ArrayList<>();
+            for (String prefix : getPartitionPrefixes()) {
+                futures.add(executor.submit(() ->
+                        deleteBlobs(container, prefix, filter, job)));
             }
-            logger.info("purge(): deleted {} items", count);
+            long count = 0;
+            for (Future<Long> future : futures) {
+                count += future.get();
+            }
+            return count;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CacheException(e.getMessage(), e);
+        } catch (ExecutionException e) {
+            throw new CacheException(e.getCause().getMessage(), e.getCause());
         } catch (URISyntaxException | StorageException e) {
             throw new CacheException(e.getMessage(), e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return Blob name prefixes that together cover every blob in the
+     *         cache.
+     */
+    List<String> getPartitionPrefixes() {
+        final String keyPrefix = getObjectKeyPrefix();
+        final List<String> prefixes = new ArrayList<>();
+        for (String dir : new String[] { "image/", "info/" }) {
+            for (char c : ENCODED_NAME_CHARACTERS.toCharArray()) {
+                prefixes.add(keyPrefix + dir + c);
+            }
         }
+        return prefixes;
+    }
+
+    @Override
+    public void purge() throws CacheException {
+        final long count = deleteAll(blob -> true);
+        logger.info("purge(): deleted {} items", count);
     }
 
     @Override
@@ -296,35 +382,14 @@ class AzureStorageCache implements DerivativeCache {
 
     @Override
     public void purgeExpired() throws CacheException {
-        final String containerName = getContainerName();
-
-        final CloudBlobClient client = getClientInstance();
-
         final Calendar c = Calendar.getInstance();
         c.add(Calendar.SECOND, 0 - ConfigurationFactory.getInstance().
                 getInt(Cache.TTL_CONFIG_KEY));
         final Date cutoffDate = c.getTime();
 
-        try {
-            final CloudBlobContainer container =
-                    client.getContainerReference(containerName);
-            int count = 0, deletedCount = 0;
-            for (ListBlobItem item : container.listBlobs(getObjectKeyPrefix(), true)) {
-                if (item instanceof CloudBlob) {
-                    CloudBlob blob = (CloudBlob) item;
-                    count++;
-                    if (blob.getProperties().getLastModified().before(cutoffDate)) {
-                        if (blob.deleteIfExists()) {
-                            deletedCount++;
-                        }
-                    }
-                }
-            }
-            logger.info("purgeExpired(): deleted {} of {} items",
-                    deletedCount, count);
-        } catch (URISyntaxException | StorageException e) {
-            throw new CacheException(e.getMessage(), e);
-        }
+        final long count = deleteAll(blob ->
+                blob.getProperties().getLastModified().before(cutoffDate));
+        logger.info("purgeExpired(): deleted {} items", count);
     }
 
     @Override
@@ -337,9 +402,22 @@ class AzureStorageCache implements DerivativeCache {
         try {
             final CloudBlobContainer container =
                     client.getContainerReference(containerName);
+            // purge the info
             final CloudBlockBlob blob = container.getBlockBlobReference(objectKey);
             blob.deleteIfExists();
-        } catch (URISyntaxException | StorageException e) {
+
+            // purge images. The identifier is always followed by one of
+            // these in OperationList.toString(), and matching it as a bare
+            // prefix would also match any identifier that begins with it.
+            final String imagePrefix = getObjectKeyPrefix() + "image/" +
+                    URLEncoder.encode(identifier.toString(), "UTF-8");
+            long count = 0;
+            for (String separator : new String[] { "_", "." }) {
+                count += deleteBlobs(container, imagePrefix + separator,
+                        b -> true, PurgeJob.current());
+            }
+            logger.info("purge(Identifier): deleted {} items", count);
+        } catch (IOException | URISyntaxException | StorageException e) {
             throw new CacheException(e.getMessage(), e);
         }
     }
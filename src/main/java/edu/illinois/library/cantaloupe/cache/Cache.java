@@ -35,6 +35,19 @@ public interface Cache {
      */
     default void cleanUp() throws CacheException {}
 
+    /**
+     * <p>Evicts content as necessary to bring the cache within its configured
+     * size limit, if it has one. Implementations that enforce a size limit
+     * on their own may not need to do anything.</p>
+     *
+     * <p>The default implementation does nothing.</p>
+     *
+     * @throws CacheException Upon fatal error. Implementations should do the
+     *         best they can to complete the operation and swallow and log
+     *         non-fatal errors.
+     */
+    default void evictExcess() throws CacheException {}
+
     /**
      * <p>Implementations should perform all necessary initialization in this
      * method rather than a constructor or static initializer.</p>
@@ -31,6 +31,12 @@ public abstract class CacheFactory {
 
     private static Thread derivativeCacheShutdownHook;
 
+    /**
+     * Wraps {@link #derivativeCache} when write-behind is enabled.
+     * Lazy-initialized by {@link #getWriteBehindCache(DerivativeCache)}.
+     */
+    private static volatile WriteBehindCache writeBehindCache;
+
     /** Lazy-initialized by {@link #getSourceCache()}. */
     private static volatile SourceCache sourceCache;
 
@@ -46,7 +52,8 @@ public abstract class CacheFactory {
                 new FilesystemCache(),
                 new HeapCache(),
                 new JdbcCache(),
-                new RedisCache()));
+                new RedisCache(),
+                new TieredCache()));
     }
 
     /**
@@ -62,6 +69,10 @@ public abstract class CacheFactory {
      *
      * <p>This method respects live changes in application configuration.</p>
      *
+     * <p>When {@link WriteBehindCache#ENABLED_CONFIG_KEY} is
+     * <code>true</code>, the instance is wrapped in a
+     * {@link WriteBehindCache}.</p>
+     *
      * @return The shared DerivativeCache instance, or <code>null</code> if a
      *         derivative cache is not available.
      */
@@ -103,6 +114,29 @@ public abstract class CacheFactory {
                 }
             }
         }
+        if (cache != null &&
+                config.getBoolean(WriteBehindCache.ENABLED_CONFIG_KEY, false)) {
+            cache = getWriteBehindCache(cache);
+        }
+        return cache;
+    }
+
+    /**
+     * @param backingCache Shared derivative cache instance.
+     * @return Shared {@link WriteBehindCache} wrapping the given instance.
+     */
+    private static DerivativeCache getWriteBehindCache(
+            DerivativeCache backingCache) {
+        WriteBehindCache cache = writeBehindCache;
+        if (cache == null || cache.getBackingCache() != backingCache) {
+            synchronized (CacheFactory.class) {
+                cache = writeBehindCache;
+                if (cache == null || cache.getBackingCache() != backingCache) {
+                    cache = new WriteBehindCache(backingCache);
+                    writeBehindCache = cache;
+                }
+            }
+        }
         return cache;
     }
 
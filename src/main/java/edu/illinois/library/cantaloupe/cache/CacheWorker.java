@@ -4,7 +4,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Purges expired items from the cache.
+ * Purges expired items from the cache, and evicts items from caches that
+ * exceed their size limit.
  */
 class CacheWorker implements Runnable {
 
@@ -31,6 +32,12 @@ class CacheWorker implements Runnable {
             } catch (CacheException e) {
                 logger.error(e.getMessage());
             }
+            // Evict least-recently-used items from the source cache.
+            try {
+                sourceCache.evictExcess();
+            } catch (CacheException e) {
+                logger.error(e.getMessage());
+            }
             // Clean up the source cache.
             try {
                 sourceCache.cleanUp();
@@ -45,6 +52,12 @@ class CacheWorker implements Runnable {
             } catch (CacheException e) {
                 logger.error(e.getMessage());
             }
+            // Evict least-recently-used items from the derivative cache.
+            try {
+                derivativeCache.evictExcess();
+            } catch (CacheException e) {
+                logger.error(e.getMessage());
+            }
             // Clean up the derivative cache.
             try {
                 derivativeCache.cleanUp();
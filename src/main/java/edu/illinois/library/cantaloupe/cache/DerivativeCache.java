@@ -4,6 +4,7 @@ import edu.illinois.library.cantaloupe.image.Identifier;
 import edu.illinois.library.cantaloupe.operation.OperationList;
 import edu.illinois.library.cantaloupe.image.Info;
 
+import java.io.File;
 import java.io.InputStream;
 import java.io.OutputStream;
 
@@ -15,6 +16,30 @@ import java.io.OutputStream;
  */
 public interface DerivativeCache extends Cache {
 
+    /**
+     * <p>Returns the file in which the image corresponding to the given
+     * operation list is stored, for caches that store images in files. This
+     * enables the image to be served (in whole or in part) more efficiently
+     * than via {@link #newDerivativeImageInputStream(OperationList)}.</p>
+     *
+     * <p>The same expiration rules apply as for
+     * {@link #newDerivativeImageInputStream(OperationList)}.</p>
+     *
+     * <p>The default implementation returns <code>null</code>.</p>
+     *
+     * @param opList Operation list for which to retrieve a file.
+     * @return File corresponding to the given operation list, or null if the
+     *         cache does not store images in files, or if a non-expired image
+     *         corresponding to the given operation list does not exist in
+     *         the cache.
+     * @throws CacheException
+     * @since 3.4
+     */
+    default File getDerivativeImageFile(OperationList opList)
+            throws CacheException {
+        return null;
+    }
+
     /**
      * <p>Reads cached image information.</p>
      *
@@ -1,10 +1,13 @@
 package edu.illinois.library.cantaloupe.cache;
 
+import edu.illinois.library.cantaloupe.ThreadPool;
 import edu.illinois.library.cantaloupe.config.Configuration;
 import edu.illinois.library.cantaloupe.config.ConfigurationFactory;
 import edu.illinois.library.cantaloupe.image.Identifier;
 import edu.illinois.library.cantaloupe.image.Info;
 import edu.illinois.library.cantaloupe.operation.OperationList;
+import edu.illinois.library.cantaloupe.util.StringUtil;
+import edu.illinois.library.cantaloupe.util.StripedReadWriteLock;
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -19,7 +22,7 @@ import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
@@ -35,13 +38,19 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
 
 /**
  * <p>Cache using a filesystem, storing source images, derivative images,
@@ -96,6 +105,23 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  *     <li>Cache files are created with a .tmp extension and moved into place
  *     when closed for writing.</li>
  * </ol>
+ *
+ * <p>When {@link #INDEX_ENABLED_CONFIG_KEY} is <code>true</code>, a
+ * {@link FilesystemCacheIndex} of the tree is built in the background upon
+ * initialization, and once it is ready, lookups, expiration checks, and
+ * purges consult it rather than the filesystem. The index is shared by all
+ * instances using the same {@link #PATHNAME_CONFIG_KEY}.</p>
+ *
+ * <p>When {@link #MAX_SIZE_CONFIG_KEY} is set, the index is always enabled,
+ * and whenever a file written to the cache causes the total size to exceed
+ * the maximum, the least-recently-accessed files are evicted in the
+ * background until it is back down to {@link #LOW_WATER_MARK_CONFIG_KEY}
+ * percent of the maximum.</p>
+ *
+ * <p>Files are moved into place, and deleted by purges, evictions, and
+ * validity checks, while holding the write lock of their pathname in a
+ * striped lock table, so that a file that has just been replaced is never
+ * deleted as stale.</p>
  */
 class FilesystemCache implements SourceCache, DerivativeCache {
 
@@ -179,8 +205,9 @@ class FilesystemCache implements SourceCache, DerivativeCache {
         private static final Logger logger = LoggerFactory.
                 getLogger(ConcurrentFileOutputStream.class);
 
+        private FilesystemCache cache;
         private File destinationFile;
-        private Set imagesBeingWritten;
+        private Map<?,CountDownLatch> writesInProgress;
         private boolean isClosed = false;
         private Object toRemove;
         private File tempFile;
@@ -189,22 +216,27 @@ class FilesystemCache implements SourceCache, DerivativeCache {
          * @param tempFile Pathname of the temp file to write to.
          * @param destinationFile Pathname to move tempFile to when it is done
          *                        being written.
-         * @param imagesBeingWritten Set of OperationLists for all images
-         *                           currently being written.
-         * @param toRemove Object to remove from the set when done.
+         * @param writesInProgress Map of keys of all files currently being
+         *                         written to latches that are released when
+         *                         they are done. The caller must have added
+         *                         <code>toRemove</code> to it.
+         * @param toRemove Key to remove from the map, and whose latch to
+         *                 release, when done.
+         * @param cache Cache to notify via
+         *              {@link FilesystemCache#fileWritten} when done.
          * @throws FileNotFoundException
          */
-        @SuppressWarnings("unchecked")
         ConcurrentFileOutputStream(File tempFile,
                                    File destinationFile,
-                                   Set imagesBeingWritten,
-                                   Object toRemove)
+                                   Map<?,CountDownLatch> writesInProgress,
+                                   Object toRemove,
+                                   FilesystemCache cache)
                 throws FileNotFoundException {
             super(tempFile);
-            imagesBeingWritten.add(toRemove);
             this.tempFile = tempFile;
             this.destinationFile = destinationFile;
-            this.imagesBeingWritten = imagesBeingWritten;
+            this.cache = cache;
+            this.writesInProgress = writesInProgress;
             this.toRemove = toRemove;
         }
 
@@ -227,10 +259,19 @@ class FilesystemCache implements SourceCache, DerivativeCache {
                         logger.warn("close(): {}", e.getMessage());
                     }
 
-                    if (tempFile.length() > 0) {
+                    final long length = tempFile.length();
+                    if (length > 0) {
                         logger.debug("close(): moving {} to {}",
                                 tempFile, destinationFile.getName());
-                        FileUtils.moveFile(tempFile, destinationFile);
+                        final ReadWriteLock lock =
+                                cache.fileLock(destinationFile);
+                        lock.writeLock().lock();
+                        try {
+                            FileUtils.moveFile(tempFile, destinationFile);
+                            cache.fileWritten(destinationFile, length);
+                        } finally {
+                            lock.writeLock().unlock();
+                        }
                     } else {
                         logger.debug("close(): deleting zero-byte file: {}",
                                 tempFile);
@@ -239,7 +280,11 @@ class FilesystemCache implements SourceCache, DerivativeCache {
                 } catch (IOException e) {
                     logger.warn("close(): {}", e.getMessage(), e);
                 } finally {
-                    imagesBeingWritten.remove(toRemove);
+                    final CountDownLatch latch =
+                            writesInProgress.remove(toRemove);
+                    if (latch != null) {
+                        latch.countDown();
+                    }
                 }
             }
         }
@@ -273,6 +318,11 @@ class FilesystemCache implements SourceCache, DerivativeCache {
             "FilesystemCache.dir.depth";
     static final String DIRECTORY_NAME_LENGTH_CONFIG_KEY =
             "FilesystemCache.dir.name_length";
+    static final String INDEX_ENABLED_CONFIG_KEY =
+            "FilesystemCache.index.enabled";
+    static final String LOW_WATER_MARK_CONFIG_KEY =
+            "FilesystemCache.low_water_mark";
+    static final String MAX_SIZE_CONFIG_KEY = "FilesystemCache.max_size";
     static final String PATHNAME_CONFIG_KEY = "FilesystemCache.pathname";
 
     // Algorithm used for hashing identifiers to create filenames & pathnames.
@@ -284,46 +334,74 @@ class FilesystemCache implements SourceCache, DerivativeCache {
     private static final String DERIVATIVE_IMAGE_FOLDER = "image";
     private static final String INFO_FOLDER = "info";
 
+    private static final int DEFAULT_LOW_WATER_MARK = 90;
+
     private static final String INFO_EXTENSION = ".json";
     private static final String TEMP_EXTENSION = ".tmp";
 
-    /** Set of operation lists for which image files are currently being
-     * written from any thread. */
-    private final Set<OperationList> derivativeImagesBeingWritten =
-            new ConcurrentSkipListSet<>();
+    /** MessageDigests are not thread-safe, but are relatively expensive to
+     * obtain, so each thread reuses its own. */
+    private static final ThreadLocal<MessageDigest> digests =
+            ThreadLocal.withInitial(() -> {
+                try {
+                    return MessageDigest.getInstance(HASH_ALGORITHM);
+                } catch (NoSuchAlgorithmException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+
+    /** Indexes keyed by root pathname. */
+    private static final ConcurrentMap<String,FilesystemCacheIndex> indexes =
+            new ConcurrentHashMap<>();
 
-    /** Set of Operations for which image files are currently being purged by
-     * purge(OperationList) from any thread. */
-    private final Set<OperationList> imagesBeingPurged =
-            new ConcurrentSkipListSet<>();
+    /** Number of locks in the lock table. */
+    private static final int LOCK_STRIPES = 256;
 
-    /** Set of identifiers for which info files are currently being purged by
-     * purge(Identifier) from any thread. */
-    private final Set<Identifier> infosBeingPurged =
-            new ConcurrentSkipListSet<>();
+    /**
+     * Runs the evictions triggered by writes, at minimum priority so as not
+     * to compete with request handling. At most one eviction is queued
+     * while another is running, as it will evict whatever is in excess at
+     * the time.
+     */
+    private static final ExecutorService evictionExecutor =
+            new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(1),
+                    runnable -> {
+                        final Thread thread = new Thread(runnable,
+                                "FilesystemCache-eviction");
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                        return thread;
+                    },
+                    new ThreadPoolExecutor.DiscardPolicy());
+
+    /** Map of operation lists for which image files are currently being
+     * written from any thread to latches that are released when they are
+     * done. */
+    private final ConcurrentMap<OperationList,CountDownLatch>
+            derivativeImagesBeingWritten = new ConcurrentSkipListMap<>();
 
     private long minCleanableAge = 1000 * 60 * 10;
 
-    /** Set of identifiers for which image files are currently being written
-     * from any thread. */
-    private final Set<Identifier> sourceImagesBeingWritten =
-            new ConcurrentSkipListSet<>();
+    /** Map of identifiers for which image files are currently being written
+     * from any thread to latches that are released when they are done.
+     * Readers of a given identifier wait only on its own latch. */
+    private final ConcurrentMap<Identifier,CountDownLatch>
+            sourceImagesBeingWritten = new ConcurrentHashMap<>();
 
     /** Toggled by purge() and purgeExpired(). */
     private final AtomicBoolean globalPurgeInProgress =
             new AtomicBoolean(false);
 
-    /** Several different lock objects for context-dependent synchronization.
-     * Reduces contention for the instance. */
-    private final Object imagePurgeLock = new Object();
-    private final Object infoPurgeLock = new Object();
-    private final Object sourceImageWriteLock = new Object();
-
-    /** Rather than using a global lock, per-identifier locks allow for
-     * simultaneous writes to different infos. Map entries are added on demand
-     * and never removed. */
-    private final Map<Identifier,ReadWriteLock> infoLocks =
-            new ConcurrentHashMap<>();
+    /** Per-file locks, keyed by absolute pathname, that allow for
+     * simultaneous reads and writes of different files, and serialize
+     * writes, purges, and evictions of the same file. Rather than using a
+     * global lock, or a lock per key that would have to be added on demand
+     * and removed when no longer needed, keys are striped over a fixed
+     * number of locks. Info files are read under their read lock. Purges of
+     * an identifier hold the write lock of its info file. */
+    private final StripedReadWriteLock fileLocks =
+            new StripedReadWriteLock(LOCK_STRIPES);
 
     /**
      * @param uniqueString String from which to derive the path.
@@ -331,25 +409,23 @@ class FilesystemCache implements SourceCache, DerivativeCache {
      *         string.
      */
     static String getHashedStringBasedSubdirectory(String uniqueString) {
+        final Configuration config = ConfigurationFactory.getInstance();
+        final int depth = config.getInt(DIRECTORY_DEPTH_CONFIG_KEY, 3);
+        if (depth < 1) {
+            return "";
+        }
+        final int nameLength =
+                config.getInt(DIRECTORY_NAME_LENGTH_CONFIG_KEY, 2);
+
+        final MessageDigest digest = digests.get();
+        final String sum = Hex.encodeHexString(
+                digest.digest(uniqueString.getBytes(StandardCharsets.UTF_8)));
+
         final StringBuilder path = new StringBuilder();
-        try {
-            final MessageDigest digest =
-                    MessageDigest.getInstance(HASH_ALGORITHM);
-            digest.update(uniqueString.getBytes(Charset.forName("UTF8")));
-            final String sum = Hex.encodeHexString(digest.digest());
-
-            final Configuration config = ConfigurationFactory.getInstance();
-            final int depth = config.getInt(DIRECTORY_DEPTH_CONFIG_KEY, 3);
-            final int nameLength =
-                    config.getInt(DIRECTORY_NAME_LENGTH_CONFIG_KEY, 2);
-
-            for (int i = 0; i < depth; i++) {
-                final int offset = i * nameLength;
-                path.append(File.separator);
-                path.append(sum.substring(offset, offset + nameLength));
-            }
-        } catch (NoSuchAlgorithmException e) {
-            logger.error(e.getMessage(), e);
+        for (int i = 0; i < depth; i++) {
+            final int offset = i * nameLength;
+            path.append(File.separator);
+            path.append(sum.substring(offset, offset + nameLength));
         }
         return path.toString();
     }
@@ -378,6 +454,28 @@ class FilesystemCache implements SourceCache, DerivativeCache {
         return ttlMsec > 0 && file.isFile() && age > ttlMsec;
     }
 
+    /**
+     * @param entry Index entry to check.
+     * @return Whether the given entry is expired based on
+     *         {@link #TTL_CONFIG_KEY} and its last-accessed time. If
+     *         {@link #TTL_CONFIG_KEY} is 0, <code>false</code> will be
+     *         returned.
+     */
+    private static boolean isExpired(FilesystemCacheIndex.Entry entry) {
+        final long ttlMsec = 1000 * ConfigurationFactory.getInstance().
+                getLong(TTL_CONFIG_KEY, 0);
+        final long age = System.currentTimeMillis() -
+                entry.getLastAccessTime();
+        return ttlMsec > 0 && age > ttlMsec;
+    }
+
+    /**
+     * Discards all indexes. For testing only.
+     */
+    static void clearIndexes() {
+        indexes.clear();
+    }
+
     /**
      * @return Pathname of the root cache folder.
      * @throws CacheException if {@link #PATHNAME_CONFIG_KEY} is undefined.
@@ -418,13 +516,276 @@ class FilesystemCache implements SourceCache, DerivativeCache {
         return rootPathname() + File.separator + SOURCE_IMAGE_FOLDER;
     }
 
-    private ReadWriteLock acquireInfoLock(final Identifier identifier) {
-        ReadWriteLock lock = infoLocks.get(identifier);
-        if (lock == null) {
-            infoLocks.putIfAbsent(identifier, new ReentrantReadWriteLock());
-            lock = infoLocks.get(identifier);
+    /**
+     * Checks whether the given cache file exists and is not expired,
+     * consulting the index if it is ready, and deleting the file if it is
+     * expired.
+     *
+     * @param cacheFile File to check.
+     * @param caller    Name of the calling method, for logging.
+     * @return Whether the file can be used.
+     */
+    private boolean checkValid(File cacheFile, String caller)
+            throws CacheException {
+        final FilesystemCacheIndex index = getReadyIndex();
+        if (index != null) {
+            final FilesystemCacheIndex.Entry entry = index.get(cacheFile);
+            if (entry == null) {
+                return false;
+            } else if (!isExpired(entry)) {
+                index.touch(entry);
+                return true;
+            }
+            logger.info("{}(): deleting stale file: {}",
+                    caller, cacheFile.getAbsolutePath());
+            deleteEntry(index, entry, caller);
+            return false;
+        } else if (!cacheFile.exists()) {
+            return false;
+        } else if (!isExpired(cacheFile)) {
+            return true;
+        }
+        logger.info("{}(): deleting stale file: {}",
+                caller, cacheFile.getAbsolutePath());
+        try {
+            deleteFile(cacheFile, FilesystemCache::isExpired);
+        } catch (FileNotFoundException e) {
+            // It was deleted in the meantime.
+        } catch (IOException e) {
+            logger.warn("{}(): unable to delete {}",
+                    caller, cacheFile.getAbsolutePath());
+        }
+        return false;
+    }
+
+    /**
+     * Deletes the file of the given index entry while holding its write
+     * lock, and removes the entry from the index, unless the entry is no
+     * longer current by then, i.e. the file has since been rewritten or
+     * deleted.
+     *
+     * @param index  Index containing the entry.
+     * @param entry  Entry of the file to delete.
+     * @param caller Name of the calling method, for logging.
+     * @return Whether the entry was current, and has therefore been removed
+     *         from the index. A failure to delete the file is only logged.
+     */
+    private boolean deleteEntry(FilesystemCacheIndex index,
+                                FilesystemCacheIndex.Entry entry,
+                                String caller) {
+        final File file = entry.getFile();
+        final ReadWriteLock lock = fileLock(file);
+        lock.writeLock().lock();
+        try {
+            if (!index.remove(entry)) {
+                return false;
+            }
+            try {
+                Files.deleteIfExists(file.toPath());
+            } catch (IOException e) {
+                logger.warn("{}(): unable to delete {}: {}",
+                        caller, file, e.getMessage());
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes the given file while holding its write lock, if it still
+     * satisfies the given condition by then, and removes it from the index,
+     * if enabled.
+     *
+     * @param file      File to delete.
+     * @param condition Condition to check once the lock has been acquired.
+     * @return Whether the file was deleted.
+     * @throws FileNotFoundException If the file does not exist.
+     * @throws IOException           If the file could not be deleted.
+     */
+    private boolean deleteFile(File file, Predicate<File> condition)
+            throws IOException, CacheException {
+        final ReadWriteLock lock = fileLock(file);
+        lock.writeLock().lock();
+        try {
+            if (!condition.test(file)) {
+                return false;
+            }
+            FileUtils.forceDelete(file);
+            removeFromIndex(file);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * <p>Evicts the least-recently-accessed files until the total size of
+     * the cache is at most {@link #LOW_WATER_MARK_CONFIG_KEY} percent of
+     * {@link #MAX_SIZE_CONFIG_KEY}, if it currently exceeds the latter.</p>
+     *
+     * <p>Does nothing if no maximum size is set, if the index is not ready
+     * yet, if a global purge is in progress, or if an eviction is already in
+     * progress in another thread.</p>
+     *
+     * <p>Each file is deleted by {@link #deleteEntry}, so that a file that
+     * has been rewritten since its entry was read is not deleted.</p>
+     */
+    @Override
+    public void evictExcess() throws CacheException {
+        final long maxSize = getMaxSize();
+        final FilesystemCacheIndex index = getReadyIndex();
+        if (maxSize <= 0 || index == null || index.getSize() <= maxSize ||
+                globalPurgeInProgress.get() || !index.beginEviction()) {
+            return;
+        }
+        try {
+            final long lowWaterSize = maxSize * getLowWaterMark() / 100;
+            logger.info("evictExcess(): evicting from {} bytes to {} bytes",
+                    index.getSize(), lowWaterSize);
+            long count = 0;
+            FilesystemCacheIndex.Entry entry;
+            while (index.getSize() > lowWaterSize &&
+                    (entry = index.getEldest()) != null) {
+                // Either way, the entry is no longer in the index, so the
+                // loop makes progress.
+                if (deleteEntry(index, entry, "evictExcess")) {
+                    count++;
+                }
+            }
+            logger.info("evictExcess(): evicted {} files", count);
+        } finally {
+            index.endEviction();
+        }
+    }
+
+    /**
+     * @param file Cache file.
+     * @return Lock for the given file.
+     */
+    ReadWriteLock fileLock(File file) {
+        return fileLocks.get(file.getAbsolutePath());
+    }
+
+    /**
+     * Adds a newly written file to the index, if enabled, and triggers
+     * eviction in the background if it made the cache exceed its maximum
+     * size.
+     *
+     * @param file   File that has been moved into place.
+     * @param length Size of the file.
+     */
+    private void fileWritten(File file, long length) {
+        try {
+            final FilesystemCacheIndex index = getIndex();
+            if (index != null) {
+                index.put(file, length);
+                final long maxSize = getMaxSize();
+                if (maxSize > 0 && index.isReady() &&
+                        index.getSize() > maxSize) {
+                    evictionExecutor.submit(() -> {
+                        try {
+                            evictExcess();
+                        } catch (CacheException e) {
+                            logger.error("fileWritten(): {}", e.getMessage());
+                        }
+                    });
+                }
+            }
+        } catch (CacheException e) {
+            logger.error("fileWritten(): {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @return Index of the cache tree, which may not be ready yet, or
+     *         <code>null</code> if neither {@link #INDEX_ENABLED_CONFIG_KEY}
+     *         nor {@link #MAX_SIZE_CONFIG_KEY} is set. If the index for the
+     *         current root pathname doesn't exist, it is created and built in
+     *         the background.
+     */
+    FilesystemCacheIndex getIndex() throws CacheException {
+        if (!ConfigurationFactory.getInstance().
+                getBoolean(INDEX_ENABLED_CONFIG_KEY, false) &&
+                getMaxSize() <= 0) {
+            return null;
+        }
+        final String root = rootPathname();
+        FilesystemCacheIndex index = indexes.get(root);
+        if (index == null) {
+            final FilesystemCacheIndex newIndex = new FilesystemCacheIndex();
+            index = indexes.putIfAbsent(root, newIndex);
+            if (index == null) {
+                index = newIndex;
+                final List<File> rootDirs = Arrays.asList(
+                        new File(rootSourceImagePathname()),
+                        new File(rootDerivativeImagePathname()),
+                        new File(rootInfoPathname()));
+                logger.info("getIndex(): indexing {}", root);
+                ThreadPool.getInstance().submit(() -> newIndex.rebuild(rootDirs));
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return Value of {@link #LOW_WATER_MARK_CONFIG_KEY}, clamped to the
+     *         range 0-100.
+     */
+    private int getLowWaterMark() {
+        final int mark = ConfigurationFactory.getInstance().
+                getInt(LOW_WATER_MARK_CONFIG_KEY, DEFAULT_LOW_WATER_MARK);
+        return Math.max(0, Math.min(100, mark));
+    }
+
+    /**
+     * @return Value of {@link #MAX_SIZE_CONFIG_KEY} in bytes, or 0 if it is
+     *         not set or invalid.
+     */
+    long getMaxSize() {
+        final String humanSize = ConfigurationFactory.getInstance().
+                getString(MAX_SIZE_CONFIG_KEY, "");
+        if (humanSize.length() > 0) {
+            try {
+                return StringUtil.parseByteSize(humanSize);
+            } catch (NumberFormatException e) {
+                logger.error("getMaxSize(): invalid value for {}: {}",
+                        MAX_SIZE_CONFIG_KEY, humanSize);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return Index of the cache tree if it is enabled and ready; otherwise
+     *         <code>null</code>.
+     */
+    private FilesystemCacheIndex getReadyIndex() throws CacheException {
+        final FilesystemCacheIndex index = getIndex();
+        return (index != null && index.isReady()) ? index : null;
+    }
+
+    /**
+     * Starts building the index, if enabled.
+     */
+    @Override
+    public void initialize() {
+        try {
+            getIndex();
+        } catch (CacheException e) {
+            logger.error("initialize(): {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Removes the given file from the index, if enabled. Should be called
+     * after any file is deleted from the cache.
+     */
+    private void removeFromIndex(File file) throws CacheException {
+        final FilesystemCacheIndex index = getIndex();
+        if (index != null) {
+            index.remove(file);
         }
-        return lock;
     }
 
     /**
@@ -503,28 +864,21 @@ class FilesystemCache implements SourceCache, DerivativeCache {
 
     @Override
     public Info getImageInfo(Identifier identifier) throws CacheException {
-        final ReadWriteLock lock = acquireInfoLock(identifier);
+        final File cacheFile = infoFile(identifier);
+        // This must be done before acquiring the read lock, as it may delete
+        // the file, which requires the write lock.
+        if (!checkValid(cacheFile, "getImageInfo")) {
+            return null;
+        }
+        final ReadWriteLock lock = fileLock(cacheFile);
         lock.readLock().lock();
-
         try {
-            final File cacheFile = infoFile(identifier);
-            if (cacheFile != null && cacheFile.exists()) {
-                if (!isExpired(cacheFile)) {
-                    logger.info("getImageInfo(): hit: {}",
-                            cacheFile.getAbsolutePath());
-                    return Info.fromJson(cacheFile);
-                } else {
-                    logger.info("getImageInfo(): deleting stale file: {}",
-                            cacheFile.getAbsolutePath());
-                    // TODO: contention here (probably rare though)
-                    if (!cacheFile.delete()) {
-                        logger.warn("getImageInfo(): unable to delete {}",
-                                cacheFile.getAbsolutePath());
-                    }
-                }
-            }
+            logger.info("getImageInfo(): hit: {}",
+                    cacheFile.getAbsolutePath());
+            return Info.fromJson(cacheFile);
         } catch (FileNotFoundException e) {
             logger.info(e.getMessage(), e);
+            removeFromIndex(cacheFile);
         } catch (IOException e) {
             throw new CacheException(e.getMessage(), e);
         } finally {
@@ -533,32 +887,28 @@ class FilesystemCache implements SourceCache, DerivativeCache {
         return null;
     }
 
+    /**
+     * If the source image corresponding to the given identifier is being
+     * written in another thread, waits for it to be done. Writes of other
+     * source images do not block.
+     */
     @Override
     public File getSourceImageFile(Identifier identifier) throws CacheException {
-        synchronized (sourceImageWriteLock) {
-            while (sourceImagesBeingWritten.contains(identifier)) {
-                try {
-                    sourceImageWriteLock.wait();
-                } catch (InterruptedException e) {
-                    break;
-                }
+        final CountDownLatch latch = sourceImagesBeingWritten.get(identifier);
+        if (latch != null) {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
             }
         }
         File file = null;
         final File cacheFile = sourceImageFile(identifier);
-        if (cacheFile != null && cacheFile.exists()) {
-            if (!isExpired(cacheFile)) {
-                logger.info("getSourceImageFile(): hit: {} ({})",
-                        identifier, cacheFile.getAbsolutePath());
-                file = cacheFile;
-            } else {
-                logger.info("getSourceImageFile(): deleting stale file: {}",
-                        cacheFile.getAbsolutePath());
-                if (!cacheFile.delete()) {
-                    logger.warn("getSourceImageFile(): unable to delete {}",
-                            cacheFile.getAbsolutePath());
-                }
-            }
+        if (checkValid(cacheFile, "getSourceImageFile")) {
+            logger.info("getSourceImageFile(): hit: {} ({})",
+                    identifier, cacheFile.getAbsolutePath());
+            file = cacheFile;
         }
         return file;
     }
@@ -588,27 +938,32 @@ class FilesystemCache implements SourceCache, DerivativeCache {
                 Thread.currentThread().getName() + TEMP_EXTENSION);
     }
 
+    @Override
+    public File getDerivativeImageFile(OperationList ops)
+            throws CacheException {
+        final File cacheFile = derivativeImageFile(ops);
+        if (checkValid(cacheFile, "getDerivativeImageFile")) {
+            logger.info("getDerivativeImageFile(): hit: {} ({})",
+                    ops, cacheFile.getAbsolutePath());
+            return cacheFile;
+        }
+        return null;
+    }
+
     @Override
     public InputStream newDerivativeImageInputStream(OperationList ops)
             throws CacheException {
         InputStream inputStream = null;
         final File cacheFile = derivativeImageFile(ops);
-        if (cacheFile != null && cacheFile.exists()) {
-            if (!isExpired(cacheFile)) {
-                try {
-                    logger.info("newDerivativeImageInputStream(): hit: {} ({})",
-                            ops, cacheFile.getAbsolutePath());
-                    inputStream = new FileInputStream(cacheFile);
-                } catch (FileNotFoundException e) {
-                    logger.error(e.getMessage(), e);
-                }
-            } else {
-                logger.info("newDerivativeImageInputStream(): deleting stale file: {}",
-                        cacheFile.getAbsolutePath());
-                if (!cacheFile.delete()) {
-                    logger.warn("newDerivativeImageInputStream(): unable to delete {}",
-                            cacheFile.getAbsolutePath());
-                }
+        if (checkValid(cacheFile, "newDerivativeImageInputStream")) {
+            try {
+                logger.info("newDerivativeImageInputStream(): hit: {} ({})",
+                        ops, cacheFile.getAbsolutePath());
+                inputStream = new FileInputStream(cacheFile);
+            } catch (FileNotFoundException e) {
+                // The index may be out of date.
+                logger.error(e.getMessage(), e);
+                removeFromIndex(cacheFile);
             }
         }
         return inputStream;
@@ -626,9 +981,12 @@ class FilesystemCache implements SourceCache, DerivativeCache {
     public OutputStream newDerivativeImageOutputStream(OperationList ops)
             throws CacheException {
         // If the image is being written in another thread, it will
-        // be present in the derivativeImagesBeingWritten set. If so,
-        // return a null output stream to avoid interfering.
-        if (derivativeImagesBeingWritten.contains(ops)) {
+        // be present in the derivativeImagesBeingWritten map. If so,
+        // return a null output stream to avoid interfering. Otherwise, ops
+        // will be removed from the map when the returned output stream is
+        // closed.
+        if (derivativeImagesBeingWritten.putIfAbsent(
+                ops, new CountDownLatch(1)) != null) {
             logger.info("newDerivativeImageOutputStream(OperationList): miss, " +
                     "but cache file for {} is being written in " +
                     "another thread, so not caching", ops);
@@ -643,14 +1001,12 @@ class FilesystemCache implements SourceCache, DerivativeCache {
             // the client will find out about it shortly. :D
             tempFile.getParentFile().mkdirs();
 
-            // ops will be removed from this set when the returned output
-            // stream is closed.
-            derivativeImagesBeingWritten.add(ops);
             try {
                 return new ConcurrentFileOutputStream(tempFile,
                         derivativeImageFile(ops),
-                        derivativeImagesBeingWritten, ops);
+                        derivativeImagesBeingWritten, ops, this);
             } catch (IOException e) {
+                derivativeImagesBeingWritten.remove(ops).countDown();
                 throw new CacheException(e.getMessage(), e);
             }
         }
@@ -659,22 +1015,22 @@ class FilesystemCache implements SourceCache, DerivativeCache {
     @Override
     public OutputStream newSourceImageOutputStream(Identifier identifier)
             throws CacheException {
-        // If the image is being written in another thread, it may (or may not)
-        // be present in the sourceImagesBeingWritten set. If so, return a null
-        // output stream to avoid interfering.
-        if (sourceImagesBeingWritten.contains(identifier)) {
+        // If the image is being written in another thread, it will be
+        // present in the sourceImagesBeingWritten map. If so, return a null
+        // output stream to avoid interfering. Otherwise, identifier will be
+        // removed from the map when the non-null output stream returned by
+        // this method is closed.
+        if (sourceImagesBeingWritten.putIfAbsent(
+                identifier, new CountDownLatch(1)) != null) {
             logger.info("newSourceImageOutputStream(Identifier): miss, but cache " +
                     "file for {} is being written in another thread, so not " +
                     "caching", identifier);
             return new NullOutputStream();
         }
 
-        // identifier will be removed from this set when the non-null output
-        // stream returned by this method is closed.
-        sourceImagesBeingWritten.add(identifier);
-
         logger.info("newSourceImageOutputStream(Identifier): miss; caching {}",
                 identifier);
+        boolean isWriting = false;
         try {
             final File tempFile = sourceImageTempFile(identifier);
             if (!tempFile.getParentFile().isDirectory()) {
@@ -688,10 +1044,17 @@ class FilesystemCache implements SourceCache, DerivativeCache {
                 }
             }
             final File destFile = sourceImageFile(identifier);
-            return new ConcurrentFileOutputStream(
-                    tempFile, destFile, sourceImagesBeingWritten, identifier);
+            final OutputStream os = new ConcurrentFileOutputStream(
+                    tempFile, destFile, sourceImagesBeingWritten, identifier,
+                    this);
+            isWriting = true;
+            return os;
         } catch (IOException e) {
             throw new CacheException(e.getMessage(), e);
+        } finally {
+            if (!isWriting) {
+                sourceImagesBeingWritten.remove(identifier).countDown();
+            }
         }
     }
 
@@ -700,28 +1063,20 @@ class FilesystemCache implements SourceCache, DerivativeCache {
      * within it (including temp files).</p>
      *
      * <p>Will do nothing and return immediately if a global purge is in
-     * progress in another thread.</p>
+     * progress in another thread. Purges of individual items that are in
+     * progress in other threads are not waited for, as they can only delete
+     * files that this method would delete anyway.</p>
      *
      * @throws CacheException
      */
     @Override
     public void purge() throws CacheException {
-        if (globalPurgeInProgress.get()) {
+        if (!globalPurgeInProgress.compareAndSet(false, true)) {
             logger.info("purge() called with a purge already in progress. " +
                     "Aborting.");
             return;
         }
-        synchronized (imagePurgeLock) {
-            while (!imagesBeingPurged.isEmpty()) {
-                try {
-                    imagePurgeLock.wait();
-                } catch (InterruptedException e) {
-                    break;
-                }
-            }
-        }
         try {
-            globalPurgeInProgress.set(true);
 
             final String[] pathnamesToPurge = {
                     rootSourceImagePathname(),
@@ -737,11 +1092,12 @@ class FilesystemCache implements SourceCache, DerivativeCache {
                     logger.warn(e.getMessage());
                 }
             }
+            final FilesystemCacheIndex index = getIndex();
+            if (index != null) {
+                index.clear();
+            }
         } finally {
             globalPurgeInProgress.set(false);
-            synchronized (imagePurgeLock) {
-                imagePurgeLock.notifyAll();
-            }
         }
     }
 
@@ -763,20 +1119,12 @@ class FilesystemCache implements SourceCache, DerivativeCache {
                     "progress. Aborting.");
             return;
         }
-        synchronized (imagePurgeLock) {
-            while (imagesBeingPurged.contains(opList)) {
-                try {
-                    imagePurgeLock.wait();
-                } catch (InterruptedException e) {
-                    break;
-                }
-            }
-        }
+        final File file = derivativeImageFile(opList);
+        final ReadWriteLock lock = fileLock(file);
+        lock.writeLock().lock();
         try {
-            imagesBeingPurged.add(opList);
             logger.info("purge(OperationList): purging {}...", opList);
 
-            File file = derivativeImageFile(opList);
             if (file != null && file.exists()) {
                 try {
                     FileUtils.forceDelete(file);
@@ -785,11 +1133,9 @@ class FilesystemCache implements SourceCache, DerivativeCache {
                             file);
                 }
             }
+            removeFromIndex(file);
         } finally {
-            imagesBeingPurged.remove(opList);
-            synchronized (imagePurgeLock) {
-                imagePurgeLock.notifyAll();
-            }
+            lock.writeLock().unlock();
         }
     }
 
@@ -804,53 +1150,70 @@ class FilesystemCache implements SourceCache, DerivativeCache {
      */
     @Override
     public void purgeExpired() throws CacheException {
-        if (globalPurgeInProgress.get()) {
+        if (!globalPurgeInProgress.compareAndSet(false, true)) {
             logger.info("purgeExpired() called with a purge in progress. " +
                     "Aborting.");
             return;
         }
-        synchronized (imagePurgeLock) {
-            while (!imagesBeingPurged.isEmpty()) {
-                try {
-                    imagePurgeLock.wait();
-                } catch (InterruptedException e) {
-                    break;
-                }
-            }
-        }
         logger.info("purgeExpired(): purging...");
 
         try {
-            globalPurgeInProgress.set(true);
             final String imagePathname = rootDerivativeImagePathname();
             final String infoPathname = rootInfoPathname();
 
             long imageCount = 0;
-            final File imageDir = new File(imagePathname);
-            Iterator<File> it = FileUtils.iterateFiles(imageDir, null, true);
-            while (it.hasNext()) {
-                final File file = it.next();
-                if (isExpired(file)) {
-                    try {
-                        FileUtils.forceDelete(file);
-                        imageCount++;
-                    } catch (IOException e) {
-                        logger.warn(e.getMessage());
+            long infoCount = 0;
+            final FilesystemCacheIndex index = getReadyIndex();
+            if (index != null) {
+                final Path imagePath = Paths.get(imagePathname).
+                        toAbsolutePath().normalize();
+                final Path infoPath = Paths.get(infoPathname).
+                        toAbsolutePath().normalize();
+                for (FilesystemCacheIndex.Entry entry : index.getEntries()) {
+                    if (!isExpired(entry)) {
+                        continue;
+                    }
+                    final File file = entry.getFile();
+                    final boolean isImage = file.toPath().startsWith(imagePath);
+                    if (!isImage && !file.toPath().startsWith(infoPath)) {
+                        continue;
+                    }
+                    if (deleteEntry(index, entry, "purgeExpired")) {
+                        if (isImage) {
+                            imageCount++;
+                        } else {
+                            infoCount++;
+                        }
+                    }
+                }
+            } else {
+                final File imageDir = new File(imagePathname);
+                Iterator<File> it = FileUtils.iterateFiles(imageDir, null, true);
+                while (it.hasNext()) {
+                    final File file = it.next();
+                    if (isExpired(file)) {
+                        try {
+                            if (deleteFile(file, FilesystemCache::isExpired)) {
+                                imageCount++;
+                            }
+                        } catch (IOException e) {
+                            logger.warn(e.getMessage());
+                        }
                     }
                 }
-            }
 
-            long infoCount = 0;
-            final File infoDir = new File(infoPathname);
-            it = FileUtils.iterateFiles(infoDir, null, true);
-            while (it.hasNext()) {
-                final File file = it.next();
-                if (isExpired(file)) {
-                    try {
-                        FileUtils.forceDelete(file);
-                        infoCount++;
-                    } catch (IOException e) {
-                        logger.warn(e.getMessage());
+                final File infoDir = new File(infoPathname);
+                it = FileUtils.iterateFiles(infoDir, null, true);
+                while (it.hasNext()) {
+                    final File file = it.next();
+                    if (isExpired(file)) {
+                        try {
+                            if (deleteFile(file, FilesystemCache::isExpired)) {
+                                infoCount++;
+                            }
+                        } catch (IOException e) {
+                            logger.warn(e.getMessage());
+                        }
                     }
                 }
             }
@@ -858,9 +1221,6 @@ class FilesystemCache implements SourceCache, DerivativeCache {
                     "expired infos(s)", imageCount, infoCount);
         } finally {
             globalPurgeInProgress.set(false);
-            synchronized (imagePurgeLock) {
-                imagePurgeLock.notifyAll();
-            }
         }
     }
 
@@ -879,68 +1239,66 @@ class FilesystemCache implements SourceCache, DerivativeCache {
                     "progress. Aborting.");
             return;
         }
-        synchronized (infoPurgeLock) {
-            while (infosBeingPurged.contains(identifier)) {
-                try {
-                    infoPurgeLock.wait();
-                } catch (InterruptedException e) {
-                    break;
+        logger.info("purge(Identifier): purging {}...", identifier);
+
+        // If the index is ready, it knows all of the files to delete.
+        final FilesystemCacheIndex index = getReadyIndex();
+        if (index != null) {
+            for (File file : index.getFiles(identifier.toFilename())) {
+                final FilesystemCacheIndex.Entry entry = index.get(file);
+                if (entry != null) {
+                    logger.info("purge(Identifier): deleting {}", file);
+                    deleteEntry(index, entry, "purge(Identifier)");
                 }
             }
+            return;
         }
-        try {
-            infosBeingPurged.add(identifier);
-            logger.info("purge(Identifier): purging {}...", identifier);
 
-            // Delete the source image
-            final File sourceFile = sourceImageFile(identifier);
-            try {
-                logger.info("purge(Identifier): deleting {}", sourceFile);
-                FileUtils.forceDelete(sourceFile);
-            } catch (FileNotFoundException e) {
-                // This is not really a problem, and probably more likely to
-                // happen than not.
-                logger.info("purge(Identifier): no source image for {}",
-                        sourceFile);
-            } catch (IOException e) {
-                logger.warn(e.getMessage());
-            }
-            // Delete derivative images
-            for (File imageFile : derivativeImageFiles(identifier)) {
-                try {
-                    logger.info("purge(Identifier): deleting {}", imageFile);
-                    FileUtils.forceDelete(imageFile);
-                } catch (IOException e) {
-                    logger.warn(e.getMessage());
-                }
-            }
-            // Delete the info
-            final File infoFile = infoFile(identifier);
+        // Delete the source image
+        final File sourceFile = sourceImageFile(identifier);
+        try {
+            logger.info("purge(Identifier): deleting {}", sourceFile);
+            deleteFile(sourceFile, f -> true);
+        } catch (FileNotFoundException e) {
+            // This is not really a problem, and probably more likely to
+            // happen than not.
+            logger.info("purge(Identifier): no source image for {}",
+                    sourceFile);
+        } catch (IOException e) {
+            logger.warn(e.getMessage());
+        }
+        // Delete derivative images
+        for (File imageFile : derivativeImageFiles(identifier)) {
             try {
-                logger.info("purge(Identifier): deleting {}", infoFile);
-                FileUtils.forceDelete(infoFile);
-            } catch (FileNotFoundException e) {
-                // This is not a problem, and as likely to happen as not.
-                logger.info("purge(Identifier): no info for {}", infoFile);
+                logger.info("purge(Identifier): deleting {}", imageFile);
+                deleteFile(imageFile, f -> true);
             } catch (IOException e) {
                 logger.warn(e.getMessage());
             }
-        } finally {
-            infosBeingPurged.remove(identifier);
+        }
+        // Delete the info
+        final File infoFile = infoFile(identifier);
+        try {
+            logger.info("purge(Identifier): deleting {}", infoFile);
+            deleteFile(infoFile, f -> true);
+        } catch (FileNotFoundException e) {
+            // This is not a problem, and as likely to happen as not.
+            logger.info("purge(Identifier): no info for {}", infoFile);
+        } catch (IOException e) {
+            logger.warn(e.getMessage());
         }
     }
 
     @Override
     public void put(Identifier identifier, Info imageInfo)
             throws CacheException {
-        final ReadWriteLock lock = acquireInfoLock(identifier);
+        final File destFile = infoFile(identifier);
+        final File tempFile = infoTempFile(identifier);
+        final ReadWriteLock lock = fileLock(destFile);
         lock.writeLock().lock();
 
         logger.info("put(): caching: {}", identifier);
 
-        final File destFile = infoFile(identifier);
-        final File tempFile = infoTempFile(identifier);
-
         try {
             if (destFile.exists()) {
                 FileUtils.forceDelete(destFile);
@@ -952,10 +1310,12 @@ class FilesystemCache implements SourceCache, DerivativeCache {
             }
 
             FileUtils.writeStringToFile(tempFile, imageInfo.toJson());
+            final long length = tempFile.length();
 
             logger.debug("put(): moving {} to {}",
                     tempFile, destFile.getName());
             FileUtils.moveFile(tempFile, destFile);
+            fileWritten(destFile, length);
         } catch (IOException e) {
             tempFile.delete();
             throw new CacheException(e.getMessage(), e);
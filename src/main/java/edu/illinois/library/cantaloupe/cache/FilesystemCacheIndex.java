@@ -0,0 +1,495 @@
+package edu.illinois.library.cantaloupe.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * <p>In-memory index of the files in a {@link FilesystemCache}, recording
+ * the size and last-accessed time of each, and grouping them by the
+ * identifier from which they derive. This enables the cache to answer
+ * lookups, expiration checks, and per-identifier purges without touching the
+ * filesystem, which can be slow on network-attached storage.</p>
+ *
+ * <p>Entries are also kept in a doubly-linked list in access order, and the
+ * total size of all files is maintained as a running count, so that the
+ * least-recently-accessed files can be found in constant time for size-based
+ * eviction.</p>
+ *
+ * <p>The index is built by {@link #rebuild(Collection)}, which walks the
+ * cache tree in parallel. Changes made while it is running are applied to
+ * the index as usual and take precedence over whatever the walk finds. Files
+ * found by the walk are ordered by their last-accessed time and placed
+ * before any that were accessed while it was running. Until it has finished,
+ * {@link #isReady()} returns <code>false</code> and the cache must consult
+ * the filesystem instead.</p>
+ *
+ * <p>Files added to the cache tree by other processes will not appear in the
+ * index until it is rebuilt.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+class FilesystemCacheIndex {
+
+    /**
+     * Indexed file.
+     */
+    static class Entry {
+
+        private final Path path;
+        private final String identifierKey;
+        private final long size;
+        private volatile long lastAccessTime;
+
+        /** Guarded by {@link FilesystemCacheIndex#lock}. */
+        private Entry prev, next;
+        /** Guarded by {@link FilesystemCacheIndex#lock}. */
+        private boolean isLinked = false;
+
+        Entry(Path path, String identifierKey, long size,
+              long lastAccessTime) {
+            this.path = path;
+            this.identifierKey = identifierKey;
+            this.size = size;
+            this.lastAccessTime = lastAccessTime;
+        }
+
+        File getFile() {
+            return path.toFile();
+        }
+
+        long getLastAccessTime() {
+            return lastAccessTime;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+    }
+
+    private static final Logger logger = LoggerFactory.
+            getLogger(FilesystemCacheIndex.class);
+
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    /**
+     * Length of the hex string returned by
+     * {@link edu.illinois.library.cantaloupe.image.Identifier#toFilename()},
+     * with which the names of all cache files begin.
+     */
+    static final int IDENTIFIER_KEY_LENGTH = 32;
+
+    private final ConcurrentMap<Path,Entry> entries = new ConcurrentHashMap<>();
+
+    /** Identifier keys mapped to the paths of their files. */
+    private final ConcurrentMap<String,Set<Path>> entriesByIdentifier =
+            new ConcurrentHashMap<>();
+
+    private final AtomicLong totalSize = new AtomicLong(0);
+
+    /** Guards the access-order list, and makes changes to it and to the
+     * maps atomic. Lookups don't need it. */
+    private final Object lock = new Object();
+
+    /** Least-recently-accessed linked entry. Guarded by {@link #lock}. */
+    private Entry head;
+
+    /** Most-recently-accessed linked entry. Guarded by {@link #lock}. */
+    private Entry tail;
+
+    private final AtomicBoolean isEvicting = new AtomicBoolean(false);
+
+    private volatile boolean isReady = false;
+
+    /** Paths removed while a rebuild is in progress, which the rebuild must
+     * not add back. Null when no rebuild is in progress. Paths are added to,
+     * and looked up in, it under {@link #lock}, so that a removal can't slip
+     * in between the rebuild's check and its insertion. */
+    private volatile Set<Path> tombstones;
+
+    /**
+     * @param file Cache file.
+     * @return Identifier key of the given file, or <code>null</code> if its
+     *         name doesn't begin with one.
+     */
+    static String identifierKey(Path file) {
+        final String name = file.getFileName().toString();
+        return (name.length() >= IDENTIFIER_KEY_LENGTH) ?
+                name.substring(0, IDENTIFIER_KEY_LENGTH) : null;
+    }
+
+    private static Path key(File file) {
+        return file.toPath().toAbsolutePath().normalize();
+    }
+
+    /**
+     * @param entry   Entry to add.
+     * @param replace Whether to replace any existing entry for the same file.
+     *                If <code>true</code>, the entry is linked as the most
+     *                recently accessed; otherwise, the caller is responsible
+     *                for linking it, and the entry is not added if its file
+     *                has been removed during a rebuild.
+     * @return Whether the entry was added.
+     */
+    private boolean add(Entry entry, boolean replace) {
+        synchronized (lock) {
+            if (replace) {
+                final Entry old = entries.put(entry.path, entry);
+                if (old != null) {
+                    unlink(old);
+                    totalSize.addAndGet(-old.size);
+                }
+                linkLast(entry);
+            } else {
+                final Set<Path> tombstones = this.tombstones;
+                if ((tombstones != null && tombstones.contains(entry.path)) ||
+                        entries.putIfAbsent(entry.path, entry) != null) {
+                    return false;
+                }
+            }
+            totalSize.addAndGet(entry.size);
+            if (entry.identifierKey != null) {
+                entriesByIdentifier.computeIfAbsent(entry.identifierKey,
+                        k -> ConcurrentHashMap.newKeySet()).add(entry.path);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Claims the right to evict entries, so that concurrent evictions don't
+     * compete with each other. {@link #endEviction()} must be called
+     * afterwards.
+     *
+     * @return Whether the claim succeeded, i.e. no other thread is
+     *         evicting.
+     */
+    boolean beginEviction() {
+        return isEvicting.compareAndSet(false, true);
+    }
+
+    /**
+     * Removes all entries.
+     */
+    void clear() {
+        synchronized (lock) {
+            final Set<Path> tombstones = this.tombstones;
+            if (tombstones != null) {
+                tombstones.addAll(entries.keySet());
+            }
+            entries.clear();
+            entriesByIdentifier.clear();
+            for (Entry e = head; e != null; ) {
+                final Entry next = e.next;
+                e.prev = e.next = null;
+                e.isLinked = false;
+                e = next;
+            }
+            head = tail = null;
+            totalSize.set(0);
+        }
+    }
+
+    /**
+     * Releases the claim acquired by {@link #beginEviction()}.
+     */
+    void endEviction() {
+        isEvicting.set(false);
+    }
+
+    /**
+     * @return Least-recently-accessed entry, or <code>null</code> if there
+     *         are no entries in the access-order list.
+     */
+    Entry getEldest() {
+        synchronized (lock) {
+            return head;
+        }
+    }
+
+    /**
+     * @param file Cache file.
+     * @return Entry corresponding to the given file, or <code>null</code> if
+     *         it is not indexed.
+     */
+    Entry get(File file) {
+        return entries.get(key(file));
+    }
+
+    /**
+     * @return Number of indexed files.
+     */
+    int getCount() {
+        return entries.size();
+    }
+
+    /**
+     * @return Snapshot of all entries.
+     */
+    Collection<Entry> getEntries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * @param identifierKey Return value of
+     *                      {@link edu.illinois.library.cantaloupe.image.Identifier#toFilename()}.
+     * @return All indexed files deriving from the given identifier.
+     */
+    List<File> getFiles(String identifierKey) {
+        final Set<Path> paths = entriesByIdentifier.get(identifierKey);
+        if (paths == null) {
+            return Collections.emptyList();
+        }
+        return paths.stream().map(Path::toFile).collect(Collectors.toList());
+    }
+
+    /**
+     * Links the given entry at the least-recently-accessed end of the list.
+     * Guarded by {@link #lock}.
+     */
+    private void linkFirst(Entry entry) {
+        entry.prev = null;
+        entry.next = head;
+        if (head != null) {
+            head.prev = entry;
+        } else {
+            tail = entry;
+        }
+        head = entry;
+        entry.isLinked = true;
+    }
+
+    /**
+     * Links the given entry at the most-recently-accessed end of the list.
+     * Guarded by {@link #lock}.
+     */
+    private void linkLast(Entry entry) {
+        entry.next = null;
+        entry.prev = tail;
+        if (tail != null) {
+            tail.next = entry;
+        } else {
+            head = entry;
+        }
+        tail = entry;
+        entry.isLinked = true;
+    }
+
+    /**
+     * Guarded by {@link #lock}.
+     */
+    private void unlink(Entry entry) {
+        if (!entry.isLinked) {
+            return;
+        }
+        if (entry.prev != null) {
+            entry.prev.next = entry.next;
+        } else {
+            head = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.prev = entry.prev;
+        } else {
+            tail = entry.prev;
+        }
+        entry.prev = entry.next = null;
+        entry.isLinked = false;
+    }
+
+    /**
+     * @return Total size of all indexed files.
+     */
+    long getSize() {
+        return totalSize.get();
+    }
+
+    /**
+     * @return Whether the index has been built.
+     */
+    boolean isReady() {
+        return isReady;
+    }
+
+    /**
+     * Adds or replaces an entry for the given file, which has just been
+     * written and is considered to have just been accessed.
+     *
+     * @param file Cache file.
+     * @param size Size of the file.
+     */
+    void put(File file, long size) {
+        final Path path = key(file);
+        add(new Entry(path, identifierKey(path), size,
+                System.currentTimeMillis()), true);
+    }
+
+    /**
+     * Walks the given directory trees, adding all cache files within them to
+     * the index. The first level of subdirectories is walked in parallel.
+     *
+     * @param rootDirs Directories to walk.
+     */
+    void rebuild(Collection<File> rootDirs) {
+        final long start = System.currentTimeMillis();
+        tombstones = ConcurrentHashMap.newKeySet();
+        try {
+            final List<Entry> found = new ArrayList<>();
+            for (File rootDir : rootDirs) {
+                if (!rootDir.isDirectory()) {
+                    continue;
+                }
+                try (Stream<Path> children = Files.list(rootDir.toPath())) {
+                    found.addAll(children.collect(Collectors.toList()).
+                            parallelStream().
+                            flatMap(p -> walk(p).stream()).
+                            collect(Collectors.toList()));
+                } catch (IOException e) {
+                    logger.error("rebuild(): {}", e.getMessage(), e);
+                } catch (UncheckedIOException e) {
+                    logger.error("rebuild(): {}", e.getMessage(), e.getCause());
+                }
+            }
+            // Link the found entries ahead of any that were added while
+            // walking, newest first so that the oldest ends up at the head.
+            found.sort(Comparator.comparingLong(Entry::getLastAccessTime).
+                    reversed());
+            synchronized (lock) {
+                for (Entry entry : found) {
+                    if (entries.get(entry.path) == entry) {
+                        linkFirst(entry);
+                    }
+                }
+            }
+            isReady = true;
+            logger.info("rebuild(): indexed {} files ({} bytes) in {} msec",
+                    getCount(), getSize(),
+                    System.currentTimeMillis() - start);
+        } finally {
+            tombstones = null;
+        }
+    }
+
+    /**
+     * @param file Cache file.
+     * @return Removed entry, or <code>null</code> if the file was not
+     *         indexed.
+     */
+    Entry remove(File file) {
+        final Path path = key(file);
+        synchronized (lock) {
+            final Set<Path> tombstones = this.tombstones;
+            if (tombstones != null) {
+                tombstones.add(path);
+            }
+            final Entry entry = entries.get(path);
+            if (entry != null) {
+                remove(entry);
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Removes the given entry, if it is still the one corresponding to its
+     * file.
+     *
+     * @param entry Entry to remove.
+     * @return Whether the entry was removed.
+     */
+    boolean remove(Entry entry) {
+        synchronized (lock) {
+            unlink(entry);
+            if (!entries.remove(entry.path, entry)) {
+                return false;
+            }
+            totalSize.addAndGet(-entry.size);
+            if (entry.identifierKey != null) {
+                final Set<Path> paths =
+                        entriesByIdentifier.get(entry.identifierKey);
+                if (paths != null) {
+                    paths.remove(entry.path);
+                    if (paths.isEmpty()) {
+                        entriesByIdentifier.remove(entry.identifierKey);
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Marks the given entry as having just been accessed.
+     */
+    void touch(Entry entry) {
+        entry.lastAccessTime = System.currentTimeMillis();
+        synchronized (lock) {
+            // Entries found by a rebuild in progress are not linked yet, and
+            // removed entries must not be re-linked.
+            if (entry.isLinked) {
+                unlink(entry);
+                linkLast(entry);
+            }
+        }
+    }
+
+    /**
+     * Walks the given directory tree, adding all cache files within it to
+     * the index without linking them.
+     *
+     * @return Added entries.
+     */
+    private List<Entry> walk(Path path) {
+        final List<Entry> added = new ArrayList<>();
+        try {
+            Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file,
+                                                 BasicFileAttributes attrs) {
+                    final Path absFile = file.toAbsolutePath().normalize();
+                    if (attrs.isRegularFile() &&
+                            !absFile.toString().endsWith(TEMP_EXTENSION)) {
+                        final Entry entry = new Entry(absFile,
+                                identifierKey(absFile), attrs.size(),
+                                attrs.lastAccessTime().toMillis());
+                        if (add(entry, false)) {
+                            added.add(entry);
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file,
+                                                       IOException e) {
+                    logger.warn("walk(): {}", e.getMessage());
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            logger.warn("walk(): {}", e.getMessage());
+        }
+        return added;
+    }
+
+}
@@ -1,16 +1,21 @@
 package edu.illinois.library.cantaloupe.cache;
 
-import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 import edu.illinois.library.cantaloupe.ThreadPool;
 import edu.illinois.library.cantaloupe.config.Configuration;
 import edu.illinois.library.cantaloupe.config.ConfigurationException;
 import edu.illinois.library.cantaloupe.image.Identifier;
 import edu.illinois.library.cantaloupe.image.Info;
 import edu.illinois.library.cantaloupe.operation.OperationList;
+import edu.illinois.library.cantaloupe.util.StringUtil;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
 import org.apache.commons.io.output.NullOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
@@ -22,15 +27,15 @@ import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <p>Heap-based LRU cache.</p>
@@ -41,14 +46,29 @@ import java.util.stream.Collectors;
  * it back down to this size. (The configured target size may be safely
  * changed while the application is running.)</p>
  *
+ * <p>Items are kept in a doubly-linked list in access order alongside the
+ * key map, so that hits, insertions, and evictions are all constant-time
+ * operations, and the total size of the contents is maintained as a running
+ * count rather than being recomputed.</p>
+ *
  * <p>Because this cache is not time-limited, {@link #TTL_CONFIG_KEY} does not
  * apply.</p>
  *
+ * <p>When {@link #STORAGE_CONFIG_KEY} is set to <code>offheap</code>,
+ * derivative image data is stored outside of the Java heap in an
+ * {@link OffHeapStore}, and only keys, infos, and bookkeeping data remain on
+ * the heap. This keeps large caches from inflating the old generation and
+ * lengthening garbage collection pauses. Off-heap items count against the
+ * target size in whole {@link OffHeapStore#BLOCK_SIZE blocks}.</p>
+ *
  * <p>The cache supports startup/shutdown persistence, using
  * {@link #PERSIST_CONFIG_KEY}. When enabled, its contents will be serialized
- * to a file on application shutdown, and read back in at startup. The file
- * is coded using <a href="https://developers.google.com/protocol-buffers/">
- *     Google Protocol Buffers</a>.</p>
+ * to a file on application shutdown, and read back in, in the background, at
+ * startup. The file consists of a short header followed by one
+ * length-delimited <a href="https://developers.google.com/protocol-buffers/">
+ *     Google Protocol Buffers</a> message per item, most-recently-accessed
+ * first, so that it can be written and read one item at a time and the most
+ * valuable items are available soonest after startup.</p>
  *
  * @see <a href="https://github.com/google/protobuf">Protocol Buffers</a>
  * @see <a href="https://developers.google.com/protocol-buffers/docs/javatutorial">
@@ -62,17 +82,82 @@ class HeapCache implements DerivativeCache {
      *
      * <p>Storing infos as strings makes access less efficient but map size
      * computation more efficient.</p>
+     *
+     * <p>The data is held either in a heap byte array or in an
+     * {@link OffHeapStore.Allocation}.</p>
+     *
+     * <p>Instances are also nodes in the cache's access-order list. The list
+     * links are guarded by the cache lock.</p>
      */
     static class Item {
 
         private byte[] data;
+        private OffHeapStore.Allocation allocation;
+        private Key key;
+        private volatile long lastAccessedTime;
+        private Item prev, next;
 
         Item(byte[] data) {
             this.data = data;
+            touch();
+        }
+
+        Item(OffHeapStore.Allocation allocation) {
+            this.allocation = allocation;
+            touch();
         }
 
+        /**
+         * @return Item data. For off-heap items, this is a copy on the heap.
+         */
         byte[] getData() {
-            return data;
+            return (allocation != null) ? allocation.toByteArray() : data;
+        }
+
+        long getLastAccessedTime() {
+            return lastAccessedTime;
+        }
+
+        /**
+         * @return Amount of memory occupied by the data, in bytes. For
+         *         off-heap items, this is the size of all of the blocks
+         *         holding the data, which is what counts against the target
+         *         size.
+         */
+        long footprint() {
+            return (allocation != null) ?
+                    allocation.getAllocatedSize() : data.length;
+        }
+
+        /**
+         * @return New stream for reading the data, or <code>null</code> if
+         *         the item has been released.
+         */
+        InputStream newInputStream() {
+            return (allocation != null) ?
+                    allocation.newInputStream() : new ByteArrayInputStream(data);
+        }
+
+        /**
+         * Releases any off-heap memory held by the instance once all of its
+         * open input streams have been closed. Must be called when the
+         * instance is removed from the cache.
+         */
+        void release() {
+            if (allocation != null) {
+                allocation.release();
+            }
+        }
+
+        void setLastAccessedTime(long time) {
+            this.lastAccessedTime = time;
+        }
+
+        /**
+         * Updates the last-accessed time.
+         */
+        void touch() {
+            lastAccessedTime = System.currentTimeMillis();
         }
 
     }
@@ -85,7 +170,6 @@ class HeapCache implements DerivativeCache {
 
         private String imageId;
         private String opList;
-        private long lastAccessedTime;
 
         /**
          * Info constructor.
@@ -94,7 +178,6 @@ class HeapCache implements DerivativeCache {
          */
         Key(String imageId) {
             this.imageId = imageId;
-            touch();
         }
 
         /**
@@ -128,10 +211,6 @@ class HeapCache implements DerivativeCache {
             return imageId;
         }
 
-        private long getLastAccessedTime() {
-            return lastAccessedTime;
-        }
-
         private String getOperationList() {
             return opList;
         }
@@ -141,23 +220,12 @@ class HeapCache implements DerivativeCache {
             return toString().hashCode();
         }
 
-        synchronized void setLastAccessedTime(long time) {
-            this.lastAccessedTime = time;
-        }
-
         @Override
         public String toString() {
             return (getOperationList() != null) ?
                     getOperationList() : getIdentifier();
         }
 
-        /**
-         * Updates the last-accessed time.
-         */
-        synchronized void touch() {
-            lastAccessedTime = System.currentTimeMillis();
-        }
-
     }
 
     /**
@@ -168,6 +236,7 @@ class HeapCache implements DerivativeCache {
         private OperationList opList;
         private ByteArrayOutputStream wrappedStream =
                 new ByteArrayOutputStream();
+        private boolean isClosed = false;
 
         HeapCacheOutputStream(OperationList opList) {
             this.opList = opList;
@@ -175,10 +244,14 @@ class HeapCache implements DerivativeCache {
 
         @Override
         public void close() throws IOException {
+            if (isClosed) {
+                return;
+            }
+            isClosed = true;
             logger.debug("Closing stream for {}", opList);
             Key key = itemKey(opList);
             Item item = new Item(wrappedStream.toByteArray());
-            cache.put(key, item);
+            put(key, item);
             try {
                 super.close();
             } finally {
@@ -203,6 +276,73 @@ class HeapCache implements DerivativeCache {
 
     }
 
+    /**
+     * Writes data directly into the off-heap store and adds it to the cache
+     * upon closure. If a write fails, e.g. because direct memory is
+     * exhausted, the blocks written so far are returned to the store, and
+     * nothing is added.
+     */
+    private class OffHeapCacheOutputStream extends OutputStream {
+
+        private OperationList opList;
+        private OffHeapStore.Writer writer = offHeapStore.newWriter();
+        private boolean isAborted = false, isClosed = false;
+
+        OffHeapCacheOutputStream(OperationList opList) {
+            this.opList = opList;
+        }
+
+        private void abort(Throwable cause) throws IOException {
+            isAborted = true;
+            writer.abort();
+            throw new IOException("Failed to write to the off-heap store",
+                    cause);
+        }
+
+        private void checkNotAborted() throws IOException {
+            if (isAborted) {
+                throw new IOException("Stream has been aborted");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (isClosed) {
+                return;
+            }
+            isClosed = true;
+            if (isAborted) {
+                logger.debug("Discarding aborted stream for {}", opList);
+                return;
+            }
+            logger.debug("Closing stream for {}", opList);
+            Key key = itemKey(opList);
+            Item item = new Item(writer.toAllocation());
+            put(key, item);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            checkNotAborted();
+            try {
+                writer.write(b);
+            } catch (RuntimeException | OutOfMemoryError e) {
+                abort(e);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            checkNotAborted();
+            try {
+                writer.write(b, off, len);
+            } catch (RuntimeException | OutOfMemoryError e) {
+                abort(e);
+            }
+        }
+
+    }
+
     /**
      * Periodically purges excess contents from the cache.
      */
@@ -218,6 +358,7 @@ class HeapCache implements DerivativeCache {
                 if (workerShouldWork.get()) {
                     try {
                         purgeExcess();
+                        offHeapStore.trim();
                         logger.debug("Cache size: {} items ({} bytes)",
                                 size(), getByteSize());
                         Thread.sleep(INTERVAL_SECONDS * 1000);
@@ -240,16 +381,66 @@ class HeapCache implements DerivativeCache {
 
     static final String PATHNAME_CONFIG_KEY = "HeapCache.persist.filesystem.pathname";
     static final String PERSIST_CONFIG_KEY = "HeapCache.persist";
+    static final String STORAGE_CONFIG_KEY = "HeapCache.storage";
     static final String TARGET_SIZE_CONFIG_KEY = "HeapCache.target_size";
 
-    private final ConcurrentMap<Key, Item> cache = new ConcurrentHashMap<>();
+    static final String OFFHEAP_STORAGE = "offheap";
+
+    /**
+     * Prefix of persisted cache files, used to distinguish them from files
+     * written in the legacy single-message format, which cannot begin with
+     * this sequence.
+     */
+    private static final byte[] PERSISTENCE_FORMAT_HEADER =
+            { 'H', 'C', 'v', 2 };
+    private static final int IMAGE_RECORD = 1;
+    private static final int INFO_RECORD = 2;
+
+    /**
+     * Key-to-item map. All access to it, and to the access-order list, must
+     * be synchronized on {@link #lock}.
+     */
+    private final Map<Key, Item> cache = new HashMap<>();
+
+    /** Least-recently-accessed item in the access-order list. */
+    private Item head;
+
+    /** Most-recently-accessed item in the access-order list. */
+    private Item tail;
+
+    private final Object lock = new Object();
+
+    /** Holds derivative image data when off-heap storage is enabled. */
+    private final OffHeapStore offHeapStore = new OffHeapStore();
+
+    /** Running total of the sizes of all items' data. */
+    private final AtomicLong byteSize = new AtomicLong(0);
+
     private final AtomicBoolean isDirty = new AtomicBoolean(false);
     private final AtomicBoolean workerShouldWork = new AtomicBoolean(true);
 
+    /**
+     * Offset of the first record in the persistent store file that
+     * {@link #loadFromPersistentStore()} did not get to read before the
+     * instance was shut down, or -1 if it read everything it was going to.
+     * Guarded by the instance monitor.
+     */
+    private long unreadPersistentStoreOffset = -1;
+
     /**
      * <p>Dumps the cache contents to the file specified by
-     * {@link #PATHNAME_CONFIG_KEY}, first deleting the file that already
-     * exists at that path, if any.</p>
+     * {@link #PATHNAME_CONFIG_KEY}, replacing the file that already exists at
+     * that path, if any.</p>
+     *
+     * <p>Items are written one at a time, most-recently-accessed first, and
+     * removed from the cache along the way, so that the whole cache never
+     * needs to be duplicated in memory. If anything fails, they are put back,
+     * and the existing file is left in place.</p>
+     *
+     * <p>If {@link #loadFromPersistentStore()} was interrupted by a shutdown
+     * before it finished, the records it did not get to read are copied over
+     * from the existing file after the cache contents, so that they are not
+     * lost.</p>
      *
      * <p>{@link #PERSIST_CONFIG_KEY} is <strong>not</strong> respected.</p>
      */
@@ -258,8 +449,7 @@ class HeapCache implements DerivativeCache {
         final String pathname = config.getString(PATHNAME_CONFIG_KEY);
         if (pathname != null && pathname.length() > 0) {
             final Path path = Paths.get(pathname);
-            // Delete any existing file that is in the way.
-            Files.deleteIfExists(path);
+            final Path tempPath = Paths.get(pathname + ".tmp");
             // Create any necessary directories up to the parent.
             Files.createDirectories(path.getParent());
             // Write out the contents.
@@ -268,40 +458,53 @@ class HeapCache implements DerivativeCache {
             final long size = size();
             final long byteSize = getByteSize();
 
-            final HeapCacheProtos.Cache.Builder cacheBuilder =
-                    HeapCacheProtos.Cache.newBuilder();
+            // Removed items, most-recently-accessed first. They are released
+            // only once the dump has succeeded.
+            final List<Item> removedItems = new ArrayList<>();
+            try {
+                try (OutputStream os = new BufferedOutputStream(
+                        new FileOutputStream(tempPath.toFile()))) {
+                    os.write(PERSISTENCE_FORMAT_HEADER);
+
+                    Item item;
+                    while ((item = removeNewest()) != null) {
+                        removedItems.add(item);
+                        writeRecord(item, os);
+                    }
 
-            // Iterate over the cache keys and add cache values one-by-one to
-            // the protobuf cache, removing them from the cache along the way
-            // to save memory.
-            final Iterator<Key> it = cache.keySet().iterator();
-            while (it.hasNext()) {
-                final Key key = it.next();
-                final Item item = cache.get(key);
-                if (key.getOperationList() != null) { // it's an image
-                    final HeapCacheProtos.Image image =
-                            HeapCacheProtos.Image.newBuilder().
-                                    setLastAccessed(key.getLastAccessedTime()).
-                                    setIdentifier(key.getIdentifier()).
-                                    setOperationList(key.getOperationList()).
-                                    setData(ByteString.copyFrom(item.getData())).
-                                    build();
-                    cacheBuilder.addImage(image);
-                } else { // it's an info
-                    final HeapCacheProtos.Info info =
-                            HeapCacheProtos.Info.newBuilder().
-                                    setLastAccessed(key.getLastAccessedTime()).
-                                    setIdentifier(key.getIdentifier()).
-                                    setJson(new String(item.getData())).
-                                    build();
-                    cacheBuilder.addInfo(info);
+                    // Append the records that the load didn't get to. Any
+                    // that duplicate the ones above will be ignored when
+                    // loading.
+                    if (unreadPersistentStoreOffset >= 0 &&
+                            Files.exists(path)) {
+                        try (InputStream is =
+                                     new FileInputStream(path.toFile())) {
+                            final long tailSize = IOUtils.copyLarge(is, os,
+                                    unreadPersistentStoreOffset, -1);
+                            logger.info("dumpToPersistentStore(): retained " +
+                                    "{} unloaded bytes", tailSize);
+                        }
+                    }
                 }
-                it.remove();
-            }
 
-            try (FileOutputStream fos = new FileOutputStream(path.toFile())) {
-                cacheBuilder.build().writeTo(fos);
+                // Replace any existing file only once the new one is
+                // complete.
+                Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                // Put the items back, least-recently-accessed first, without
+                // replacing any that have been added in the meantime.
+                for (int i = removedItems.size() - 1; i >= 0; i--) {
+                    final Item item = removedItems.get(i);
+                    putIfAbsent(item.key, item);
+                }
+                if (!tempPath.toFile().delete()) {
+                    logger.warn("dumpToPersistentStore(): failed to " +
+                            "delete {}", tempPath);
+                }
+                throw e;
             }
+            unreadPersistentStoreOffset = -1;
+            removedItems.forEach(Item::release);
 
             logger.info("dumpToPersistentStore(): dumped {} items ({} bytes)",
                     size, byteSize);
@@ -312,8 +515,9 @@ class HeapCache implements DerivativeCache {
     }
 
     /**
-     * <p>Returns the item corresponding to the given key, updating its last-
-     * accessed time before returning it.</p>
+     * <p>Returns the item corresponding to the given key, moving it to the
+     * most-recently-accessed end of the access-order list and updating its
+     * last-accessed time before returning it.</p>
      *
      * <p><strong>All cache map retrievals should use this method.</strong></p>
      *
@@ -321,18 +525,22 @@ class HeapCache implements DerivativeCache {
      * @return Item corresponding to the given key. May be <code>null</code>.
      */
     private Item get(Key key) {
-        Item item = cache.get(key);
-        if (item != null) {
-            touch(item);
+        synchronized (lock) {
+            final Item item = cache.get(key);
+            if (item != null) {
+                unlink(item);
+                linkLast(item);
+                item.touch();
+            }
+            return item;
         }
-        return item;
     }
 
     /**
      * @return Current size of the contents in bytes.
      */
     long getByteSize() {
-        return cache.values().stream().mapToLong(t -> t.getData().length).sum();
+        return byteSize.get();
     }
 
     @Override
@@ -350,18 +558,6 @@ class HeapCache implements DerivativeCache {
         return info;
     }
 
-    private List<Key> getKeysSortedByLastAccessedTime() {
-        List<Key> sortedKeys = new ArrayList<>(cache.keySet());
-        sortedKeys.sort((Key k1, Key k2) -> {
-            if (k1.getLastAccessedTime() == k2.getLastAccessedTime()) {
-                return 0;
-            }
-            return (k1.getLastAccessedTime() < k2.getLastAccessedTime()) ?
-                    -1 : 1;
-        });
-        return sortedKeys;
-    }
-
     /**
      * @return Capacity of the instance based on the application configuration.
      * @throws ConfigurationException If the capacity in the configuration is
@@ -371,23 +567,7 @@ class HeapCache implements DerivativeCache {
         final Configuration config = Configuration.getInstance();
         String humanSize = config.getString(TARGET_SIZE_CONFIG_KEY);
         if (humanSize != null && humanSize.length() > 0) {
-            final String numberStr = humanSize.replaceAll("[^\\d.]", "");
-            final double number = Double.parseDouble(numberStr);
-            long size;
-            short exponent;
-
-            if (humanSize.endsWith("M") || humanSize.endsWith("MB")) {
-                exponent = 2;
-            } else if (humanSize.endsWith("G") || humanSize.endsWith("GB")) {
-                exponent = 3;
-            } else if (humanSize.endsWith("T") || humanSize.endsWith("TB")) {
-                exponent = 4;
-            } else if (humanSize.endsWith("P") || humanSize.endsWith("PB")) { // you never know
-                exponent = 5;
-            } else {
-                exponent = 0;
-            }
-            size = Math.round(number * Math.pow(1024, exponent));
+            final long size = StringUtil.parseByteSize(humanSize);
             if (size <= 0) {
                 throw new ConfigurationException(TARGET_SIZE_CONFIG_KEY +
                         " must be greater than zero.");
@@ -401,7 +581,9 @@ class HeapCache implements DerivativeCache {
     public void initialize() {
         final Configuration config = Configuration.getInstance();
         if (config.getBoolean(PERSIST_CONFIG_KEY, false)) {
-            loadFromPersistentStore();
+            // Load in the background so as not to hold up startup; the
+            // cache will warm up progressively while it is in use.
+            ThreadPool.getInstance().submit(this::loadFromPersistentStore);
         }
 
         // Start a worker thread to manage the size.
@@ -412,6 +594,78 @@ class HeapCache implements DerivativeCache {
         return isDirty.get();
     }
 
+    /**
+     * @return Whether derivative images should be stored off-heap, according
+     *         to {@link #STORAGE_CONFIG_KEY}. The setting only affects newly
+     *         added images; images already in the cache stay where they are.
+     */
+    boolean isOffHeap() {
+        final Configuration config = Configuration.getInstance();
+        return OFFHEAP_STORAGE.equalsIgnoreCase(
+                config.getString(STORAGE_CONFIG_KEY, "heap"));
+    }
+
+    /**
+     * @param data Image data.
+     * @return New item containing the given data, stored either on or off
+     *         the heap depending on {@link #isOffHeap()}.
+     */
+    private Item newImageItem(byte[] data) {
+        if (isOffHeap()) {
+            return new Item(offHeapStore.allocate(data));
+        }
+        return new Item(data);
+    }
+
+    /**
+     * Appends the given item to the most-recently-accessed end of the
+     * access-order list. Must be called while holding {@link #lock}.
+     */
+    private void linkLast(Item item) {
+        item.prev = tail;
+        item.next = null;
+        if (tail != null) {
+            tail.next = item;
+        } else {
+            head = item;
+        }
+        tail = item;
+    }
+
+    /**
+     * Prepends the given item to the least-recently-accessed end of the
+     * access-order list. Must be called while holding {@link #lock}.
+     */
+    private void linkFirst(Item item) {
+        item.prev = null;
+        item.next = head;
+        if (head != null) {
+            head.prev = item;
+        } else {
+            tail = item;
+        }
+        head = item;
+    }
+
+    /**
+     * Removes the given item from the access-order list. Must be called while
+     * holding {@link #lock}.
+     */
+    private void unlink(Item item) {
+        if (item.prev != null) {
+            item.prev.next = item.next;
+        } else {
+            head = item.next;
+        }
+        if (item.next != null) {
+            item.next.prev = item.prev;
+        } else {
+            tail = item.prev;
+        }
+        item.prev = null;
+        item.next = null;
+    }
+
     /**
      * @param identifier Image identifier.
      * @return Key for an info for a source image identified by the given
@@ -430,7 +684,23 @@ class HeapCache implements DerivativeCache {
         return new Key(opList.getIdentifier().toString(), opList.toString());
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * <p>Reads the file specified by {@link #PATHNAME_CONFIG_KEY} into the
+     * cache one item at a time. Because items are persisted
+     * most-recently-accessed first, each one is inserted at the
+     * least-recently-accessed end, which preserves their relative order.
+     * Items that have been added to the cache in the meantime take
+     * precedence over persisted ones.</p>
+     *
+     * <p>Reading stops once the target size has been reached, or when the
+     * instance is {@link #shutdown() shut down}. In the latter case, the
+     * position of the first unread record is remembered so that
+     * {@link #dumpToPersistentStore()} can carry the rest of the file
+     * over.</p>
+     *
+     * <p>Files written in the pre-3.4 single-message format are also
+     * supported.</p>
+     */
     synchronized void loadFromPersistentStore() {
         final Configuration config = Configuration.getInstance();
         final String pathname = config.getString(PATHNAME_CONFIG_KEY);
@@ -439,33 +709,37 @@ class HeapCache implements DerivativeCache {
         if (Files.exists(path)) {
             logger.info("loadFromPersistentStore(): reading {}...", path);
 
-            try (FileInputStream fis = new FileInputStream(path.toFile())) {
-                final HeapCacheProtos.Cache protoCache =
-                        HeapCacheProtos.Cache.parseFrom(fis);
-
-                // Read in the images.
-                for (HeapCacheProtos.Image image : protoCache.getImageList()) {
-                    final Key key = new Key(image.getIdentifier(),
-                            image.getOperationList());
-                    key.setLastAccessedTime(image.getLastAccessed());
-                    final Item item = new Item(image.getData().toByteArray());
-                    cache.put(key, item);
-                }
-
-                // Read in the infos.
-                for (HeapCacheProtos.Info info : protoCache.getInfoList()) {
-                    final Key key = new Key(info.getIdentifier());
-                    key.setLastAccessedTime(info.getLastAccessed());
-                    final Item item = new Item(info.getJsonBytes().toByteArray());
-                    cache.put(key, item);
+            try (CountingInputStream is = new CountingInputStream(
+                    new BufferedInputStream(
+                            new FileInputStream(path.toFile())))) {
+                final byte[] header =
+                        new byte[PERSISTENCE_FORMAT_HEADER.length];
+                is.mark(header.length);
+                if (is.read(header) == header.length &&
+                        Arrays.equals(header, PERSISTENCE_FORMAT_HEADER)) {
+                    final long targetSize = getTargetByteSize();
+                    long count = 0;
+                    while (workerShouldWork.get() &&
+                            getByteSize() < targetSize &&
+                            readRecord(is)) {
+                        count++;
+                    }
+                    if (!workerShouldWork.get() &&
+                            getByteSize() < targetSize) {
+                        // Interrupted by shutdown(). If the stream is at
+                        // EOF, the position will simply yield nothing.
+                        unreadPersistentStoreOffset = is.getByteCount();
+                    }
+                    logger.info("loadFromPersistentStore(): loaded {} items " +
+                            "({} bytes in cache)", count, getByteSize());
+                } else {
+                    is.reset();
+                    loadLegacyFormat(is);
                 }
-
-                logger.info("loadFromPersistentStore(): loaded {} items ({} bytes)",
-                        size(), getByteSize());
             } catch (FileNotFoundException e) {
                 logger.error("loadFromPersistentStore(): file not found: {}",
                         e.getMessage());
-            } catch (IOException e) {
+            } catch (ConfigurationException | IOException e) {
                 logger.error("loadFromPersistentStore(): {}", e.getMessage());
             }
         } else {
@@ -473,11 +747,40 @@ class HeapCache implements DerivativeCache {
         }
     }
 
+    /**
+     * Reads a file written in the single-message format used before the
+     * introduction of {@link #PERSISTENCE_FORMAT_HEADER}.
+     */
+    private void loadLegacyFormat(InputStream is) throws IOException {
+        final HeapCacheProtos.Cache protoCache =
+                HeapCacheProtos.Cache.parseFrom(is);
+
+        // Read in the images.
+        for (HeapCacheProtos.Image image : protoCache.getImageList()) {
+            final Key key = new Key(image.getIdentifier(),
+                    image.getOperationList());
+            final Item item = newImageItem(image.getData().toByteArray());
+            item.setLastAccessedTime(image.getLastAccessed());
+            putEldestIfAbsent(key, item);
+        }
+
+        // Read in the infos.
+        for (HeapCacheProtos.Info info : protoCache.getInfoList()) {
+            final Key key = new Key(info.getIdentifier());
+            final Item item = new Item(info.getJsonBytes().toByteArray());
+            item.setLastAccessedTime(info.getLastAccessed());
+            putEldestIfAbsent(key, item);
+        }
+
+        logger.info("loadFromPersistentStore(): loaded {} items ({} bytes) " +
+                "in the legacy format", size(), getByteSize());
+    }
+
     @Override
     public InputStream newDerivativeImageInputStream(OperationList opList) {
         Item item = get(itemKey(opList));
         if (item != null) {
-            return new ByteArrayInputStream(item.getData());
+            return item.newInputStream();
         }
         return null;
     }
@@ -485,37 +788,56 @@ class HeapCache implements DerivativeCache {
     @Override
     public OutputStream newDerivativeImageOutputStream(OperationList opList)
             throws CacheException {
-        final Key key = itemKey(opList);
-        final Item item = cache.get(key);
+        final Item item = get(itemKey(opList));
         if (item != null) {
             logger.info("newDerivativeImageOutputStream(): hit for {}", opList);
-            touch(item);
             return new NullOutputStream();
         } else {
             logger.info("newDerivativeImageOutputStream(): miss; caching {}",
                     opList);
             isDirty.lazySet(true);
+            if (isOffHeap()) {
+                return new OffHeapCacheOutputStream(opList);
+            }
             return new HeapCacheOutputStream(opList);
         }
     }
 
     @Override
     public void purge() throws CacheException {
-        logger.info("purge(): purging {} items", cache.size());
-        cache.clear();
+        synchronized (lock) {
+            logger.info("purge(): purging {} items", cache.size());
+            cache.values().forEach(Item::release);
+            cache.clear();
+            head = null;
+            tail = null;
+            byteSize.set(0);
+        }
     }
 
     @Override
     public void purge(Identifier identifier) {
         logger.info("purge(Identifier): purging {}...", identifier);
         final String imageId = itemKey(identifier).getIdentifier();
-        cache.keySet().removeIf(k -> k.getIdentifier().equals(imageId));
+        synchronized (lock) {
+            final Iterator<Map.Entry<Key, Item>> it =
+                    cache.entrySet().iterator();
+            while (it.hasNext()) {
+                final Map.Entry<Key, Item> entry = it.next();
+                if (entry.getKey().getIdentifier().equals(imageId)) {
+                    it.remove();
+                    unlink(entry.getValue());
+                    byteSize.addAndGet(-entry.getValue().footprint());
+                    entry.getValue().release();
+                }
+            }
+        }
     }
 
     @Override
     public void purge(OperationList opList) {
         logger.info("purge(OperationList): purging {}...", opList.toString());
-        cache.remove(itemKey(opList));
+        remove(itemKey(opList));
     }
 
     /**
@@ -533,16 +855,17 @@ class HeapCache implements DerivativeCache {
             if (excess > 0) {
                 long purgedItems = 0;
                 long purgedSize = 0;
-                for (Key key : getKeysSortedByLastAccessedTime()) {
-                    Item item = cache.get(key);
-                    if (item != null) {
-                        cache.remove(key);
-                        purgedItems++;
-                        purgedSize += item.getData().length;
-                    }
-                    if (purgedSize >= excess) {
+                // Evict one item at a time from the least-recently-accessed
+                // end of the list, so that the lock is never held for longer
+                // than a single removal.
+                while (purgedSize < excess) {
+                    final Item item = removeEldest();
+                    if (item == null) {
                         break;
                     }
+                    purgedItems++;
+                    purgedSize += item.footprint();
+                    item.release();
                 }
                 isDirty.lazySet(true);
                 logger.info("purgeExcess(): purged {} items ({} bytes)",
@@ -559,6 +882,54 @@ class HeapCache implements DerivativeCache {
         logger.info("purgeExpired() is not supported by this cache; aborting");
     }
 
+    /**
+     * Adds the given item at the most-recently-accessed end of the
+     * access-order list, replacing any existing item with the same key.
+     */
+    private void put(Key key, Item item) {
+        synchronized (lock) {
+            item.key = key;
+            final Item existing = cache.put(key, item);
+            if (existing != null) {
+                unlink(existing);
+                byteSize.addAndGet(-existing.footprint());
+                existing.release();
+            }
+            linkLast(item);
+            byteSize.addAndGet(item.footprint());
+        }
+    }
+
+    /**
+     * Adds the given item only if no item with the same key already exists.
+     */
+    private void putIfAbsent(Key key, Item item) {
+        synchronized (lock) {
+            if (!cache.containsKey(key)) {
+                put(key, item);
+            } else {
+                item.release();
+            }
+        }
+    }
+
+    /**
+     * Adds the given item at the least-recently-accessed end of the
+     * access-order list, only if no item with the same key already exists.
+     */
+    private void putEldestIfAbsent(Key key, Item item) {
+        synchronized (lock) {
+            if (!cache.containsKey(key)) {
+                item.key = key;
+                cache.put(key, item);
+                linkFirst(item);
+                byteSize.addAndGet(item.footprint());
+            } else {
+                item.release();
+            }
+        }
+    }
+
     @Override
     public void put(Identifier identifier, Info imageInfo)
             throws CacheException {
@@ -569,17 +940,130 @@ class HeapCache implements DerivativeCache {
             // Rather than storing the info instance itself, we store its JSON
             // serialization, mainly in order to be able to easily get its size.
             Item item = new Item(imageInfo.toJson().getBytes("UTF-8"));
-            cache.putIfAbsent(key, item);
+            putIfAbsent(key, item);
         } catch (IOException e) {
             throw new CacheException(e.getMessage(), e);
         }
     }
 
+    /**
+     * Removes the item with the given key, if it exists.
+     */
+    private void remove(Key key) {
+        synchronized (lock) {
+            final Item item = cache.remove(key);
+            if (item != null) {
+                unlink(item);
+                byteSize.addAndGet(-item.footprint());
+                item.release();
+            }
+        }
+    }
+
+    /**
+     * Removes the least-recently-accessed item. The caller is responsible for
+     * {@link Item#release() releasing} it.
+     *
+     * @return The removed item, or <code>null</code> if the cache is empty.
+     */
+    private Item removeEldest() {
+        synchronized (lock) {
+            final Item item = head;
+            if (item != null) {
+                cache.remove(item.key);
+                unlink(item);
+                byteSize.addAndGet(-item.footprint());
+            }
+            return item;
+        }
+    }
+
+    /**
+     * Removes the most-recently-accessed item. The caller is responsible for
+     * {@link Item#release() releasing} it.
+     *
+     * @return The removed item, or <code>null</code> if the cache is empty.
+     */
+    private Item removeNewest() {
+        synchronized (lock) {
+            final Item item = tail;
+            if (item != null) {
+                cache.remove(item.key);
+                unlink(item);
+                byteSize.addAndGet(-item.footprint());
+            }
+            return item;
+        }
+    }
+
+    /**
+     * Reads a single persisted item from the given stream and adds it to the
+     * least-recently-accessed end of the cache.
+     *
+     * @return Whether an item was read; <code>false</code> at the end of the
+     *         stream.
+     */
+    private boolean readRecord(InputStream is) throws IOException {
+        final int type = is.read();
+        switch (type) {
+            case -1:
+                return false;
+            case IMAGE_RECORD:
+                final HeapCacheProtos.Image image =
+                        HeapCacheProtos.Image.parseDelimitedFrom(is);
+                final Item imageItem =
+                        newImageItem(image.getData().toByteArray());
+                imageItem.setLastAccessedTime(image.getLastAccessed());
+                putEldestIfAbsent(new Key(image.getIdentifier(),
+                        image.getOperationList()), imageItem);
+                return true;
+            case INFO_RECORD:
+                final HeapCacheProtos.Info info =
+                        HeapCacheProtos.Info.parseDelimitedFrom(is);
+                final Item infoItem =
+                        new Item(info.getJsonBytes().toByteArray());
+                infoItem.setLastAccessedTime(info.getLastAccessed());
+                putEldestIfAbsent(new Key(info.getIdentifier()), infoItem);
+                return true;
+            default:
+                throw new IOException("Unrecognized record type: " + type);
+        }
+    }
+
+    /**
+     * Writes a single item to the given stream as a record type byte followed
+     * by a length-delimited message. Heap item data is wrapped rather than
+     * copied.
+     */
+    private void writeRecord(Item item, OutputStream os) throws IOException {
+        final Key key = item.key;
+        if (key.getOperationList() != null) { // it's an image
+            os.write(IMAGE_RECORD);
+            HeapCacheProtos.Image.newBuilder().
+                    setLastAccessed(item.getLastAccessedTime()).
+                    setIdentifier(key.getIdentifier()).
+                    setOperationList(key.getOperationList()).
+                    setData(UnsafeByteOperations.unsafeWrap(item.getData())).
+                    build().
+                    writeDelimitedTo(os);
+        } else { // it's an info
+            os.write(INFO_RECORD);
+            HeapCacheProtos.Info.newBuilder().
+                    setLastAccessed(item.getLastAccessedTime()).
+                    setIdentifier(key.getIdentifier()).
+                    setJsonBytes(UnsafeByteOperations.unsafeWrap(item.getData())).
+                    build().
+                    writeDelimitedTo(os);
+        }
+    }
+
     /**
      * @return Number of cached items.
      */
     long size() {
-        return cache.size();
+        synchronized (lock) {
+            return cache.size();
+        }
     }
 
     @Override
@@ -598,17 +1082,4 @@ class HeapCache implements DerivativeCache {
         }
     }
 
-    /**
-     * Updates the last-accessed time of the key corresponding to the given
-     * item.
-     *
-     * @param item Item whose key should be touched.
-     */
-    private void touch(Item item) {
-        cache.entrySet().stream().
-                filter(entry -> Objects.equals(entry.getValue(), item)).
-                map(Map.Entry::getKey).
-                collect(Collectors.toSet()).forEach(Key::touch);
-    }
-
 }
@@ -7,20 +7,33 @@ import edu.illinois.library.cantaloupe.config.ConfigurationFactory;
 import edu.illinois.library.cantaloupe.image.Identifier;
 import edu.illinois.library.cantaloupe.image.Info;
 import edu.illinois.library.cantaloupe.operation.OperationList;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.DeferredFileOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.sql.Blob;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * <p>Cache using a database table, storing images as BLOBs and image infos
@@ -30,91 +43,125 @@ import java.util.Calendar;
  * not do it automatically. The current schema is:</p>
  *
  * <pre>CREATE TABLE IF NOT EXISTS {JdbcCache.derivative_image_table} (
- *     operations VARCHAR(4096) NOT NULL,
+ *     operations VARCHAR(4096) NOT NULL PRIMARY KEY,
  *     image BLOB,
  *     last_accessed DATETIME
  * );
  *
  * CREATE TABLE IF NOT EXISTS {JdbcCache.info_table} (
- *     identifier VARCHAR(4096) NOT NULL,
+ *     identifier VARCHAR(4096) NOT NULL PRIMARY KEY,
  *     info VARCHAR(8192) NOT NULL,
  *     last_accessed DATETIME
- * );</pre>
+ * );
+ *
+ * CREATE INDEX {JdbcCache.derivative_image_table}_last_accessed_idx
+ *     ON {JdbcCache.derivative_image_table} (last_accessed);
+ * CREATE INDEX {JdbcCache.info_table}_last_accessed_idx
+ *     ON {JdbcCache.info_table} (last_accessed);</pre>
+ *
+ * <p>Last-accessed times are not updated on every hit, but are accumulated
+ * in memory and written in batches every
+ * {@link #ACCESS_TIME_FLUSH_INTERVAL_CONFIG_KEY} seconds. Entries with a
+ * pending update are treated as having been accessed at that time.</p>
  */
 class JdbcCache implements DerivativeCache {
 
     /**
-     * Wraps a {@link Blob} OutputStream, for writing an image to a BLOB.
-     * The constructor creates a transaction, which is committed on close.
+     * <p>Spools an image in memory, or in a temporary file once it exceeds
+     * {@link #SPOOL_MEMORY_THRESHOLD}, and inserts it on close, streaming it
+     * to the database with its length known, so that drivers don't need to
+     * buffer it.</p>
+     *
+     * <p>Any existing image with the same operation list is replaced. If
+     * another writer inserts the same image concurrently, the insert fails
+     * with a constraint violation, which is ignored, as both images are the
+     * same.</p>
      */
     private class ImageBlobOutputStream extends OutputStream {
 
-        private OutputStream blobOutputStream;
-        private OperationList ops;
-        private Connection connection;
-        private PreparedStatement statement;
+        private boolean isClosed = false;
+        private final OperationList ops;
+        private final DeferredFileOutputStream spoolStream;
 
         /**
          * Constructor for writing derivative images.
          *
-         * @param conn
          * @param ops Derivative image operation list
-         * @throws SQLException
          */
-        ImageBlobOutputStream(Connection conn, OperationList ops)
-                throws SQLException {
-            this.connection = conn;
+        ImageBlobOutputStream(OperationList ops) {
             this.ops = ops;
-
-            connection.setAutoCommit(false);
-
-            final Configuration config = ConfigurationFactory.getInstance();
-            final String sql = String.format(
-                    "INSERT INTO %s (%s, %s, %s) VALUES (?, ?, ?)",
-                    config.getString(DERIVATIVE_IMAGE_TABLE_CONFIG_KEY),
-                    DERIVATIVE_IMAGE_TABLE_OPERATIONS_COLUMN,
-                    DERIVATIVE_IMAGE_TABLE_IMAGE_COLUMN,
-                    DERIVATIVE_IMAGE_TABLE_LAST_ACCESSED_COLUMN);
-            logger.debug(sql);
-
-            final Blob blob = connection.createBlob();
-            blobOutputStream = blob.setBinaryStream(1);
-            statement = connection.prepareStatement(sql);
-            statement.setString(1, ops.toString());
-            statement.setBlob(2, blob);
-            statement.setTimestamp(3, now());
+            this.spoolStream = new DeferredFileOutputStream(
+                    SPOOL_MEMORY_THRESHOLD, "JdbcCache", ".tmp", null);
         }
 
         @Override
         public void close() throws IOException {
+            if (isClosed) {
+                return;
+            }
+            isClosed = true;
             logger.debug("Closing stream for {}", ops);
-            try {
-                statement.executeUpdate();
-                connection.commit();
-            } catch (SQLException e) {
+            spoolStream.close();
+            try (InputStream spooledInputStream = spoolStream.isInMemory() ?
+                    new ByteArrayInputStream(spoolStream.getData()) :
+                    new FileInputStream(spoolStream.getFile())) {
+                insert(spooledInputStream, spoolStream.getByteCount());
+            } catch (CacheException | SQLException e) {
                 throw new IOException(e.getMessage(), e);
             } finally {
+                if (!spoolStream.isInMemory()) {
+                    FileUtils.deleteQuietly(spoolStream.getFile());
+                }
+            }
+        }
+
+        private void insert(InputStream inputStream, long length)
+                throws CacheException, SQLException {
+            try (Connection connection = getConnection()) {
+                connection.setAutoCommit(false);
                 try {
-                    connection.close();
+                    purgeDerivativeImage(ops, connection);
+
+                    final String sql = String.format(
+                            "INSERT INTO %s (%s, %s, %s) VALUES (?, ?, ?)",
+                            getDerivativeImageTableName(),
+                            DERIVATIVE_IMAGE_TABLE_OPERATIONS_COLUMN,
+                            DERIVATIVE_IMAGE_TABLE_IMAGE_COLUMN,
+                            DERIVATIVE_IMAGE_TABLE_LAST_ACCESSED_COLUMN);
+                    logger.debug(sql);
+                    try (PreparedStatement statement =
+                                 connection.prepareStatement(sql)) {
+                        statement.setString(1, ops.toString());
+                        statement.setBinaryStream(2, inputStream, length);
+                        statement.setTimestamp(3, now());
+                        statement.executeUpdate();
+                    }
+                    connection.commit();
                 } catch (SQLException e) {
-                    logger.error(e.getMessage(), e);
+                    connection.rollback();
+                    if (isConstraintViolation(e)) {
+                        logger.debug("Image was inserted concurrently: {}",
+                                ops);
+                    } else {
+                        throw e;
+                    }
                 }
             }
         }
 
         @Override
         public void write(int b) throws IOException {
-            blobOutputStream.write(b);
+            spoolStream.write(b);
         }
 
         @Override
         public void write(byte[] b) throws IOException {
-            blobOutputStream.write(b);
+            spoolStream.write(b);
         }
 
         @Override
         public void write(byte[] b, int off, int len) throws IOException {
-            blobOutputStream.write(b, off, len);
+            spoolStream.write(b, off, len);
         }
 
     }
@@ -131,6 +178,8 @@ class JdbcCache implements DerivativeCache {
     static final String INFO_TABLE_INFO_COLUMN = "info";
     static final String INFO_TABLE_LAST_ACCESSED_COLUMN = "last_accessed";
 
+    static final String ACCESS_TIME_FLUSH_INTERVAL_CONFIG_KEY =
+            "JdbcCache.access_time_flush_interval";
     static final String CONNECTION_TIMEOUT_CONFIG_KEY =
             "JdbcCache.connection_timeout";
     static final String DERIVATIVE_IMAGE_TABLE_CONFIG_KEY =
@@ -140,8 +189,39 @@ class JdbcCache implements DerivativeCache {
     static final String INFO_TABLE_CONFIG_KEY = "JdbcCache.info_table";
     static final String USER_CONFIG_KEY = "JdbcCache.user";
 
+    private static final int DEFAULT_ACCESS_TIME_FLUSH_INTERVAL = 30;
+
+    /**
+     * Maximum number of expired rows deleted per transaction by
+     * {@link #purgeExpired()}.
+     */
+    static final int PURGE_BATCH_SIZE = 1000;
+
+    /**
+     * Images larger than this are spooled to a temporary file rather than
+     * memory before being inserted.
+     */
+    static final int SPOOL_MEMORY_THRESHOLD = 1024 * 1024;
+
     private static HikariDataSource dataSource;
 
+    /**
+     * Last-accessed times of derivative images that have yet to be written
+     * to the database, keyed by operation list string.
+     */
+    private final Map<String, Timestamp> pendingImageAccessTimes =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Last-accessed times of infos that have yet to be written to the
+     * database, keyed by identifier.
+     */
+    private final Map<String, Timestamp> pendingInfoAccessTimes =
+            new ConcurrentHashMap<>();
+
+    /** Initialized by {@link #initialize()}. */
+    private ScheduledExecutorService flushExecutor;
+
     /**
      * @return Connection from the connection pool. Clients must call
      * {@link Connection#close} when they are done with it.
@@ -227,71 +307,103 @@ class JdbcCache implements DerivativeCache {
     }
 
     /**
-     * Updates the last-accessed time for the derivative image corresponding to
-     * the given operation list.
-     *
-     * @param opList
-     * @param connection
-     *
-     * @throws CacheException
-     * @throws SQLException
+     * @return Whether the given exception indicates a unique key (or other
+     *         integrity constraint) violation.
      */
-    private void accessDerivativeImage(OperationList opList,
-                                       Connection connection)
-            throws CacheException, SQLException {
-        final String sql = String.format(
-                "UPDATE %s SET %s = ? WHERE %s = ?",
-                getDerivativeImageTableName(),
-                DERIVATIVE_IMAGE_TABLE_LAST_ACCESSED_COLUMN,
-                DERIVATIVE_IMAGE_TABLE_OPERATIONS_COLUMN);
-        logger.debug(sql);
-        PreparedStatement statement = connection.prepareStatement(sql);
-        statement.setTimestamp(1, now());
-        statement.setString(2, opList.toString());
-        statement.executeUpdate();
+    private static boolean isConstraintViolation(SQLException e) {
+        return e instanceof SQLIntegrityConstraintViolationException ||
+                (e.getSQLState() != null && e.getSQLState().startsWith("23"));
     }
 
     /**
-     * Updates the last-accessed time for the info corresponding to the given
-     * identifier.
-     *
-     * @param identifier
-     * @param connection
-     *
-     * @throws CacheException
-     * @throws SQLException
+     * @param lastAccessed Last-accessed time in the database. May be
+     *                     <code>null</code>.
+     * @param pending      Last-accessed time that has yet to be written to
+     *                     the database. May be <code>null</code>.
+     * @return Whether an entry with the given last-accessed times is valid.
      */
-    private void accessImageInfo(Identifier identifier, Connection connection)
-            throws CacheException, SQLException {
+    private boolean isValid(Timestamp lastAccessed, Timestamp pending) {
+        if (pending != null &&
+                (lastAccessed == null || pending.after(lastAccessed))) {
+            lastAccessed = pending;
+        }
+        return lastAccessed != null && !lastAccessed.before(oldestValidDate());
+    }
+
+    /**
+     * Writes all pending last-accessed times to the database in batches, one
+     * per table. Times that fail to be written remain pending.
+     */
+    void flushAccessTimes() {
+        try {
+            final int numImages = flushAccessTimes(pendingImageAccessTimes,
+                    getDerivativeImageTableName(),
+                    DERIVATIVE_IMAGE_TABLE_LAST_ACCESSED_COLUMN,
+                    DERIVATIVE_IMAGE_TABLE_OPERATIONS_COLUMN);
+            final int numInfos = flushAccessTimes(pendingInfoAccessTimes,
+                    getInfoTableName(),
+                    INFO_TABLE_LAST_ACCESSED_COLUMN,
+                    INFO_TABLE_IDENTIFIER_COLUMN);
+            if (numImages + numInfos > 0) {
+                logger.debug("flushAccessTimes(): updated {} derivative " +
+                        "images and {} infos", numImages, numInfos);
+            }
+        } catch (CacheException | SQLException e) {
+            logger.error("flushAccessTimes(): {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return Number of rows for which an update was attempted.
+     */
+    private int flushAccessTimes(Map<String, Timestamp> pendingTimes,
+                                 String table,
+                                 String lastAccessedColumn,
+                                 String keyColumn) throws SQLException {
+        if (pendingTimes.isEmpty()) {
+            return 0;
+        }
+        final Map<String, Timestamp> batch = new HashMap<>(pendingTimes);
         final String sql = String.format(
                 "UPDATE %s SET %s = ? WHERE %s = ?",
-                getInfoTableName(),
-                INFO_TABLE_LAST_ACCESSED_COLUMN,
-                INFO_TABLE_IDENTIFIER_COLUMN);
+                table, lastAccessedColumn, keyColumn);
         logger.debug(sql);
-        PreparedStatement statement = connection.prepareStatement(sql);
-        statement.setTimestamp(1, now());
-        statement.setString(2, identifier.toString());
-        statement.executeUpdate();
+        try (Connection connection = getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement =
+                         connection.prepareStatement(sql)) {
+                for (Map.Entry<String, Timestamp> entry : batch.entrySet()) {
+                    statement.setTimestamp(1, entry.getValue());
+                    statement.setString(2, entry.getKey());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+            connection.commit();
+        }
+        // Remove the flushed times, unless they have been superseded in the
+        // meantime.
+        batch.forEach(pendingTimes::remove);
+        return batch.size();
     }
 
     @Override
     public Info getImageInfo(Identifier identifier) throws CacheException {
         try (Connection connection = getConnection()) {
             final String sql = String.format(
-                    "SELECT %s FROM %s WHERE %s = ? AND %s >= ?",
+                    "SELECT %s, %s FROM %s WHERE %s = ?",
                     INFO_TABLE_INFO_COLUMN,
+                    INFO_TABLE_LAST_ACCESSED_COLUMN,
                     getInfoTableName(),
-                    INFO_TABLE_IDENTIFIER_COLUMN,
-                    INFO_TABLE_LAST_ACCESSED_COLUMN);
+                    INFO_TABLE_IDENTIFIER_COLUMN);
             PreparedStatement statement = connection.prepareStatement(sql);
             statement.setString(1, identifier.toString());
-            statement.setTimestamp(2, oldestValidDate());
             logger.debug(sql);
 
             ResultSet resultSet = statement.executeQuery();
-            if (resultSet.next()) {
-                accessImageInfo(identifier, connection);
+            if (resultSet.next() && isValid(resultSet.getTimestamp(2),
+                    pendingInfoAccessTimes.get(identifier.toString()))) {
+                pendingInfoAccessTimes.put(identifier.toString(), now());
                 logger.info("Hit for image info: {}", identifier);
                 String json = resultSet.getString(1);
                 return Info.fromJson(json);
@@ -312,21 +424,21 @@ class JdbcCache implements DerivativeCache {
 
         try (Connection conn = getConnection()) {
             String sql = String.format(
-                    "SELECT %s FROM %s WHERE %s = ? AND %s >= ?",
+                    "SELECT %s, %s FROM %s WHERE %s = ?",
                     DERIVATIVE_IMAGE_TABLE_IMAGE_COLUMN,
+                    DERIVATIVE_IMAGE_TABLE_LAST_ACCESSED_COLUMN,
                     getDerivativeImageTableName(),
-                    DERIVATIVE_IMAGE_TABLE_OPERATIONS_COLUMN,
-                    DERIVATIVE_IMAGE_TABLE_LAST_ACCESSED_COLUMN);
+                    DERIVATIVE_IMAGE_TABLE_OPERATIONS_COLUMN);
             PreparedStatement statement = conn.prepareStatement(sql);
             statement.setString(1, opList.toString());
-            statement.setTimestamp(2, oldestValidDate());
             logger.debug(sql);
 
             ResultSet resultSet = statement.executeQuery();
-            if (resultSet.next()) {
+            if (resultSet.next() && isValid(resultSet.getTimestamp(2),
+                    pendingImageAccessTimes.get(opList.toString()))) {
                 logger.info("Hit for image: {}", opList);
                 inputStream = resultSet.getBinaryStream(1);
-                accessDerivativeImage(opList, conn);
+                pendingImageAccessTimes.put(opList.toString(), now());
             } else {
                 logger.info("Miss for image: {}", opList);
                 purgeDerivativeImage(opList, conn);
@@ -343,11 +455,40 @@ class JdbcCache implements DerivativeCache {
         // TODO: return a no-op stream when a write corresponding to an
         // identical op list is in progress in another thread
         logger.info("Miss; caching {}", ops);
-        try {
-            return new ImageBlobOutputStream(getConnection(), ops);
-        } catch (SQLException e) {
-            throw new CacheException(e.getMessage(), e);
+        return new ImageBlobOutputStream(ops);
+    }
+
+    /**
+     * Starts periodically flushing last-accessed times.
+     */
+    @Override
+    public synchronized void initialize() {
+        if (flushExecutor != null) {
+            return;
         }
+        final long interval = Math.max(1, ConfigurationFactory.getInstance().
+                getLong(ACCESS_TIME_FLUSH_INTERVAL_CONFIG_KEY,
+                        DEFAULT_ACCESS_TIME_FLUSH_INTERVAL));
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "JdbcCache-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flushExecutor.scheduleWithFixedDelay(this::flushAccessTimes,
+                interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops periodically flushing last-accessed times, and flushes any that
+     * are pending.
+     */
+    @Override
+    public synchronized void shutdown() {
+        if (flushExecutor != null) {
+            flushExecutor.shutdown();
+            flushExecutor = null;
+        }
+        flushAccessTimes();
     }
 
     private Timestamp now() {
@@ -368,6 +509,8 @@ class JdbcCache implements DerivativeCache {
 
     @Override
     public void purge() throws CacheException {
+        pendingImageAccessTimes.clear();
+        pendingInfoAccessTimes.clear();
         try (Connection connection = getConnection()) {
             connection.setAutoCommit(false);
             final int numDeletedDerivativeImages =
@@ -393,14 +536,29 @@ class JdbcCache implements DerivativeCache {
         }
     }
 
+    /**
+     * <p>Deletes expired content in batches of up to {@link
+     * #PURGE_BATCH_SIZE} rows, each in its own transaction, so that the
+     * tables are not locked for long. This relies on the
+     * <code>last_accessed</code> columns being indexed.</p>
+     *
+     * <p>Pending last-accessed times are flushed first, so that recently
+     * accessed content is not deleted.</p>
+     */
     @Override
     public void purgeExpired() throws CacheException {
+        flushAccessTimes();
+        final PurgeJob job = PurgeJob.current();
         try (Connection connection = getConnection()) {
             connection.setAutoCommit(false);
-            final int numDeletedDerivativeImages =
-                    purgeExpiredDerivativeImages(connection);
-            final int numDeletedInfos = purgeExpiredInfos(connection);
-            connection.commit();
+            final int numDeletedDerivativeImages = purgeExpired(connection,
+                    getDerivativeImageTableName(),
+                    DERIVATIVE_IMAGE_TABLE_OPERATIONS_COLUMN,
+                    DERIVATIVE_IMAGE_TABLE_LAST_ACCESSED_COLUMN, job);
+            final int numDeletedInfos = purgeExpired(connection,
+                    getInfoTableName(),
+                    INFO_TABLE_IDENTIFIER_COLUMN,
+                    INFO_TABLE_LAST_ACCESSED_COLUMN, job);
             logger.info("Purged {} derivative images and {} info(s)",
                     numDeletedDerivativeImages, numDeletedInfos);
         } catch (SQLException e) {
@@ -409,36 +567,67 @@ class JdbcCache implements DerivativeCache {
     }
 
     /**
-     * @param conn Will not be closed.
-     * @return
+     * @param conn Will not be closed. Must not be in auto-commit mode; each
+     *             batch is committed.
+     * @return Number of deleted rows.
      * @throws SQLException
-     * @throws CacheException
      */
-    private int purgeExpiredDerivativeImages(Connection conn)
-            throws SQLException, CacheException {
-        final String sql = String.format("DELETE FROM %s WHERE %s < ?",
-                getDerivativeImageTableName(),
-                DERIVATIVE_IMAGE_TABLE_LAST_ACCESSED_COLUMN);
-        final PreparedStatement statement = conn.prepareStatement(sql);
-        statement.setTimestamp(1, oldestValidDate());
-        logger.debug(sql);
-        return statement.executeUpdate();
-    }
+    private int purgeExpired(Connection conn,
+                             String table,
+                             String keyColumn,
+                             String lastAccessedColumn,
+                             PurgeJob job) throws SQLException {
+        final Timestamp oldestValidDate = oldestValidDate();
+        final String selectSql = String.format(
+                "SELECT %s FROM %s WHERE %s < ?",
+                keyColumn, table, lastAccessedColumn);
+        // The last-accessed condition is repeated in case a row has been
+        // accessed since it was selected.
+        final String deleteSql = String.format(
+                "DELETE FROM %s WHERE %s = ? AND %s < ?",
+                table, keyColumn, lastAccessedColumn);
+        int numDeleted = 0;
+
+        while (!job.isCancelled()) {
+            final List<String> keys = new ArrayList<>(PURGE_BATCH_SIZE);
+            logger.debug(selectSql);
+            try (PreparedStatement statement =
+                         conn.prepareStatement(selectSql)) {
+                statement.setMaxRows(PURGE_BATCH_SIZE);
+                statement.setTimestamp(1, oldestValidDate);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        keys.add(resultSet.getString(1));
+                    }
+                }
+            }
+            if (keys.isEmpty()) {
+                break;
+            }
 
-    /**
-     * @param conn Will not be closed.
-     * @return
-     * @throws SQLException
-     * @throws CacheException
-     */
-    private int purgeExpiredInfos(Connection conn)
-            throws SQLException, CacheException {
-        final String sql = String.format("DELETE FROM %s WHERE %s < ?",
-                getInfoTableName(), INFO_TABLE_LAST_ACCESSED_COLUMN);
-        final PreparedStatement statement = conn.prepareStatement(sql);
-        statement.setTimestamp(1, oldestValidDate());
-        logger.debug(sql);
-        return statement.executeUpdate();
+            int numDeletedInBatch = 0;
+            logger.debug(deleteSql);
+            try (PreparedStatement statement =
+                         conn.prepareStatement(deleteSql)) {
+                for (String key : keys) {
+                    statement.setString(1, key);
+                    statement.setTimestamp(2, oldestValidDate);
+                    statement.addBatch();
+                }
+                for (int count : statement.executeBatch()) {
+                    numDeletedInBatch += (count == Statement.SUCCESS_NO_INFO) ?
+                            1 : Math.max(count, 0);
+                }
+            }
+            conn.commit();
+            numDeleted += numDeletedInBatch;
+            job.addDeletedCount(numDeletedInBatch);
+
+            if (keys.size() < PURGE_BATCH_SIZE) {
+                break;
+            }
+        }
+        return numDeleted;
     }
 
     /**
@@ -450,6 +639,7 @@ class JdbcCache implements DerivativeCache {
      */
     private int purgeDerivativeImage(OperationList ops, Connection conn)
             throws SQLException, CacheException {
+        pendingImageAccessTimes.remove(ops.toString());
         String sql = String.format("DELETE FROM %s WHERE %s = ?",
                 getDerivativeImageTableName(),
                 DERIVATIVE_IMAGE_TABLE_OPERATIONS_COLUMN);
@@ -482,6 +672,8 @@ class JdbcCache implements DerivativeCache {
      */
     private int purgeDerivativeImages(Identifier identifier, Connection conn)
             throws SQLException, CacheException {
+        pendingImageAccessTimes.keySet().removeIf(
+                ops -> ops.startsWith(identifier.toString()));
         String sql = "DELETE FROM " + getDerivativeImageTableName() +
                 " WHERE " + DERIVATIVE_IMAGE_TABLE_OPERATIONS_COLUMN +
                 " LIKE ?";
@@ -515,6 +707,7 @@ class JdbcCache implements DerivativeCache {
      */
     private int purgeImageInfo(Identifier identifier, Connection conn)
             throws SQLException, CacheException {
+        pendingInfoAccessTimes.remove(identifier.toString());
         String sql = String.format("DELETE FROM %s WHERE %s = ?",
                 getInfoTableName(), INFO_TABLE_IDENTIFIER_COLUMN);
         PreparedStatement statement = conn.prepareStatement(sql);
@@ -537,32 +730,78 @@ class JdbcCache implements DerivativeCache {
         return statement.executeUpdate();
     }
 
+    /**
+     * Upserts the given info: updates the existing row, if there is one, or
+     * else inserts one. If another writer inserts a row concurrently, the
+     * insert fails with a constraint violation, and the row is updated
+     * instead.
+     */
     @Override
     public void put(Identifier identifier, Info imageInfo)
             throws CacheException {
         logger.info("Caching image info: {}", identifier);
         try (Connection conn = getConnection()) {
-            conn.setAutoCommit(false);
+            final String json = imageInfo.toJson();
+            pendingInfoAccessTimes.remove(identifier.toString());
+            if (updateImageInfo(identifier, json, conn) > 0) {
+                return;
+            }
+            try {
+                insertImageInfo(identifier, json, conn);
+            } catch (SQLException e) {
+                if (isConstraintViolation(e)) {
+                    logger.debug("put(): info was inserted concurrently; " +
+                            "updating: {}", identifier);
+                    updateImageInfo(identifier, json, conn);
+                } else {
+                    throw e;
+                }
+            }
+        } catch (SQLException | JsonProcessingException e) {
+            throw new CacheException(e.getMessage(), e);
+        }
+    }
 
-            // Delete any existing info corresponding to the given identifier.
-            purgeImageInfo(identifier, conn);
+    /**
+     * @param conn Will not be closed.
+     * @return Number of updated rows.
+     */
+    private int updateImageInfo(Identifier identifier, String json,
+                                Connection conn)
+            throws SQLException, CacheException {
+        final String sql = String.format(
+                "UPDATE %s SET %s = ?, %s = ? WHERE %s = ?",
+                getInfoTableName(),
+                INFO_TABLE_INFO_COLUMN,
+                INFO_TABLE_LAST_ACCESSED_COLUMN,
+                INFO_TABLE_IDENTIFIER_COLUMN);
+        logger.debug(sql);
+        try (PreparedStatement statement = conn.prepareStatement(sql)) {
+            statement.setString(1, json);
+            statement.setTimestamp(2, now());
+            statement.setString(3, identifier.toString());
+            return statement.executeUpdate();
+        }
+    }
 
-            // Add a new info corresponding to the given identifier.
-            String sql = String.format(
-                    "INSERT INTO %s (%s, %s, %s) VALUES (?, ?, ?)",
-                    getInfoTableName(),
-                    INFO_TABLE_IDENTIFIER_COLUMN,
-                    INFO_TABLE_INFO_COLUMN,
-                    INFO_TABLE_LAST_ACCESSED_COLUMN);
-            logger.debug(sql);
-            PreparedStatement statement = conn.prepareStatement(sql);
+    /**
+     * @param conn Will not be closed.
+     */
+    private void insertImageInfo(Identifier identifier, String json,
+                                 Connection conn)
+            throws SQLException, CacheException {
+        final String sql = String.format(
+                "INSERT INTO %s (%s, %s, %s) VALUES (?, ?, ?)",
+                getInfoTableName(),
+                INFO_TABLE_IDENTIFIER_COLUMN,
+                INFO_TABLE_INFO_COLUMN,
+                INFO_TABLE_LAST_ACCESSED_COLUMN);
+        logger.debug(sql);
+        try (PreparedStatement statement = conn.prepareStatement(sql)) {
             statement.setString(1, identifier.toString());
-            statement.setString(2, imageInfo.toJson());
+            statement.setString(2, json);
             statement.setTimestamp(3, now());
             statement.executeUpdate();
-            conn.commit();
-        } catch (SQLException | JsonProcessingException e) {
-            throw new CacheException(e.getMessage(), e);
         }
     }
 
@@ -0,0 +1,362 @@
+package edu.illinois.library.cantaloupe.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Block allocator for data stored outside of the Java heap, used by
+ * {@link HeapCache} when {@link HeapCache#STORAGE_CONFIG_KEY} is set to
+ * <code>offheap</code>.</p>
+ *
+ * <p>Memory is obtained from the VM in direct-buffer slabs of
+ * {@link #SLAB_SIZE} bytes, each of which is divided into fixed-size blocks
+ * of {@link #BLOCK_SIZE} bytes. An item's data is stored in as many blocks as
+ * it needs, which need not be contiguous, so the slabs never fragment and
+ * never need to be compacted in the traditional sense. Instead, slabs whose
+ * blocks are all free are released back to the VM by {@link #trim()}.
+ * Allocation always prefers the oldest slab with free blocks, so that newer
+ * slabs tend to empty out and become releasable.</p>
+ *
+ * <p>Direct buffer memory is limited by the <code>-XX:MaxDirectMemorySize</code>
+ * VM option, which must be set high enough to accommodate the cache target
+ * size.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+class OffHeapStore {
+
+    /**
+     * Reference-counted set of blocks containing an item's data. The count
+     * starts at 1, representing the cache's own reference; each open input
+     * stream holds another. The blocks are returned to the store when the
+     * count drops to zero.
+     */
+    class Allocation {
+
+        private final List<Block> blocks;
+        private final int length;
+        private final AtomicInteger refCount = new AtomicInteger(1);
+
+        private Allocation(List<Block> blocks, int length) {
+            this.blocks = blocks;
+            this.length = length;
+        }
+
+        /**
+         * @return Size of the blocks containing the data, in bytes.
+         */
+        long getAllocatedSize() {
+            return (long) blocks.size() * BLOCK_SIZE;
+        }
+
+        /**
+         * @return Size of the data in bytes.
+         */
+        int length() {
+            return length;
+        }
+
+        /**
+         * @return New stream for reading the data directly out of the
+         *         blocks, or <code>null</code> if the allocation has already
+         *         been released. The stream must be closed.
+         */
+        InputStream newInputStream() {
+            if (!retain()) {
+                return null;
+            }
+            return new AllocationInputStream(this);
+        }
+
+        /**
+         * Drops a reference to the instance, returning its blocks to the
+         * store if it was the last one.
+         */
+        void release() {
+            if (refCount.decrementAndGet() == 0) {
+                free(blocks);
+            }
+        }
+
+        private boolean retain() {
+            int count;
+            do {
+                count = refCount.get();
+                if (count <= 0) {
+                    return false;
+                }
+            } while (!refCount.compareAndSet(count, count + 1));
+            return true;
+        }
+
+        /**
+         * @return Copy of the data on the heap.
+         */
+        byte[] toByteArray() {
+            final byte[] bytes = new byte[length];
+            int offset = 0;
+            for (Block block : blocks) {
+                final ByteBuffer buf = block.buffer.duplicate();
+                final int len = Math.min(BLOCK_SIZE, length - offset);
+                buf.position(0);
+                buf.get(bytes, offset, len);
+                offset += len;
+            }
+            return bytes;
+        }
+
+    }
+
+    /**
+     * Reads an {@link Allocation} in place, without copying it onto the heap
+     * first.
+     */
+    private static class AllocationInputStream extends InputStream {
+
+        private final Allocation allocation;
+        private final Iterator<Block> blocks;
+        private ByteBuffer current;
+        private int remaining;
+        private boolean isClosed = false;
+
+        AllocationInputStream(Allocation allocation) {
+            this.allocation = allocation;
+            this.blocks = allocation.blocks.iterator();
+            this.remaining = allocation.length;
+        }
+
+        @Override
+        public int available() {
+            return remaining;
+        }
+
+        @Override
+        public void close() {
+            if (!isClosed) {
+                isClosed = true;
+                allocation.release();
+            }
+        }
+
+        /**
+         * @return Whether there is a current buffer with data in it.
+         */
+        private boolean nextBuffer() {
+            if (current != null && current.hasRemaining()) {
+                return true;
+            }
+            if (remaining > 0 && blocks.hasNext()) {
+                current = blocks.next().buffer.duplicate();
+                current.position(0);
+                current.limit(Math.min(BLOCK_SIZE, remaining));
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (isClosed) {
+                throw new IOException("Stream closed");
+            }
+            if (!nextBuffer()) {
+                return -1;
+            }
+            remaining--;
+            return current.get() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (isClosed) {
+                throw new IOException("Stream closed");
+            }
+            if (len == 0) {
+                return 0;
+            }
+            if (!nextBuffer()) {
+                return -1;
+            }
+            final int count = Math.min(len, current.remaining());
+            current.get(b, off, count);
+            remaining -= count;
+            return count;
+        }
+
+    }
+
+    private static class Block {
+
+        private final Slab slab;
+        private final ByteBuffer buffer;
+
+        Block(Slab slab, ByteBuffer buffer) {
+            this.slab = slab;
+            this.buffer = buffer;
+        }
+
+    }
+
+    private static class Slab {
+
+        private final Deque<Block> freeBlocks = new ArrayDeque<>();
+
+        Slab() {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(SLAB_SIZE);
+            for (int i = 0; i < BLOCKS_PER_SLAB; i++) {
+                buffer.position(i * BLOCK_SIZE);
+                buffer.limit((i + 1) * BLOCK_SIZE);
+                freeBlocks.add(new Block(this, buffer.slice()));
+            }
+        }
+
+        boolean isEmpty() {
+            return freeBlocks.size() == BLOCKS_PER_SLAB;
+        }
+
+    }
+
+    /**
+     * Writes data directly into blocks as it is received. Upon closure,
+     * {@link #toAllocation()} returns the written data.
+     */
+    class Writer extends OutputStream {
+
+        private final List<Block> blocks = new ArrayList<>();
+        private ByteBuffer current;
+        private int length = 0;
+
+        /**
+         * Returns any blocks that have been written to the store. Should be
+         * called instead of {@link #toAllocation()} when the data will not be
+         * used.
+         */
+        void abort() {
+            free(blocks);
+            blocks.clear();
+        }
+
+        private void ensureCapacity() {
+            if (current == null || !current.hasRemaining()) {
+                final Block block = allocateBlock();
+                blocks.add(block);
+                current = block.buffer.duplicate();
+                current.clear();
+            }
+        }
+
+        /**
+         * @return Allocation containing all of the data written.
+         */
+        Allocation toAllocation() {
+            return new Allocation(Collections.unmodifiableList(blocks), length);
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity();
+            current.put((byte) b);
+            length++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            while (len > 0) {
+                ensureCapacity();
+                final int count = Math.min(len, current.remaining());
+                current.put(b, off, count);
+                off += count;
+                len -= count;
+                length += count;
+            }
+        }
+
+    }
+
+    private static final Logger logger = LoggerFactory.
+            getLogger(OffHeapStore.class);
+
+    static final int BLOCK_SIZE = 16 * 1024;
+    static final int SLAB_SIZE = 16 * 1024 * 1024;
+    private static final int BLOCKS_PER_SLAB = SLAB_SIZE / BLOCK_SIZE;
+
+    /** Guarded by the instance's monitor. */
+    private final List<Slab> slabs = new ArrayList<>();
+
+    private synchronized Block allocateBlock() {
+        for (Slab slab : slabs) {
+            if (!slab.freeBlocks.isEmpty()) {
+                return slab.freeBlocks.pop();
+            }
+        }
+        final Slab slab = new Slab();
+        slabs.add(slab);
+        logger.debug("allocateBlock(): allocated slab #{}", slabs.size());
+        return slab.freeBlocks.pop();
+    }
+
+    /**
+     * @param bytes Data to copy into the store.
+     * @return Allocation containing the given data.
+     */
+    Allocation allocate(byte[] bytes) {
+        final Writer writer = new Writer();
+        writer.write(bytes, 0, bytes.length);
+        return writer.toAllocation();
+    }
+
+    private synchronized void free(List<Block> blocks) {
+        for (Block block : blocks) {
+            block.slab.freeBlocks.push(block);
+        }
+    }
+
+    /**
+     * @return Total size of all slabs obtained from the VM.
+     */
+    synchronized long getCapacity() {
+        return (long) slabs.size() * SLAB_SIZE;
+    }
+
+    /**
+     * @return Writer that writes into new blocks in the store.
+     */
+    Writer newWriter() {
+        return new Writer();
+    }
+
+    /**
+     * Releases all slabs that contain no allocated blocks, making them
+     * eligible for reclamation by the garbage collector.
+     *
+     * @return Number of slabs released.
+     */
+    synchronized int trim() {
+        int count = 0;
+        final Iterator<Slab> it = slabs.iterator();
+        while (it.hasNext()) {
+            if (it.next().isEmpty()) {
+                it.remove();
+                count++;
+            }
+        }
+        if (count > 0) {
+            logger.debug("trim(): released {} slabs ({} remaining)",
+                    count, slabs.size());
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,198 @@
+package edu.illinois.library.cantaloupe.cache;
+
+import edu.illinois.library.cantaloupe.ThreadPool;
+import edu.illinois.library.cantaloupe.image.Identifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Purge of a {@link Cache} that runs in the background, whose progress
+ * can be polled, and which can be cancelled.</p>
+ *
+ * <p>Cache implementations whose purges may take a long time should obtain
+ * the job running in the current thread from {@link #current()} at the
+ * beginning of a purge, report their progress to it via
+ * {@link #addDeletedCount(long)}, and stop as soon as possible after
+ * {@link #isCancelled()} returns <code>true</code>. When no job is running,
+ * {@link #current()} returns a job that ignores progress and is never
+ * cancelled, so callers don't have to check.</p>
+ *
+ * <p>Finished jobs are retained for {@link #RETENTION_MSEC} so that clients
+ * have time to retrieve their outcome.</p>
+ */
+public final class PurgeJob implements Runnable {
+
+    public enum Status {
+        QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED
+    }
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(PurgeJob.class);
+
+    static final long RETENTION_MSEC = 60 * 60 * 1000;
+
+    private static final ThreadLocal<PurgeJob> currentJob = new ThreadLocal<>();
+
+    private static final Map<String, PurgeJob> jobs = new ConcurrentHashMap<>();
+
+    /** Returned by {@link #current()} when no job is running. */
+    private static final PurgeJob NULL_JOB = new PurgeJob(null, null);
+
+    private final Cache cache;
+    private final AtomicLong deletedCount = new AtomicLong(0);
+    private volatile String errorMessage;
+    private final String id = UUID.randomUUID().toString();
+    private final Identifier identifier;
+    private volatile boolean isCancelled = false;
+    private volatile Instant startTime, endTime;
+    private volatile Status status = Status.QUEUED;
+
+    /**
+     * @return Job running in the current thread, or a job that does nothing
+     *         if none is running.
+     */
+    static PurgeJob current() {
+        final PurgeJob job = currentJob.get();
+        return (job != null) ? job : NULL_JOB;
+    }
+
+    /**
+     * @param id Job ID.
+     * @return Job with the given ID, or <code>null</code> if no such job
+     *         exists or it has been expunged.
+     */
+    public static PurgeJob get(String id) {
+        return jobs.get(id);
+    }
+
+    /**
+     * Removes jobs that finished longer than {@link #RETENTION_MSEC} ago.
+     */
+    private static void removeOldJobs() {
+        final Instant cutoff = Instant.now().minusMillis(RETENTION_MSEC);
+        jobs.values().removeIf(job -> job.endTime != null &&
+                job.endTime.isBefore(cutoff));
+    }
+
+    /**
+     * Creates a new job and runs it in the background.
+     *
+     * @param cache      Cache to purge.
+     * @param identifier Identifier of the image whose cached content to
+     *                   purge, or <code>null</code> to purge the entire
+     *                   cache.
+     * @return New job.
+     */
+    public static PurgeJob submit(Cache cache, Identifier identifier) {
+        removeOldJobs();
+        final PurgeJob job = new PurgeJob(cache, identifier);
+        jobs.put(job.getID(), job);
+        ThreadPool.getInstance().submit(job);
+        return job;
+    }
+
+    private PurgeJob(Cache cache, Identifier identifier) {
+        this.cache = cache;
+        this.identifier = identifier;
+    }
+
+    /**
+     * @param count Number of items that have just been deleted.
+     */
+    void addDeletedCount(long count) {
+        if (this != NULL_JOB) {
+            deletedCount.addAndGet(count);
+        }
+    }
+
+    /**
+     * Requests that the job stop. It may take some time to do so, or it may
+     * finish anyway, depending on how far along it is and on the cache.
+     */
+    public void cancel() {
+        if (this != NULL_JOB) {
+            isCancelled = true;
+        }
+    }
+
+    /**
+     * @return Number of items deleted so far, if the cache reports it.
+     */
+    public long getDeletedCount() {
+        return deletedCount.get();
+    }
+
+    public String getID() {
+        return id;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isCancelled() {
+        return isCancelled;
+    }
+
+    @Override
+    public void run() {
+        if (isCancelled) {
+            status = Status.CANCELLED;
+            endTime = Instant.now();
+            return;
+        }
+        currentJob.set(this);
+        startTime = Instant.now();
+        status = Status.RUNNING;
+        logger.info("run(): starting job {} ({})", id, getTarget());
+        try {
+            if (identifier != null) {
+                cache.purge(identifier);
+            } else {
+                cache.purge();
+            }
+            status = isCancelled ? Status.CANCELLED : Status.SUCCEEDED;
+        } catch (Exception e) {
+            if (isCancelled) {
+                status = Status.CANCELLED;
+            } else {
+                logger.error("run(): job {} failed: {}", id, e.getMessage(), e);
+                errorMessage = e.getMessage();
+                status = Status.FAILED;
+            }
+        } finally {
+            currentJob.remove();
+            endTime = Instant.now();
+            logger.info("run(): job {} {} after deleting {} items",
+                    id, status.name().toLowerCase(), deletedCount.get());
+        }
+    }
+
+    private String getTarget() {
+        return (identifier != null) ? identifier.toString() : "all";
+    }
+
+    /**
+     * @return Map representation of the instance suitable for serializing
+     *         to JSON.
+     */
+    public Map<String, Object> toMap() {
+        final Map<String, Object> map = new LinkedHashMap<>();
+        map.put("id", id);
+        map.put("target", getTarget());
+        map.put("status", status.name().toLowerCase());
+        map.put("deleted_count", deletedCount.get());
+        map.put("start_time", (startTime != null) ? startTime.toString() : null);
+        map.put("end_time", (endTime != null) ? endTime.toString() : null);
+        map.put("error", errorMessage);
+        return map;
+    }
+
+}
@@ -1,11 +1,14 @@
 package edu.illinois.library.cantaloupe.cache;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.lambdaworks.redis.MapScanCursor;
+import com.lambdaworks.redis.KeyScanCursor;
+import com.lambdaworks.redis.LettuceFutures;
 import com.lambdaworks.redis.RedisClient;
+import com.lambdaworks.redis.RedisFuture;
 import com.lambdaworks.redis.RedisURI;
 import com.lambdaworks.redis.ScanArgs;
 import com.lambdaworks.redis.api.StatefulRedisConnection;
+import com.lambdaworks.redis.api.sync.RedisCommands;
 import com.lambdaworks.redis.codec.ByteArrayCodec;
 import com.lambdaworks.redis.codec.RedisCodec;
 import com.lambdaworks.redis.codec.Utf8StringCodec;
@@ -22,21 +25,41 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * <p>Cache using Redis via the <a href="http://redis.paluch.biz">Lettuce</a>
  * client.</p>
  *
- * <p>Content is structured as follows:</p>
+ * <p>Each image and info is stored under its own key:</p>
  *
- * <pre>{
- *     #{@link #IMAGE_HASH_KEY}: {
- *         "operation list string representation": image byte array
- *     },
- *     #{@link #INFO_HASH_KEY}: {
- *         "identifier": "UTF-8 JSON string"
- *     }
- * }</pre>
+ * <pre>
+ * {@link #IMAGE_KEY_PREFIX}{identifier}:operation list string representation
+ *     =&gt; image byte array
+ * {@link #INFO_KEY_PREFIX}{identifier}
+ *     =&gt; UTF-8 JSON string</pre>
+ *
+ * <p>The braces around the identifier delimit it, so that the image keys of
+ * one identifier never match the pattern of another identifier of which it
+ * is a prefix.</p>
+ *
+ * <p>When {@link #TTL_CONFIG_KEY} is greater than zero, every key is set to
+ * expire after that many seconds using Redis' native expiration, and the
+ * expiration is reset upon every hit, so that, as in the other caches,
+ * entries expire after a period of disuse. {@link #purgeExpired()} therefore
+ * has nothing to do.</p>
+ *
+ * <p>Hits require a single round trip. Purges scan the whole keyspace with
+ * a cursor and delete each page of matching keys in a pipeline. As the
+ * connection is to a single server, the scan would cover only one node of a
+ * Redis Cluster, so clusters are not supported.</p>
+ *
+ * <p>Earlier versions of this class stored all images in one hash and all
+ * infos in another. Those hashes are no longer read, and are deleted by
+ * {@link #purge()}.</p>
  */
 class RedisCache implements DerivativeCache {
 
@@ -71,64 +94,6 @@ class RedisCache implements DerivativeCache {
 
     }
 
-    /**
-     * Reads data into a buffer and provides stream access to it.
-     */
-    private static class RedisInputStream extends InputStream {
-
-        private ByteArrayInputStream bufferStream;
-        private StatefulRedisConnection<String, byte[]> connection;
-        private String hashKey;
-        private String valueKey;
-
-        RedisInputStream(String hashKey,
-                         String valueKey,
-                         StatefulRedisConnection<String, byte[]> connection) {
-            this.connection = connection;
-            this.hashKey = hashKey;
-            this.valueKey = valueKey;
-        }
-
-        private void bufferValue() {
-            byte[] value = connection.sync().hget(hashKey, valueKey);
-            bufferStream = new ByteArrayInputStream(value);
-        }
-
-        @Override
-        public void close() throws IOException {
-            try {
-                bufferStream.close();
-            } finally {
-                super.close();
-            }
-        }
-
-        @Override
-        public int read() throws IOException {
-            if (bufferStream == null) {
-                bufferValue();
-            }
-            return bufferStream.read();
-        }
-
-        @Override
-        public int read(byte[] b) throws IOException {
-            if (bufferStream == null) {
-                bufferValue();
-            }
-            return bufferStream.read(b);
-        }
-
-        @Override
-        public int read(byte[] b, int off, int len) throws IOException {
-            if (bufferStream == null) {
-                bufferValue();
-            }
-            return super.read(b, off, len);
-        }
-
-    }
-
     /**
      * Buffers written data and then writes it asynchronously to Redis.
      */
@@ -136,22 +101,23 @@ class RedisCache implements DerivativeCache {
 
         private ByteArrayOutputStream bufferStream = new ByteArrayOutputStream();
         private StatefulRedisConnection<String, byte[]> connection;
-        private String hashKey;
-        private String valueKey;
+        private boolean isClosed = false;
+        private String key;
 
-        RedisOutputStream(String hashKey,
-                          String valueKey,
+        RedisOutputStream(String key,
                           StatefulRedisConnection<String, byte[]> connection) {
             this.connection = connection;
-            this.hashKey = hashKey;
-            this.valueKey = valueKey;
+            this.key = key;
         }
 
         @Override
         public void close() throws IOException {
+            if (isClosed) {
+                return;
+            }
+            isClosed = true;
             try {
-                connection.async().hset(hashKey, valueKey,
-                        bufferStream.toByteArray());
+                set(connection, key, bufferStream.toByteArray());
             } finally {
                 super.close();
             }
@@ -198,9 +164,16 @@ class RedisCache implements DerivativeCache {
     private static final Logger logger = LoggerFactory.
             getLogger(RedisCache.class);
 
-    static final String IMAGE_HASH_KEY =
+    static final String IMAGE_KEY_PREFIX =
+            "edu.illinois.library.cantaloupe.image:";
+    static final String INFO_KEY_PREFIX =
+            "edu.illinois.library.cantaloupe.info:";
+
+    /** Hash in which earlier versions stored images. */
+    static final String LEGACY_IMAGE_HASH_KEY =
             "edu.illinois.library.cantaloupe.image";
-    static final String INFO_HASH_KEY =
+    /** Hash in which earlier versions stored infos. */
+    static final String LEGACY_INFO_HASH_KEY =
             "edu.illinois.library.cantaloupe.info";
 
     static final String DATABASE_CONFIG_KEY = "RedisCache.database";
@@ -209,25 +182,113 @@ class RedisCache implements DerivativeCache {
     static final String PORT_CONFIG_KEY = "RedisCache.port";
     static final String SSL_CONFIG_KEY = "RedisCache.ssl";
 
+    /** Number of keys to request per SCAN page. */
+    private static final int SCAN_BATCH_SIZE = 1000;
+
+    /** Timeout for each pipeline of deletions. */
+    private static final int PIPELINE_TIMEOUT_SECONDS = 60;
+
     private static StatefulRedisConnection<String, byte[]> getConnection() {
         return LazyConnectionHolder.connection;
     }
 
-    private static String imageKey(OperationList opList) {
-        return opList.toString();
+    /**
+     * @param str String to be used in a SCAN pattern.
+     * @return The string with glob special characters escaped.
+     */
+    static String escapePattern(String str) {
+        return str.replaceAll("([\\\\*?\\[\\]])", "\\\\$1");
+    }
+
+    static String imageKey(OperationList opList) {
+        return imageKeyPrefix(opList.getIdentifier()) + opList.toString();
+    }
+
+    /**
+     * @return Prefix shared by the keys of all images derived from the given
+     *         identifier.
+     */
+    private static String imageKeyPrefix(Identifier identifier) {
+        return IMAGE_KEY_PREFIX + "{" + identifier + "}:";
     }
 
-    private static String infoKey(Identifier identifier) {
-        return identifier.toString();
+    static String infoKey(Identifier identifier) {
+        return INFO_KEY_PREFIX + "{" + identifier + "}";
+    }
+
+    /**
+     * Asynchronously sets the given key to the given value, with an
+     * expiration time according to {@link #TTL_CONFIG_KEY}.
+     */
+    private static void set(StatefulRedisConnection<String, byte[]> connection,
+                            String key, byte[] value) {
+        final long ttl = Configuration.getInstance().getLong(TTL_CONFIG_KEY, 0);
+        if (ttl > 0) {
+            connection.async().setex(key, ttl, value);
+        } else {
+            connection.async().set(key, value);
+        }
+    }
+
+    /**
+     * Asynchronously resets the expiration time of the given key according
+     * to {@link #TTL_CONFIG_KEY}. Invoked upon hits.
+     */
+    private static void touch(StatefulRedisConnection<String, byte[]> connection,
+                              String key) {
+        final long ttl = Configuration.getInstance().getLong(TTL_CONFIG_KEY, 0);
+        if (ttl > 0) {
+            connection.async().expire(key, ttl);
+        }
+    }
+
+    /**
+     * Deletes all keys matching the given pattern. The entire keyspace of
+     * the server is scanned with a cursor, and the keys found on each page
+     * are deleted in a single pipeline.
+     *
+     * @param pattern SCAN pattern.
+     * @return Number of keys deleted.
+     */
+    private long deleteMatching(String pattern) throws CacheException {
+        final StatefulRedisConnection<String, byte[]> connection =
+                getConnection();
+        final RedisCommands<String, byte[]> sync = connection.sync();
+        final ScanArgs args = ScanArgs.Builder.matches(pattern).
+                limit(SCAN_BATCH_SIZE);
+        long count = 0;
+        KeyScanCursor<String> cursor = sync.scan(args);
+        while (true) {
+            final List<RedisFuture<Long>> futures =
+                    new ArrayList<>(cursor.getKeys().size());
+            for (String key : cursor.getKeys()) {
+                futures.add(connection.async().del(key));
+            }
+            if (!futures.isEmpty()) {
+                if (!LettuceFutures.awaitAll(PIPELINE_TIMEOUT_SECONDS,
+                        TimeUnit.SECONDS,
+                        futures.toArray(new RedisFuture[futures.size()]))) {
+                    throw new CacheException("Timed out deleting keys " +
+                            "matching " + pattern);
+                }
+                count += futures.size();
+            }
+            if (cursor.isFinished()) {
+                break;
+            }
+            cursor = sync.scan(cursor, args);
+        }
+        return count;
     }
 
     @Override
     public Info getImageInfo(Identifier identifier) throws CacheException {
-        byte[] json = getConnection().sync().hget(INFO_HASH_KEY,
-                infoKey(identifier));
+        final String key = infoKey(identifier);
+        byte[] json = getConnection().sync().get(key);
         if (json != null) {
+            touch(getConnection(), key);
             try {
-                String jsonStr = new String(json, "UTF-8");
+                String jsonStr = new String(json, StandardCharsets.UTF_8);
                 return Info.fromJson(jsonStr);
             } catch (IOException e) {
                 throw new CacheException(e.getMessage(), e);
@@ -236,13 +297,18 @@ class RedisCache implements DerivativeCache {
         return null;
     }
 
+    /**
+     * Retrieves the image with a single <code>GET</code>, so a miss costs no
+     * more than a hit.
+     */
     @Override
     public InputStream newDerivativeImageInputStream(OperationList opList)
             throws CacheException {
-        final String imageKey = imageKey(opList);
-        if (getConnection().sync().hexists(IMAGE_HASH_KEY, imageKey)) {
-            return new RedisInputStream(IMAGE_HASH_KEY, imageKey,
-                    getConnection());
+        final String key = imageKey(opList);
+        final byte[] value = getConnection().sync().get(key);
+        if (value != null) {
+            touch(getConnection(), key);
+            return new ByteArrayInputStream(value);
         }
         return null;
     }
@@ -250,52 +316,53 @@ class RedisCache implements DerivativeCache {
     @Override
     public OutputStream newDerivativeImageOutputStream(OperationList opList)
             throws CacheException {
-        return new RedisOutputStream(IMAGE_HASH_KEY, imageKey(opList),
-                getConnection());
+        return new RedisOutputStream(imageKey(opList), getConnection());
     }
 
     @Override
-    public void purge() {
+    public void purge() throws CacheException {
         // Purge infos
-        logger.info("purge(): purging {}...", INFO_HASH_KEY);
-        getConnection().sync().del(INFO_HASH_KEY);
+        logger.info("purge(): purging infos...");
+        long count = deleteMatching(INFO_KEY_PREFIX + "*");
 
         // Purge images
-        logger.info("purge(): purging {}...", IMAGE_HASH_KEY);
-        getConnection().sync().del(IMAGE_HASH_KEY);
+        logger.info("purge(): purging images...");
+        count += deleteMatching(IMAGE_KEY_PREFIX + "*");
+
+        // Purge the hashes of earlier versions
+        count += getConnection().sync().del(LEGACY_INFO_HASH_KEY,
+                LEGACY_IMAGE_HASH_KEY);
+
+        logger.info("purge(): purged {} keys", count);
     }
 
     @Override
-    public void purge(Identifier identifier) {
+    public void purge(Identifier identifier) throws CacheException {
         // Purge info
         String infoKey = infoKey(identifier);
         logger.info("purge(Identifier): purging {}...", infoKey);
-        getConnection().sync().hdel(INFO_HASH_KEY, infoKey);
+        getConnection().sync().del(infoKey);
 
         // Purge images
-        ScanArgs imagePattern = ScanArgs.Builder.matches(identifier + "*");
-        logger.info("purge(Identifier): purging {}...", imagePattern);
-        MapScanCursor cursor = getConnection().sync().
-                hscan(IMAGE_HASH_KEY, imagePattern);
-        for (Object key : cursor.getMap().keySet()) {
-            getConnection().sync().hdel(IMAGE_HASH_KEY, (String) key);
-        }
+        String pattern = escapePattern(imageKeyPrefix(identifier)) + "*";
+        logger.info("purge(Identifier): purging {}...", pattern);
+        long count = deleteMatching(pattern);
+        logger.info("purge(Identifier): purged {} images", count);
     }
 
     /**
-     * No-op.
+     * No-op, as expired keys are deleted by Redis itself.
      */
     @Override
     public void purgeExpired() {
-        logger.info("purgeExpired(): " +
-                "nothing to do (expiration must be configured in Redis)");
+        logger.info("purgeExpired(): nothing to do (keys expire natively)");
     }
 
     @Override
     public void purge(OperationList opList) {
         String imageKey = imageKey(opList);
         logger.info("purge(OperationList): purging {}...", imageKey);
-        getConnection().sync().hdel(IMAGE_HASH_KEY, imageKey);
+        getConnection().sync().del(imageKey);
     }
 
     @Override
@@ -303,8 +370,8 @@ class RedisCache implements DerivativeCache {
             throws CacheException {
         logger.info("put(): caching info for {}", identifier);
         try {
-            getConnection().async().hset(INFO_HASH_KEY, infoKey(identifier),
-                    imageInfo.toJson().getBytes());
+            set(getConnection(), infoKey(identifier),
+                    imageInfo.toJson().getBytes(StandardCharsets.UTF_8));
         } catch (JsonProcessingException e) {
             logger.error("put(): {}", e.getMessage());
             throw new CacheException(e.getMessage(), e);
@@ -0,0 +1,465 @@
+package edu.illinois.library.cantaloupe.cache;
+
+import edu.illinois.library.cantaloupe.ThreadPool;
+import edu.illinois.library.cantaloupe.config.Configuration;
+import edu.illinois.library.cantaloupe.image.Identifier;
+import edu.illinois.library.cantaloupe.image.Info;
+import edu.illinois.library.cantaloupe.operation.OperationList;
+import edu.illinois.library.cantaloupe.util.JMXUtil;
+import org.apache.commons.io.output.TeeOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Derivative cache that composes a fast, small first tier ("L1"),
+ * typically a {@link HeapCache}, with a slower, larger second tier ("L2"),
+ * such as a {@link FilesystemCache} or {@link AmazonS3Cache} that may be
+ * shared across instances.</p>
+ *
+ * <ul>
+ *     <li>Reads are tried against L1 first and then L2. Hits in L2 are
+ *     promoted to L1: infos immediately, and images once the stream returned
+ *     from {@link #newDerivativeImageInputStream(OperationList)} has been
+ *     read to the end and closed.</li>
+ *     <li>Writes go to both tiers. When {@link #WRITE_BEHIND_CONFIG_KEY} is
+ *     <code>true</code>, writes to L2 go through a {@link WriteBehindCache},
+ *     so that the caller doesn't have to wait for them. Its buffers are
+ *     limited, and purges cancel its pending writes, in the same way as
+ *     those of the application-wide one.</li>
+ *     <li>Purges, cleanups, and evictions are propagated to both tiers.</li>
+ * </ul>
+ *
+ * <p>The tiers are instantiated according to {@link #L1_CONFIG_KEY} and
+ * {@link #L2_CONFIG_KEY} upon {@link #initialize()}. Per-tier hit counts are
+ * available via JMX.</p>
+ *
+ * @since 3.4
+ */
+class TieredCache implements DerivativeCache, TieredCacheMBean {
+
+    /**
+     * Reads from an L2 stream, copying everything it reads into a buffer,
+     * which is written to L1 upon closing if the stream was read all the way
+     * through.
+     */
+    private class PromotingInputStream extends FilterInputStream {
+
+        private final ByteArrayOutputStream buffer =
+                new ByteArrayOutputStream();
+        private final OperationList opList;
+        private boolean isAborted = false, isClosed = false,
+                isComplete = false;
+
+        PromotingInputStream(InputStream l2Stream, OperationList opList) {
+            super(l2Stream);
+            this.opList = opList;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (isClosed) {
+                return;
+            }
+            isClosed = true;
+            super.close();
+            if (isComplete && !isAborted) {
+                promote(opList, buffer.toByteArray());
+            }
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b == -1) {
+                isComplete = true;
+            } else {
+                buffer.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int count = super.read(b, off, len);
+            if (count == -1) {
+                isComplete = true;
+            } else {
+                buffer.write(b, off, count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes don't make it into the buffer, so the image can
+            // no longer be promoted.
+            isAborted = true;
+            return super.skip(n);
+        }
+
+    }
+
+    @FunctionalInterface
+    private interface TierTask {
+        void run(DerivativeCache tier) throws CacheException;
+    }
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(TieredCache.class);
+
+    static final String L1_CONFIG_KEY = "TieredCache.l1";
+    static final String L2_CONFIG_KEY = "TieredCache.l2";
+    static final String WRITE_BEHIND_CONFIG_KEY = "TieredCache.write_behind";
+
+    private static final String DEFAULT_L1 = HeapCache.class.getSimpleName();
+
+    private volatile DerivativeCache l1, l2;
+
+    /**
+     * Wraps {@link #l2} when writing behind. Lazy-initialized by
+     * {@link #getL2Writer()}.
+     */
+    private WriteBehindCache l2WriteBehind;
+
+    private final AtomicLong l1HitCount = new AtomicLong(0);
+    private final AtomicLong l2HitCount = new AtomicLong(0);
+    private final AtomicLong missCount = new AtomicLong(0);
+    private final AtomicLong promotionCount = new AtomicLong(0);
+
+    /**
+     * @param unqualifiedName Simple class name of a derivative cache in this
+     *                        package.
+     * @return New instance, or <code>null</code> if the name is empty or
+     *         invalid.
+     */
+    private static DerivativeCache newTier(String unqualifiedName) {
+        if (unqualifiedName == null || unqualifiedName.isEmpty()) {
+            return null;
+        }
+        if (unqualifiedName.equals(TieredCache.class.getSimpleName())) {
+            logger.error("newTier(): {} cannot be used as a tier of itself",
+                    unqualifiedName);
+            return null;
+        }
+        final String qualifiedName =
+                TieredCache.class.getPackage().getName() + "." +
+                        unqualifiedName;
+        try {
+            Class<?> implClass = Class.forName(qualifiedName);
+            return (DerivativeCache) implClass.newInstance();
+        } catch (ClassNotFoundException e) {
+            logger.error("newTier(): class not found: {}", e.getMessage());
+        } catch (ClassCastException | IllegalAccessException |
+                InstantiationException e) {
+            logger.error("newTier(): {}", e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * No-argument constructor required by {@link CacheFactory}. The tiers are
+     * created by {@link #initialize()}.
+     */
+    TieredCache() {}
+
+    /**
+     * For testing.
+     *
+     * @param l1 First tier.
+     * @param l2 Second tier.
+     */
+    TieredCache(DerivativeCache l1, DerivativeCache l2) {
+        this.l1 = l1;
+        this.l2 = l2;
+    }
+
+    /**
+     * @return {@link #l2}, wrapped in a {@link WriteBehindCache} if
+     *         {@link #WRITE_BEHIND_CONFIG_KEY} is <code>true</code>.
+     */
+    private synchronized DerivativeCache getL2Writer() {
+        if (!isWriteBehind()) {
+            return l2;
+        }
+        if (l2WriteBehind == null) {
+            l2WriteBehind = new WriteBehindCache(l2,
+                    TieredCache.class.getSimpleName() + ".l2");
+        }
+        return l2WriteBehind;
+    }
+
+    @Override
+    public void cleanUp() throws CacheException {
+        forEachTier(Cache::cleanUp);
+    }
+
+    @Override
+    public void evictExcess() throws CacheException {
+        forEachTier(Cache::evictExcess);
+    }
+
+    /**
+     * Runs the given task against all tiers, even if it fails against any
+     * of them.
+     *
+     * @throws CacheException The first exception thrown by the task, after it
+     *                        has been run against all tiers.
+     */
+    private void forEachTier(TierTask task) throws CacheException {
+        forEachTier(getTiers(), task);
+    }
+
+    private void forEachTier(List<DerivativeCache> tiers, TierTask task)
+            throws CacheException {
+        CacheException exception = null;
+        for (DerivativeCache tier : tiers) {
+            try {
+                task.run(tier);
+            } catch (CacheException e) {
+                logger.error("forEachTier(): {}: {}",
+                        tier.getClass().getSimpleName(), e.getMessage());
+                if (exception == null) {
+                    exception = e;
+                }
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    @Override
+    public Info getImageInfo(Identifier identifier) throws CacheException {
+        Info info = l1.getImageInfo(identifier);
+        if (info != null) {
+            l1HitCount.incrementAndGet();
+            return info;
+        }
+        if (l2 != null) {
+            info = l2.getImageInfo(identifier);
+            if (info != null) {
+                l2HitCount.incrementAndGet();
+                l1.put(identifier, info);
+                promotionCount.incrementAndGet();
+                return info;
+            }
+        }
+        missCount.incrementAndGet();
+        return null;
+    }
+
+    DerivativeCache getL1() {
+        return l1;
+    }
+
+    @Override
+    public long getL1HitCount() {
+        return l1HitCount.get();
+    }
+
+    @Override
+    public double getL1HitRatio() {
+        final long hits = l1HitCount.get();
+        final long total = hits + l2HitCount.get() + missCount.get();
+        return (total > 0) ? hits / (double) total : 0;
+    }
+
+    DerivativeCache getL2() {
+        return l2;
+    }
+
+    @Override
+    public long getL2HitCount() {
+        return l2HitCount.get();
+    }
+
+    @Override
+    public double getL2HitRatio() {
+        final long hits = l2HitCount.get();
+        final long total = hits + missCount.get();
+        return (total > 0) ? hits / (double) total : 0;
+    }
+
+    @Override
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    @Override
+    public long getPromotionCount() {
+        return promotionCount.get();
+    }
+
+    /**
+     * @return Tiers to purge: the same as {@link #getTiers()}, except that
+     *         L2 is purged through its {@link WriteBehindCache}, if it has
+     *         one, so that pending writes of the purged images are cancelled.
+     */
+    private synchronized List<DerivativeCache> getPurgeTiers() {
+        final List<DerivativeCache> tiers = getTiers();
+        if (l2WriteBehind != null) {
+            tiers.set(tiers.size() - 1, l2WriteBehind);
+        }
+        return tiers;
+    }
+
+    private List<DerivativeCache> getTiers() {
+        final List<DerivativeCache> tiers = new ArrayList<>(2);
+        if (l1 != null) {
+            tiers.add(l1);
+        }
+        if (l2 != null) {
+            tiers.add(l2);
+        }
+        return tiers;
+    }
+
+    /**
+     * Instantiates and initializes the tiers, if they have not already been
+     * supplied to the constructor, and registers the instance with JMX.
+     */
+    @Override
+    public void initialize() {
+        if (l1 == null) {
+            final Configuration config = Configuration.getInstance();
+            l1 = newTier(config.getString(L1_CONFIG_KEY, DEFAULT_L1));
+            if (l1 == null) {
+                logger.error("initialize(): invalid {}; falling back to {}",
+                        L1_CONFIG_KEY, DEFAULT_L1);
+                l1 = new HeapCache();
+            }
+            l2 = newTier(config.getString(L2_CONFIG_KEY, ""));
+            if (l2 == null) {
+                logger.error("initialize(): {} is not set to a valid " +
+                        "cache; using only {}", L2_CONFIG_KEY,
+                        l1.getClass().getSimpleName());
+            }
+            getTiers().forEach(Cache::initialize);
+        }
+        logger.info("initialize(): L1: {}; L2: {}",
+                l1.getClass().getSimpleName(),
+                (l2 != null) ? l2.getClass().getSimpleName() : "none");
+        JMXUtil.registerMBean(this, TieredCache.class.getSimpleName(),
+                "derivative");
+    }
+
+    private boolean isWriteBehind() {
+        return Configuration.getInstance().
+                getBoolean(WRITE_BEHIND_CONFIG_KEY, false);
+    }
+
+    @Override
+    public InputStream newDerivativeImageInputStream(OperationList opList)
+            throws CacheException {
+        final InputStream l1Stream = l1.newDerivativeImageInputStream(opList);
+        if (l1Stream != null) {
+            l1HitCount.incrementAndGet();
+            return l1Stream;
+        }
+        if (l2 != null) {
+            final InputStream l2Stream =
+                    l2.newDerivativeImageInputStream(opList);
+            if (l2Stream != null) {
+                l2HitCount.incrementAndGet();
+                return new PromotingInputStream(l2Stream, opList);
+            }
+        }
+        missCount.incrementAndGet();
+        return null;
+    }
+
+    @Override
+    public OutputStream newDerivativeImageOutputStream(OperationList opList)
+            throws CacheException {
+        final OutputStream l1Stream = l1.newDerivativeImageOutputStream(opList);
+        if (l2 == null) {
+            return l1Stream;
+        }
+        try {
+            return new TeeOutputStream(l1Stream,
+                    getL2Writer().newDerivativeImageOutputStream(opList));
+        } catch (CacheException e) {
+            try {
+                l1Stream.close();
+            } catch (IOException e2) {
+                logger.error("newDerivativeImageOutputStream(): {}",
+                        e2.getMessage());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the given image to L1 after it has been read out of L2.
+     */
+    private void promote(OperationList opList, byte[] data) {
+        try (OutputStream os = l1.newDerivativeImageOutputStream(opList)) {
+            os.write(data);
+            promotionCount.incrementAndGet();
+        } catch (CacheException | IOException e) {
+            logger.warn("promote(): failed to promote {}: {}",
+                    opList, e.getMessage());
+        }
+    }
+
+    @Override
+    public void purge() throws CacheException {
+        forEachTier(getPurgeTiers(), Cache::purge);
+    }
+
+    @Override
+    public void purge(Identifier identifier) throws CacheException {
+        forEachTier(getPurgeTiers(), tier -> tier.purge(identifier));
+    }
+
+    @Override
+    public void purge(OperationList opList) throws CacheException {
+        forEachTier(getPurgeTiers(), tier -> tier.purge(opList));
+    }
+
+    @Override
+    public void purgeExpired() throws CacheException {
+        forEachTier(Cache::purgeExpired);
+    }
+
+    @Override
+    public void put(Identifier identifier, Info imageInfo)
+            throws CacheException {
+        l1.put(identifier, imageInfo);
+        if (l2 == null) {
+            return;
+        }
+        if (isWriteBehind()) {
+            ThreadPool.getInstance().submit(() -> {
+                try {
+                    l2.put(identifier, imageInfo);
+                } catch (CacheException e) {
+                    logger.error("put(): failed to write info for {} to " +
+                            "L2: {}", identifier, e.getMessage());
+                }
+            });
+        } else {
+            l2.put(identifier, imageInfo);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        getTiers().forEach(Cache::shutdown);
+    }
+
+}
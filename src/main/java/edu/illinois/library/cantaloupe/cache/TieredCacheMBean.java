@@ -0,0 +1,41 @@
+package edu.illinois.library.cantaloupe.cache;
+
+/**
+ * JMX management interface of {@link TieredCache}.
+ */
+public interface TieredCacheMBean {
+
+    /**
+     * @return Number of requests that were satisfied by the first tier.
+     */
+    long getL1HitCount();
+
+    /**
+     * @return Ratio of requests that were satisfied by the first tier to all
+     *         requests.
+     */
+    double getL1HitRatio();
+
+    /**
+     * @return Number of requests that were satisfied by the second tier.
+     */
+    long getL2HitCount();
+
+    /**
+     * @return Ratio of requests that were satisfied by the second tier to all
+     *         requests that reached it (i.e. that missed the first tier).
+     */
+    double getL2HitRatio();
+
+    /**
+     * @return Number of requests that missed both tiers.
+     */
+    long getMissCount();
+
+    /**
+     * @return Number of hits in the second tier that were copied into the
+     *         first tier.
+     */
+    long getPromotionCount();
+
+}
@@ -0,0 +1,435 @@
+package edu.illinois.library.cantaloupe.cache;
+
+import edu.illinois.library.cantaloupe.config.Configuration;
+import edu.illinois.library.cantaloupe.image.Identifier;
+import edu.illinois.library.cantaloupe.image.Info;
+import edu.illinois.library.cantaloupe.operation.OperationList;
+import edu.illinois.library.cantaloupe.util.JMXUtil;
+import edu.illinois.library.cantaloupe.util.StringUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * <p>Decorator for any {@link DerivativeCache} whose derivative image output
+ * streams buffer everything written to them in memory, and write it to the
+ * backing cache from a pool of writer threads upon closing. This frees the
+ * response from having to wait for a slow cache backend.</p>
+ *
+ * <p>The total amount of memory used by buffers, whether still being written
+ * or waiting to be written to the backing cache, is limited to
+ * {@link #MAX_BUFFER_SIZE_CONFIG_KEY}. When the limit has been reached, the
+ * {@link #POLICY_CONFIG_KEY policy} determines whether new cache writes are
+ * dropped, or whether they wait (for up to {@link #BLOCK_TIMEOUT_MSEC}) for
+ * room to become available.</p>
+ *
+ * <p>Purges cancel any pending writes of the purged content before being
+ * passed to the backing cache. All other methods are passed straight through
+ * to it.</p>
+ *
+ * <p>Instances are created by {@link CacheFactory#getDerivativeCache()} when
+ * {@link #ENABLED_CONFIG_KEY} is <code>true</code>. The backing cache's
+ * lifecycle is managed by {@link CacheFactory}, so {@link #initialize()} and
+ * {@link #shutdown()} are not passed through.</p>
+ *
+ * @since 3.4
+ */
+class WriteBehindCache implements DerivativeCache, WriteBehindCacheMBean {
+
+    /**
+     * Manages the number of bytes that may be buffered across all of an
+     * instance's streams.
+     */
+    private static final class BufferBudget {
+
+        private final long capacity;
+        private long used = 0;
+
+        BufferBudget(long capacity) {
+            this.capacity = capacity;
+        }
+
+        /**
+         * @param numBytes   Number of bytes to reserve.
+         * @param timeout    Time to wait for them to become available, in
+         *                   milliseconds. If 0, don't wait.
+         * @return           Whether the bytes were reserved.
+         */
+        synchronized boolean acquire(long numBytes, long timeout)
+                throws InterruptedException {
+            if (numBytes > capacity) {
+                return false;
+            }
+            final long deadline = System.currentTimeMillis() + timeout;
+            while (used + numBytes > capacity) {
+                final long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                wait(remaining);
+            }
+            used += numBytes;
+            return true;
+        }
+
+        synchronized long getUsed() {
+            return used;
+        }
+
+        synchronized void release(long numBytes) {
+            used -= numBytes;
+            notifyAll();
+        }
+
+    }
+
+    /**
+     * Write that has been submitted to the writer pool but not yet completed.
+     */
+    private static final class PendingWrite {
+
+        private boolean isCancelled = false;
+        private final OperationList opList;
+
+        PendingWrite(OperationList opList) {
+            this.opList = opList;
+        }
+
+    }
+
+    private enum Policy {
+        BLOCK, DROP
+    }
+
+    /**
+     * Buffers everything written to it, reserving room in the
+     * {@link #budget} as it goes, and submits it to be written to the
+     * backing cache upon closing.
+     */
+    private class WriteBehindOutputStream extends OutputStream {
+
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private boolean isClosed = false, isDropped = false;
+        private final OperationList opList;
+        private final Policy policy;
+        private long reservedBytes = 0;
+
+        WriteBehindOutputStream(OperationList opList, Policy policy) {
+            this.opList = opList;
+            this.policy = policy;
+        }
+
+        @Override
+        public void close() {
+            if (isClosed) {
+                return;
+            }
+            isClosed = true;
+            if (isDropped) {
+                return;
+            }
+            final byte[] data = buffer.toByteArray();
+            buffer = null;
+            submit(opList, data, reservedBytes);
+        }
+
+        private void drop() {
+            isDropped = true;
+            buffer = null;
+            budget.release(reservedBytes);
+            reservedBytes = 0;
+            droppedWriteCount.incrementAndGet();
+            logger.debug("drop(): buffer is full; not caching {}", opList);
+        }
+
+        private boolean reserve(int numBytes) throws IOException {
+            final long timeout = (policy == Policy.BLOCK) ?
+                    BLOCK_TIMEOUT_MSEC : 0;
+            try {
+                if (budget.acquire(numBytes, timeout)) {
+                    reservedBytes += numBytes;
+                    return true;
+                }
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (isClosed || isDropped) {
+                return;
+            }
+            if (reserve(len)) {
+                buffer.write(b, off, len);
+            } else {
+                drop();
+            }
+        }
+
+    }
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(WriteBehindCache.class);
+
+    static final String ENABLED_CONFIG_KEY =
+            "cache.server.derivative.write_behind.enabled";
+    static final String MAX_BUFFER_SIZE_CONFIG_KEY =
+            "cache.server.derivative.write_behind.max_buffer_size";
+    static final String POLICY_CONFIG_KEY =
+            "cache.server.derivative.write_behind.policy";
+    static final String THREADS_CONFIG_KEY =
+            "cache.server.derivative.write_behind.threads";
+
+    /**
+     * Maximum amount of time that a write may wait for buffer space under
+     * the <code>block</code> policy before being dropped anyway. This
+     * prevents streams that are all waiting on each other from waiting
+     * forever.
+     */
+    static final long BLOCK_TIMEOUT_MSEC = 10000;
+
+    private static final String DEFAULT_MAX_BUFFER_SIZE = "64M";
+    private static final int DEFAULT_THREADS = 2;
+
+    /** Lazy-initialized by {@link #getWriterExecutor()} */
+    private static ThreadPoolExecutor writerExecutor;
+
+    private final DerivativeCache backingCache;
+
+    private final BufferBudget budget;
+
+    private final Map<String, PendingWrite> pendingWrites =
+            new ConcurrentHashMap<>();
+
+    private final AtomicLong completedWriteCount = new AtomicLong(0);
+    private final AtomicLong droppedWriteCount = new AtomicLong(0);
+    private final AtomicLong failedWriteCount = new AtomicLong(0);
+
+    /**
+     * @return Maximum buffer size according to
+     *         {@link #MAX_BUFFER_SIZE_CONFIG_KEY}.
+     */
+    private static long getMaxBufferSize() {
+        final String humanSize = Configuration.getInstance().getString(
+                MAX_BUFFER_SIZE_CONFIG_KEY, DEFAULT_MAX_BUFFER_SIZE);
+        try {
+            return StringUtil.parseByteSize(humanSize);
+        } catch (NumberFormatException e) {
+            logger.error("getMaxBufferSize(): invalid value for {}: {}",
+                    MAX_BUFFER_SIZE_CONFIG_KEY, humanSize);
+            return StringUtil.parseByteSize(DEFAULT_MAX_BUFFER_SIZE);
+        }
+    }
+
+    /**
+     * @return Executor on which all writes to backing caches run. It has a
+     *         fixed number of threads according to {@link #THREADS_CONFIG_KEY}.
+     *         Its queue is unbounded, as its size is effectively limited by
+     *         the {@link #budget}.
+     */
+    private static synchronized ExecutorService getWriterExecutor() {
+        if (writerExecutor == null) {
+            final int numThreads = Math.max(1, Configuration.getInstance().
+                    getInt(THREADS_CONFIG_KEY, DEFAULT_THREADS));
+            final AtomicInteger threadNumber = new AtomicInteger(0);
+            writerExecutor = new ThreadPoolExecutor(
+                    numThreads, numThreads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(),
+                    runnable -> {
+                        final Thread thread = new Thread(runnable,
+                                "WriteBehindCache-writer-" +
+                                        threadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            writerExecutor.allowCoreThreadTimeOut(true);
+        }
+        return writerExecutor;
+    }
+
+    private static Policy getPolicy() {
+        final String value = Configuration.getInstance().
+                getString(POLICY_CONFIG_KEY, "drop");
+        return "block".equalsIgnoreCase(value) ? Policy.BLOCK : Policy.DROP;
+    }
+
+    /**
+     * @param backingCache Cache to write to.
+     */
+    WriteBehindCache(DerivativeCache backingCache) {
+        this(backingCache, "derivative");
+    }
+
+    /**
+     * @param backingCache Cache to write to.
+     * @param name         Name under which to register the instance with
+     *                     JMX, distinguishing it from other instances.
+     */
+    WriteBehindCache(DerivativeCache backingCache, String name) {
+        this.backingCache = backingCache;
+        this.budget = new BufferBudget(getMaxBufferSize());
+        JMXUtil.registerMBean(this, WriteBehindCache.class.getSimpleName(),
+                name);
+    }
+
+    /**
+     * Cancels all pending writes for which the given filter returns
+     * <code>true</code>. If any of them are in progress, waits for them to
+     * finish first, so that the backing cache can then be purged of them.
+     */
+    private void cancelPendingWrites(Predicate<OperationList> filter) {
+        for (PendingWrite write : pendingWrites.values()) {
+            if (filter.test(write.opList)) {
+                synchronized (write) {
+                    write.isCancelled = true;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void cleanUp() throws CacheException {
+        backingCache.cleanUp();
+    }
+
+    @Override
+    public void evictExcess() throws CacheException {
+        backingCache.evictExcess();
+    }
+
+    DerivativeCache getBackingCache() {
+        return backingCache;
+    }
+
+    @Override
+    public long getBufferedByteCount() {
+        return budget.getUsed();
+    }
+
+    @Override
+    public long getCompletedWriteCount() {
+        return completedWriteCount.get();
+    }
+
+    @Override
+    public long getDroppedWriteCount() {
+        return droppedWriteCount.get();
+    }
+
+    @Override
+    public long getFailedWriteCount() {
+        return failedWriteCount.get();
+    }
+
+    @Override
+    public File getDerivativeImageFile(OperationList opList)
+            throws CacheException {
+        return backingCache.getDerivativeImageFile(opList);
+    }
+
+    @Override
+    public Info getImageInfo(Identifier identifier) throws CacheException {
+        return backingCache.getImageInfo(identifier);
+    }
+
+    @Override
+    public int getPendingWriteCount() {
+        return pendingWrites.size();
+    }
+
+    @Override
+    public InputStream newDerivativeImageInputStream(OperationList opList)
+            throws CacheException {
+        return backingCache.newDerivativeImageInputStream(opList);
+    }
+
+    @Override
+    public OutputStream newDerivativeImageOutputStream(OperationList opList) {
+        return new WriteBehindOutputStream(opList, getPolicy());
+    }
+
+    @Override
+    public void purge() throws CacheException {
+        cancelPendingWrites(opList -> true);
+        backingCache.purge();
+    }
+
+    @Override
+    public void purge(Identifier identifier) throws CacheException {
+        cancelPendingWrites(opList -> opList.getIdentifier().equals(identifier));
+        backingCache.purge(identifier);
+    }
+
+    @Override
+    public void purge(OperationList opList) throws CacheException {
+        final String key = opList.toString();
+        cancelPendingWrites(other -> other.toString().equals(key));
+        backingCache.purge(opList);
+    }
+
+    @Override
+    public void purgeExpired() throws CacheException {
+        backingCache.purgeExpired();
+    }
+
+    @Override
+    public void put(Identifier identifier, Info imageInfo)
+            throws CacheException {
+        backingCache.put(identifier, imageInfo);
+    }
+
+    /**
+     * Submits the given data to be written to the backing cache, releasing
+     * the given number of bytes from the budget when done.
+     */
+    private void submit(OperationList opList, byte[] data, long reservedBytes) {
+        final String key = opList.toString();
+        final PendingWrite write = new PendingWrite(opList);
+        pendingWrites.put(key, write);
+
+        getWriterExecutor().submit(() -> {
+            try {
+                synchronized (write) {
+                    if (write.isCancelled) {
+                        return;
+                    }
+                    try (OutputStream os =
+                                 backingCache.newDerivativeImageOutputStream(opList)) {
+                        os.write(data);
+                    }
+                }
+                completedWriteCount.incrementAndGet();
+            } catch (CacheException | IOException e) {
+                failedWriteCount.incrementAndGet();
+                logger.error("submit(): failed to write {}: {}",
+                        opList, e.getMessage());
+            } finally {
+                pendingWrites.remove(key, write);
+                budget.release(reservedBytes);
+            }
+        });
+    }
+
+}
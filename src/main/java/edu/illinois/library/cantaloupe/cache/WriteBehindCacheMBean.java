@@ -0,0 +1,37 @@
+package edu.illinois.library.cantaloupe.cache;
+
+/**
+ * JMX management interface of {@link WriteBehindCache}.
+ */
+public interface WriteBehindCacheMBean {
+
+    /**
+     * @return Number of bytes currently buffered, whether still being written
+     *         or waiting to be written to the backing cache.
+     */
+    long getBufferedByteCount();
+
+    /**
+     * @return Number of images that have been written to the backing cache.
+     */
+    long getCompletedWriteCount();
+
+    /**
+     * @return Number of images that were not cached because the buffer was
+     *         full.
+     */
+    long getDroppedWriteCount();
+
+    /**
+     * @return Number of images that could not be written to the backing
+     *         cache due to an error.
+     */
+    long getFailedWriteCount();
+
+    /**
+     * @return Number of images waiting to be written, or being written, to
+     *         the backing cache.
+     */
+    int getPendingWriteCount();
+
+}
@@ -2,6 +2,7 @@ package edu.illinois.library.cantaloupe.image;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -25,7 +26,7 @@ import java.util.List;
  * @see <a href="https://github.com/FasterXML/jackson-databind">jackson-databind
  * docs</a>
  */
-@JsonPropertyOrder({ "mediaType", "images" })
+@JsonPropertyOrder({ "mediaType", "images", "numPages" })
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public final class Info {
 
@@ -162,6 +163,13 @@ public final class Info {
     private List<Image> images = new ArrayList<>();
     private String mediaType;
 
+    /**
+     * Number of pages of a multi-page document like a PDF, or
+     * <code>null</code> for other images, which have one.
+     */
+    @JsonProperty
+    private Integer numPages;
+
     public static Info fromJson(File jsonFile) throws IOException {
         return new ObjectMapper().readValue(jsonFile, Info.class);
     }
@@ -255,7 +263,8 @@ public final class Info {
         if (obj instanceof Info) {
             Info other = (Info) obj;
             return other.getImages().equals(getImages()) &&
-                    other.getSourceFormat().equals(getSourceFormat());
+                    other.getSourceFormat().equals(getSourceFormat()) &&
+                    other.getNumPages() == getNumPages();
         }
         return super.equals(obj);
     }
@@ -264,6 +273,15 @@ public final class Info {
         return images;
     }
 
+    /**
+     * @return Number of pages of a multi-page document like a PDF, or
+     *         <code>1</code> for other images.
+     */
+    @JsonIgnore
+    public int getNumPages() {
+        return (numPages != null) ? numPages : 1;
+    }
+
     /**
      * @return Orientatino of the main image.
      */
@@ -319,6 +337,14 @@ public final class Info {
         return Format.UNKNOWN;
     }
 
+    /**
+     * @param numPages Number of pages of a multi-page document.
+     */
+    @JsonIgnore
+    public void setNumPages(int numPages) {
+        this.numPages = numPages;
+    }
+
     @JsonIgnore
     public void setSourceFormat(Format sourceFormat) {
         if (sourceFormat == null) {
@@ -0,0 +1,163 @@
+package edu.illinois.library.cantaloupe.processor;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * <p>Running ffmpeg process that decodes the keyframes of a video, starting
+ * at a given keyframe, and writes them to its standard output as a sequence
+ * of BMP images.</p>
+ *
+ * <p>ffmpeg only decodes as far ahead as the pipe allows, so an idle
+ * instance costs little more than an open file and a decoded frame. Reading
+ * later keyframes from the same instance reuses the open demuxer and
+ * decoder instead of starting a new process and seeking again.</p>
+ *
+ * <p>Instances are not thread-safe; they are meant to be used by one thread
+ * at a time via {@link FfmpegDecoderPool}.</p>
+ */
+final class FfmpegDecoder {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(FfmpegDecoder.class);
+
+    /** Length of the BMP file header. */
+    private static final int BMP_HEADER_LENGTH = 14;
+
+    private final File file;
+    private final InputStream inputStream;
+    private long lastUsed = System.currentTimeMillis();
+    /** Index of the keyframe that the next call to read will return. */
+    private int nextKeyframe;
+    private final Process process;
+
+    /**
+     * Starts an ffmpeg process.
+     *
+     * @param ffmpegPath Path to the ffmpeg binary.
+     * @param file       Video file.
+     * @param index      Keyframe index of the video.
+     * @param keyframe   Index of the first keyframe to decode.
+     */
+    FfmpegDecoder(String ffmpegPath,
+                  File file,
+                  FfmpegKeyframeIndex index,
+                  int keyframe) throws IOException {
+        this.file = file;
+        this.nextKeyframe = keyframe;
+
+        final List<String> command = Arrays.asList(
+                ffmpegPath,
+                "-nostdin",
+                "-v", "quiet",
+                // Seek to the keyframe at or before this time, and don't
+                // drop the frames between it and the time.
+                "-ss", String.format(Locale.ROOT, "%.6f",
+                        index.getSeekTime(keyframe)),
+                "-noaccurate_seek",
+                "-skip_frame", "nokey",
+                "-i", file.getAbsolutePath(),
+                "-an",
+                "-vsync", "0",
+                "-vcodec", "bmp",
+                "-f", "image2pipe",
+                "pipe:1");
+        final ProcessBuilder pb = new ProcessBuilder(command);
+        logger.info("Invoking {}", StringUtils.join(pb.command(), " "));
+        process = pb.start();
+        // Nothing is written to stdin or stderr with -nostdin and -v quiet.
+        process.getOutputStream().close();
+        inputStream = new BufferedInputStream(process.getInputStream());
+    }
+
+    void destroy() {
+        try {
+            inputStream.close();
+        } catch (IOException e) {
+            // The process is gone anyway.
+        }
+        process.destroy();
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * @return Time at which the instance was last read from.
+     */
+    long getLastUsed() {
+        return lastUsed;
+    }
+
+    /**
+     * @return Index of the keyframe that the next call to {@link #read}
+     *         will return.
+     */
+    int getNextKeyframe() {
+        return nextKeyframe;
+    }
+
+    boolean isAlive() {
+        return process.isAlive();
+    }
+
+    /**
+     * Reads the next keyframe.
+     *
+     * @return BMP image.
+     * @throws IOException If there are no more keyframes, or the process
+     *                     failed.
+     */
+    byte[] read() throws IOException {
+        final byte[] header = new byte[BMP_HEADER_LENGTH];
+        IOUtils.readFully(inputStream, header);
+        final int length = getBMPLength(header);
+        final byte[] bmp = Arrays.copyOf(header, length);
+        IOUtils.readFully(inputStream, bmp, BMP_HEADER_LENGTH,
+                length - BMP_HEADER_LENGTH);
+        nextKeyframe++;
+        lastUsed = System.currentTimeMillis();
+        return bmp;
+    }
+
+    /**
+     * Skips the next keyframe.
+     */
+    void skip() throws IOException {
+        final byte[] header = new byte[BMP_HEADER_LENGTH];
+        IOUtils.readFully(inputStream, header);
+        IOUtils.skipFully(inputStream,
+                getBMPLength(header) - BMP_HEADER_LENGTH);
+        nextKeyframe++;
+    }
+
+    /**
+     * @param header BMP file header.
+     * @return       Length of the whole BMP file.
+     */
+    private static int getBMPLength(byte[] header) throws IOException {
+        if (header[0] != 'B' || header[1] != 'M') {
+            throw new IOException("Unexpected ffmpeg output (not a BMP)");
+        }
+        final int length = (header[2] & 0xff) |
+                ((header[3] & 0xff) << 8) |
+                ((header[4] & 0xff) << 16) |
+                ((header[5] & 0xff) << 24);
+        if (length <= BMP_HEADER_LENGTH) {
+            throw new IOException("Invalid BMP length: " + length);
+        }
+        return length;
+    }
+
+}
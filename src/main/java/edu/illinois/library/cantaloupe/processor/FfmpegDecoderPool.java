@@ -0,0 +1,204 @@
+package edu.illinois.library.cantaloupe.processor;
+
+import edu.illinois.library.cantaloupe.config.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Short-lived pool of idle {@link FfmpegDecoder}s.</p>
+ *
+ * <p>When a viewer scrubs through a video, it requests frames at increasing
+ * times. After a decoder has returned a keyframe, it is kept for
+ * {@link #IDLE_TIMEOUT_CONFIG_KEY} seconds, and a following request for the
+ * same video at a keyframe up to {@link #MAX_SKIPPED_KEYFRAMES} ahead of it
+ * continues reading from it instead of starting a new ffmpeg process and
+ * seeking again.</p>
+ *
+ * <p>The pool is thread-safe.</p>
+ */
+final class FfmpegDecoderPool {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(FfmpegDecoderPool.class);
+
+    static final String IDLE_TIMEOUT_CONFIG_KEY =
+            "FfmpegProcessor.decoder_pool.idle_timeout";
+    static final String MAX_SIZE_CONFIG_KEY =
+            "FfmpegProcessor.decoder_pool.max_size";
+
+    private static final int DEFAULT_IDLE_TIMEOUT = 10;
+    private static final int DEFAULT_MAX_SIZE = 8;
+
+    /**
+     * Maximum number of keyframes that will be decoded and discarded in order
+     * to reuse a decoder. Beyond this, starting a new one and seeking is
+     * likely to be faster.
+     */
+    static final int MAX_SKIPPED_KEYFRAMES = 10;
+
+    private static FfmpegDecoderPool instance;
+
+    /** Idle decoders, least recently used first. */
+    private final LinkedList<FfmpegDecoder> idleDecoders = new LinkedList<>();
+
+    private ScheduledExecutorService sweeper;
+
+    static synchronized FfmpegDecoderPool getInstance() {
+        if (instance == null) {
+            instance = new FfmpegDecoderPool();
+        }
+        return instance;
+    }
+
+    /**
+     * Shuts down the shared instance, if it has been created.
+     */
+    static synchronized void shutdownInstance() {
+        if (instance != null) {
+            instance.shutdown();
+        }
+    }
+
+    FfmpegDecoderPool() {}
+
+    /**
+     * @param ffmpegPath Path to the ffmpeg binary.
+     * @param file       Video file.
+     * @param index      Keyframe index of the video.
+     * @param keyframe   Index of the keyframe to read.
+     * @return           Keyframe as a BMP image.
+     */
+    byte[] read(String ffmpegPath,
+                File file,
+                FfmpegKeyframeIndex index,
+                int keyframe) throws IOException {
+        final FfmpegDecoder reusable = take(file, keyframe);
+        if (reusable != null) {
+            try {
+                final byte[] bmp = read(reusable, keyframe);
+                logger.debug("read(): reused a decoder for keyframe {} of {}",
+                        keyframe, file);
+                return bmp;
+            } catch (IOException e) {
+                logger.debug("read(): failed to reuse a decoder ({}); " +
+                        "starting a new one", e.getMessage());
+            }
+        }
+        return read(new FfmpegDecoder(ffmpegPath, file, index, keyframe),
+                keyframe);
+    }
+
+    private byte[] read(FfmpegDecoder decoder, int keyframe)
+            throws IOException {
+        try {
+            while (decoder.getNextKeyframe() < keyframe) {
+                decoder.skip();
+            }
+            final byte[] bmp = decoder.read();
+            release(decoder);
+            return bmp;
+        } catch (IOException e) {
+            decoder.destroy();
+            throw e;
+        }
+    }
+
+    /**
+     * @return Idle decoder that can reach the given keyframe of the given
+     *         file with the fewest skipped keyframes, or <code>null</code>.
+     */
+    private synchronized FfmpegDecoder take(File file, int keyframe) {
+        FfmpegDecoder best = null;
+        for (FfmpegDecoder decoder : idleDecoders) {
+            final int next = decoder.getNextKeyframe();
+            if (decoder.getFile().equals(file) && next <= keyframe &&
+                    keyframe - next <= MAX_SKIPPED_KEYFRAMES &&
+                    (best == null || next > best.getNextKeyframe())) {
+                best = decoder;
+            }
+        }
+        if (best != null) {
+            idleDecoders.remove(best);
+        }
+        return best;
+    }
+
+    private synchronized void release(FfmpegDecoder decoder) {
+        if (getIdleTimeout() <= 0 || !decoder.isAlive()) {
+            decoder.destroy();
+            return;
+        }
+        idleDecoders.addLast(decoder);
+        while (idleDecoders.size() > getMaxSize()) {
+            idleDecoders.removeFirst().destroy();
+        }
+        if (sweeper == null) {
+            sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable,
+                        "FfmpegDecoderPool-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            sweeper.scheduleWithFixedDelay(this::destroyExpired, 1, 1,
+                    TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Destroys decoders that have been idle for longer than
+     * {@link #IDLE_TIMEOUT_CONFIG_KEY}.
+     */
+    synchronized void destroyExpired() {
+        final long cutoff = System.currentTimeMillis() -
+                getIdleTimeout() * 1000L;
+        final Iterator<FfmpegDecoder> it = idleDecoders.iterator();
+        while (it.hasNext()) {
+            final FfmpegDecoder decoder = it.next();
+            if (decoder.getLastUsed() < cutoff || !decoder.isAlive()) {
+                it.remove();
+                decoder.destroy();
+            }
+        }
+    }
+
+    synchronized int getIdleCount() {
+        return idleDecoders.size();
+    }
+
+    /**
+     * Destroys all idle decoders and stops sweeping. The pool can still be
+     * used afterwards.
+     */
+    synchronized void shutdown() {
+        for (FfmpegDecoder decoder : idleDecoders) {
+            decoder.destroy();
+        }
+        idleDecoders.clear();
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+            sweeper = null;
+        }
+    }
+
+    /**
+     * @return Idle timeout in seconds.
+     */
+    private int getIdleTimeout() {
+        return Configuration.getInstance().getInt(IDLE_TIMEOUT_CONFIG_KEY,
+                DEFAULT_IDLE_TIMEOUT);
+    }
+
+    private int getMaxSize() {
+        return Configuration.getInstance().getInt(MAX_SIZE_CONFIG_KEY,
+                DEFAULT_MAX_SIZE);
+    }
+
+}
@@ -0,0 +1,184 @@
+package edu.illinois.library.cantaloupe.processor;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Presentation times of the keyframes in the first video stream of a
+ * video, relative to the start of the stream.</p>
+ *
+ * <p>The index is built by having ffprobe list the video packets, which
+ * requires demuxing, but not decoding, the whole file. It's built only once
+ * per file (as long as the file doesn't change) and cached in memory.</p>
+ */
+final class FfmpegKeyframeIndex {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(FfmpegKeyframeIndex.class);
+
+    /** Maximum number of indexes to cache. Each is a few KB at most. */
+    private static final int MAX_CACHED_INDEXES = 256;
+
+    private static final Map<String, FfmpegKeyframeIndex> cache =
+            Collections.synchronizedMap(
+                    new LinkedHashMap<String, FfmpegKeyframeIndex>(16, 0.75f, true) {
+                        @Override
+                        protected boolean removeEldestEntry(
+                                Map.Entry<String, FfmpegKeyframeIndex> eldest) {
+                            return size() > MAX_CACHED_INDEXES;
+                        }
+                    });
+
+    /** Sorted keyframe times in seconds. */
+    private final double[] times;
+
+    /**
+     * @param ffprobePath Path to the ffprobe binary.
+     * @param file        Video file.
+     * @return            Index of the given file, from the cache if
+     *                    possible.
+     */
+    static FfmpegKeyframeIndex forFile(String ffprobePath, File file)
+            throws IOException, InterruptedException {
+        final String key = file.getAbsolutePath() + ":" +
+                file.lastModified() + ":" + file.length();
+        FfmpegKeyframeIndex index = cache.get(key);
+        if (index == null) {
+            index = read(ffprobePath, file);
+            cache.put(key, index);
+        }
+        return index;
+    }
+
+    private static FfmpegKeyframeIndex read(String ffprobePath, File file)
+            throws IOException, InterruptedException {
+        final List<String> command = Arrays.asList(
+                ffprobePath,
+                "-v", "quiet",
+                "-select_streams", "v:0",
+                "-show_entries", "stream=start_time:packet=pts_time,flags",
+                "-of", "csv",
+                file.getAbsolutePath());
+        final ProcessBuilder pb = new ProcessBuilder(command);
+        pb.redirectErrorStream(true);
+        logger.info("Invoking {}", StringUtils.join(pb.command(), " "));
+
+        final long start = System.currentTimeMillis();
+        final Process process = pb.start();
+        final List<String> lines = new ArrayList<>();
+        try (InputStream is = process.getInputStream()) {
+            final BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(is, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            process.destroy();
+        }
+        final int code = process.waitFor();
+        if (code != 0) {
+            throw new IOException("ffprobe returned with code " + code);
+        }
+        final FfmpegKeyframeIndex index = parse(lines);
+        logger.debug("read(): indexed {} keyframes of {} in {} msec",
+                index.size(), file, System.currentTimeMillis() - start);
+        return index;
+    }
+
+    /**
+     * @param lines Lines of ffprobe CSV output, like
+     *              <code>packet,1.001000,K_</code> and
+     *              <code>stream,0.500000</code>, in any order.
+     */
+    static FfmpegKeyframeIndex parse(List<String> lines) {
+        final List<Double> packetTimes = new ArrayList<>();
+        double startTime = 0;
+        for (String line : lines) {
+            final String[] parts = line.trim().split(",");
+            try {
+                if (parts.length >= 3 && parts[0].equals("packet") &&
+                        parts[2].contains("K")) {
+                    packetTimes.add(Double.parseDouble(parts[1]));
+                } else if (parts.length >= 2 && parts[0].equals("stream")) {
+                    startTime = Double.parseDouble(parts[1]);
+                }
+            } catch (NumberFormatException e) {
+                // Probably "N/A"; skip it.
+            }
+        }
+        final double[] times = new double[packetTimes.size()];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = Math.max(0, packetTimes.get(i) - startTime);
+        }
+        Arrays.sort(times);
+        return new FfmpegKeyframeIndex(times);
+    }
+
+    private FfmpegKeyframeIndex(double[] times) {
+        this.times = times;
+    }
+
+    /**
+     * @param index Keyframe index.
+     * @return      Time of the keyframe in seconds.
+     */
+    double getTime(int index) {
+        return times[index];
+    }
+
+    /**
+     * @param index Keyframe index.
+     * @return      Time that will cause ffmpeg, when seeking to the keyframe
+     *              at or before it, to land on the keyframe at the given
+     *              index, even if its reported time has been rounded: the
+     *              midpoint between it and the next keyframe.
+     */
+    double getSeekTime(int index) {
+        if (index + 1 < times.length) {
+            return (times[index] + times[index + 1]) / 2.0;
+        }
+        return times[index] + 0.5;
+    }
+
+    /**
+     * @param seconds Time in seconds.
+     * @return        Index of the keyframe nearest to the given time, or
+     *                <code>-1</code> if there are no keyframes.
+     */
+    int nearest(double seconds) {
+        if (times.length == 0) {
+            return -1;
+        }
+        int i = Arrays.binarySearch(times, seconds);
+        if (i >= 0) {
+            return i;
+        }
+        i = -i - 1; // insertion point
+        if (i == 0) {
+            return 0;
+        } else if (i == times.length) {
+            return times.length - 1;
+        }
+        return (seconds - times[i - 1] <= times[i] - seconds) ? i - 1 : i;
+    }
+
+    int size() {
+        return times.length;
+    }
+
+}
@@ -23,6 +23,7 @@ import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathFactory;
 import java.awt.Dimension;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
@@ -36,15 +37,36 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
- * Processor that uses the ffmpeg command-line tool to extract video frames,
+ * <p>Processor that uses the ffmpeg command-line tool to extract video frames,
  * and the ffprobe tool to get video information. Works with ffmpeg 2.8 (other
- * versions untested).
+ * versions untested).</p>
+ *
+ * <h3>Keyframe seeking</h3>
+ *
+ * <p>When {@link #KEYFRAME_SEEK_ENABLED_CONFIG_KEY} is <code>true</code>
+ * (it is <code>false</code> by default, as it changes which frame is
+ * returned),
+ * a request for a frame at a particular time returns the nearest keyframe,
+ * as long as it's within {@link #KEYFRAME_SEEK_MAX_DISTANCE_CONFIG_KEY}
+ * seconds of the time. Keyframes are located via a
+ * {@link FfmpegKeyframeIndex} and read by an {@link FfmpegDecoderPool}, so
+ * that the sequential requests made while scrubbing through a video reuse
+ * the same ffmpeg process instead of starting a new one and seeking each
+ * time. Otherwise, ffmpeg decodes the exact frame at the requested time,
+ * starting from the keyframe before it.</p>
  */
 class FfmpegProcessor extends AbstractJava2DProcessor implements FileProcessor {
 
     private static Logger logger = LoggerFactory.
             getLogger(FfmpegProcessor.class);
 
+    static final String KEYFRAME_SEEK_ENABLED_CONFIG_KEY =
+            "FfmpegProcessor.keyframe_seek.enabled";
+    static final String KEYFRAME_SEEK_MAX_DISTANCE_CONFIG_KEY =
+            "FfmpegProcessor.keyframe_seek.max_distance";
+
+    private static final double DEFAULT_KEYFRAME_SEEK_MAX_DISTANCE = 2;
+
     private static final String PATH_TO_BINARIES_CONFIG_KEY =
             "FfmpegProcessor.path_to_binaries";
 
@@ -53,6 +75,7 @@ class FfmpegProcessor extends AbstractJava2DProcessor implements FileProcessor {
 
     private double durationSec = 0;
     private Info imageInfo;
+    private FfmpegKeyframeIndex keyframeIndex;
     private File sourceFile;
 
     /**
@@ -153,6 +176,28 @@ class FfmpegProcessor extends AbstractJava2DProcessor implements FileProcessor {
             throws ProcessorException {
         super.process(opList, imageInfo, outputStream);
 
+        final String time = (String) opList.getOptions().get("time");
+        if (time != null && isKeyframeSeekEnabled()) {
+            try {
+                final byte[] keyframe = readKeyframe(parseTime(time));
+                if (keyframe != null) {
+                    final ImageReader reader = new ImageReader(
+                            new InputStreamStreamSource(
+                                    new ByteArrayInputStream(keyframe)),
+                            Format.BMP);
+                    try {
+                        postProcess(reader.read(), null, opList, imageInfo,
+                                null, false, outputStream);
+                    } finally {
+                        reader.dispose();
+                    }
+                    return;
+                }
+            } catch (Exception e) {
+                throw new ProcessorException(e.getMessage(), e);
+            }
+        }
+
         final ByteArrayOutputStream errorBucket = new ByteArrayOutputStream();
         try {
             final ProcessBuilder pb = getProcessBuilder(opList);
@@ -195,9 +240,60 @@ class FfmpegProcessor extends AbstractJava2DProcessor implements FileProcessor {
         }
     }
 
+    /**
+     * @param seconds Requested time.
+     * @return        Keyframe nearest to the given time as a BMP image, or
+     *                <code>null</code> if there is no keyframe close enough
+     *                to it.
+     */
+    private byte[] readKeyframe(double seconds) throws Exception {
+        if (keyframeIndex == null) {
+            keyframeIndex = FfmpegKeyframeIndex.forFile(getPath("ffprobe"),
+                    sourceFile);
+        }
+        final int keyframe = keyframeIndex.nearest(seconds);
+        if (keyframe < 0 || Math.abs(keyframeIndex.getTime(keyframe) -
+                seconds) > getKeyframeSeekMaxDistance()) {
+            return null;
+        }
+        logger.debug("readKeyframe(): using keyframe {} at {} sec for {} sec",
+                keyframe, keyframeIndex.getTime(keyframe), seconds);
+        return FfmpegDecoderPool.getInstance().read(getPath("ffmpeg"),
+                sourceFile, keyframeIndex, keyframe);
+    }
+
+    private double getKeyframeSeekMaxDistance() {
+        return Configuration.getInstance().getDouble(
+                KEYFRAME_SEEK_MAX_DISTANCE_CONFIG_KEY,
+                DEFAULT_KEYFRAME_SEEK_MAX_DISTANCE);
+    }
+
+    private boolean isKeyframeSeekEnabled() {
+        return Configuration.getInstance().getBoolean(
+                KEYFRAME_SEEK_ENABLED_CONFIG_KEY, false);
+    }
+
+    /**
+     * @param time Time in <code>HH:MM:SS</code> format.
+     * @return     Number of seconds.
+     * @throws IllegalArgumentException If the time is in the wrong format.
+     */
+    private static long parseTime(String time) {
+        final Matcher matcher = timePattern.matcher(time);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Invalid time format. " +
+                    "(HH:MM::SS is required.)");
+        }
+        final String[] parts = time.split(":");
+        return (Integer.parseInt(parts[0]) * 60 * 60) +
+                (Integer.parseInt(parts[1]) * 60) +
+                Integer.parseInt(parts[2]);
+    }
+
     @Override
     public void setSourceFile(File sourceFile) {
         this.sourceFile = sourceFile;
+        this.keyframeIndex = null;
     }
 
     /**
@@ -208,12 +304,12 @@ class FfmpegProcessor extends AbstractJava2DProcessor implements FileProcessor {
     private ProcessBuilder getProcessBuilder(OperationList opList) {
         final List<String> command = new ArrayList<>();
         command.add(getPath("ffmpeg"));
-        command.add("-i");
-        command.add(sourceFile.getAbsolutePath());
 
         // Seeking to a particular time is supported via a "time" URL query
         // parameter which gets injected into an -ss flag. FFmpeg supports
-        // additional syntax, but this will do for now.
+        // additional syntax, but this will do for now. As an input option,
+        // -ss seeks to the keyframe before the time and decodes only from
+        // there, instead of decoding everything from the beginning.
         // https://trac.ffmpeg.org/wiki/Seeking
         String time = (String) opList.getOptions().get("time");
         if (time != null) { // we assume it's already been validated.
@@ -221,6 +317,9 @@ class FfmpegProcessor extends AbstractJava2DProcessor implements FileProcessor {
             command.add(time);
         }
 
+        command.add("-i");
+        command.add(sourceFile.getAbsolutePath());
+
         command.add("-nostdin");
         command.add("-v");
         command.add("quiet");
@@ -247,21 +346,11 @@ class FfmpegProcessor extends AbstractJava2DProcessor implements FileProcessor {
         // Check that the "time" option, if supplied, is in the correct format.
         final String timeStr = (String) opList.getOptions().get("time");
         if (timeStr != null) {
-            Matcher matcher = timePattern.matcher(timeStr);
-            if (matcher.matches()) {
-                // Check that the supplied time is within the bounds of the
-                // video's duration.
-                final String[] parts = timeStr.split(":");
-                final long seconds = (Integer.parseInt(parts[0]) * 60 * 60) +
-                        (Integer.parseInt(parts[1]) * 60) +
-                        Integer.parseInt(parts[2]);
-                if (seconds > durationSec) {
-                    throw new IllegalArgumentException(
-                            "Time is beyond the length of the video.");
-                }
-            } else {
-                throw new IllegalArgumentException("Invalid time format. " +
-                        "(HH:MM::SS is required.)");
+            // Check that the supplied time is within the bounds of the
+            // video's duration.
+            if (parseTime(timeStr) > durationSec) {
+                throw new IllegalArgumentException(
+                        "Time is beyond the length of the video.");
             }
         }
     }
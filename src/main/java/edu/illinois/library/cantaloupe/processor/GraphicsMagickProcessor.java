@@ -29,6 +29,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -53,6 +56,17 @@ import java.util.Set;
  *     {@link Processor#RESPECT_ORIENTATION_CONFIG_KEY} setting. The
  *     orientation is always respected.</li>
  * </ul>
+ *
+ * <h3>Batch mode</h3>
+ *
+ * <p>By default, a new <code>gm</code> process is started for every
+ * command. When {@link #BATCH_ENABLED_CONFIG_KEY} is <code>true</code>,
+ * commands are instead executed by a pool of long-lived <code>gm batch</code>
+ * processes (see {@link GraphicsMagickWorkerPool}), which saves the cost of
+ * starting a process and loading its modules and configuration for every
+ * request. As <code>gm batch</code> reads commands from its standard input,
+ * source and derivative images are passed through temporary files in this
+ * mode.</p>
  */
 class GraphicsMagickProcessor extends AbstractMagickProcessor
         implements StreamProcessor {
@@ -60,6 +74,9 @@ class GraphicsMagickProcessor extends AbstractMagickProcessor
     private static Logger logger = LoggerFactory.
             getLogger(GraphicsMagickProcessor.class);
 
+    static final String BATCH_ENABLED_CONFIG_KEY =
+            "GraphicsMagickProcessor.batch.enabled";
+
     private static final String PATH_TO_BINARIES_CONFIG_KEY =
             "GraphicsMagickProcessor.path_to_binaries";
 
@@ -172,12 +189,23 @@ class GraphicsMagickProcessor extends AbstractMagickProcessor
         return formats;
     }
 
+    /**
+     * @param ops        Operations to apply.
+     * @param imageInfo  Information about the source image.
+     * @param inputPath  Path of the source image, or <code>-</code> for
+     *                   standard input.
+     * @param outputPath Path of the derivative image, or <code>-</code> for
+     *                   standard output.
+     * @return           Arguments of the <code>convert</code> command,
+     *                   excluding the <code>gm</code> binary.
+     */
     private List<String> getConvertArguments(final OperationList ops,
-                                             final Info imageInfo) {
+                                             final Info imageInfo,
+                                             final String inputPath,
+                                             final String outputPath) {
         final List<String> args = new ArrayList<>();
-        args.add(getPath("gm"));
         args.add("convert");
-        args.add(format.getPreferredExtension() + ":-"); // read from stdin
+        args.add(format.getPreferredExtension() + ":" + inputPath);
 
         // Normalization needs to happen before cropping to maintain the
         // intensity of cropped regions relative to the full image.
@@ -326,8 +354,8 @@ class GraphicsMagickProcessor extends AbstractMagickProcessor
         args.add("-depth");
         args.add("8");
 
-        // Write to stdout.
-        args.add(encode.getFormat().getPreferredExtension() + ":-");
+        args.add(encode.getFormat().getPreferredExtension() + ":" +
+                outputPath);
 
         return args;
     }
@@ -382,6 +410,15 @@ class GraphicsMagickProcessor extends AbstractMagickProcessor
         return "None";
     }
 
+    /**
+     * @return Whether commands are executed by
+     *         {@link GraphicsMagickWorkerPool}.
+     */
+    private boolean isBatchEnabled() {
+        return Configuration.getInstance().
+                getBoolean(BATCH_ENABLED_CONFIG_KEY, false);
+    }
+
     @Override
     public void process(final OperationList ops,
                         final Info imageInfo,
@@ -389,8 +426,15 @@ class GraphicsMagickProcessor extends AbstractMagickProcessor
             throws ProcessorException {
         super.process(ops, imageInfo, outputStream);
 
+        if (isBatchEnabled()) {
+            processInBatch(ops, imageInfo, outputStream);
+            return;
+        }
+
         try (InputStream inputStream = streamSource.newInputStream()) {
-            final List<String> args = getConvertArguments(ops, imageInfo);
+            final List<String> args = getConvertArguments(ops, imageInfo,
+                    "-", "-");
+            args.add(0, getPath("gm"));
             final ProcessStarter cmd = new ProcessStarter();
             cmd.setInputProvider(new Pipe(inputStream, null));
             cmd.setOutputConsumer(new Pipe(null, outputStream));
@@ -401,8 +445,56 @@ class GraphicsMagickProcessor extends AbstractMagickProcessor
         }
     }
 
+    private void processInBatch(final OperationList ops,
+                                final Info imageInfo,
+                                final OutputStream outputStream)
+            throws ProcessorException {
+        Path inputFile = null;
+        Path outputFile = null;
+        try {
+            inputFile = copySourceToTempFile();
+            outputFile = Files.createTempFile("cantaloupe-gm", null);
+            final List<String> args = getConvertArguments(ops, imageInfo,
+                    inputFile.toString(), outputFile.toString());
+            logger.info("processInBatch(): executing {}",
+                    StringUtils.join(args, " "));
+            GraphicsMagickWorkerPool.getInstance().execute(getPath("gm"), args);
+            Files.copy(outputFile, outputStream);
+        } catch (Exception e) {
+            throw new ProcessorException(e.getMessage(), e);
+        } finally {
+            deleteQuietly(inputFile);
+            deleteQuietly(outputFile);
+        }
+    }
+
+    private Path copySourceToTempFile() throws IOException {
+        final Path file = Files.createTempFile("cantaloupe-gm", null);
+        try (InputStream inputStream = streamSource.newInputStream()) {
+            Files.copy(inputStream, file,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            deleteQuietly(file);
+            throw e;
+        }
+        return file;
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                logger.warn("Failed to delete {}: {}", file, e.getMessage());
+            }
+        }
+    }
+
     @Override
     public Info readImageInfo() throws ProcessorException {
+        if (isBatchEnabled()) {
+            return readImageInfoInBatch();
+        }
         try (InputStream inputStream = streamSource.newInputStream()) {
             final List<String> args = new ArrayList<>();
             args.add(getPath("gm"));
@@ -424,28 +516,59 @@ class GraphicsMagickProcessor extends AbstractMagickProcessor
                     StringUtils.join(args, " ").replace("\n", ""));
             cmd.run(args);
 
-            final List<String> output = consumer.getOutput();
-            final int width = Integer.parseInt(output.get(0));
-            final int height = Integer.parseInt(output.get(1));
-            // GM is not tile-aware, so set the tile size to the full
-            // dimensions.
-            final Info info = new Info(width, height, width, height,
-                    getSourceFormat());
-            // Do we have an EXIF orientation to deal with?
-            if (output.size() > 2) {
-                try {
-                    final int exifOrientation = Integer.parseInt(output.get(2));
-                    final Orientation orientation =
-                            Orientation.forEXIFOrientation(exifOrientation);
-                    info.getImages().get(0).setOrientation(orientation);
-                } catch (IllegalArgumentException e) {
-                    // whatever
-                }
-            }
-            return info;
+            return newInfo(consumer.getOutput());
         } catch (Exception e) {
             throw new ProcessorException(e.getMessage(), e);
         }
     }
 
+    private Info readImageInfoInBatch() throws ProcessorException {
+        Path inputFile = null;
+        try {
+            inputFile = copySourceToTempFile();
+            final List<String> args = new ArrayList<>();
+            args.add("identify");
+            args.add("-ping");
+            args.add("-format");
+            // GM expands the escaped line breaks, which can't be written to
+            // gm batch literally.
+            args.add("%w\\n%h\\n%[EXIF:Orientation]\\n");
+            args.add(format.getPreferredExtension() + ":" + inputFile);
+            logger.info("readImageInfoInBatch(): executing {}",
+                    StringUtils.join(args, " "));
+            return newInfo(GraphicsMagickWorkerPool.getInstance().
+                    execute(getPath("gm"), args));
+        } catch (Exception e) {
+            throw new ProcessorException(e.getMessage(), e);
+        } finally {
+            deleteQuietly(inputFile);
+        }
+    }
+
+    /**
+     * @param output Lines of output of <code>gm identify</code>: width,
+     *               height, and optionally EXIF orientation.
+     */
+    private Info newInfo(List<String> output) {
+        final int width = Integer.parseInt(output.get(0).trim());
+        final int height = Integer.parseInt(output.get(1).trim());
+        // GM is not tile-aware, so set the tile size to the full
+        // dimensions.
+        final Info info = new Info(width, height, width, height,
+                getSourceFormat());
+        // Do we have an EXIF orientation to deal with?
+        if (output.size() > 2) {
+            try {
+                final int exifOrientation =
+                        Integer.parseInt(output.get(2).trim());
+                final Orientation orientation =
+                        Orientation.forEXIFOrientation(exifOrientation);
+                info.getImages().get(0).setOrientation(orientation);
+            } catch (IllegalArgumentException e) {
+                // whatever
+            }
+        }
+        return info;
+    }
+
 }
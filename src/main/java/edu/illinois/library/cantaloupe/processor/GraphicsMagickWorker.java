@@ -0,0 +1,202 @@
+package edu.illinois.library.cantaloupe.processor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Long-lived <code>gm batch</code> process that executes GraphicsMagick
+ * commands (like <code>convert</code> or <code>identify</code>) written to
+ * its standard input, one per line, avoiding the cost of starting a new
+ * process for each one.</p>
+ *
+ * <p>After each command, <code>gm batch</code> writes a pass or fail marker
+ * to its standard output. Its standard error is merged into its standard
+ * output, and both are read by the thread that executes the command, up to
+ * the marker, so that no additional threads are needed to drain them.
+ * Because the streams carry commands and not image data, images are read
+ * from and written to files.</p>
+ *
+ * <p>Instances are not thread-safe; they are meant to be used by one thread
+ * at a time via {@link GraphicsMagickWorkerPool}.</p>
+ */
+final class GraphicsMagickWorker {
+
+    /**
+     * Thrown when GraphicsMagick reports that a command failed.
+     */
+    static class GraphicsMagickException extends IOException {
+        GraphicsMagickException(String message) {
+            super(message);
+        }
+    }
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(GraphicsMagickWorker.class);
+
+    private static final String FAIL_MARKER = "__CANTALOUPE_GM_FAIL__";
+    private static final String PASS_MARKER = "__CANTALOUPE_GM_PASS__";
+
+    private boolean isBroken = false;
+    private int jobCount = 0;
+    private final Process process;
+    private final BufferedReader reader;
+    private final Writer writer;
+
+    /**
+     * @param args Arguments.
+     * @return     Line that <code>gm batch</code> will split into the given
+     *             arguments.
+     */
+    static String toCommandLine(List<String> args) {
+        final StringBuilder builder = new StringBuilder();
+        for (String arg : args) {
+            if (builder.length() > 0) {
+                builder.append(' ');
+            }
+            builder.append('"');
+            for (char c : arg.toCharArray()) {
+                if (c == '"' || c == '\\') {
+                    builder.append('\\');
+                } else if (c == '\n' || c == '\r') {
+                    throw new IllegalArgumentException(
+                            "Arguments may not contain line breaks");
+                }
+                builder.append(c);
+            }
+            builder.append('"');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Starts a <code>gm batch</code> process.
+     *
+     * @param gmPath Path to the <code>gm</code> binary.
+     */
+    GraphicsMagickWorker(String gmPath) throws IOException {
+        final ProcessBuilder pb = new ProcessBuilder(Arrays.asList(
+                gmPath, "batch",
+                "-echo", "off",
+                "-escape", "unix",
+                "-feedback", "on",
+                "-pass", PASS_MARKER,
+                "-fail", FAIL_MARKER,
+                "-stop-on-error", "off",
+                "-"));
+        pb.redirectErrorStream(true);
+        logger.debug("Starting {}", String.join(" ", pb.command()));
+        process = pb.start();
+        reader = new BufferedReader(new InputStreamReader(
+                process.getInputStream(), StandardCharsets.UTF_8));
+        writer = new OutputStreamWriter(
+                process.getOutputStream(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Stops the process, which will exit upon reaching the end of its input.
+     */
+    void destroy() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            // The process is gone anyway.
+        }
+        process.destroy();
+    }
+
+    /**
+     * Executes a command, blocking until it completes.
+     *
+     * @param args      Command arguments, excluding the <code>gm</code>
+     *                  binary, e.g. <code>convert in.jpg out.png</code>.
+     * @param timeout   Timeout in seconds, after which the process is
+     *                  destroyed. May be <code>0</code> for no timeout.
+     * @param scheduler Scheduler on which to schedule the timeout.
+     * @return          Output of the command, one line per element.
+     * @throws GraphicsMagickException If the command failed. The instance
+     *                                 remains usable.
+     * @throws IOException             If communication with the process
+     *                                 failed. The instance is then broken.
+     */
+    List<String> execute(List<String> args,
+                         long timeout,
+                         ScheduledExecutorService scheduler)
+            throws IOException {
+        if (isBroken) {
+            throw new IOException("Worker is broken");
+        }
+        jobCount++;
+        ScheduledFuture<?> timeoutFuture = null;
+        if (timeout > 0) {
+            timeoutFuture = scheduler.schedule(() -> {
+                logger.warn("execute(): timed out after {} seconds; " +
+                        "destroying the worker", timeout);
+                process.destroyForcibly();
+            }, timeout, TimeUnit.SECONDS);
+        }
+        try {
+            writer.write(toCommandLine(args));
+            writer.write('\n');
+            writer.flush();
+
+            final List<String> output = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.contains(PASS_MARKER)) {
+                    addLine(output, line.replace(PASS_MARKER, ""));
+                    return output;
+                } else if (line.contains(FAIL_MARKER)) {
+                    addLine(output, line.replace(FAIL_MARKER, ""));
+                    throw new GraphicsMagickException(
+                            String.join(" ", output).trim());
+                }
+                output.add(line);
+            }
+            throw new IOException("gm batch exited unexpectedly" +
+                    (output.isEmpty() ? "" : ": " + String.join(" ", output)));
+        } catch (GraphicsMagickException e) {
+            throw e;
+        } catch (IOException e) {
+            isBroken = true;
+            throw e;
+        } finally {
+            if (timeoutFuture != null) {
+                timeoutFuture.cancel(false);
+            }
+        }
+    }
+
+    private static void addLine(List<String> output, String line) {
+        if (!line.isEmpty()) {
+            output.add(line);
+        }
+    }
+
+    /**
+     * @return Number of commands that have been executed.
+     */
+    int getJobCount() {
+        return jobCount;
+    }
+
+    /**
+     * @return Whether the instance can execute commands.
+     */
+    boolean isUsable() {
+        return !isBroken && process.isAlive();
+    }
+
+}
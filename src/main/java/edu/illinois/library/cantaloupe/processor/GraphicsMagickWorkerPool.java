@@ -0,0 +1,258 @@
+package edu.illinois.library.cantaloupe.processor;
+
+import edu.illinois.library.cantaloupe.config.Configuration;
+import edu.illinois.library.cantaloupe.util.JMXUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Pool of {@link GraphicsMagickWorker}s, which are started on demand, up
+ * to {@link #POOL_SIZE_CONFIG_KEY}, and reused until they have executed
+ * {@link #MAX_JOBS_PER_WORKER_CONFIG_KEY} commands, after which they are
+ * replaced, to bound the effect of any leaks in GraphicsMagick. Workers that
+ * have died or stopped responding are discarded.</p>
+ *
+ * <p>Idle workers are reused in LIFO order, so that when there is little
+ * load, the same few workers handle it.</p>
+ *
+ * <p>The instance is thread-safe, and is registered with JMX.</p>
+ */
+class GraphicsMagickWorkerPool implements GraphicsMagickWorkerPoolMBean {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(GraphicsMagickWorkerPool.class);
+
+    static final String MAX_JOBS_PER_WORKER_CONFIG_KEY =
+            "GraphicsMagickProcessor.batch.max_jobs_per_worker";
+    static final String POOL_SIZE_CONFIG_KEY =
+            "GraphicsMagickProcessor.batch.pool_size";
+    static final String TIMEOUT_CONFIG_KEY =
+            "GraphicsMagickProcessor.batch.timeout";
+
+    private static final int DEFAULT_MAX_JOBS_PER_WORKER = 1000;
+    private static final int DEFAULT_TIMEOUT = 60;
+
+    /**
+     * Interval at which threads waiting for a worker check whether they can
+     * start a new one (e.g. because one was discarded).
+     */
+    private static final long POLL_INTERVAL_MSEC = 100;
+
+    private static GraphicsMagickWorkerPool instance;
+
+    private final AtomicLong failedJobCount = new AtomicLong(0);
+    private final BlockingDeque<GraphicsMagickWorker> idleWorkers =
+            new LinkedBlockingDeque<>();
+    private final AtomicLong jobCount = new AtomicLong(0);
+    private final AtomicLong recycledWorkerCount = new AtomicLong(0);
+    private final AtomicLong startedWorkerCount = new AtomicLong(0);
+    private final AtomicInteger waitingCount = new AtomicInteger(0);
+    private final AtomicInteger workerCount = new AtomicInteger(0);
+
+    /** Destroys workers whose commands have timed out. */
+    private final ScheduledExecutorService timeoutScheduler =
+            Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable,
+                        "GraphicsMagickWorkerPool-timeout");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    static synchronized GraphicsMagickWorkerPool getInstance() {
+        if (instance == null) {
+            instance = new GraphicsMagickWorkerPool();
+            JMXUtil.registerMBean(instance,
+                    GraphicsMagickWorkerPool.class.getSimpleName(),
+                    GraphicsMagickProcessor.class.getSimpleName());
+        }
+        return instance;
+    }
+
+    /**
+     * Shuts down the shared instance, if it has been created.
+     */
+    static synchronized void shutdownInstance() {
+        if (instance != null) {
+            instance.shutdown();
+        }
+    }
+
+    GraphicsMagickWorkerPool() {}
+
+    /**
+     * Executes the given command on an available worker, waiting for one to
+     * become available if necessary.
+     *
+     * @param gmPath Path to the <code>gm</code> binary, used to start new
+     *               workers.
+     * @param args   Command arguments, excluding the <code>gm</code> binary.
+     * @return       Output of the command, one line per element.
+     * @throws IOException If the command failed, or no worker became
+     *                     available within the timeout.
+     */
+    List<String> execute(String gmPath, List<String> args)
+            throws IOException, InterruptedException {
+        final long timeout = getTimeout();
+        final GraphicsMagickWorker worker = borrow(gmPath, timeout);
+        boolean succeeded = false;
+        try {
+            jobCount.incrementAndGet();
+            final List<String> output =
+                    worker.execute(args, timeout, timeoutScheduler);
+            succeeded = true;
+            return output;
+        } finally {
+            if (!succeeded) {
+                failedJobCount.incrementAndGet();
+            }
+            release(worker);
+        }
+    }
+
+    /**
+     * @param timeout Maximum number of seconds to wait for a worker, or
+     *                <code>0</code> to wait indefinitely.
+     */
+    private GraphicsMagickWorker borrow(String gmPath, long timeout)
+            throws IOException, InterruptedException {
+        final long deadline = (timeout > 0) ?
+                System.currentTimeMillis() + timeout * 1000 : Long.MAX_VALUE;
+        while (true) {
+            GraphicsMagickWorker worker = idleWorkers.pollFirst();
+            if (worker == null) {
+                final int count = workerCount.get();
+                if (count < getPoolSize()) {
+                    if (workerCount.compareAndSet(count, count + 1)) {
+                        try {
+                            worker = new GraphicsMagickWorker(gmPath);
+                            startedWorkerCount.incrementAndGet();
+                            return worker;
+                        } catch (IOException e) {
+                            workerCount.decrementAndGet();
+                            throw e;
+                        }
+                    }
+                    continue;
+                }
+                if (System.currentTimeMillis() >= deadline) {
+                    throw new IOException("Timed out waiting for a " +
+                            "GraphicsMagick worker");
+                }
+                waitingCount.incrementAndGet();
+                try {
+                    worker = idleWorkers.pollFirst(POLL_INTERVAL_MSEC,
+                            TimeUnit.MILLISECONDS);
+                } finally {
+                    waitingCount.decrementAndGet();
+                }
+            }
+            if (worker != null) {
+                if (worker.isUsable()) {
+                    return worker;
+                }
+                discard(worker);
+            }
+        }
+    }
+
+    private void release(GraphicsMagickWorker worker) {
+        if (!worker.isUsable()) {
+            logger.info("release(): discarding a dead worker");
+            discard(worker);
+        } else if (worker.getJobCount() >= getMaxJobsPerWorker() ||
+                workerCount.get() > getPoolSize()) {
+            logger.debug("release(): recycling a worker after {} jobs",
+                    worker.getJobCount());
+            recycledWorkerCount.incrementAndGet();
+            discard(worker);
+        } else {
+            idleWorkers.offerFirst(worker);
+        }
+    }
+
+    private void discard(GraphicsMagickWorker worker) {
+        worker.destroy();
+        workerCount.decrementAndGet();
+    }
+
+    /**
+     * Destroys all idle workers. Workers that are in use will be destroyed
+     * when they are released, if they are no longer needed.
+     */
+    void shutdown() {
+        GraphicsMagickWorker worker;
+        while ((worker = idleWorkers.pollFirst()) != null) {
+            discard(worker);
+        }
+    }
+
+    private int getMaxJobsPerWorker() {
+        return Configuration.getInstance().getInt(
+                MAX_JOBS_PER_WORKER_CONFIG_KEY, DEFAULT_MAX_JOBS_PER_WORKER);
+    }
+
+    /**
+     * @return Timeout in seconds.
+     */
+    private long getTimeout() {
+        return Configuration.getInstance().getLong(TIMEOUT_CONFIG_KEY,
+                DEFAULT_TIMEOUT);
+    }
+
+    @Override
+    public long getFailedJobCount() {
+        return failedJobCount.get();
+    }
+
+    @Override
+    public int getIdleWorkerCount() {
+        return idleWorkers.size();
+    }
+
+    @Override
+    public long getJobCount() {
+        return jobCount.get();
+    }
+
+    /**
+     * @return Value of {@link #POOL_SIZE_CONFIG_KEY}, or else the number of
+     *         available processors.
+     */
+    @Override
+    public int getPoolSize() {
+        return Math.max(1, Configuration.getInstance().getInt(
+                POOL_SIZE_CONFIG_KEY,
+                Runtime.getRuntime().availableProcessors()));
+    }
+
+    @Override
+    public long getRecycledWorkerCount() {
+        return recycledWorkerCount.get();
+    }
+
+    @Override
+    public long getStartedWorkerCount() {
+        return startedWorkerCount.get();
+    }
+
+    @Override
+    public int getWaitingCount() {
+        return waitingCount.get();
+    }
+
+    @Override
+    public int getWorkerCount() {
+        return workerCount.get();
+    }
+
+}
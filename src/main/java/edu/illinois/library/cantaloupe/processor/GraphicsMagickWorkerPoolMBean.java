@@ -0,0 +1,49 @@
+package edu.illinois.library.cantaloupe.processor;
+
+/**
+ * JMX management interface of {@link GraphicsMagickWorkerPool}.
+ */
+public interface GraphicsMagickWorkerPoolMBean {
+
+    /**
+     * @return Number of commands that have failed.
+     */
+    long getFailedJobCount();
+
+    /**
+     * @return Number of workers that are waiting for commands.
+     */
+    int getIdleWorkerCount();
+
+    /**
+     * @return Number of commands that have been executed.
+     */
+    long getJobCount();
+
+    /**
+     * @return Maximum number of workers.
+     */
+    int getPoolSize();
+
+    /**
+     * @return Number of workers that have been replaced after reaching their
+     *         maximum number of commands.
+     */
+    long getRecycledWorkerCount();
+
+    /**
+     * @return Number of workers that have been started.
+     */
+    long getStartedWorkerCount();
+
+    /**
+     * @return Number of threads waiting for a worker to become available.
+     */
+    int getWaitingCount();
+
+    /**
+     * @return Number of running workers, whether idle or busy.
+     */
+    int getWorkerCount();
+
+}
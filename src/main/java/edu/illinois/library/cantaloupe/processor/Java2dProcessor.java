@@ -17,6 +17,16 @@ import java.util.Set;
 class Java2dProcessor extends AbstractJava2DProcessor
         implements StreamProcessor, FileProcessor {
 
+    /**
+     * @return Maximum reduction factor by which the source image can be
+     *         subsampled while it is being read.
+     * @see ImageReader#getMaxSubsamplingReductionFactor
+     */
+    @Override
+    public int getMaxReductionFactor() {
+        return ImageReader.getMaxSubsamplingReductionFactor(getSourceFormat());
+    }
+
     @Override
     public void process(final OperationList ops,
                         final Info imageInfo,
@@ -0,0 +1,202 @@
+package edu.illinois.library.cantaloupe.processor;
+
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * <p>Reads the image size, tile size, component count, and number of
+ * decomposition levels of a JPEG2000 image directly from its main codestream
+ * header (the SIZ and COD marker segments), without decoding it or invoking
+ * an external tool.</p>
+ *
+ * <p>Both box-structured (JP2/JPX) files and raw codestreams are supported.
+ * Only the first codestream is read, and only as far as the first tile-part,
+ * which is typically within the first few hundred bytes of the file.</p>
+ *
+ * @see <a href="https://www.itu.int/rec/T-REC-T.800">ITU-T T.800</a>
+ */
+final class Jpeg2000MetadataReader {
+
+    private static final int JP2C_BOX_TYPE = 0x6a703263; // "jp2c"
+
+    private static final int SOC_MARKER = 0xff4f;
+    private static final int SIZ_MARKER = 0xff51;
+    private static final int COD_MARKER = 0xff52;
+    private static final int SOT_MARKER = 0xff90;
+
+    private int height;
+    private int numComponents;
+    private int numDecompositionLevels = -1;
+    private int tileHeight;
+    private int tileWidth;
+    private int width;
+
+    /**
+     * @param file JPEG2000 file.
+     * @return     Instance containing the metadata of the given file.
+     * @throws IOException If the file is not a valid JPEG2000 image.
+     */
+    static Jpeg2000MetadataReader read(File file) throws IOException {
+        try (ImageInputStream is = new FileImageInputStream(file)) {
+            return read(is);
+        }
+    }
+
+    /**
+     * @param is Stream positioned at the start of a JPEG2000 image. It is
+     *           not closed.
+     * @return   Instance containing the metadata of the image.
+     * @throws IOException If the image is not a valid JPEG2000 image.
+     */
+    static Jpeg2000MetadataReader read(ImageInputStream is)
+            throws IOException {
+        final Jpeg2000MetadataReader reader = new Jpeg2000MetadataReader();
+        reader.seekToCodestream(is);
+        reader.readCodestreamHeader(is);
+        return reader;
+    }
+
+    private Jpeg2000MetadataReader() {}
+
+    /**
+     * @return Height of the image at full resolution.
+     */
+    int getHeight() {
+        return height;
+    }
+
+    int getNumComponents() {
+        return numComponents;
+    }
+
+    /**
+     * @return Number of wavelet decomposition levels of the default coding
+     *         style, which is the maximum number of times that the image can
+     *         be halved in size when decoding.
+     */
+    int getNumDecompositionLevels() {
+        return numDecompositionLevels;
+    }
+
+    /**
+     * @return Nominal tile height, or the image height if the image is not
+     *         tiled.
+     */
+    int getTileHeight() {
+        return tileHeight;
+    }
+
+    /**
+     * @return Nominal tile width, or the image width if the image is not
+     *         tiled.
+     */
+    int getTileWidth() {
+        return tileWidth;
+    }
+
+    /**
+     * @return Width of the image at full resolution.
+     */
+    int getWidth() {
+        return width;
+    }
+
+    /**
+     * Positions the given stream at the start of the first codestream,
+     * which is either the start of the stream, or the contents of the first
+     * Contiguous Codestream box.
+     */
+    private void seekToCodestream(ImageInputStream is) throws IOException {
+        final long start = is.getStreamPosition();
+        if (is.readUnsignedShort() == SOC_MARKER) {
+            is.seek(start);
+            return;
+        }
+        is.seek(start);
+
+        long boxStart = start;
+        while (true) {
+            is.seek(boxStart);
+            long length = is.readUnsignedInt();
+            final int type = is.readInt();
+            long headerLength = 8;
+            if (length == 1) {
+                length = is.readLong();
+                headerLength = 16;
+            }
+            if (type == JP2C_BOX_TYPE) {
+                is.seek(boxStart + headerLength);
+                return;
+            }
+            if (length == 0) {
+                // The box extends to the end of the file.
+                break;
+            } else if (length < headerLength) {
+                throw new IOException("Invalid box length: " + length);
+            }
+            boxStart += length;
+        }
+        throw new IOException("No codestream found");
+    }
+
+    private void readCodestreamHeader(ImageInputStream is) throws IOException {
+        if (is.readUnsignedShort() != SOC_MARKER) {
+            throw new IOException("Invalid codestream (missing SOC marker)");
+        }
+        boolean sizFound = false;
+        while (!sizFound || numDecompositionLevels < 0) {
+            final int marker = is.readUnsignedShort();
+            if ((marker & 0xff00) != 0xff00) {
+                throw new IOException(String.format(
+                        "Invalid marker: 0x%04x", marker));
+            }
+            if (marker == SOT_MARKER) {
+                break;
+            }
+            final int segmentLength = is.readUnsignedShort();
+            final long segmentEnd = is.getStreamPosition() + segmentLength - 2;
+            switch (marker) {
+                case SIZ_MARKER:
+                    readSIZ(is);
+                    sizFound = true;
+                    break;
+                case COD_MARKER:
+                    readCOD(is);
+                    break;
+            }
+            is.seek(segmentEnd);
+        }
+        if (!sizFound) {
+            throw new IOException("Invalid codestream (missing SIZ segment)");
+        }
+    }
+
+    private void readSIZ(ImageInputStream is) throws IOException {
+        is.readUnsignedShort(); // Rsiz (capabilities)
+        final long xSiz = is.readUnsignedInt();
+        final long ySiz = is.readUnsignedInt();
+        final long xOSiz = is.readUnsignedInt();
+        final long yOSiz = is.readUnsignedInt();
+        final long xTSiz = is.readUnsignedInt();
+        final long yTSiz = is.readUnsignedInt();
+        is.readUnsignedInt(); // XTOsiz
+        is.readUnsignedInt(); // YTOsiz
+        numComponents = is.readUnsignedShort();
+
+        width = (int) (xSiz - xOSiz);
+        height = (int) (ySiz - yOSiz);
+        tileWidth = (int) Math.min(xTSiz, width);
+        tileHeight = (int) Math.min(yTSiz, height);
+    }
+
+    private void readCOD(ImageInputStream is) throws IOException {
+        is.readUnsignedByte();  // Scod
+        is.readUnsignedByte();  // progression order
+        is.readUnsignedShort(); // number of layers
+        is.readUnsignedByte();  // multiple component transformation
+        numDecompositionLevels = is.readUnsignedByte();
+    }
+
+}
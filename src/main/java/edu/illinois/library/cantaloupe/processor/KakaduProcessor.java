@@ -12,21 +12,10 @@ import edu.illinois.library.cantaloupe.operation.Crop;
 import edu.illinois.library.cantaloupe.processor.imageio.ImageReader;
 import edu.illinois.library.cantaloupe.processor.imageio.ImageWriter;
 import edu.illinois.library.cantaloupe.resolver.InputStreamStreamSource;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathFactory;
 import java.awt.Dimension;
 import java.awt.image.BufferedImage;
 import java.io.BufferedInputStream;
@@ -36,7 +25,6 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.StringReader;
 import java.math.RoundingMode;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -45,13 +33,11 @@ import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Scanner;
 import java.util.Set;
 import java.util.UUID;
 
 /**
- * <p>Processor using the Kakadu kdu_expand and kdu_jp2info command-line
- * tools. Written against version 7.7, but should work with other versions,
+ * <p>Processor using the Kakadu kdu_expand command-line tool. Written against version 7.7, but should work with other versions,
  * as long as their command-line interface is compatible. (There is also a JNI
  * binding available for Kakadu, but the author does not have access to the
  * Kakadu SDK.</p>
@@ -71,6 +57,10 @@ import java.util.UUID;
  * The temporary symlink is created in the static initializer and deleted on
  * exit.</p>
  *
+ * <p>Image info is read from the codestream header by {@link
+ * Jpeg2000MetadataReader} rather than by invoking kdu_jp2info, so that info
+ * requests don't require a process to be forked.</p>
+ *
  * @see <a href="http://kakadusoftware.com/wp-content/uploads/2014/06/Usage_Examples-v7_7.txt">
  *     Usage Examples for the Demonstration Applications Supplied with Kakadu
  *     V7.7</a>
@@ -87,8 +77,8 @@ class KakaduProcessor extends AbstractJava2DProcessor implements FileProcessor {
 
     private static Path stdoutSymlink;
 
-    /** will cache the output of kdu_jp2info */
-    private Document infoDocument;
+    /** Lazy-initialized by {@link #readMetadata()}. */
+    private Jpeg2000MetadataReader metadata;
 
     static {
         // Due to a quirk of kdu_expand, this processor requires access to
@@ -151,6 +141,25 @@ class KakaduProcessor extends AbstractJava2DProcessor implements FileProcessor {
         return outputFormats;
     }
 
+    /**
+     * @return Maximum value passed to kdu_expand's -reduce argument.
+     */
+    @Override
+    public int getMaxReductionFactor() {
+        return MAX_REDUCTION_FACTOR;
+    }
+
+    /**
+     * @param metadata Metadata of the source image.
+     * @return         Maximum reduction factor that can be used with the
+     *                 source image, which can't have been reduced any more
+     *                 times than it was decomposed when it was encoded.
+     */
+    private int getMaxReductionFactor(Jpeg2000MetadataReader metadata) {
+        return Math.max(0, Math.min(MAX_REDUCTION_FACTOR,
+                metadata.getNumDecompositionLevels()));
+    }
+
     /**
      * Computes the effective size of an image after all crop operations are
      * applied but excluding any scale operations, in order to use
@@ -171,8 +180,9 @@ class KakaduProcessor extends AbstractJava2DProcessor implements FileProcessor {
     }
 
     /**
-     * Gets the size of the given image by parsing the XML output of
-     * kdu_jp2info.
+     * Reads the size and tile size of the image from its codestream header.
+     * (kdu_jp2info is not used, as it would have to be invoked for every
+     * request.)
      *
      * @return
      * @throws ProcessorException
@@ -180,99 +190,26 @@ class KakaduProcessor extends AbstractJava2DProcessor implements FileProcessor {
     @Override
     public Info readImageInfo() throws ProcessorException {
         try {
-            if (infoDocument == null) {
-                readImageInfoDocument();
-            }
-            // Run an XPath query to find the width and height
-            XPath xpath = XPathFactory.newInstance().newXPath();
-            XPathExpression expr = xpath.compile("//codestream/width");
-            final int width = (int) Math.round((double) expr.evaluate(
-                    infoDocument, XPathConstants.NUMBER));
-            expr = xpath.compile("//codestream/height");
-            final int height = (int) Math.round((double) expr.evaluate(
-                    infoDocument, XPathConstants.NUMBER));
-
-            final Info info = new Info(width, height,
-                    getSourceFormat());
-
-            // Run another XPath query to find tile sizes
-            expr = xpath.compile("//codestream/SIZ");
-            String result = (String) expr.evaluate(infoDocument,
-                    XPathConstants.STRING);
-            // Read the tile dimensions out of the Stiles={n,n} line
-            try (final Scanner scan = new Scanner(result)) {
-                while (scan.hasNextLine()) {
-                    String line = scan.nextLine().trim();
-                    if (line.startsWith("Stiles=")) {
-                        String[] parts = StringUtils.split(line, ",");
-                        if (parts.length == 2) {
-                            final int dim1 = Integer.parseInt(parts[0].replaceAll("[^0-9]", ""));
-                            final int dim2 = Integer.parseInt(parts[1].replaceAll("[^0-9]", ""));
-                            int tileWidth, tileHeight;
-                            if (width > height) {
-                                tileWidth = Math.max(dim1, dim2);
-                                tileHeight = Math.min(dim1, dim2);
-                            } else {
-                                tileWidth = Math.min(dim1, dim2);
-                                tileHeight = Math.max(dim1, dim2);
-                            }
-                            info.getImages().get(0).tileWidth = tileWidth;
-                            info.getImages().get(0).tileHeight = tileHeight;
-                        }
-                    }
-                }
-            }
+            final Jpeg2000MetadataReader metadata = readMetadata();
+            final Info info = new Info(metadata.getWidth(),
+                    metadata.getHeight(), getSourceFormat());
+            info.getImages().get(0).tileWidth = metadata.getTileWidth();
+            info.getImages().get(0).tileHeight = metadata.getTileHeight();
             return info;
-        } catch (Exception e) {
+        } catch (IOException e) {
             throw new ProcessorException(e.getMessage(), e);
         }
     }
 
     /**
-     * Executes kdu_jp2info and parses the output into a Document object,
-     * saved in an instance variable.
-     *
-     * @throws SAXException
-     * @throws IOException
-     * @throws ParserConfigurationException
+     * @return Metadata of the source image, which is read the first time this
+     *         method is called and cached.
      */
-    private void readImageInfoDocument()
-            throws SAXException, IOException, ParserConfigurationException {
-        final List<String> command = new ArrayList<>();
-        command.add(getPath("kdu_jp2info"));
-        command.add("-i");
-        command.add(sourceFile.getAbsolutePath());
-        command.add("-siz");
-
-        final ProcessBuilder pb = new ProcessBuilder(command);
-        pb.redirectErrorStream(true);
-        logger.info("Invoking {}", StringUtils.join(pb.command(), " "));
-        Process process = pb.start();
-        ByteArrayOutputStream outputBucket = new ByteArrayOutputStream();
-
-        try (InputStream processInputStream = process.getInputStream()) {
-            IOUtils.copy(processInputStream, outputBucket);
-            // This will be an XML string if all went well, otherwise it will
-            // be non-XML text.
-            final String kduOutput = outputBucket.toString("UTF-8").trim();
-
-            // A typical error message looks like:
-            // -------------
-            // Kakadu Error:
-            // Input file is neither a raw codestream nor a box-structured file.  Not a
-            // JPEG2000 file.
-            if (kduOutput.startsWith("--")) {
-                final String kduMessage =
-                        kduOutput.substring(kduOutput.lastIndexOf("Kakadu Error:") + 13).
-                                replace("\n", " ").trim();
-                throw new IOException("Failed to read the source file. " +
-                        "(kdu_jp2info output: " + kduMessage + ")");
-            } else {
-                DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-                DocumentBuilder db = dbf.newDocumentBuilder();
-                infoDocument = db.parse(new InputSource(new StringReader(kduOutput)));
-            }
+    private Jpeg2000MetadataReader readMetadata() throws IOException {
+        if (metadata == null) {
+            metadata = Jpeg2000MetadataReader.read(sourceFile);
         }
+        return metadata;
     }
 
     @Override
@@ -292,7 +229,8 @@ class KakaduProcessor extends AbstractJava2DProcessor implements FileProcessor {
                     getOrDefault(NORMALIZE_CONFIG_KEY, false);
 
             final ProcessBuilder pb = getProcessBuilder(
-                    opList, imageInfo.getSize(), reductionFactor, normalize);
+                    opList, imageInfo.getSize(), reductionFactor, normalize,
+                    getMaxReductionFactor(readMetadata()));
             logger.info("Invoking {}", StringUtils.join(pb.command(), " "));
             final Process process = pb.start();
 
@@ -360,12 +298,14 @@ class KakaduProcessor extends AbstractJava2DProcessor implements FileProcessor {
      *                   modified.
      * @param ignoreCrop Ignore any cropping directives provided in
      *                   <code>opList</code>.
+     * @param maxReductionFactor Maximum value of the -reduce argument.
      * @return kdu_expand command invocation string
      */
     private ProcessBuilder getProcessBuilder(final OperationList opList,
                                              final Dimension imageSize,
                                              final ReductionFactor reduction,
-                                             final boolean ignoreCrop) {
+                                             final boolean ignoreCrop,
+                                             final int maxReductionFactor) {
         final List<String> command = new ArrayList<>();
         command.add(getPath("kdu_expand"));
         command.add("-quiet");
@@ -433,7 +373,7 @@ class KakaduProcessor extends AbstractJava2DProcessor implements FileProcessor {
                 final Dimension tileSize = getCroppedSize(opList, imageSize);
                 if (!ignoreCrop) {
                     reduction.factor = scale.getReductionFactor(
-                            tileSize, MAX_REDUCTION_FACTOR).factor;
+                            tileSize, maxReductionFactor).factor;
                     if (reduction.factor > 0) {
                         command.add("-reduce");
                         command.add(reduction.factor + "");
@@ -449,7 +389,7 @@ class KakaduProcessor extends AbstractJava2DProcessor implements FileProcessor {
     }
 
     private void reset() {
-        infoDocument = null;
+        metadata = null;
     }
 
 }
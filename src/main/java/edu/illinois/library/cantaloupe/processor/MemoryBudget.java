@@ -0,0 +1,322 @@
+package edu.illinois.library.cantaloupe.processor;
+
+import edu.illinois.library.cantaloupe.config.Configuration;
+import edu.illinois.library.cantaloupe.image.Info;
+import edu.illinois.library.cantaloupe.operation.Crop;
+import edu.illinois.library.cantaloupe.operation.OperationList;
+import edu.illinois.library.cantaloupe.operation.ReductionFactor;
+import edu.illinois.library.cantaloupe.operation.Scale;
+import edu.illinois.library.cantaloupe.util.JMXUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>Global pool of memory shared by all processors, from which each request
+ * reserves its estimated decoding footprint for the duration of its
+ * processing. When the pool is exhausted, requests wait for other requests to
+ * release their reservations, and are rejected if they can't get one in
+ * time.</p>
+ *
+ * <p>Whereas {@link edu.illinois.library.cantaloupe.resource.AbstractResource#MAX_PIXELS_CONFIG_KEY}
+ * limits the size of any single request, this limits the size of all
+ * concurrent requests combined, so that a burst of large requests can't
+ * exhaust the heap together.</p>
+ *
+ * <p>Footprints are estimated by {@link #estimateFootprint} from the
+ * information available before processing, and are therefore approximate.
+ * A reservation larger than the whole budget is reduced to the size of the
+ * budget, so that any request can still be processed, just not concurrently
+ * with any other.</p>
+ *
+ * <p>The budget size is read from the application configuration whenever it
+ * is needed, so it may be changed while the application is running.</p>
+ *
+ * <p>This class is thread-safe, and its instance is registered with JMX.</p>
+ */
+public class MemoryBudget implements MemoryBudgetMBean {
+
+    /**
+     * Reserved portion of the budget. Must be {@link #close() closed} when
+     * the request is complete.
+     */
+    public class Reservation implements AutoCloseable {
+
+        private final AtomicBoolean isClosed = new AtomicBoolean(false);
+        private final long size;
+        private final long startMsec = System.currentTimeMillis();
+
+        private Reservation(long size) {
+            this.size = size;
+        }
+
+        /**
+         * @return Number of bytes reserved.
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Returns the reserved bytes to the budget. Safe to call more than
+         * once.
+         */
+        @Override
+        public void close() {
+            if (isClosed.compareAndSet(false, true)) {
+                release(size, System.currentTimeMillis() - startMsec);
+            }
+        }
+
+    }
+
+    private static final Logger logger = LoggerFactory.
+            getLogger(MemoryBudget.class);
+
+    static final String BUDGET_CONFIG_KEY = "processor.memory_budget";
+    static final String TIMEOUT_CONFIG_KEY = "processor.memory_budget.timeout";
+
+    /**
+     * Assumed size of a decoded pixel: four 8-bit bands. Neither the source
+     * image's band count nor its sample size is known before it is read, so
+     * this is the common worst case.
+     */
+    static final int BYTES_PER_PIXEL = 4;
+
+    private static final int DEFAULT_TIMEOUT = 10;
+
+    private static volatile MemoryBudget instance;
+
+    /** Guarded by {@link #lock}. */
+    private long reservedSize = 0;
+
+    /** Guarded by {@link #lock}. */
+    private int waitingCount = 0;
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition sizeReleased = lock.newCondition();
+
+    private final AtomicLong rejectedCount = new AtomicLong(0);
+    private final AtomicLong releaseCount = new AtomicLong(0);
+    private final AtomicLong reservationCount = new AtomicLong(0);
+    private final AtomicLong totalHoldMsec = new AtomicLong(0);
+    private final AtomicLong totalWaitMsec = new AtomicLong(0);
+
+    /**
+     * <p>Estimates the amount of heap memory that processing the given
+     * operation list will require: the decoded source region, plus the
+     * output raster.</p>
+     *
+     * <p>The size of the decoded region takes into account the cropped
+     * region and the reduction factor that the reader will be able to use,
+     * which is limited by the number of pyramid levels in the source image
+     * and by <code>maxReductionFactor</code>, whichever is greater.</p>
+     *
+     * @param opList             Operation list to process.
+     * @param info               Information about the source image.
+     * @param maxReductionFactor Maximum reduction factor that the processor
+     *                           can apply while decoding, regardless of the
+     *                           number of pyramid levels in the source image.
+     * @return Estimated footprint in bytes.
+     */
+    public static long estimateFootprint(OperationList opList,
+                                         Info info,
+                                         int maxReductionFactor) {
+        final Dimension fullSize = info.getSize();
+        Rectangle region = new Rectangle(0, 0, fullSize.width, fullSize.height);
+        final Crop crop = (Crop) opList.getFirst(Crop.class);
+        if (crop != null) {
+            region = crop.getRectangle(fullSize);
+        }
+
+        final int maxFactor = Math.max(info.getImages().size() - 1,
+                maxReductionFactor);
+        final Scale scale = (Scale) opList.getFirst(Scale.class);
+        int factor = 0;
+        // N.B. ReductionFactor.forScale() treats a max factor of 0 as
+        // unlimited.
+        if (scale != null && maxFactor > 0) {
+            final ReductionFactor rf = scale.getReductionFactor(
+                    region.getSize(), maxFactor);
+            factor = Math.max(0, Math.min(rf.factor, maxFactor));
+        }
+        final double reducedScale = 1 / Math.pow(2, factor);
+        final long decodedPixels =
+                (long) Math.ceil(region.width * reducedScale) *
+                (long) Math.ceil(region.height * reducedScale);
+
+        final Dimension resultingSize = opList.getResultingSize(fullSize);
+        final long outputPixels =
+                (long) resultingSize.width * (long) resultingSize.height;
+
+        return (decodedPixels + outputPixels) * BYTES_PER_PIXEL;
+    }
+
+    /**
+     * @return Shared instance.
+     */
+    public static MemoryBudget getInstance() {
+        MemoryBudget budget = instance;
+        if (budget == null) {
+            synchronized (MemoryBudget.class) {
+                budget = instance;
+                if (budget == null) {
+                    budget = new MemoryBudget();
+                    JMXUtil.registerMBean(budget,
+                            MemoryBudget.class.getSimpleName(), "processor");
+                    instance = budget;
+                }
+            }
+        }
+        return budget;
+    }
+
+    MemoryBudget() {}
+
+    /**
+     * Reserves the given number of bytes, waiting up to
+     * {@link #TIMEOUT_CONFIG_KEY} seconds for them to become available.
+     *
+     * @param size Number of bytes to reserve.
+     * @return Reservation, which must be closed.
+     * @throws ProcessorSaturatedException If the bytes could not be reserved
+     *                                     in time.
+     * @throws ProcessorException          If the calling thread was
+     *                                     interrupted while waiting.
+     */
+    public Reservation reserve(long size) throws ProcessorException {
+        final long capacity = getCapacity();
+        if (capacity <= 0) {
+            return new Reservation(0);
+        }
+        size = Math.min(size, capacity);
+
+        final long start = System.currentTimeMillis();
+        long nanosRemaining = TimeUnit.SECONDS.toNanos(getTimeoutSeconds());
+        lock.lock();
+        try {
+            waitingCount++;
+            try {
+                while (reservedSize + size > getCapacity() &&
+                        reservedSize > 0) {
+                    if (nanosRemaining <= 0) {
+                        rejectedCount.incrementAndGet();
+                        logger.warn("reserve(): unable to reserve {} bytes " +
+                                        "({} of {} reserved)",
+                                size, reservedSize, getCapacity());
+                        throw new ProcessorSaturatedException(
+                                "Not enough memory is available to handle " +
+                                        "the request.",
+                                getRetryAfterSeconds());
+                    }
+                    nanosRemaining = sizeReleased.awaitNanos(nanosRemaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ProcessorException(
+                        "Interrupted while waiting for memory", e);
+            } finally {
+                waitingCount--;
+            }
+            reservedSize += size;
+        } finally {
+            lock.unlock();
+        }
+        reservationCount.incrementAndGet();
+        totalWaitMsec.addAndGet(System.currentTimeMillis() - start);
+        return new Reservation(size);
+    }
+
+    private void release(long size, long heldMsec) {
+        lock.lock();
+        try {
+            reservedSize -= size;
+            sizeReleased.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (size > 0) {
+            releaseCount.incrementAndGet();
+            totalHoldMsec.addAndGet(heldMsec);
+        }
+    }
+
+    @Override
+    public double getAverageHoldTime() {
+        final long count = releaseCount.get();
+        return (count > 0) ? totalHoldMsec.get() / (double) count : 0;
+    }
+
+    @Override
+    public double getAverageWaitTime() {
+        final long count = reservationCount.get();
+        return (count > 0) ? totalWaitMsec.get() / (double) count : 0;
+    }
+
+    /**
+     * @return Value of {@link #BUDGET_CONFIG_KEY} in bytes, or else half of
+     *         the maximum heap size if it is not set, or 0 if it is set to
+     *         0.
+     */
+    @Override
+    public long getCapacity() {
+        final int megabytes = Configuration.getInstance().
+                getInt(BUDGET_CONFIG_KEY, -1);
+        if (megabytes < 0) {
+            return Runtime.getRuntime().maxMemory() / 2;
+        }
+        return megabytes * 1024L * 1024L;
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    @Override
+    public long getReservedSize() {
+        lock.lock();
+        try {
+            return reservedSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of seconds after which a rejected request is likely to
+     *         succeed: the mean time for which reservations are held, i.e.
+     *         roughly the time it takes for enough memory to be released, or
+     *         else, if no reservation has been released yet, the same value
+     *         that {@link ProcessingQueue} uses.
+     */
+    int getRetryAfterSeconds() {
+        if (releaseCount.get() < 1) {
+            return ProcessingQueue.getRetryAfterSeconds();
+        }
+        return (int) Math.max(1, Math.ceil(getAverageHoldTime() / 1000.0));
+    }
+
+    private int getTimeoutSeconds() {
+        return Configuration.getInstance().getInt(TIMEOUT_CONFIG_KEY,
+                DEFAULT_TIMEOUT);
+    }
+
+    @Override
+    public int getWaitingCount() {
+        lock.lock();
+        try {
+            return waitingCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
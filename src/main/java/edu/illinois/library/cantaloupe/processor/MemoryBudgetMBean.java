@@ -0,0 +1,41 @@
+package edu.illinois.library.cantaloupe.processor;
+
+/**
+ * JMX management interface of {@link MemoryBudget}.
+ */
+public interface MemoryBudgetMBean {
+
+    /**
+     * @return Mean time for which reservations have been held, in
+     *         milliseconds.
+     */
+    double getAverageHoldTime();
+
+    /**
+     * @return Mean time that requests have waited for a reservation, in
+     *         milliseconds.
+     */
+    double getAverageWaitTime();
+
+    /**
+     * @return Size of the budget in bytes, or 0 if unlimited.
+     */
+    long getCapacity();
+
+    /**
+     * @return Number of requests that have been rejected because no
+     *         reservation could be made in time.
+     */
+    long getRejectedCount();
+
+    /**
+     * @return Number of bytes currently reserved.
+     */
+    long getReservedSize();
+
+    /**
+     * @return Number of requests currently waiting for a reservation.
+     */
+    int getWaitingCount();
+
+}
@@ -12,7 +12,6 @@ import edu.illinois.library.cantaloupe.operation.Crop;
 import edu.illinois.library.cantaloupe.processor.imageio.ImageReader;
 import edu.illinois.library.cantaloupe.processor.imageio.ImageWriter;
 import edu.illinois.library.cantaloupe.resolver.InputStreamStreamSource;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,13 +32,11 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Scanner;
 import java.util.Set;
 import java.util.UUID;
 
 /**
- * <p>Processor using the OpenJPEG opj_decompress and opj_dump command-line
- * tools. Written against version 2.1.0, but should work with other versions,
+ * <p>Processor using the OpenJPEG opj_decompress command-line tool. Written against version 2.1.0, but should work with other versions,
  * as long as their command-line interface is compatible. (There is also a JNI
  * binding available, but it is broken as of this writing.)</p>
  *
@@ -58,6 +55,10 @@ import java.util.UUID;
  * (which only exists on Unix), which will enable us to accomplish this.
  * The temporary symlink is created in the static initializer and deleted on
  * exit.</p>
+ *
+ * <p>Image info is read from the codestream header by {@link
+ * Jpeg2000MetadataReader} rather than by invoking opj_dump, so that info
+ * requests don't require a process to be forked.</p>
  */
 class OpenJpegProcessor extends AbstractJava2DProcessor
         implements FileProcessor {
@@ -72,8 +73,8 @@ class OpenJpegProcessor extends AbstractJava2DProcessor
 
     private static Path stdoutSymlink;
 
-    // will cache opj_dump output
-    private String imageInfo;
+    /** Lazy-initialized by {@link #readMetadata()}. */
+    private Jpeg2000MetadataReader metadata;
 
     static {
         // Due to a quirk of opj_decompress, this processor requires access to
@@ -136,6 +137,25 @@ class OpenJpegProcessor extends AbstractJava2DProcessor
         return outputFormats;
     }
 
+    /**
+     * @return Maximum value passed to opj_decompress's -r argument.
+     */
+    @Override
+    public int getMaxReductionFactor() {
+        return MAX_REDUCTION_FACTOR;
+    }
+
+    /**
+     * @param metadata Metadata of the source image.
+     * @return         Maximum reduction factor that can be used with the
+     *                 source image, which can't have been reduced any more
+     *                 times than it was decomposed when it was encoded.
+     */
+    private int getMaxReductionFactor(Jpeg2000MetadataReader metadata) {
+        return Math.max(0, Math.min(MAX_REDUCTION_FACTOR,
+                metadata.getNumDecompositionLevels()));
+    }
+
     /**
      * Computes the effective size of an image after all crop operations are
      * applied but excluding any scale operations, in order to use
@@ -156,7 +176,9 @@ class OpenJpegProcessor extends AbstractJava2DProcessor
     }
 
     /**
-     * Gets the size of the given image by parsing the output of opj_dump.
+     * Reads the size and tile size of the image from its codestream header.
+     * (opj_dump is not used, as it would have to be invoked for every
+     * request.)
      *
      * @return
      * @throws ProcessorException
@@ -164,35 +186,13 @@ class OpenJpegProcessor extends AbstractJava2DProcessor
     @Override
     public Info readImageInfo() throws ProcessorException {
         try {
-            if (imageInfo == null) {
-                doReadImageInfo();
-            }
+            final Jpeg2000MetadataReader metadata = readMetadata();
             final Info.Image image = new Info.Image();
+            image.width = metadata.getWidth();
+            image.height = metadata.getHeight();
+            image.tileWidth = metadata.getTileWidth();
+            image.tileHeight = metadata.getTileHeight();
 
-            try (final Scanner scan = new Scanner(imageInfo)) {
-                while (scan.hasNextLine()) {
-                    String line = scan.nextLine().trim();
-                    if (line.startsWith("x1=")) {
-                        String[] parts = StringUtils.split(line, ",");
-                        for (int i = 0; i < 2; i++) {
-                            String[] kv = StringUtils.split(parts[i], "=");
-                            if (kv.length == 2) {
-                                if (i == 0) {
-                                    image.width = Integer.parseInt(kv[1].trim());
-                                } else {
-                                    image.height = Integer.parseInt(kv[1].trim());
-                                }
-                            }
-                        }
-                    } else if (line.startsWith("tdx=")) {
-                        String[] parts = StringUtils.split(line, ",");
-                        if (parts.length == 2) {
-                            image.tileWidth = Integer.parseInt(parts[0].replaceAll("[^0-9]", ""));
-                            image.tileHeight = Integer.parseInt(parts[1].replaceAll("[^0-9]", ""));
-                        }
-                    }
-                }
-            }
             final Info info = new Info();
             info.setSourceFormat(getSourceFormat());
             info.getImages().add(image);
@@ -202,33 +202,15 @@ class OpenJpegProcessor extends AbstractJava2DProcessor
         }
     }
 
-    private void doReadImageInfo() throws IOException {
-        final List<String> command = new ArrayList<>();
-        command.add(getPath("opj_dump"));
-        command.add("-i");
-        command.add(sourceFile.getAbsolutePath());
-
-        ProcessBuilder pb = new ProcessBuilder(command);
-        pb.redirectErrorStream(true);
-        logger.info("Invoking {}", StringUtils.join(pb.command(), " "));
-        Process process = pb.start();
-
-        try (InputStream processInputStream = process.getInputStream()) {
-            String opjOutput = IOUtils.toString(processInputStream, "UTF-8");
-
-            // A typical error message looks like:
-            // [ERROR] Unknown input file format: /path/to/file.jp2
-            // Known file formats are *.j2k, *.jp2, *.jpc or *.jpt
-            if (opjOutput.startsWith("[ERROR]")) {
-                final String opjMessage =
-                        opjOutput.substring(opjOutput.lastIndexOf("ERROR]") + 7,
-                                opjOutput.indexOf("\n")).trim();
-                throw new IOException("Failed to read the source file. " +
-                        "(opj_dump says: " + opjMessage + ")");
-            } else {
-                imageInfo = opjOutput;
-            }
+    /**
+     * @return Metadata of the source image, which is read the first time this
+     *         method is called and cached.
+     */
+    private Jpeg2000MetadataReader readMetadata() throws IOException {
+        if (metadata == null) {
+            metadata = Jpeg2000MetadataReader.read(sourceFile);
         }
+        return metadata;
     }
 
     @Override
@@ -248,7 +230,8 @@ class OpenJpegProcessor extends AbstractJava2DProcessor
                     getOrDefault(NORMALIZE_CONFIG_KEY, false);
 
             final ProcessBuilder pb = getProcessBuilder(
-                    opList, imageInfo.getSize(), reductionFactor, normalize);
+                    opList, imageInfo.getSize(), reductionFactor, normalize,
+                    getMaxReductionFactor(readMetadata()));
             logger.info("Invoking {}", StringUtils.join(pb.command(), " "));
             final Process process = pb.start();
 
@@ -316,12 +299,14 @@ class OpenJpegProcessor extends AbstractJava2DProcessor
      *                   modified.
      * @param ignoreCrop Ignore any cropping directives provided in
      *                   <code>opList</code>.
+     * @param maxReductionFactor Maximum value of the -r argument.
      * @return opj_decompress command invocation string
      */
     private ProcessBuilder getProcessBuilder(final OperationList opList,
                                              final Dimension imageSize,
                                              final ReductionFactor reduction,
-                                             final boolean ignoreCrop) {
+                                             final boolean ignoreCrop,
+                                             final int maxReductionFactor) {
         final List<String> command = new ArrayList<>();
         command.add(getPath("opj_decompress"));
         command.add("-i");
@@ -348,7 +333,7 @@ class OpenJpegProcessor extends AbstractJava2DProcessor
                 final Dimension tileSize = getCroppedSize(opList, imageSize);
                 if (!ignoreCrop) {
                     reduction.factor = scale.getReductionFactor(
-                            tileSize, MAX_REDUCTION_FACTOR).factor;
+                            tileSize, maxReductionFactor).factor;
                     if (reduction.factor > 0) {
                         command.add("-r");
                         command.add(reduction.factor + "");
@@ -364,7 +349,7 @@ class OpenJpegProcessor extends AbstractJava2DProcessor
     }
 
     private void reset() {
-        imageInfo = null;
+        metadata = null;
     }
 
 }
@@ -2,33 +2,51 @@ package edu.illinois.library.cantaloupe.processor;
 
 import edu.illinois.library.cantaloupe.config.ConfigurationFactory;
 import edu.illinois.library.cantaloupe.image.Info;
+import edu.illinois.library.cantaloupe.operation.Crop;
 import edu.illinois.library.cantaloupe.operation.Operation;
 import edu.illinois.library.cantaloupe.operation.OperationList;
 import edu.illinois.library.cantaloupe.operation.ReductionFactor;
 import edu.illinois.library.cantaloupe.operation.Scale;
 import edu.illinois.library.cantaloupe.image.Format;
 import edu.illinois.library.cantaloupe.operation.ValidationException;
+import edu.illinois.library.cantaloupe.processor.imageio.ImageReader;
 import edu.illinois.library.cantaloupe.processor.imageio.ImageWriter;
 import edu.illinois.library.cantaloupe.resolver.StreamSource;
 import org.apache.commons.io.IOUtils;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.rendering.PDFRenderer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Set;
 
 /**
- * Processor using the <a href="https://pdfbox.apache.org">Apache PDFBox</a>
+ * <p>Processor using the <a href="https://pdfbox.apache.org">Apache PDFBox</a>
  * library to render source PDFs, and Java 2D to perform post-rasterization
- * processing steps.
+ * processing steps.</p>
+ *
+ * <ul>
+ *     <li>Image info is computed from the crop box of the first page and the
+ *     DPI, without rendering anything.</li>
+ *     <li>When the source is a file, documents are obtained from a
+ *     {@link PdfDocumentCache} instead of being parsed anew for every
+ *     request.</li>
+ *     <li>When a request is cropped, only the cropped region of the page is
+ *     rendered.</li>
+ * </ul>
  */
 class PdfBoxProcessor extends AbstractJava2DProcessor
         implements FileProcessor, StreamProcessor {
@@ -38,12 +56,38 @@ class PdfBoxProcessor extends AbstractJava2DProcessor
 
     static final String DPI_CONFIG_KEY = "PdfBoxProcessor.dpi";
 
+    /**
+     * Function that does something with a document.
+     */
+    private interface DocumentFunction<T> {
+        T apply(PDDocument document) throws IOException;
+    }
+
+    /** Document loaded from {@link #streamSource}, if any. */
     private PDDocument doc;
     private InputStream docInputStream;
-    private Dimension imageSize;
+    private Info imageInfo;
     private File sourceFile;
     private StreamSource streamSource;
 
+    /**
+     * @param page Page.
+     * @param dpi  Rendering DPI.
+     * @return     Size of the given page when rendered at the given DPI, as
+     *             computed by {@link PDFRenderer#renderImageWithDPI}.
+     */
+    static Dimension getPageSize(PDPage page, float dpi) {
+        final float scale = dpi / 72f;
+        final PDRectangle cropBox = page.getCropBox();
+        final int width = Math.round(cropBox.getWidth() * scale);
+        final int height = Math.round(cropBox.getHeight() * scale);
+        final int rotation = page.getRotation();
+        if (rotation == 90 || rotation == 270) {
+            return new Dimension(height, width);
+        }
+        return new Dimension(width, height);
+    }
+
     private void closeResources() {
         IOUtils.closeQuietly(docInputStream);
         docInputStream = null;
@@ -84,15 +128,38 @@ class PdfBoxProcessor extends AbstractJava2DProcessor
         return streamSource;
     }
 
-    private void loadDocument() throws IOException {
-        if (doc == null) {
-            if (sourceFile != null) {
-                doc = PDDocument.load(sourceFile);
-            } else {
-                docInputStream = streamSource.newInputStream();
-                doc = PDDocument.load(docInputStream);
+    /**
+     * Applies the given function to the source document. When the source is
+     * a file, the document is borrowed from {@link PdfDocumentCache};
+     * otherwise, it's loaded from the stream source and retained until
+     * {@link #closeResources()} is called.
+     */
+    private <T> T withDocument(DocumentFunction<T> function)
+            throws IOException {
+        if (sourceFile != null) {
+            final PdfDocumentCache cache = PdfDocumentCache.getInstance();
+            final PDDocument document = cache.borrow(sourceFile);
+            boolean isUsable = false;
+            try {
+                final T result = function.apply(document);
+                isUsable = true;
+                return result;
+            } catch (IndexOutOfBoundsException e) {
+                isUsable = true;
+                throw e;
+            } finally {
+                if (isUsable) {
+                    cache.release(sourceFile, document);
+                } else {
+                    IOUtils.closeQuietly(document);
+                }
             }
         }
+        if (doc == null) {
+            docInputStream = streamSource.newInputStream();
+            doc = PDDocument.load(docInputStream);
+        }
+        return function.apply(doc);
     }
 
     @Override
@@ -131,65 +198,124 @@ class PdfBoxProcessor extends AbstractJava2DProcessor
             }
             page = Math.max(page, 1);
 
-            final BufferedImage image = readImage(page - 1, reductionFactor.factor);
-            postProcess(image, null, opList, imageInfo, reductionFactor, false,
-                    outputStream);
+            final Crop crop = getEffectiveCrop(opList, imageInfo);
+            final ReductionFactor rf = reductionFactor;
+            final int pageIndex = page - 1;
+            final BufferedImage image = withDocument(document ->
+                    readImage(document, pageIndex, rf, crop));
+            final Set<ImageReader.Hint> hints =
+                    EnumSet.noneOf(ImageReader.Hint.class);
+            if (crop != null) {
+                hints.add(ImageReader.Hint.ALREADY_CROPPED);
+            }
+            postProcess(image, hints, opList, imageInfo, reductionFactor,
+                    false, outputStream);
         } catch (IOException | IndexOutOfBoundsException e) {
             throw new ProcessorException(e.getMessage(), e);
+        } finally {
+            closeResources();
         }
     }
 
-    private BufferedImage readImage() throws IOException {
-        return readImage(0, 0);
+    /**
+     * @return The last crop operation in the given list, if it has an
+     *         effect; otherwise <code>null</code>.
+     */
+    private static Crop getEffectiveCrop(OperationList opList,
+                                         Info imageInfo) {
+        Crop crop = null;
+        for (Operation op : opList) {
+            if (op instanceof Crop) {
+                crop = (Crop) op;
+            }
+        }
+        if (crop != null && crop.hasEffect(imageInfo.getSize(), opList)) {
+            return crop;
+        }
+        return null;
     }
 
     /**
-     * @param pageIndex
+     * @param document        Document to render.
+     * @param pageIndex       Index of the page to render. If out of bounds,
+     *                        an {@link IndexOutOfBoundsException} will be
+     *                        thrown.
      * @param reductionFactor Scale factor by which to reduce the image (or
      *                        enlarge it if negative).
-     * @return Rasterized first page of the PDF.
-     * @throws IOException
+     * @param crop            Region of the page to render, or
+     *                        <code>null</code> to render the whole page.
+     * @return                Rasterized page or region of a page.
      */
-    private BufferedImage readImage(int pageIndex,
-                                    int reductionFactor) throws IOException {
-        float dpi = getDPI(reductionFactor);
+    private BufferedImage readImage(PDDocument document,
+                                    int pageIndex,
+                                    ReductionFactor reductionFactor,
+                                    Crop crop) throws IOException {
+        final float dpi = getDPI(reductionFactor.factor);
         logger.debug("readImage(): using a DPI of {} ({}x reduction factor)",
-                Math.round(dpi), reductionFactor);
-        try {
-            loadDocument();
-            // If the given page index is out of bounds, the renderer will
-            // throw an IndexOutOfBoundsException.
-            PDFRenderer renderer = new PDFRenderer(doc);
+                Math.round(dpi), reductionFactor.factor);
+        final PDFRenderer renderer = new PDFRenderer(document);
+        if (crop == null) {
             return renderer.renderImageWithDPI(pageIndex, dpi);
+        }
+
+        // Render only the cropped region, by translating the page so that
+        // the region's origin is at the origin of an image of the region's
+        // size. Drawing outside of the image bounds is clipped.
+        final Dimension pageSize =
+                getPageSize(document.getPage(pageIndex), dpi);
+        final Rectangle region = crop.getRectangle(pageSize, reductionFactor);
+        logger.debug("readImage(): rendering region {},{}/{}x{} of {}x{}",
+                region.x, region.y, region.width, region.height,
+                pageSize.width, pageSize.height);
+        final BufferedImage image = new BufferedImage(
+                Math.max(1, region.width), Math.max(1, region.height),
+                BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g2d = image.createGraphics();
+        try {
+            g2d.setBackground(Color.WHITE);
+            g2d.clearRect(0, 0, image.getWidth(), image.getHeight());
+            g2d.translate(-region.x, -region.y);
+            renderer.renderPageToGraphics(pageIndex, g2d, dpi / 72f);
         } finally {
-            closeResources();
+            g2d.dispose();
         }
+        return image;
     }
 
     @Override
     public Info readImageInfo() throws ProcessorException {
         try {
-            if (imageSize == null) {
-                // This is a very inefficient method of getting the size.
-                // Unfortunately, it's the only choice PDFBox offers.
-                BufferedImage image = readImage();
-                imageSize = new Dimension(image.getWidth(), image.getHeight());
+            if (imageInfo == null) {
+                final float dpi = getDPI(0);
+                imageInfo = withDocument(document -> {
+                    final Dimension size =
+                            getPageSize(document.getPage(0), dpi);
+                    final Info info = new Info(size.width, size.height,
+                            size.width, size.height, getSourceFormat());
+                    info.setNumPages(document.getNumberOfPages());
+                    return info;
+                });
             }
-            return new Info(imageSize.width, imageSize.height,
-                    imageSize.width, imageSize.height, getSourceFormat());
-        } catch (IOException e) {
+            return imageInfo;
+        } catch (IOException | IndexOutOfBoundsException e) {
             throw new ProcessorException(e.getMessage(), e);
+        } finally {
+            closeResources();
         }
     }
 
     @Override
     public void setSourceFile(File sourceFile) {
+        closeResources();
+        this.imageInfo = null;
         this.streamSource = null;
         this.sourceFile = sourceFile;
     }
 
     @Override
     public void setStreamSource(StreamSource streamSource) {
+        closeResources();
+        this.imageInfo = null;
         this.sourceFile = null;
         this.streamSource = streamSource;
     }
@@ -206,16 +332,17 @@ class PdfBoxProcessor extends AbstractJava2DProcessor
                 final int page = Integer.parseInt(pageStr);
                 if (page > 0) {
                     // Check that the page is actually contained in the PDF.
+                    final int numPages;
                     try {
-                        loadDocument();
-                        if (page > doc.getNumberOfPages()) {
-                            throw new ValidationException(
-                                    "Page number is out-of-bounds.");
-                        }
+                        numPages = withDocument(PDDocument::getNumberOfPages);
                     } catch (IOException e) {
                         closeResources();
                         throw new ProcessorException(e.getMessage(), e);
                     }
+                    if (page > numPages) {
+                        throw new ValidationException(
+                                "Page number is out-of-bounds.");
+                    }
                 } else {
                     throw new ValidationException(
                             "Page number is out-of-bounds.");
@@ -0,0 +1,170 @@
+package edu.illinois.library.cantaloupe.processor;
+
+import edu.illinois.library.cantaloupe.config.Configuration;
+import org.apache.commons.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Bounded, time-evicted cache of open {@link PDDocument}s, so that
+ * requests for different pages or tiles of the same PDF file don't all have
+ * to parse it again.</p>
+ *
+ * <p>As {@link PDDocument} is not thread-safe, documents are lent out
+ * exclusively: {@link #borrow} removes a document from the cache (or loads
+ * it, if there is none), and {@link #release} puts it back. Concurrent
+ * requests for the same file therefore each get their own instance, all of
+ * which may be cached afterwards, up to {@link #MAX_SIZE_CONFIG_KEY}
+ * documents in total.</p>
+ *
+ * <p>Documents are keyed by pathname, last-modified time, and size, so a
+ * changed file won't be served from the cache.</p>
+ */
+final class PdfDocumentCache {
+
+    private static final class Entry {
+        final PDDocument document;
+        final String key;
+        final long releaseTime = System.currentTimeMillis();
+
+        Entry(String key, PDDocument document) {
+            this.key = key;
+            this.document = document;
+        }
+    }
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(PdfDocumentCache.class);
+
+    static final String MAX_SIZE_CONFIG_KEY =
+            "PdfBoxProcessor.document_cache.max_size";
+    static final String TTL_CONFIG_KEY =
+            "PdfBoxProcessor.document_cache.ttl";
+
+    private static final int DEFAULT_MAX_SIZE = 10;
+    private static final int DEFAULT_TTL = 60;
+
+    private static PdfDocumentCache instance;
+
+    /** Cached documents, least recently released first. */
+    private final LinkedList<Entry> entries = new LinkedList<>();
+
+    private ScheduledExecutorService sweeper;
+
+    static synchronized PdfDocumentCache getInstance() {
+        if (instance == null) {
+            instance = new PdfDocumentCache();
+        }
+        return instance;
+    }
+
+    private static String getKey(File file) {
+        return file.getAbsolutePath() + ":" + file.lastModified() + ":" +
+                file.length();
+    }
+
+    PdfDocumentCache() {}
+
+    /**
+     * @param file PDF file.
+     * @return     Document that the caller has exclusive use of until it
+     *             passes it to {@link #release}.
+     */
+    PDDocument borrow(File file) throws IOException {
+        final String key = getKey(file);
+        synchronized (this) {
+            final Iterator<Entry> it = entries.descendingIterator();
+            while (it.hasNext()) {
+                final Entry entry = it.next();
+                if (entry.key.equals(key)) {
+                    it.remove();
+                    logger.debug("borrow(): hit for {}", file);
+                    return entry.document;
+                }
+            }
+        }
+        logger.debug("borrow(): miss for {}; loading", file);
+        return PDDocument.load(file);
+    }
+
+    /**
+     * Caches a document obtained from {@link #borrow}, or closes it if
+     * caching is disabled.
+     *
+     * @param file     File from which the document was loaded.
+     * @param document Document to cache.
+     */
+    synchronized void release(File file, PDDocument document) {
+        if (getTtl() <= 0) {
+            IOUtils.closeQuietly(document);
+            return;
+        }
+        entries.addLast(new Entry(getKey(file), document));
+        while (entries.size() > Math.max(0, getMaxSize())) {
+            IOUtils.closeQuietly(entries.removeFirst().document);
+        }
+        if (sweeper == null) {
+            sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable,
+                        "PdfDocumentCache-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            sweeper.scheduleWithFixedDelay(this::closeExpired, 1, 1,
+                    TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Closes all documents that have been cached for longer than
+     * {@link #TTL_CONFIG_KEY}.
+     */
+    synchronized void closeExpired() {
+        final long cutoff = System.currentTimeMillis() - getTtl() * 1000L;
+        final Iterator<Entry> it = entries.iterator();
+        while (it.hasNext()) {
+            final Entry entry = it.next();
+            if (entry.releaseTime < cutoff) {
+                it.remove();
+                IOUtils.closeQuietly(entry.document);
+            }
+        }
+    }
+
+    /**
+     * Closes all cached documents.
+     */
+    synchronized void purge() {
+        for (Entry entry : entries) {
+            IOUtils.closeQuietly(entry.document);
+        }
+        entries.clear();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private int getMaxSize() {
+        return Configuration.getInstance().getInt(MAX_SIZE_CONFIG_KEY,
+                DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @return Time-to-live in seconds.
+     */
+    private int getTtl() {
+        return Configuration.getInstance().getInt(TTL_CONFIG_KEY,
+                DEFAULT_TTL);
+    }
+
+}
@@ -0,0 +1,281 @@
+package edu.illinois.library.cantaloupe.processor;
+
+import edu.illinois.library.cantaloupe.config.Configuration;
+import edu.illinois.library.cantaloupe.util.JMXUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>Limits the number of requests that a given type of {@link Processor}
+ * will process concurrently, and the number of requests that may wait to be
+ * processed.</p>
+ *
+ * <p>A request is first {@link #admit() admitted}, which reserves a place in
+ * the queue and fails fast if the queue is full. It then
+ * {@link Ticket#acquireSlot() acquires a processing slot} immediately before
+ * processing, blocking until one is available or until
+ * {@link #TIMEOUT_CONFIG_KEY} seconds have elapsed, and releases it
+ * immediately afterwards. This way, requests that turn out not to need processing (e.g.
+ * because the result is found in the cache) never occupy a slot.</p>
+ *
+ * <p>Limits are read from the application configuration whenever they are
+ * needed, so they may be changed while the application is running.</p>
+ *
+ * <p>There is one instance per processor class, obtainable via
+ * {@link #forProcessor(Processor)}. Instances are thread-safe, and are
+ * registered with JMX.</p>
+ */
+public class ProcessingQueue implements ProcessingQueueMBean {
+
+    /**
+     * Represents an admitted request. Must be {@link #close() closed} when
+     * the request is complete.
+     */
+    public class Ticket implements AutoCloseable {
+
+        private final AtomicBoolean isClosed = new AtomicBoolean(false);
+        private volatile boolean hasSlot = false;
+
+        private Ticket() {}
+
+        /**
+         * Blocks until a processing slot is available, and occupies it.
+         *
+         * @throws ProcessorSaturatedException If no slot became available
+         *                                     within
+         *                                     {@link #TIMEOUT_CONFIG_KEY}
+         *                                     seconds.
+         * @throws ProcessorException          If the calling thread was
+         *                                     interrupted while waiting.
+         */
+        public void acquireSlot() throws ProcessorException {
+            if (!hasSlot) {
+                ProcessingQueue.this.acquireSlot();
+                hasSlot = true;
+            }
+        }
+
+        /**
+         * Releases the processing slot acquired by {@link #acquireSlot()},
+         * if any.
+         */
+        public void releaseSlot() {
+            if (hasSlot) {
+                hasSlot = false;
+                ProcessingQueue.this.releaseSlot();
+            }
+        }
+
+        /**
+         * Releases the processing slot, if held, and gives up the instance's
+         * place in the queue. Safe to call more than once.
+         */
+        @Override
+        public void close() {
+            if (isClosed.compareAndSet(false, true)) {
+                releaseSlot();
+                admittedCount.decrementAndGet();
+            }
+        }
+
+    }
+
+    private static final Logger logger = LoggerFactory.
+            getLogger(ProcessingQueue.class);
+
+    static final String MAX_CONCURRENT_CONFIG_KEY = "processor.max_concurrent";
+    static final String QUEUE_SIZE_CONFIG_KEY = "processor.queue_size";
+    static final String RETRY_AFTER_CONFIG_KEY = "processor.retry_after";
+    static final String TIMEOUT_CONFIG_KEY = "processor.queue_timeout";
+
+    private static final int DEFAULT_QUEUE_SIZE = 100;
+    private static final int DEFAULT_RETRY_AFTER = 5;
+    private static final int DEFAULT_TIMEOUT = 60;
+
+    private static final ConcurrentMap<String, ProcessingQueue> queues =
+            new ConcurrentHashMap<>();
+
+    private final String name;
+
+    /** Number of admitted requests, whether active or waiting. */
+    private final AtomicLong admittedCount = new AtomicLong(0);
+
+    /** Number of occupied slots. Guarded by {@link #lock}. */
+    private int activeCount = 0;
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition slotAvailable = lock.newCondition();
+
+    private final AtomicLong rejectedCount = new AtomicLong(0);
+    private final AtomicLong slotAcquisitionCount = new AtomicLong(0);
+    private final AtomicLong totalWaitMsec = new AtomicLong(0);
+
+    /**
+     * @param processor Processor instance.
+     * @return Shared instance for the class of the given processor.
+     */
+    public static ProcessingQueue forProcessor(Processor processor) {
+        final String name = processor.getClass().getSimpleName();
+        ProcessingQueue queue = queues.get(name);
+        if (queue == null) {
+            final ProcessingQueue newQueue = new ProcessingQueue(name);
+            queue = queues.putIfAbsent(name, newQueue);
+            if (queue == null) {
+                queue = newQueue;
+                JMXUtil.registerMBean(queue,
+                        ProcessingQueue.class.getSimpleName(), name);
+            }
+        }
+        return queue;
+    }
+
+    ProcessingQueue(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Reserves a place in the queue.
+     *
+     * @return Ticket representing the place in the queue.
+     * @throws ProcessorSaturatedException If the queue is full.
+     */
+    public Ticket admit() throws ProcessorSaturatedException {
+        final int maxConcurrent = getMaxConcurrent();
+        if (maxConcurrent > 0) {
+            final long capacity = maxConcurrent + getMaxQueueSize();
+            long count;
+            do {
+                count = admittedCount.get();
+                if (count >= capacity) {
+                    rejectedCount.incrementAndGet();
+                    logger.warn("admit(): {} is saturated ({} admitted)",
+                            name, count);
+                    throw new ProcessorSaturatedException(
+                            name + " is too busy to handle the request.",
+                            getRetryAfterSeconds());
+                }
+            } while (!admittedCount.compareAndSet(count, count + 1));
+        } else {
+            admittedCount.incrementAndGet();
+        }
+        return new Ticket();
+    }
+
+    /**
+     * Reserves a place in the queue even if it is full. This is for requests
+     * that were accepted without one because they were not expected to need
+     * processing, and that can no longer be rejected cleanly by the time it
+     * turns out that they do. They still wait for a slot like any other.
+     *
+     * @return Ticket representing the place in the queue.
+     */
+    public Ticket admitWithoutLimit() {
+        admittedCount.incrementAndGet();
+        return new Ticket();
+    }
+
+    private void acquireSlot() throws ProcessorException {
+        final long start = System.currentTimeMillis();
+        long nanosRemaining = TimeUnit.SECONDS.toNanos(getTimeoutSeconds());
+        lock.lock();
+        try {
+            int max;
+            while ((max = getMaxConcurrent()) > 0 && activeCount >= max) {
+                if (nanosRemaining <= 0) {
+                    rejectedCount.incrementAndGet();
+                    logger.warn("acquireSlot(): timed out waiting for a " +
+                            "slot in {} ({} active)", name, activeCount);
+                    throw new ProcessorSaturatedException(
+                            name + " is too busy to handle the request.",
+                            getRetryAfterSeconds());
+                }
+                nanosRemaining = slotAvailable.awaitNanos(nanosRemaining);
+            }
+            activeCount++;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProcessorException(
+                    "Interrupted while waiting for a processing slot", e);
+        } finally {
+            lock.unlock();
+        }
+        slotAcquisitionCount.incrementAndGet();
+        totalWaitMsec.addAndGet(System.currentTimeMillis() - start);
+    }
+
+    private void releaseSlot() {
+        lock.lock();
+        try {
+            activeCount--;
+            slotAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getActiveCount() {
+        lock.lock();
+        try {
+            return activeCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public double getAverageWaitTime() {
+        final long count = slotAcquisitionCount.get();
+        return (count > 0) ? totalWaitMsec.get() / (double) count : 0;
+    }
+
+    /**
+     * @return Value of <code>{processor name}.max_concurrent</code>, or else
+     *         {@link #MAX_CONCURRENT_CONFIG_KEY}, or else the number of
+     *         available processors.
+     */
+    @Override
+    public int getMaxConcurrent() {
+        final Configuration config = Configuration.getInstance();
+        final int defaultValue = config.getInt(MAX_CONCURRENT_CONFIG_KEY,
+                Runtime.getRuntime().availableProcessors());
+        return config.getInt(name + ".max_concurrent", defaultValue);
+    }
+
+    private int getMaxQueueSize() {
+        return Configuration.getInstance().getInt(QUEUE_SIZE_CONFIG_KEY,
+                DEFAULT_QUEUE_SIZE);
+    }
+
+    @Override
+    public int getQueuedCount() {
+        return (int) Math.max(0, admittedCount.get() - getActiveCount());
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * @return Value of {@link #RETRY_AFTER_CONFIG_KEY}.
+     */
+    static int getRetryAfterSeconds() {
+        return Configuration.getInstance().getInt(RETRY_AFTER_CONFIG_KEY,
+                DEFAULT_RETRY_AFTER);
+    }
+
+    private int getTimeoutSeconds() {
+        return Configuration.getInstance().getInt(TIMEOUT_CONFIG_KEY,
+                DEFAULT_TIMEOUT);
+    }
+
+}
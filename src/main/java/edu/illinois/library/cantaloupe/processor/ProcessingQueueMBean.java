@@ -0,0 +1,37 @@
+package edu.illinois.library.cantaloupe.processor;
+
+/**
+ * JMX management interface of {@link ProcessingQueue}.
+ */
+public interface ProcessingQueueMBean {
+
+    /**
+     * @return Number of requests currently being processed.
+     */
+    int getActiveCount();
+
+    /**
+     * @return Mean time that requests have waited for a processing slot, in
+     *         milliseconds.
+     */
+    double getAverageWaitTime();
+
+    /**
+     * @return Maximum number of requests that may be processed concurrently,
+     *         or 0 if unlimited.
+     */
+    int getMaxConcurrent();
+
+    /**
+     * @return Number of admitted requests that are not currently being
+     *         processed, i.e. the queue depth.
+     */
+    int getQueuedCount();
+
+    /**
+     * @return Number of requests that have been rejected because the queue
+     *         was full.
+     */
+    long getRejectedCount();
+
+}
@@ -40,6 +40,21 @@ public interface Processor {
      */
     Set<Format> getAvailableOutputFormats();
 
+    /**
+     * <p>Returns the maximum reduction factor that the processor can apply
+     * while decoding the source image, independently of any reduced-size
+     * images (pyramid levels) that the source image itself may contain.</p>
+     *
+     * <p>This is used to estimate how much memory processing will require.
+     * This default implementation returns 0.</p>
+     *
+     * @return Maximum reduction factor.
+     * @see MemoryBudget#estimateFootprint
+     */
+    default int getMaxReductionFactor() {
+        return 0;
+    }
+
     /**
      * @return The source format of the image to be processed.
      */
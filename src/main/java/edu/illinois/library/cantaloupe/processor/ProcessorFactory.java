@@ -29,6 +29,16 @@ public abstract class ProcessorFactory {
                 new PdfBoxProcessor()));
     }
 
+    /**
+     * Releases the resources that processors hold on to between requests,
+     * such as idle external processes. Should be called when the application
+     * is shutting down.
+     */
+    public static void shutdown() {
+        FfmpegDecoderPool.shutdownInstance();
+        GraphicsMagickWorkerPool.shutdownInstance();
+    }
+
     /**
      * Retrieves the best-match processor for the given source format. Its
      * source will not be set.
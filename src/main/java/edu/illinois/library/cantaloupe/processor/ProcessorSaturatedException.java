@@ -0,0 +1,26 @@
+package edu.illinois.library.cantaloupe.processor;
+
+/**
+ * Thrown when a request cannot be admitted for processing because too many
+ * other requests are already waiting on the same processor.
+ *
+ * @see ProcessingQueue
+ */
+public class ProcessorSaturatedException extends ProcessorException {
+
+    private int retryAfterSeconds;
+
+    public ProcessorSaturatedException(String message, int retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * @return Suggested number of seconds for the client to wait before
+     *         retrying.
+     */
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+}
@@ -281,18 +281,37 @@ abstract class AbstractImageReader {
         BufferedImage image;
 
         Crop crop = null;
+        Scale scale = null;
         for (Operation op : ops) {
             if (op instanceof Crop) {
                 crop = (Crop) op;
                 crop.applyOrientation(orientation, getSize());
+            } else if (op instanceof Scale) {
+                scale = (Scale) op;
             }
         }
-        if (crop != null && !hints.contains(ImageReader.Hint.IGNORE_CROP)) {
+        if (hints.contains(ImageReader.Hint.IGNORE_CROP)) {
+            image = iioReader.read(0);
+        } else {
             final Dimension fullSize = new Dimension(
                     iioReader.getWidth(0), iioReader.getHeight(0));
-            image = tileAwareRead(0, crop.getRectangle(fullSize), hints);
-        } else {
-            image = iioReader.read(0);
+            final Rectangle regionRect = (crop != null) ?
+                    crop.getRectangle(fullSize) :
+                    new Rectangle(0, 0, fullSize.width, fullSize.height);
+            final int factor = (scale != null) ?
+                    getSubsamplingReductionFactor(regionRect, scale) : 0;
+            if (factor > 0) {
+                reductionFactor.factor = factor;
+                image = tileAwareRead(0, regionRect, 1 << factor, hints);
+                logger.debug("read(): subsampled a {}x{} region to {}x{} " +
+                                "({}x reduction factor)",
+                        regionRect.width, regionRect.height,
+                        image.getWidth(), image.getHeight(), factor);
+            } else if (crop != null) {
+                image = tileAwareRead(0, regionRect, hints);
+            } else {
+                image = iioReader.read(0);
+            }
         }
 
         if (image == null) {
@@ -413,6 +432,28 @@ abstract class AbstractImageReader {
                                         final Rectangle region,
                                         final Set<ImageReader.Hint> hints)
             throws IOException {
+        return tileAwareRead(imageIndex, region, 1, hints);
+    }
+
+    /**
+     * Variant of {@link #tileAwareRead(int, Rectangle, Set)} that also
+     * subsamples the region while reading it.
+     *
+     * @param imageIndex  Index of the image to read from the ImageReader.
+     * @param region      Image region to retrieve.
+     * @param subsampling Read only every <code>subsampling</code>th pixel of
+     *                    every <code>subsampling</code>th row of the region.
+     * @param hints       Will be populated with information returned from
+     *                    the reader.
+     * @return Image whose size is that of the region divided by
+     *         <code>subsampling</code>, rounded up.
+     * @throws IOException
+     */
+    private BufferedImage tileAwareRead(final int imageIndex,
+                                        final Rectangle region,
+                                        final int subsampling,
+                                        final Set<ImageReader.Hint> hints)
+            throws IOException {
         final Dimension imageSize = new Dimension(
                 iioReader.getWidth(imageIndex),
                 iioReader.getHeight(imageIndex));
@@ -423,6 +464,9 @@ abstract class AbstractImageReader {
         hints.add(ImageReader.Hint.ALREADY_CROPPED);
         final ImageReadParam param = iioReader.getDefaultReadParam();
         param.setSourceRegion(region);
+        if (subsampling > 1) {
+            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        }
 
         try {
             return iioReader.read(imageIndex, param);
@@ -602,6 +646,31 @@ abstract class AbstractImageReader {
         return bestImage;
     }
 
+    /**
+     * @param regionRect Cropped source image region, in source image
+     *                   coordinates.
+     * @param scale      Requested scale.
+     * @return Largest reduction factor, up to
+     *         {@link ImageReader#getMaxSubsamplingReductionFactor(Format)},
+     *         at which the given region can be subsampled while reading it
+     *         and still satisfy the requested scale.
+     */
+    private int getSubsamplingReductionFactor(Rectangle regionRect,
+                                              Scale scale) {
+        final int maxFactor =
+                ImageReader.getMaxSubsamplingReductionFactor(format);
+        int factor = 0;
+        if (scale.hasEffect()) {
+            while (factor < maxFactor &&
+                    regionRect.width >> (factor + 1) > 0 &&
+                    regionRect.height >> (factor + 1) > 0 &&
+                    fits(regionRect, scale, Math.pow(0.5, factor + 1))) {
+                factor++;
+            }
+        }
+        return factor;
+    }
+
     /**
      * @param regionRect   Cropped source image region, in source image
      *                     coordinates.
@@ -46,6 +46,14 @@ public class ImageReader {
         IGNORE_CROP
     }
 
+    /**
+     * Maximum reduction factor by which single-resolution images are
+     * subsampled while they are being read.
+     *
+     * @see #getMaxSubsamplingReductionFactor(Format)
+     */
+    static final int MAX_SUBSAMPLING_REDUCTION_FACTOR = 8;
+
     private Metadata cachedMetadata;
     private AbstractImageReader reader;
 
@@ -64,6 +72,26 @@ public class ImageReader {
                 Format.JPG, Format.PNG, Format.TIF));
     }
 
+    /**
+     * <p>Returns the maximum reduction factor by which single-resolution
+     * source images of the given format can be subsampled while they are
+     * being read, so that only every <code>2^factor</code>th pixel of every
+     * <code>2^factor</code>th row of the requested region is ever held in
+     * memory.</p>
+     *
+     * <p>This is supported for JPEG and PNG, whose ImageIO readers decode one
+     * row at a time and subsample each row as it is decoded.</p>
+     *
+     * @param format Source format.
+     * @return Maximum reduction factor, which may be <code>0</code>.
+     */
+    public static int getMaxSubsamplingReductionFactor(Format format) {
+        if (Format.JPG.equals(format) || Format.PNG.equals(format)) {
+            return MAX_SUBSAMPLING_REDUCTION_FACTOR;
+        }
+        return 0;
+    }
+
     /**
      * Constructor for reading from files.
      *
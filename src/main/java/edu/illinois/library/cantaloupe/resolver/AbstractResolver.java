@@ -1,13 +1,39 @@
 package edu.illinois.library.cantaloupe.resolver;
 
+import edu.illinois.library.cantaloupe.config.ConfigurationFactory;
 import edu.illinois.library.cantaloupe.image.Format;
 import edu.illinois.library.cantaloupe.image.Identifier;
+import edu.illinois.library.cantaloupe.util.StringUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 abstract class AbstractResolver {
 
+    private static Logger logger =
+            LoggerFactory.getLogger(AbstractResolver.class);
+
     protected Identifier identifier;
     protected Format sourceFormat;
 
+    /**
+     * @param key          Configuration key.
+     * @param defaultValue Default human-readable size, like <code>64K</code>.
+     * @return             Size in bytes corresponding to the value of the
+     *                     given key, or the given default if it is not set
+     *                     or invalid.
+     */
+    static long getByteSize(String key, String defaultValue) {
+        final String humanSize = ConfigurationFactory.getInstance().
+                getString(key, defaultValue);
+        try {
+            return StringUtil.parseByteSize(humanSize);
+        } catch (NumberFormatException e) {
+            logger.error("getByteSize(): invalid value for {}: {}",
+                    key, humanSize);
+            return StringUtil.parseByteSize(defaultValue);
+        }
+    }
+
     public void setIdentifier(Identifier identifier) {
         this.identifier = identifier;
         this.sourceFormat = null;
@@ -3,16 +3,19 @@ package edu.illinois.library.cantaloupe.resolver;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.AmazonS3Exception;
 import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectInputStream;
 import edu.illinois.library.cantaloupe.config.Configuration;
 import edu.illinois.library.cantaloupe.config.ConfigurationFactory;
 import edu.illinois.library.cantaloupe.image.Format;
+import edu.illinois.library.cantaloupe.image.Identifier;
 import edu.illinois.library.cantaloupe.image.MediaType;
 import edu.illinois.library.cantaloupe.script.DelegateScriptDisabledException;
 import edu.illinois.library.cantaloupe.script.ScriptEngine;
 import edu.illinois.library.cantaloupe.script.ScriptEngineFactory;
 import edu.illinois.library.cantaloupe.util.AWSClientFactory;
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -21,6 +24,7 @@ import javax.imageio.stream.ImageInputStream;
 import javax.script.ScriptException;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * <p>Maps an identifier to an <a href="https://aws.amazon.com/s3/">Amazon
@@ -34,6 +38,15 @@ import java.io.IOException;
  * directly to S3 object keys. ScriptLookupStrategy invokes a delegate method
  * to retrieve object keys dynamically.</p>
  *
+ * <h3>Chunking</h3>
+ *
+ * <p>The existence, content type, and size of an object are obtained from a
+ * single HEAD request. The {@link ImageInputStream}s returned by {@link
+ * StreamSource#newImageInputStream()} then read the object on demand using
+ * ranged GET requests (see {@link RangedImageInputStream}), so that e.g.
+ * reading a region of a tiled TIFF only transfers the tiles that are
+ * needed.</p>
+ *
  * @see <a href="http://docs.aws.amazon.com/AWSSdkDocsJava/latest/DeveloperGuide/welcome.html">
  *     AWS SDK for Java</a>
  */
@@ -41,20 +54,51 @@ class AmazonS3Resolver extends AbstractResolver implements StreamResolver {
 
     private static class AmazonS3StreamSource implements StreamSource {
 
-        private final S3Object object;
+        private final String bucketName;
+        private final ObjectMetadata metadata;
+        private final String objectKey;
 
-        AmazonS3StreamSource(S3Object object) {
-            this.object = object;
+        AmazonS3StreamSource(String bucketName,
+                             String objectKey,
+                             ObjectMetadata metadata) {
+            this.bucketName = bucketName;
+            this.objectKey = objectKey;
+            this.metadata = metadata;
         }
 
+        /**
+         * @return Stream that reads the object on demand using ranged GET
+         *         requests, if chunking is enabled; otherwise, a stream over
+         *         the whole object.
+         */
         @Override
         public ImageInputStream newImageInputStream() throws IOException {
+            final Configuration config = ConfigurationFactory.getInstance();
+            if (config.getBoolean(CHUNKING_ENABLED_CONFIG_KEY, true) &&
+                    metadata.getContentLength() > 0) {
+                return new RangedImageInputStream(this::readRange,
+                        metadata.getContentLength(),
+                        getChunkSize(),
+                        getByteSize(CHUNK_CACHE_MAX_SIZE_CONFIG_KEY,
+                                DEFAULT_CHUNK_CACHE_MAX_SIZE));
+            }
             return ImageIO.createImageInputStream(newInputStream());
         }
 
         @Override
         public S3ObjectInputStream newInputStream() throws IOException {
-            return object.getObjectContent();
+            return getObject(new GetObjectRequest(bucketName, objectKey)).
+                    getObjectContent();
+        }
+
+        private byte[] readRange(long offset, int length) throws IOException {
+            final GetObjectRequest request =
+                    new GetObjectRequest(bucketName, objectKey).
+                            withRange(offset, offset + length - 1);
+            try (S3Object object = getObject(request);
+                 InputStream is = object.getObjectContent()) {
+                return IOUtils.toByteArray(is, length);
+            }
         }
 
     }
@@ -68,6 +112,12 @@ class AmazonS3Resolver extends AbstractResolver implements StreamResolver {
             "AmazonS3Resolver.bucket.name";
     static final String BUCKET_REGION_CONFIG_KEY =
             "AmazonS3Resolver.bucket.region";
+    static final String CHUNK_CACHE_MAX_SIZE_CONFIG_KEY =
+            "AmazonS3Resolver.chunking.cache.max_size";
+    static final String CHUNK_SIZE_CONFIG_KEY =
+            "AmazonS3Resolver.chunking.chunk_size";
+    static final String CHUNKING_ENABLED_CONFIG_KEY =
+            "AmazonS3Resolver.chunking.enabled";
     static final String ENDPOINT_CONFIG_KEY = "AmazonS3Resolver.endpoint";
     static final String LOOKUP_STRATEGY_CONFIG_KEY =
             "AmazonS3Resolver.lookup_strategy";
@@ -76,8 +126,22 @@ class AmazonS3Resolver extends AbstractResolver implements StreamResolver {
     static final String GET_KEY_DELEGATE_METHOD =
             "AmazonS3Resolver::get_object_key";
 
+    private static final String DEFAULT_CHUNK_CACHE_MAX_SIZE = "4M";
+    private static final String DEFAULT_CHUNK_SIZE = "512K";
+
     private static AmazonS3 client;
 
+    /** Lazy-initialized by {@link #getObjectMetadata()}. */
+    private ObjectMetadata objectMetadata;
+
+    /**
+     * @return Size in bytes of the ranges in which objects are read, when
+     *         chunking is enabled.
+     */
+    static int getChunkSize() {
+        return (int) getByteSize(CHUNK_SIZE_CONFIG_KEY, DEFAULT_CHUNK_SIZE);
+    }
+
     static synchronized AmazonS3 getClientInstance() {
         if (client == null) {
             final Configuration config = Configuration.getInstance();
@@ -90,28 +154,58 @@ class AmazonS3Resolver extends AbstractResolver implements StreamResolver {
         return client;
     }
 
-    @Override
-    public StreamSource newStreamSource()
-            throws IOException {
-        return new AmazonS3StreamSource(getObject());
+    /**
+     * @return Exception corresponding to the given one.
+     */
+    private static IOException newException(AmazonS3Exception e) {
+        if (e.getStatusCode() == 404 || "NoSuchKey".equals(e.getErrorCode())) {
+            return new FileNotFoundException(e.getMessage());
+        }
+        return new IOException(e);
     }
 
-    private S3Object getObject() throws IOException {
-        AmazonS3 s3 = getClientInstance();
-
-        Configuration config = ConfigurationFactory.getInstance();
-        final String bucketName = config.getString(BUCKET_NAME_CONFIG_KEY);
-        final String objectKey = getObjectKey();
+    private static S3Object getObject(GetObjectRequest request)
+            throws IOException {
         try {
-            logger.info("Requesting {} from bucket {}", objectKey, bucketName);
-            return s3.getObject(new GetObjectRequest(bucketName, objectKey));
+            return getClientInstance().getObject(request);
         } catch (AmazonS3Exception e) {
-            if (e.getErrorCode().equals("NoSuchKey")) {
-                throw new FileNotFoundException(e.getMessage());
-            } else {
-                throw new IOException(e);
+            throw newException(e);
+        }
+    }
+
+    @Override
+    public StreamSource newStreamSource() throws IOException {
+        final ObjectMetadata metadata = getObjectMetadata();
+        return new AmazonS3StreamSource(getBucketName(), getObjectKey(),
+                metadata);
+    }
+
+    private String getBucketName() {
+        return ConfigurationFactory.getInstance().
+                getString(BUCKET_NAME_CONFIG_KEY);
+    }
+
+    /**
+     * Issues a HEAD request for the object, if one has not already been
+     * issued by the instance, to check that it exists and obtain its content
+     * type and length without downloading it.
+     *
+     * @throws FileNotFoundException If the object does not exist.
+     */
+    private ObjectMetadata getObjectMetadata() throws IOException {
+        if (objectMetadata == null) {
+            final String bucketName = getBucketName();
+            final String objectKey = getObjectKey();
+            try {
+                logger.info("Requesting metadata of {} from bucket {}",
+                        objectKey, bucketName);
+                objectMetadata = getClientInstance().
+                        getObjectMetadata(bucketName, objectKey);
+            } catch (AmazonS3Exception e) {
+                throw newException(e);
             }
         }
+        return objectMetadata;
     }
 
     private String getObjectKey() throws IOException {
@@ -154,19 +248,23 @@ class AmazonS3Resolver extends AbstractResolver implements StreamResolver {
     @Override
     public Format getSourceFormat() throws IOException {
         if (sourceFormat == null) {
-            try (S3Object object = getObject()) {
-                String contentType = object.getObjectMetadata().getContentType();
-                // See if we can determine the format from the Content-Type header.
-                if (contentType != null) {
-                    sourceFormat = new MediaType(contentType).toFormat();
-                }
-                if (sourceFormat == null || Format.UNKNOWN.equals(sourceFormat)) {
-                    // Try to infer a format based on the identifier.
-                    sourceFormat = Format.inferFormat(identifier);
-                }
+            final String contentType = getObjectMetadata().getContentType();
+            // See if we can determine the format from the Content-Type header.
+            if (contentType != null) {
+                sourceFormat = new MediaType(contentType).toFormat();
+            }
+            if (sourceFormat == null || Format.UNKNOWN.equals(sourceFormat)) {
+                // Try to infer a format based on the identifier.
+                sourceFormat = Format.inferFormat(identifier);
             }
         }
         return sourceFormat;
     }
 
+    @Override
+    public void setIdentifier(Identifier identifier) {
+        super.setIdentifier(identifier);
+        objectMetadata = null;
+    }
+
 }
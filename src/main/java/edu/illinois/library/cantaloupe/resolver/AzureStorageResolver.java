@@ -9,6 +9,7 @@ import com.microsoft.azure.storage.blob.CloudBlockBlob;
 import edu.illinois.library.cantaloupe.config.Configuration;
 import edu.illinois.library.cantaloupe.config.ConfigurationFactory;
 import edu.illinois.library.cantaloupe.image.Format;
+import edu.illinois.library.cantaloupe.image.Identifier;
 import edu.illinois.library.cantaloupe.image.MediaType;
 import edu.illinois.library.cantaloupe.script.DelegateScriptDisabledException;
 import edu.illinois.library.cantaloupe.script.ScriptEngine;
@@ -36,6 +37,13 @@ import java.security.InvalidKeyException;
  * directly to blob keys. ScriptLookupStrategy invokes a delegate method to
  * retrieve blob keys dynamically.</p>
  *
+ * <h3>Chunking</h3>
+ *
+ * <p>The existence, content type, and size of a blob are obtained from its
+ * attributes, without downloading it. The {@link ImageInputStream}s returned
+ * by {@link StreamSource#newImageInputStream()} then read the blob on demand
+ * using ranged requests (see {@link RangedImageInputStream}).</p>
+ *
  * @see <a href="https://github.com/azure/azure-storage-java">
  *     Microsoft Azure Storage DSK for Java</a>
  */
@@ -45,12 +53,29 @@ class AzureStorageResolver extends AbstractResolver implements StreamResolver {
 
         private final CloudBlockBlob blob;
 
+        /**
+         * @param blob Blob whose attributes have been downloaded.
+         */
         AzureStorageStreamSource(CloudBlockBlob blob) {
             this.blob = blob;
         }
 
+        /**
+         * @return Stream that reads the blob on demand using ranged
+         *         requests, if chunking is enabled; otherwise, a stream over
+         *         the whole blob.
+         */
         @Override
         public ImageInputStream newImageInputStream() throws IOException {
+            final Configuration config = ConfigurationFactory.getInstance();
+            final long length = blob.getProperties().getLength();
+            if (config.getBoolean(CHUNKING_ENABLED_CONFIG_KEY, true) &&
+                    length > 0) {
+                return new RangedImageInputStream(this::readRange, length,
+                        getChunkSize(),
+                        getByteSize(CHUNK_CACHE_MAX_SIZE_CONFIG_KEY,
+                                DEFAULT_CHUNK_CACHE_MAX_SIZE));
+            }
             return ImageIO.createImageInputStream(newInputStream());
         }
 
@@ -63,6 +88,21 @@ class AzureStorageResolver extends AbstractResolver implements StreamResolver {
             }
         }
 
+        private byte[] readRange(long offset, int length) throws IOException {
+            final byte[] bytes = new byte[length];
+            try {
+                final int numRead = blob.downloadRangeToByteArray(
+                        offset, (long) length, bytes, 0);
+                if (numRead != length) {
+                    throw new IOException("Expected " + length +
+                            " bytes, but got " + numRead);
+                }
+            } catch (StorageException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+            return bytes;
+        }
+
     }
 
     private static Logger logger = LoggerFactory.
@@ -72,6 +112,12 @@ class AzureStorageResolver extends AbstractResolver implements StreamResolver {
             "AzureStorageResolver.account_key";
     static final String ACCOUNT_NAME_CONFIG_KEY =
             "AzureStorageResolver.account_name";
+    static final String CHUNK_CACHE_MAX_SIZE_CONFIG_KEY =
+            "AzureStorageResolver.chunking.cache.max_size";
+    static final String CHUNK_SIZE_CONFIG_KEY =
+            "AzureStorageResolver.chunking.chunk_size";
+    static final String CHUNKING_ENABLED_CONFIG_KEY =
+            "AzureStorageResolver.chunking.enabled";
     static final String CONTAINER_NAME_CONFIG_KEY =
             "AzureStorageResolver.container_name";
     static final String LOOKUP_STRATEGY_CONFIG_KEY =
@@ -80,11 +126,25 @@ class AzureStorageResolver extends AbstractResolver implements StreamResolver {
     static final String GET_KEY_DELEGATE_METHOD =
             "AzureStorageResolver::get_blob_key";
 
+    private static final String DEFAULT_CHUNK_CACHE_MAX_SIZE = "4M";
+    private static final String DEFAULT_CHUNK_SIZE = "512K";
+
     private static CloudBlobClient client;
 
     /** Lock object for synchronization */
     private static final Object lock = new Object();
 
+    /** Lazy-initialized by {@link #getObject()}. */
+    private CloudBlockBlob blob;
+
+    /**
+     * @return Size in bytes of the ranges in which blobs are read, when
+     *         chunking is enabled.
+     */
+    static int getChunkSize() {
+        return (int) getByteSize(CHUNK_SIZE_CONFIG_KEY, DEFAULT_CHUNK_SIZE);
+    }
+
     private static CloudBlobClient getClientInstance() {
         if (client == null) {
             synchronized (lock) {
@@ -115,26 +175,42 @@ class AzureStorageResolver extends AbstractResolver implements StreamResolver {
         return new AzureStorageStreamSource(getObject());
     }
 
+    /**
+     * Downloads the blob's attributes, if they have not already been
+     * downloaded by the instance, to check that it exists and obtain its
+     * content type and length without downloading it.
+     *
+     * @return Blob whose attributes have been downloaded.
+     * @throws FileNotFoundException If the blob does not exist.
+     */
     private CloudBlockBlob getObject() throws IOException {
-        final Configuration config = ConfigurationFactory.getInstance();
-        final String containerName = config.getString(CONTAINER_NAME_CONFIG_KEY);
-        logger.info("Using container: {}", containerName);
+        if (blob == null) {
+            final Configuration config = ConfigurationFactory.getInstance();
+            final String containerName =
+                    config.getString(CONTAINER_NAME_CONFIG_KEY);
+            logger.info("Using container: {}", containerName);
 
-        final CloudBlobClient client = getClientInstance();
-        try {
-            final CloudBlobContainer container =
-                    client.getContainerReference(containerName);
+            final CloudBlobClient client = getClientInstance();
             final String objectKey = getObjectKey();
+            try {
+                final CloudBlobContainer container =
+                        client.getContainerReference(containerName);
 
-            logger.info("Requesting {}", objectKey);
-            final CloudBlockBlob blob = container.getBlockBlobReference(objectKey);
-            if (!blob.exists()) {
-                throw new FileNotFoundException("Not found: " + objectKey);
+                logger.info("Requesting {}", objectKey);
+                final CloudBlockBlob newBlob =
+                        container.getBlockBlobReference(objectKey);
+                newBlob.downloadAttributes();
+                blob = newBlob;
+            } catch (StorageException e) {
+                if (e.getHttpStatusCode() == 404) {
+                    throw new FileNotFoundException("Not found: " + objectKey);
+                }
+                throw new IOException(e);
+            } catch (URISyntaxException e) {
+                throw new IOException(e);
             }
-            return blob;
-        } catch (URISyntaxException | StorageException e) {
-            throw new IOException(e);
         }
+        return blob;
     }
 
     private String getObjectKey() throws IOException {
@@ -191,4 +267,10 @@ class AzureStorageResolver extends AbstractResolver implements StreamResolver {
         return sourceFormat;
     }
 
+    @Override
+    public void setIdentifier(Identifier identifier) {
+        super.setIdentifier(identifier);
+        blob = null;
+    }
+
 }
@@ -8,13 +8,19 @@ import edu.illinois.library.cantaloupe.image.MediaType;
 import edu.illinois.library.cantaloupe.script.DelegateScriptDisabledException;
 import edu.illinois.library.cantaloupe.script.ScriptEngine;
 import edu.illinois.library.cantaloupe.script.ScriptEngineFactory;
-import org.restlet.Client;
-import org.restlet.data.ChallengeScheme;
-import org.restlet.data.Protocol;
+import edu.illinois.library.cantaloupe.util.JMXUtil;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.util.InputStreamResponseListener;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
 import org.restlet.data.Reference;
-import org.restlet.data.Status;
-import org.restlet.resource.ClientResource;
-import org.restlet.resource.ResourceException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -24,8 +30,13 @@ import javax.script.ScriptException;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.AccessDeniedException;
-import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <p>Provides access to source content located on an HTTP(S) server.</p>
@@ -36,9 +47,8 @@ import java.util.Arrays;
  * denote the image format, based on the return value of
  * {@link Format#inferFormat(Identifier)}. For images with extensions that are
  * missing or unrecognized, the Content-Type header will be checked to
- * determine their format (in a separate request), which will incur a small
- * performance penalty. It is therefore more efficient to serve images with
- * extensions.</p>
+ * determine their format. It is therefore more efficient to serve images
+ * with extensions.</p>
  *
  * <h3>Lookup Strategies</h3>
  *
@@ -46,47 +56,160 @@ import java.util.Arrays;
  * {@link #LOOKUP_STRATEGY_CONFIG_KEY}. BasicLookupStrategy locates images by
  * concatenating a pre-defined URL prefix and/or suffix. ScriptLookupStrategy
  * invokes a delegate method to retrieve a URL dynamically.</p>
+ *
+ * <h3>Connections</h3>
+ *
+ * <p>All instances share a pooled client whose connections are kept alive
+ * and reused. The existence, content type, and content length of a resource
+ * are obtained from a single HEAD request, which is issued at most once per
+ * instance (i.e. per identifier), after which the resource is read using a
+ * GET request by the processor.</p>
+ *
+ * <h3>Chunking</h3>
+ *
+ * <p>When the server advertises support for range requests, the {@link
+ * ImageInputStream}s returned by {@link StreamSource#newImageInputStream()}
+ * read the resource on demand in chunks (see {@link RangedImageInputStream}),
+ * so that readers that only need part of it, like the TIFF reader reading a
+ * region of a tiled image, don't have to wait for all of it to be
+ * downloaded. Streams returned by {@link StreamSource#newInputStream()} still
+ * read the whole resource.</p>
+ *
+ * <p>Origin request counts and resolution times are available via JMX.</p>
  */
-class HttpResolver extends AbstractResolver implements StreamResolver {
+class HttpResolver extends AbstractResolver
+        implements StreamResolver, HttpResolverMBean {
 
     private static class HttpStreamSource implements StreamSource {
 
-        private final Client client;
-        private final Reference url;
+        private final ResourceInfo resourceInfo;
 
-        HttpStreamSource(Client client, Reference url) {
-            this.client = client;
-            this.url = url;
+        HttpStreamSource(ResourceInfo resourceInfo) {
+            this.resourceInfo = resourceInfo;
         }
 
+        /**
+         * @return Stream that reads the resource on demand using range
+         *         requests, if chunking is enabled and the server supports
+         *         them; otherwise, a stream over the whole resource.
+         */
         @Override
         public ImageInputStream newImageInputStream() throws IOException {
+            final Configuration config = ConfigurationFactory.getInstance();
+            if (config.getBoolean(CHUNKING_ENABLED_CONFIG_KEY, true) &&
+                    resourceInfo.acceptsRanges &&
+                    resourceInfo.contentLength > 0) {
+                return new RangedImageInputStream(this::readRange,
+                        resourceInfo.contentLength,
+                        (int) getByteSize(CHUNK_SIZE_CONFIG_KEY,
+                                DEFAULT_CHUNK_SIZE),
+                        getByteSize(CHUNK_CACHE_MAX_SIZE_CONFIG_KEY,
+                                DEFAULT_CHUNK_CACHE_MAX_SIZE));
+            }
             return ImageIO.createImageInputStream(newInputStream());
         }
 
         @Override
         public InputStream newInputStream() throws IOException {
-            ClientResource resource = newClientResource(url);
-            resource.setNext(client);
+            return get(0, -1);
+        }
+
+        /**
+         * @param offset Offset of the first byte to read.
+         * @param length Number of bytes to read, or -1 to read the whole
+         *               resource.
+         * @return       Stream of the given range of the resource.
+         */
+        private InputStream get(long offset, int length) throws IOException {
+            final Request request = newRequest(resourceInfo.url);
+            if (length >= 0) {
+                request.header(HttpHeader.RANGE,
+                        "bytes=" + offset + "-" + (offset + length - 1));
+            }
+            final InputStreamResponseListener listener =
+                    new InputStreamResponseListener();
+            request.send(listener);
+            getCount.incrementAndGet();
+
+            final Response response;
             try {
-                return resource.get().getStream();
-            } catch (ResourceException e) {
-                throw new IOException(e.getMessage(), e);
-            } finally {
-                resource.release();
+                response = listener.get(getRequestTimeout(), TimeUnit.SECONDS);
+            } catch (InterruptedException | TimeoutException |
+                    ExecutionException e) {
+                errorCount.incrementAndGet();
+                throw new IOException("GET " + resourceInfo.url + ": " +
+                        e.getMessage(), e);
+            }
+            final InputStream inputStream = listener.getInputStream();
+            switch (response.getStatus()) {
+                case HttpStatus.PARTIAL_CONTENT_206:
+                    if (length >= 0) {
+                        return inputStream;
+                    }
+                    break;
+                case HttpStatus.OK_200:
+                    // The server may have ignored the Range header, in
+                    // which case the requested range has to be skipped to.
+                    IOUtils.skipFully(inputStream, offset);
+                    return inputStream;
+            }
+            inputStream.close();
+            throw newException(response.getStatus(), resourceInfo.url);
+        }
+
+        private byte[] readRange(long offset, int length) throws IOException {
+            try (InputStream inputStream = get(offset, length)) {
+                return IOUtils.toByteArray(inputStream, length);
             }
         }
 
     }
 
+    /**
+     * Information about a resource obtained from a HEAD request.
+     */
+    private static class ResourceInfo {
+
+        /** Whether the server advertises support for byte range requests. */
+        final boolean acceptsRanges;
+        /** Content-Length, or -1 if not known. */
+        final long contentLength;
+        /** Content-Type without parameters. May be <code>null</code>. */
+        final String contentType;
+        final String url;
+
+        ResourceInfo(String url, String contentType, long contentLength,
+                     boolean acceptsRanges) {
+            this.url = url;
+            this.contentType = contentType;
+            this.contentLength = contentLength;
+            this.acceptsRanges = acceptsRanges;
+        }
+
+    }
+
     private static Logger logger = LoggerFactory.getLogger(HttpResolver.class);
 
     static final String BASIC_AUTH_SECRET_CONFIG_KEY =
             "HttpResolver.auth.basic.secret";
     static final String BASIC_AUTH_USERNAME_CONFIG_KEY =
             "HttpResolver.auth.basic.username";
+    static final String CHUNK_CACHE_MAX_SIZE_CONFIG_KEY =
+            "HttpResolver.chunking.cache.max_size";
+    static final String CHUNK_SIZE_CONFIG_KEY =
+            "HttpResolver.chunking.chunk_size";
+    static final String CHUNKING_ENABLED_CONFIG_KEY =
+            "HttpResolver.chunking.enabled";
+    static final String CONNECT_TIMEOUT_CONFIG_KEY =
+            "HttpResolver.connect_timeout";
+    static final String IDLE_TIMEOUT_CONFIG_KEY =
+            "HttpResolver.idle_timeout";
     static final String LOOKUP_STRATEGY_CONFIG_KEY =
             "HttpResolver.lookup_strategy";
+    static final String MAX_CONNECTIONS_PER_HOST_CONFIG_KEY =
+            "HttpResolver.max_connections_per_host";
+    static final String REQUEST_TIMEOUT_CONFIG_KEY =
+            "HttpResolver.request_timeout";
     static final String URL_PREFIX_CONFIG_KEY =
             "HttpResolver.BasicLookupStrategy.url_prefix";
     static final String URL_SUFFIX_CONFIG_KEY =
@@ -94,62 +217,125 @@ class HttpResolver extends AbstractResolver implements StreamResolver {
 
     static final String GET_URL_DELEGATE_METHOD = "HttpResolver::get_url";
 
-    private final Client client = new Client(
-            Arrays.asList(Protocol.HTTP, Protocol.HTTPS));
+    private static final String DEFAULT_CHUNK_CACHE_MAX_SIZE = "4M";
+    private static final String DEFAULT_CHUNK_SIZE = "64K";
+    private static final int DEFAULT_CONNECT_TIMEOUT = 10;
+    private static final int DEFAULT_IDLE_TIMEOUT = 30;
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 64;
+    private static final int DEFAULT_REQUEST_TIMEOUT = 30;
+
+    /** Lazy-initialized by {@link #getHTTPClient()}. */
+    private static HttpClient httpClient;
+
+    private static final AtomicLong errorCount = new AtomicLong(0);
+    private static final AtomicLong getCount = new AtomicLong(0);
+    private static final AtomicLong headCount = new AtomicLong(0);
+    private static final AtomicLong resolutionCount = new AtomicLong(0);
+    private static final AtomicLong resolutionNanos = new AtomicLong(0);
+
+    /** Lazy-initialized by {@link #getResourceInfo()}. */
+    private ResourceInfo resourceInfo;
+
+    /**
+     * @return Shared client, which is started (and registered with JMX) the
+     *         first time this method is called, according to the
+     *         configuration at that time.
+     */
+    static synchronized HttpClient getHTTPClient() throws IOException {
+        if (httpClient == null) {
+            final Configuration config = ConfigurationFactory.getInstance();
+
+            final SslContextFactory sslContextFactory = new SslContextFactory();
+            sslContextFactory.setEndpointIdentificationAlgorithm("HTTPS");
+
+            final QueuedThreadPool threadPool = new QueuedThreadPool();
+            threadPool.setName("HttpResolver");
+            threadPool.setDaemon(true);
+
+            final HttpClient client = new HttpClient(sslContextFactory);
+            client.setExecutor(threadPool);
+            client.setScheduler(new ScheduledExecutorScheduler(
+                    "HttpResolver-scheduler", true));
+            client.setFollowRedirects(true);
+            client.setMaxConnectionsPerDestination(config.getInt(
+                    MAX_CONNECTIONS_PER_HOST_CONFIG_KEY,
+                    DEFAULT_MAX_CONNECTIONS_PER_HOST));
+            client.setConnectTimeout(1000 * config.getLong(
+                    CONNECT_TIMEOUT_CONFIG_KEY, DEFAULT_CONNECT_TIMEOUT));
+            client.setIdleTimeout(1000 * config.getLong(
+                    IDLE_TIMEOUT_CONFIG_KEY, DEFAULT_IDLE_TIMEOUT));
+            try {
+                client.start();
+            } catch (Exception e) {
+                throw new IOException("Failed to start the HTTP client: " +
+                        e.getMessage(), e);
+            }
+            httpClient = client;
+
+            JMXUtil.registerMBean(new HttpResolver(),
+                    HttpResolver.class.getSimpleName(), "origin");
+        }
+        return httpClient;
+    }
+
+    /**
+     * @return Timeout in seconds for receiving the response headers.
+     */
+    private static long getRequestTimeout() {
+        return ConfigurationFactory.getInstance().getLong(
+                REQUEST_TIMEOUT_CONFIG_KEY, DEFAULT_REQUEST_TIMEOUT);
+    }
+
+    /**
+     * @return Exception corresponding to the given non-2xx response status.
+     */
+    private static IOException newException(int status, String url) {
+        final String message = status + " " + url;
+        switch (status) {
+            case HttpStatus.NOT_FOUND_404:
+            case HttpStatus.GONE_410:
+                return new FileNotFoundException(message);
+            case HttpStatus.FORBIDDEN_403:
+                return new AccessDeniedException(message);
+            default:
+                errorCount.incrementAndGet();
+                return new IOException(message);
+        }
+    }
 
     /**
-     * Factory method. Be sure to call {@link ClientResource#release()} when
-     * done with the instance.
+     * Factory method.
      *
      * @param url
-     * @return New ClientResource respecting HttpResolver configuration
-     * options.
+     * @return New GET request respecting HttpResolver configuration options.
      */
-    private static ClientResource newClientResource(final Reference url) {
-        final ClientResource resource = new ClientResource(url);
+    private static Request newRequest(String url) throws IOException {
+        final Request request = getHTTPClient().newRequest(url);
         final Configuration config = ConfigurationFactory.getInstance();
         final String username = config.getString(BASIC_AUTH_USERNAME_CONFIG_KEY, "");
         final String secret = config.getString(BASIC_AUTH_SECRET_CONFIG_KEY, "");
         if (username.length() > 0 && secret.length() > 0) {
-            resource.setChallengeResponse(ChallengeScheme.HTTP_BASIC,
-                    username, secret);
+            final String credentials = Base64.getEncoder().encodeToString(
+                    (username + ":" + secret).getBytes(StandardCharsets.UTF_8));
+            request.header(HttpHeader.AUTHORIZATION, "Basic " + credentials);
         }
-        return resource;
+        return request;
     }
 
     @Override
     public StreamSource newStreamSource() throws IOException {
-        Reference url = getUrl();
-        logger.info("Resolved {} to {}", identifier, url);
-        ClientResource resource = newClientResource(url);
-        resource.setNext(client);
-        try {
-            // Issue an HTTP HEAD request to check whether the underlying
-            // resource is accessible.
-            resource.head();
-            return new HttpStreamSource(client, url);
-        } catch (ResourceException e) {
-            if (e.getStatus().equals(Status.CLIENT_ERROR_NOT_FOUND) ||
-                    e.getStatus().equals(Status.CLIENT_ERROR_GONE)) {
-                throw new FileNotFoundException(e.getMessage());
-            } else if (e.getStatus().equals(Status.CLIENT_ERROR_FORBIDDEN)) {
-                throw new AccessDeniedException(e.getMessage());
-            } else {
-                throw new IOException(e.getMessage(), e);
-            }
-        } finally {
-            resource.release();
-        }
+        return new HttpStreamSource(getResourceInfo());
     }
 
     @Override
     public Format getSourceFormat() throws IOException {
         if (sourceFormat == null) {
+            // Throws if the resource is not found etc.
+            final ResourceInfo info = getResourceInfo();
             sourceFormat = Format.inferFormat(identifier);
             if (sourceFormat == Format.UNKNOWN) {
-                sourceFormat = getSourceFormatFromContentTypeHeader();
+                sourceFormat = getSourceFormatFromContentType(info);
             }
-            newStreamSource().newInputStream(); // throws IOException if not found etc.
         }
         return sourceFormat;
     }
@@ -173,39 +359,74 @@ class HttpResolver extends AbstractResolver implements StreamResolver {
     }
 
     /**
-     * Issues an HTTP HEAD request and checks the Content-Type header in the
-     * response to determine the source format.
+     * Issues an HTTP HEAD request for the resource, if one has not already
+     * been issued by the instance, to check that it is accessible and obtain
+     * its content type and length.
      *
-     * @return A source format, or {@link Format#UNKNOWN} if unknown.
-     * @throws IOException
+     * @return Information about the resource.
+     * @throws FileNotFoundException If the resource does not exist.
+     * @throws AccessDeniedException If the resource is not accessible.
+     * @throws IOException           If there is some other error.
      */
-    private Format getSourceFormatFromContentTypeHeader() throws IOException {
-        Format format = Format.UNKNOWN;
-        String contentType = "";
-        Reference url = getUrl();
-        ClientResource resource = newClientResource(url);
-        resource.setNext(client);
-        try {
-            resource.head();
-            contentType = resource.getResponse().getHeaders().
-                    getFirstValue("Content-Type", true);
+    private ResourceInfo getResourceInfo() throws IOException {
+        if (resourceInfo == null) {
+            final String url = getUrl().toString();
+            logger.info("Resolved {} to {}", identifier, url);
+
+            final long start = System.nanoTime();
+            final Response response;
+            try {
+                response = newRequest(url).
+                        method(HttpMethod.HEAD).
+                        timeout(getRequestTimeout(), TimeUnit.SECONDS).
+                        send();
+            } catch (InterruptedException | TimeoutException |
+                    ExecutionException e) {
+                errorCount.incrementAndGet();
+                throw new IOException("HEAD " + url + ": " + e.getMessage(), e);
+            } finally {
+                headCount.incrementAndGet();
+            }
+            resolutionNanos.addAndGet(System.nanoTime() - start);
+            resolutionCount.incrementAndGet();
+
+            if (response.getStatus() != HttpStatus.OK_200) {
+                throw newException(response.getStatus(), url);
+            }
+
+            String contentType =
+                    response.getHeaders().get(HttpHeader.CONTENT_TYPE);
             if (contentType != null) {
-                format = new MediaType(contentType).toFormat();
+                contentType = contentType.split(";")[0].trim();
             }
-        } catch (ResourceException e) {
-            // nothing we can do but log it
-            if (contentType.length() > 0) {
+            final long contentLength =
+                    response.getHeaders().getLongField(
+                            HttpHeader.CONTENT_LENGTH.asString());
+            final String acceptRanges =
+                    response.getHeaders().get(HttpHeader.ACCEPT_RANGES);
+            resourceInfo = new ResourceInfo(url, contentType, contentLength,
+                    "bytes".equalsIgnoreCase(acceptRanges));
+        }
+        return resourceInfo;
+    }
+
+    /**
+     * @return A source format, or {@link Format#UNKNOWN} if unknown.
+     */
+    private Format getSourceFormatFromContentType(ResourceInfo info) {
+        Format format = Format.UNKNOWN;
+        if (info.contentType != null && info.contentType.length() > 0) {
+            format = new MediaType(info.contentType).toFormat();
+            if (format == Format.UNKNOWN) {
                 logger.warn("Failed to determine the source format of the " +
                         "resource at {} based on a Content-Type of {}.",
-                        url, contentType);
-            } else {
-                logger.warn("Failed to determine the source format of the " +
-                        "resource at {}. The web server's response must " +
-                        "include a Content-Type header with the value of " +
-                        "the media (MIME) type of the source image.", url);
+                        info.url, info.contentType);
             }
-        } finally {
-            resource.release();
+        } else {
+            logger.warn("Failed to determine the source format of the " +
+                    "resource at {}. The web server's response must " +
+                    "include a Content-Type header with the value of " +
+                    "the media (MIME) type of the source image.", info.url);
         }
         return format;
     }
@@ -237,4 +458,31 @@ class HttpResolver extends AbstractResolver implements StreamResolver {
         return new Reference((String) result);
     }
 
+    @Override
+    public void setIdentifier(Identifier identifier) {
+        super.setIdentifier(identifier);
+        resourceInfo = null;
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    @Override
+    public long getGetRequestCount() {
+        return getCount.get();
+    }
+
+    @Override
+    public long getHeadRequestCount() {
+        return headCount.get();
+    }
+
+    @Override
+    public double getMeanResolutionTime() {
+        final long count = resolutionCount.get();
+        return (count > 0) ? resolutionNanos.get() / (double) count / 1000000 : 0;
+    }
+
 }
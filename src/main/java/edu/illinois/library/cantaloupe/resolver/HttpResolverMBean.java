@@ -0,0 +1,31 @@
+package edu.illinois.library.cantaloupe.resolver;
+
+/**
+ * JMX management interface of {@link HttpResolver}.
+ */
+public interface HttpResolverMBean {
+
+    /**
+     * @return Number of origin requests that failed without a response, or
+     *         with an error status other than 403, 404, or 410.
+     */
+    long getErrorCount();
+
+    /**
+     * @return Number of GET requests issued to origin servers.
+     */
+    long getGetRequestCount();
+
+    /**
+     * @return Number of HEAD requests issued to origin servers in order to
+     *         resolve resources.
+     */
+    long getHeadRequestCount();
+
+    /**
+     * @return Mean time taken to resolve a resource (i.e. the duration of the
+     *         HEAD request), in milliseconds.
+     */
+    double getMeanResolutionTime();
+
+}
@@ -0,0 +1,234 @@
+package edu.illinois.library.cantaloupe.resolver;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>Seekable {@link javax.imageio.stream.ImageInputStream} over a remote
+ * resource of known length, which is read on demand in block-aligned ranges
+ * via a {@link RangeReader}, so that readers that seek around (e.g. to read
+ * one tile of a tiled TIFF) only cause the parts they actually read to be
+ * transferred.</p>
+ *
+ * <ul>
+ *     <li>Blocks are held in a small LRU cache, so that re-reading a recently
+ *     read region, which is common when parsing headers, doesn't cause
+ *     another request.</li>
+ *     <li>All of the missing blocks needed by a read are fetched in one
+ *     request.</li>
+ *     <li>When blocks are being read sequentially, the following
+ *     {@link #readAheadBlocks} blocks are fetched along with the requested
+ *     one.</li>
+ * </ul>
+ *
+ * <p>Instances are not thread-safe.</p>
+ */
+class RangedImageInputStream extends ImageInputStreamImpl {
+
+    /**
+     * Reads ranges of bytes from a resource.
+     */
+    interface RangeReader {
+
+        /**
+         * @param offset Offset of the first byte to read.
+         * @param length Number of bytes to read. The range will never extend
+         *               past the end of the resource.
+         * @return       Array of exactly <code>length</code> bytes.
+         */
+        byte[] read(long offset, int length) throws IOException;
+
+    }
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(RangedImageInputStream.class);
+
+    static final int DEFAULT_READ_AHEAD_BLOCKS = 2;
+
+    private final int blockSize;
+    private final Map<Long, byte[]> blocks;
+    private long fetchedByteCount = 0;
+    /** Initialized so that reading from the beginning counts as sequential. */
+    private long lastFetchedBlock = -1;
+    private final long length;
+    private final int maxBlocks;
+    private final RangeReader rangeReader;
+    private final int readAheadBlocks;
+    private int requestCount = 0;
+
+    /**
+     * @param rangeReader  Reader of the resource.
+     * @param length       Length of the resource.
+     * @param blockSize    Size of the blocks in which the resource is read
+     *                     and cached.
+     * @param maxCacheSize Maximum number of bytes to cache. At least one
+     *                     block will be cached regardless.
+     */
+    RangedImageInputStream(RangeReader rangeReader,
+                           long length,
+                           int blockSize,
+                           long maxCacheSize) {
+        this(rangeReader, length, blockSize, maxCacheSize,
+                DEFAULT_READ_AHEAD_BLOCKS);
+    }
+
+    RangedImageInputStream(RangeReader rangeReader,
+                           long length,
+                           int blockSize,
+                           long maxCacheSize,
+                           int readAheadBlocks) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Invalid block size");
+        }
+        this.rangeReader = rangeReader;
+        this.length = length;
+        this.blockSize = blockSize;
+        this.maxBlocks = (int) Math.max(1, Math.min(Integer.MAX_VALUE,
+                maxCacheSize / blockSize));
+        this.readAheadBlocks = Math.max(0,
+                Math.min(readAheadBlocks, maxBlocks - 1));
+        this.blocks = new LinkedHashMap<Long, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+                return size() > maxBlocks;
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        blocks.clear();
+        logger.debug("close(): fetched {} of {} bytes in {} requests",
+                fetchedByteCount, length, requestCount);
+    }
+
+    /**
+     * @return Number of range requests that have been issued.
+     */
+    int getRequestCount() {
+        return requestCount;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkClosed();
+        if (streamPos >= length) {
+            return -1;
+        }
+        bitOffset = 0;
+        final long index = streamPos / blockSize;
+        final byte[] block = getBlock(index, index);
+        final int value = block[(int) (streamPos - index * blockSize)] & 0xff;
+        streamPos++;
+        return value;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        checkClosed();
+        if (b == null) {
+            throw new NullPointerException();
+        }
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (streamPos >= length) {
+            return -1;
+        }
+        bitOffset = 0;
+        len = (int) Math.min(len, length - streamPos);
+
+        final long lastIndex = (streamPos + len - 1) / blockSize;
+        int numRead = 0;
+        while (numRead < len) {
+            final long index = streamPos / blockSize;
+            final byte[] block = getBlock(index, lastIndex);
+            final int blockOffset = (int) (streamPos - index * blockSize);
+            final int count = Math.min(len - numRead,
+                    block.length - blockOffset);
+            System.arraycopy(block, blockOffset, b, off + numRead, count);
+            numRead += count;
+            streamPos += count;
+        }
+        return numRead;
+    }
+
+    /**
+     * @param index     Index of the block to return.
+     * @param lastIndex Index of the last block needed by the current read.
+     * @return          Block at the given index, fetched if necessary.
+     */
+    private byte[] getBlock(long index, long lastIndex) throws IOException {
+        byte[] block = blocks.get(index);
+        if (block == null) {
+            block = fetchBlocks(index, lastIndex);
+        }
+        return block;
+    }
+
+    /**
+     * Fetches the given block along with all of the following missing blocks
+     * up to the given last block (or further, when reading sequentially) in
+     * one request, and caches them.
+     *
+     * @return Block at the given first index.
+     */
+    private byte[] fetchBlocks(long firstIndex, long lastIndex)
+            throws IOException {
+        if (firstIndex == lastFetchedBlock + 1) {
+            lastIndex = Math.max(lastIndex, firstIndex + readAheadBlocks);
+        }
+        // Don't fetch more than can be cached.
+        lastIndex = Math.min(lastIndex, firstIndex + maxBlocks - 1);
+        lastIndex = Math.min(lastIndex, (length - 1) / blockSize);
+        // Don't re-fetch blocks that are already cached.
+        for (long i = firstIndex + 1; i <= lastIndex; i++) {
+            if (blocks.containsKey(i)) {
+                lastIndex = i - 1;
+                break;
+            }
+        }
+
+        final long offset = firstIndex * blockSize;
+        final int rangeLength = (int) (Math.min(length,
+                (lastIndex + 1) * blockSize) - offset);
+        logger.trace("fetchBlocks(): reading {} bytes at offset {}",
+                rangeLength, offset);
+        final byte[] data = rangeReader.read(offset, rangeLength);
+        requestCount++;
+        fetchedByteCount += data.length;
+        if (data.length != rangeLength) {
+            throw new IOException("Expected " + rangeLength +
+                    " bytes, but got " + data.length);
+        }
+
+        byte[] firstBlock = null;
+        for (long i = firstIndex; i <= lastIndex; i++) {
+            final int start = (int) ((i - firstIndex) * blockSize);
+            final int end = Math.min(start + blockSize, rangeLength);
+            final byte[] block = Arrays.copyOfRange(data, start, end);
+            blocks.put(i, block);
+            if (i == firstIndex) {
+                firstBlock = block;
+            }
+        }
+        lastFetchedBlock = lastIndex;
+        return firstBlock;
+    }
+
+}
@@ -10,22 +10,30 @@ import edu.illinois.library.cantaloupe.image.Info;
 import edu.illinois.library.cantaloupe.image.Format;
 import edu.illinois.library.cantaloupe.image.Identifier;
 import edu.illinois.library.cantaloupe.operation.OperationList;
+import edu.illinois.library.cantaloupe.processor.MemoryBudget;
+import edu.illinois.library.cantaloupe.processor.ProcessingQueue;
 import edu.illinois.library.cantaloupe.processor.Processor;
 import edu.illinois.library.cantaloupe.processor.ProcessorException;
 import edu.illinois.library.cantaloupe.script.DelegateScriptDisabledException;
 import edu.illinois.library.cantaloupe.script.ScriptEngine;
 import edu.illinois.library.cantaloupe.script.ScriptEngineFactory;
+import edu.illinois.library.cantaloupe.util.JMXUtil;
+import edu.illinois.library.cantaloupe.util.RequestCoalescer;
 import edu.illinois.library.cantaloupe.util.Stopwatch;
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.lang3.StringUtils;
 import org.restlet.Request;
 import org.restlet.data.CacheDirective;
+import org.restlet.data.Conditions;
 import org.restlet.data.Disposition;
 import org.restlet.data.Header;
 import org.restlet.data.MediaType;
 import org.restlet.data.Parameter;
 import org.restlet.data.Protocol;
+import org.restlet.data.Range;
 import org.restlet.data.Reference;
 import org.restlet.data.Status;
+import org.restlet.data.Tag;
 import org.restlet.ext.velocity.TemplateRepresentation;
 import org.restlet.representation.EmptyRepresentation;
 import org.restlet.representation.Representation;
@@ -38,8 +46,17 @@ import org.slf4j.LoggerFactory;
 
 import javax.script.ScriptException;
 import java.awt.Dimension;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -50,6 +67,17 @@ public abstract class AbstractResource extends ServerResource {
     private static Logger logger = LoggerFactory.
             getLogger(AbstractResource.class);
 
+    /**
+     * Coalesces concurrent info reads for the same image.
+     */
+    private static final RequestCoalescer<Identifier, Info> infoCoalescer =
+            new RequestCoalescer<>();
+
+    static {
+        JMXUtil.registerMBean(infoCoalescer,
+                RequestCoalescer.class.getSimpleName(), "infos");
+    }
+
     public static final String AUTHORIZATION_DELEGATE_METHOD = "authorized?";
     public static final String BASE_URI_CONFIG_KEY =
             "base_uri";
@@ -372,6 +400,173 @@ public abstract class AbstractResource extends ServerResource {
         return directives;
     }
 
+    /**
+     * Variant of {@link #getCachedRepresentation(DerivativeCache,
+     * OperationList, Disposition, Tag)} for use before the source image has
+     * been resolved, which obtains the cache and the source image's info
+     * (for the entity tag) from the derivative cache.
+     *
+     * @param ops         Operation list.
+     * @param disposition Content disposition.
+     * @return Representation, or <code>null</code> if the derivative cache
+     *         is disabled or doesn't contain the image or its source image's
+     *         info. In the latter case, no entity tag could be built, so the
+     *         image is left to {@link #getImageRepresentation}.
+     */
+    protected final Representation getCachedRepresentation(
+            OperationList ops, Disposition disposition)
+            throws IOException, CacheException {
+        final DerivativeCache cache = CacheFactory.getDerivativeCache();
+        if (cache == null) {
+            return null;
+        }
+        final Info info = cache.getImageInfo(ops.getIdentifier());
+        if (info == null) {
+            return null;
+        }
+        return getCachedRepresentation(cache, ops, disposition,
+                getETag(ops, info));
+    }
+
+    /**
+     * <p>Returns a representation of the image corresponding to the given
+     * operation list from the given cache.</p>
+     *
+     * <p>If the request's conditional headers indicate that the client
+     * already has a current copy, a <code>304 Not Modified</code>
+     * representation is returned instead. Otherwise, if the cache stores the
+     * image in a file and the request contains a single satisfiable byte
+     * range, the representation is limited to that range and the response
+     * status is set to <code>206 Partial Content</code>.</p>
+     *
+     * @param cache       Derivative cache.
+     * @param ops         Operation list.
+     * @param disposition Content disposition.
+     * @param tag         Entity tag, which may be <code>null</code>.
+     * @return Representation, or <code>null</code> if the cache doesn't
+     *         contain the image.
+     */
+    protected final Representation getCachedRepresentation(
+            DerivativeCache cache, OperationList ops, Disposition disposition,
+            Tag tag) throws CacheException {
+        final edu.illinois.library.cantaloupe.image.MediaType mediaType =
+                ops.getOutputFormat().getPreferredMediaType();
+        Representation rep = null;
+
+        final File file = cache.getDerivativeImageFile(ops);
+        if (file != null) {
+            try {
+                rep = new CachedImageRepresentation(mediaType, disposition,
+                        file);
+            } catch (IOException e) {
+                // The file may have been purged or evicted in the meantime.
+                logger.debug("getCachedRepresentation(): {}", e.getMessage());
+            }
+        }
+        if (rep == null) {
+            final InputStream inputStream =
+                    cache.newDerivativeImageInputStream(ops);
+            if (inputStream == null) {
+                return null;
+            }
+            rep = new CachedImageRepresentation(mediaType, disposition,
+                    inputStream);
+        }
+        rep.setTag(tag);
+
+        if (isNotModified(tag, rep.getModificationDate())) {
+            rep.release();
+            return getNotModifiedRepresentation(tag);
+        }
+        applyRange(rep);
+        return rep;
+    }
+
+    /**
+     * Limits the given representation to the range requested in the
+     * request, if any, if its size is known and the request's
+     * <code>If-Range</code> header (if present) matches it. Otherwise, the
+     * range is {@link #ignoreRanges() ignored}.
+     */
+    private void applyRange(Representation rep) {
+        final List<Range> ranges = getRequest().getRanges();
+        if (ranges.isEmpty()) {
+            return;
+        }
+        if (ranges.size() == 1 && rep.hasKnownSize() &&
+                isRangeConditionMet(rep)) {
+            final Range range = resolveRange(ranges.get(0), rep.getSize());
+            if (range != null) {
+                rep.setRange(range);
+                getResponse().setStatus(Status.SUCCESS_PARTIAL_CONTENT);
+                return;
+            }
+        }
+        ignoreRanges();
+    }
+
+    /**
+     * @param range Range from a request, which may be open-ended or a suffix
+     *              range.
+     * @param size  Size of the entity.
+     * @return Range with an absolute index and size, or <code>null</code> if
+     *         the range is not satisfiable.
+     */
+    static Range resolveRange(Range range, long size) {
+        long index = range.getIndex();
+        long length = range.getSize();
+        if (index == Range.INDEX_LAST) {
+            if (length == Range.SIZE_MAX || length <= 0) {
+                return null;
+            }
+            length = Math.min(length, size);
+            index = size - length;
+        } else {
+            if (index < 0 || index >= size) {
+                return null;
+            }
+            length = (length == Range.SIZE_MAX) ?
+                    size - index : Math.min(length, size - index);
+        }
+        return (length > 0) ? new Range(index, length) : null;
+    }
+
+    /**
+     * @param tag Entity tag of the response.
+     * @return Representation for a <code>304 Not Modified</code> response,
+     *         the status of which has been set.
+     */
+    protected final Representation getNotModifiedRepresentation(Tag tag) {
+        getResponse().setStatus(Status.REDIRECTION_NOT_MODIFIED);
+        final Representation rep = new EmptyRepresentation();
+        rep.setTag(tag);
+        return rep;
+    }
+
+    /**
+     * Returns a strong entity tag for the derivative image corresponding to
+     * the given operation list. As the operation list identifies the
+     * derivative image only for a given version of its source image, the
+     * source image's info is incorporated too, so that the tag changes when
+     * the source image changes (to the extent that its info does).
+     *
+     * @param opList Operation list, to which any non-endpoint mutations
+     *               should have already been applied.
+     * @param info   Info of the source image.
+     * @return Entity tag.
+     */
+    protected static Tag getETag(OperationList opList, Info info)
+            throws IOException {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("MD5");
+            digest.update(opList.toString().getBytes(StandardCharsets.UTF_8));
+            digest.update(info.toJson().getBytes(StandardCharsets.UTF_8));
+            return new Tag(Hex.encodeHexString(digest.digest()), false);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
     /**
      * @return The client IP address, respecting the X-Forwarded-For header,
      *         if present.
@@ -385,6 +580,48 @@ public abstract class AbstractResource extends ServerResource {
         return getRequest().getClientInfo().getAddress();
     }
 
+    /**
+     * <p>Returns a representation of the derivative image corresponding to
+     * the given operation list, tagged with an {@link #getETag entity
+     * tag}.</p>
+     *
+     * <p>The derivative cache, if enabled, is checked first, as described in
+     * {@link #getCachedRepresentation(DerivativeCache, OperationList,
+     * Disposition, Tag)}. Otherwise, if the client already has a current
+     * copy, a <code>304 Not Modified</code> representation is returned
+     * without invoking the processor. Otherwise, the representation returned
+     * from {@link #getRepresentation} is returned, ignoring any requested
+     * ranges, as its size is not known in advance.</p>
+     */
+    protected final Representation getImageRepresentation(OperationList ops,
+                                                          Format format,
+                                                          Disposition disposition,
+                                                          Processor proc)
+            throws IOException, ProcessorException, CacheException {
+        final Info info = getOrReadInfo(ops.getIdentifier(), proc);
+        final Tag tag = getETag(ops, info);
+
+        if (!isBypassingCache()) {
+            final DerivativeCache cache = CacheFactory.getDerivativeCache();
+            if (cache != null) {
+                final Representation rep =
+                        getCachedRepresentation(cache, ops, disposition, tag);
+                if (rep != null) {
+                    return rep;
+                }
+            }
+        }
+        if (isNotModified(tag, null)) {
+            return getNotModifiedRepresentation(tag);
+        }
+        ignoreRanges();
+
+        final ImageRepresentation rep =
+                getRepresentation(ops, format, disposition, proc);
+        rep.setTag(tag);
+        return rep;
+    }
+
     protected ImageRepresentation getRepresentation(OperationList ops,
                                                     Format format,
                                                     Disposition disposition,
@@ -401,8 +638,32 @@ public abstract class AbstractResource extends ServerResource {
             throw new PayloadTooLargeException();
         }
 
+        // Reserve a place in the processor's queue, failing fast if it is
+        // full, and the estimated decoding footprint in the shared memory
+        // budget, so that a request that can't be handled receives a 503
+        // before its response is committed. No-op requests don't need
+        // either as they bypass the processor, and neither do requests for
+        // an image that another request is already producing, which will
+        // most likely be served with its result.
+        final boolean isCoalescable = !isBypassingCache() &&
+                CacheFactory.getDerivativeCache() != null &&
+                ImageRepresentation.isBeingProduced(ops);
+        ProcessingQueue.Ticket ticket = null;
+        MemoryBudget.Reservation reservation = null;
+        if (ops.hasEffect(format) && !isCoalescable) {
+            ticket = ProcessingQueue.forProcessor(proc).admit();
+            try {
+                reservation = MemoryBudget.getInstance().reserve(
+                        MemoryBudget.estimateFootprint(ops, imageInfo,
+                                proc.getMaxReductionFactor()));
+            } catch (ProcessorException e) {
+                ticket.close();
+                throw e;
+            }
+        }
+
         return new ImageRepresentation(imageInfo, proc, ops, disposition,
-                isBypassingCache());
+                isBypassingCache(), ticket, reservation);
     }
 
     /**
@@ -430,15 +691,15 @@ public abstract class AbstractResource extends ServerResource {
                     logger.debug("getOrReadInfo(): retrieved dimensions of {} from cache in {} msec",
                             identifier, watch.timeElapsed());
                 } else {
-                    info = readInfo(identifier, proc);
-                    cache.put(identifier, info);
+                    info = readInfoCoalesced(identifier, proc, cache);
                 }
             }
         } else {
             logger.debug("getOrReadInfo(): bypassing the cache, as requested");
+            info = readInfo(identifier, proc);
         }
         if (info == null) {
-            info = readInfo(identifier, proc);
+            info = readInfoCoalesced(identifier, proc, null);
         }
         return info;
     }
@@ -456,6 +717,32 @@ public abstract class AbstractResource extends ServerResource {
         return bypassingCache;
     }
 
+    /**
+     * Reads the info of the image with the given identifier and adds it to
+     * the given cache, unless another request is already doing the same, in
+     * which case the other request's result is returned.
+     *
+     * @param cache May be <code>null</code>.
+     */
+    private Info readInfoCoalesced(final Identifier identifier,
+                                   final Processor proc,
+                                   final DerivativeCache cache)
+            throws ProcessorException, CacheException {
+        try {
+            return infoCoalescer.execute(identifier, () -> {
+                final Info info = readInfo(identifier, proc);
+                if (cache != null) {
+                    cache.put(identifier, info);
+                }
+                return info;
+            });
+        } catch (ProcessorException | CacheException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ProcessorException(e.getMessage(), e);
+        }
+    }
+
     /**
      * Reads the information of the source image.
      *
@@ -473,6 +760,72 @@ public abstract class AbstractResource extends ServerResource {
         return info;
     }
 
+    /**
+     * Clears the ranges from the request, so that the whole entity is sent,
+     * for responses whose size is not known in advance. (A server may always
+     * ignore ranges.)
+     */
+    protected final void ignoreRanges() {
+        getRequest().getRanges().clear();
+    }
+
+    /**
+     * Evaluates the request's <code>If-None-Match</code> and (in its
+     * absence) <code>If-Modified-Since</code> headers against the given
+     * validators.
+     *
+     * @param tag          Entity tag. May be <code>null</code>.
+     * @param lastModified Modification date. May be <code>null</code>.
+     * @return Whether the client's copy of the entity is current.
+     */
+    protected final boolean isNotModified(Tag tag, Date lastModified) {
+        final Conditions conditions = getRequest().getConditions();
+        final List<Tag> noneMatch = conditions.getNoneMatch();
+        if (!noneMatch.isEmpty()) {
+            if (tag != null) {
+                for (Tag clientTag : noneMatch) {
+                    if (Tag.ALL.equals(clientTag) ||
+                            tag.getName().equals(clientTag.getName())) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        final Date modifiedSince = conditions.getModifiedSince();
+        // HTTP dates have a resolution of one second.
+        return (lastModified != null && modifiedSince != null &&
+                lastModified.getTime() / 1000 <= modifiedSince.getTime() / 1000);
+    }
+
+    /**
+     * @param rep Representation with known validators.
+     * @return Whether the request lacks an <code>If-Range</code> header, or
+     *         has one matching the given representation's strong entity tag
+     *         or modification date.
+     */
+    private boolean isRangeConditionMet(Representation rep) {
+        final String ifRange = getRequest().getHeaders().
+                getFirstValue("If-Range", true);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            final Tag tag = rep.getTag();
+            return (tag != null && !tag.isWeak() &&
+                    ifRange.equals(tag.format()));
+        }
+        final Date modified = rep.getModificationDate();
+        try {
+            final Instant date = Instant.from(
+                    DateTimeFormatter.RFC_1123_DATE_TIME.parse(ifRange));
+            return (modified != null &&
+                    modified.getTime() / 1000 == date.getEpochSecond());
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
     /**
      * @param name Template pathname, with leading slash.
      * @return Representation using the given template and the common template
@@ -4,22 +4,34 @@ import edu.illinois.library.cantaloupe.image.MediaType;
 import edu.illinois.library.cantaloupe.util.Stopwatch;
 import org.apache.commons.io.IOUtils;
 import org.restlet.data.Disposition;
+import org.restlet.data.Range;
 import org.restlet.representation.OutputRepresentation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
 
 /**
- * Restlet representation for cached images.
+ * <p>Restlet representation for cached images.</p>
+ *
+ * <p>Images may be read from either a stream or a file. When reading from a
+ * file, the size and modification date of the representation are set from
+ * it, and it (or a {@link #setRange(Range) range} of it) is written using
+ * {@link FileTransfer}, without being read into user space. Ranges of
+ * streams are written by skipping to the start of the range.</p>
  */
 public class CachedImageRepresentation extends OutputRepresentation {
 
     private static Logger logger = LoggerFactory.
             getLogger(CachedImageRepresentation.class);
 
+    private FileChannel fileChannel;
     private InputStream inputStream;
 
     /**
@@ -38,7 +50,45 @@ public class CachedImageRepresentation extends OutputRepresentation {
     }
 
     /**
-     * Writes the source image to the given output stream.
+     * Constructor for images from a cache that stores them in files. The
+     * file is opened immediately, so that the instance is unaffected by it
+     * being deleted afterwards.
+     *
+     * @param mediaType
+     * @param disposition
+     * @param file
+     * @throws IOException If the file can't be opened, for example because
+     *                     it has been deleted.
+     */
+    public CachedImageRepresentation(MediaType mediaType,
+                                     Disposition disposition,
+                                     File file) throws IOException {
+        super(new org.restlet.data.MediaType(mediaType.toString()));
+        this.fileChannel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ);
+        setSize(fileChannel.size());
+        setModificationDate(new Date(file.lastModified()));
+        setDisposition(disposition);
+    }
+
+    /**
+     * Closes the file or stream, in case the instance was released without
+     * having been written.
+     */
+    @Override
+    public void release() {
+        closeSource();
+        super.release();
+    }
+
+    private void closeSource() {
+        IOUtils.closeQuietly(fileChannel);
+        IOUtils.closeQuietly(inputStream);
+    }
+
+    /**
+     * Writes the image, or the range of it set by {@link #setRange(Range)},
+     * to the given output stream.
      *
      * @param outputStream Response body stream supplied by Restlet
      * @throws IOException
@@ -46,9 +96,37 @@ public class CachedImageRepresentation extends OutputRepresentation {
     @Override
     public void write(OutputStream outputStream) throws IOException {
         final Stopwatch watch = new Stopwatch();
-        IOUtils.copy(inputStream, outputStream);
+        try {
+            if (fileChannel != null) {
+                writeFile(outputStream);
+            } else {
+                writeStream(outputStream);
+            }
+        } finally {
+            closeSource();
+        }
         logger.debug("Streamed from the cache without resolving in {} msec",
                 watch.timeElapsed());
     }
 
-}
\ No newline at end of file
+    private void writeFile(OutputStream outputStream) throws IOException {
+        long position = 0, count = fileChannel.size();
+        final Range range = getRange();
+        if (range != null) {
+            position = range.getIndex();
+            count = range.getSize();
+        }
+        FileTransfer.transfer(fileChannel, position, count, outputStream);
+    }
+
+    private void writeStream(OutputStream outputStream) throws IOException {
+        final Range range = getRange();
+        if (range != null) {
+            IOUtils.copyLarge(inputStream, outputStream, range.getIndex(),
+                    range.getSize());
+        } else {
+            IOUtils.copy(inputStream, outputStream);
+        }
+    }
+
+}
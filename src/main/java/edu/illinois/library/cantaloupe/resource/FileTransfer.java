@@ -0,0 +1,89 @@
+package edu.illinois.library.cantaloupe.resource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * <p>Writes files to response output streams.</p>
+ *
+ * <p>When running in the standalone Jetty server, the response output
+ * stream is Jetty's own, and files are handed to it as memory-mapped buffers,
+ * which Jetty writes directly to the socket channel the same way it serves
+ * static files, with no copying through heap buffers. Otherwise (e.g. in
+ * other Servlet containers, or when the stream is wrapped), they are written
+ * using {@link FileChannel#transferTo}.</p>
+ */
+final class FileTransfer {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(FileTransfer.class);
+
+    /**
+     * Whether Jetty is on the classpath. It normally is, but not necessarily
+     * in other Servlet containers, so {@link JettyFileTransfer} must not be
+     * loaded unless this is <code>true</code>.
+     */
+    private static final boolean IS_JETTY_AVAILABLE;
+
+    static {
+        boolean isAvailable;
+        try {
+            Class.forName("org.eclipse.jetty.server.HttpOutput", false,
+                    FileTransfer.class.getClassLoader());
+            isAvailable = true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            isAvailable = false;
+        }
+        IS_JETTY_AVAILABLE = isAvailable;
+    }
+
+    /**
+     * Writes a portion of a file to an output stream. The stream is not
+     * closed, but when writing directly to Jetty, the response is completed
+     * and the stream can't be written to afterwards.
+     *
+     * @param channel  File to write. Will not be closed.
+     * @param position Offset within the file at which to start.
+     * @param count    Number of bytes to write.
+     * @param os       Stream to write to.
+     */
+    static void transfer(FileChannel channel, long position, long count,
+                         OutputStream os) throws IOException {
+        if (IS_JETTY_AVAILABLE && JettyFileTransfer.transfer(channel,
+                position, count, os)) {
+            logger.trace("transfer(): wrote {} bytes to Jetty", count);
+            return;
+        }
+        transferTo(channel, position, count,
+                (os instanceof WritableByteChannel) ?
+                        (WritableByteChannel) os : Channels.newChannel(os));
+    }
+
+    /**
+     * Writes a portion of a file to a channel using
+     * {@link FileChannel#transferTo}, which the OS will perform without any
+     * user-space copying if the channel is a socket or file.
+     */
+    static void transferTo(FileChannel channel, long position, long count,
+                           WritableByteChannel target) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            final long transferred =
+                    channel.transferTo(position, remaining, target);
+            if (transferred <= 0) {
+                break;
+            }
+            position += transferred;
+            remaining -= transferred;
+        }
+    }
+
+    private FileTransfer() {}
+
+}
@@ -1,13 +1,18 @@
 package edu.illinois.library.cantaloupe.resource;
 
+import edu.illinois.library.cantaloupe.cache.CacheException;
 import edu.illinois.library.cantaloupe.cache.CacheFactory;
 import edu.illinois.library.cantaloupe.cache.DerivativeCache;
 import edu.illinois.library.cantaloupe.image.Info;
 import edu.illinois.library.cantaloupe.operation.OperationList;
 import edu.illinois.library.cantaloupe.processor.FileProcessor;
+import edu.illinois.library.cantaloupe.processor.MemoryBudget;
+import edu.illinois.library.cantaloupe.processor.ProcessingQueue;
 import edu.illinois.library.cantaloupe.processor.Processor;
 import edu.illinois.library.cantaloupe.processor.StreamProcessor;
 import edu.illinois.library.cantaloupe.resolver.StreamSource;
+import edu.illinois.library.cantaloupe.util.JMXUtil;
+import edu.illinois.library.cantaloupe.util.RequestCoalescer;
 import edu.illinois.library.cantaloupe.util.Stopwatch;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.output.TeeOutputStream;
@@ -16,24 +21,124 @@ import org.restlet.representation.OutputRepresentation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Restlet representation for images.
  */
 public class ImageRepresentation extends OutputRepresentation {
 
+    /**
+     * Buffers what is written to it in memory, up to a maximum size, beyond
+     * which it writes the buffered data, and everything written after it,
+     * through to another output stream instead.
+     */
+    private static class SpillingOutputStream extends OutputStream {
+
+        private final int maxSize;
+        private final OutputStream spillStream;
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        SpillingOutputStream(OutputStream spillStream, int maxSize) {
+            this.spillStream = spillStream;
+            this.maxSize = maxSize;
+        }
+
+        boolean isSpilled() {
+            return (buffer == null);
+        }
+
+        /**
+         * @return Buffered data. Must not be called after the instance has
+         *         spilled.
+         */
+        byte[] toByteArray() {
+            return buffer.toByteArray();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (buffer != null && buffer.size() + len > maxSize) {
+                buffer.writeTo(spillStream);
+                buffer = null;
+            }
+            if (buffer != null) {
+                buffer.write(b, off, len);
+            } else {
+                spillStream.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (buffer == null) {
+                spillStream.flush();
+            }
+        }
+
+    }
+
     private static Logger logger = LoggerFactory.
             getLogger(ImageRepresentation.class);
 
+    /**
+     * Maximum size of a derivative image that will be buffered in memory in
+     * order to share it with concurrent identical requests. Larger images
+     * are streamed to the response of the request that produces them, and
+     * the other requests produce their own.
+     */
+    private static final int MAX_SHARED_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Maximum time for which a request will wait for an identical request to
+     * produce a derivative image before producing it itself.
+     */
+    private static final int SHARED_WAIT_TIMEOUT_SECONDS = 30;
+
+    /**
+     * Coalesces concurrent cache misses for the same derivative image, keyed
+     * by operation list string. Results are the produced image data, or
+     * <code>null</code> if it could not be shared.
+     */
+    private static final RequestCoalescer<String, byte[]> derivativeCoalescer =
+            new RequestCoalescer<>();
+
+    static {
+        JMXUtil.registerMBean(derivativeCoalescer,
+                RequestCoalescer.class.getSimpleName(), "derivatives");
+    }
+
+    /**
+     * @param opList Operation list.
+     * @return Whether another request is currently producing the derivative
+     *         image corresponding to the given operation list, in which case
+     *         a request for the same image will most likely be served with
+     *         the other request's result, without processing.
+     */
+    static boolean isBeingProduced(OperationList opList) {
+        return derivativeCoalescer.isInFlight(opList.toString());
+    }
+
     private boolean bypassCache = false;
     private Info imageInfo;
     private OperationList opList;
     private Processor processor;
+    private MemoryBudget.Reservation reservation;
+    private ProcessingQueue.Ticket ticket;
 
     /**
      * @param imageInfo
@@ -43,12 +148,25 @@ public class ImageRepresentation extends OutputRepresentation {
      * @param bypassCache If true, the cache will not be written to nor read
      *                    from, regardless of whether caching is enabled in the
      *                    application configuration.
+     * @param ticket      Place in the processor's queue, which will be used
+     *                    to wait for a processing slot and closed as soon as
+     *                    it is known to be no longer needed: when the image
+     *                    has been processed, or turns out not to need
+     *                    processing. May be <code>null</code>, in which case
+     *                    one will be obtained if processing turns out to be
+     *                    necessary after all.
+     * @param reservation Estimated decoding footprint reserved in the shared
+     *                    memory budget, which will be closed at the same
+     *                    time as the ticket. May be <code>null</code> under
+     *                    the same conditions.
      */
     public ImageRepresentation(final Info imageInfo,
                                final Processor processor,
                                final OperationList opList,
                                final Disposition disposition,
-                               final boolean bypassCache) {
+                               final boolean bypassCache,
+                               final ProcessingQueue.Ticket ticket,
+                               final MemoryBudget.Reservation reservation) {
         super(new org.restlet.data.MediaType(
                 opList.getOutputFormat().getPreferredMediaType().toString()));
         this.imageInfo = imageInfo;
@@ -56,9 +174,32 @@ public class ImageRepresentation extends OutputRepresentation {
         this.opList = opList;
         this.opList.freeze();
         this.bypassCache = bypassCache;
+        this.ticket = ticket;
+        this.reservation = reservation;
         this.setDisposition(disposition);
     }
 
+    /**
+     * Closes the processing queue ticket and the memory reservation, in case
+     * the instance was released without having been written.
+     */
+    @Override
+    public void release() {
+        closeTicketAndReservation();
+        super.release();
+    }
+
+    private void closeTicketAndReservation() {
+        if (reservation != null) {
+            reservation.close();
+            reservation = null;
+        }
+        if (ticket != null) {
+            ticket.close();
+            ticket = null;
+        }
+    }
+
     /**
      * Writes the image requested in the constructor to the given output
      * stream, either retrieving it from the derivative cache, or getting it
@@ -69,6 +210,14 @@ public class ImageRepresentation extends OutputRepresentation {
      */
     @Override
     public void write(OutputStream outputStream) throws IOException {
+        try {
+            writeImage(outputStream);
+        } finally {
+            closeTicketAndReservation();
+        }
+    }
+
+    private void writeImage(OutputStream outputStream) throws IOException {
         // N.B. We don't need to close outputStream after writing to it;
         // Restlet will take care of that.
         if (!bypassCache) {
@@ -76,40 +225,15 @@ public class ImageRepresentation extends OutputRepresentation {
             final DerivativeCache cache = CacheFactory.getDerivativeCache();
             if (cache != null) {
                 // Try to get the image from the cache.
-                try (InputStream inputStream = cache.newDerivativeImageInputStream(opList)) {
-                    if (inputStream != null) {
-                        // The image is available in the cache; write it to the
-                        // response output stream.
-                        final Stopwatch watch = new Stopwatch();
-
-                        IOUtils.copy(inputStream, outputStream);
-
+                try {
+                    final Stopwatch watch = new Stopwatch();
+                    if (writeFromCache(outputStream, cache)) {
                         logger.debug("Streamed from {} in {} msec: {}",
                                 cache.getClass().getSimpleName(),
                                 watch.timeElapsed(),
                                 opList);
                     } else {
-                        // Create a TeeOutputStream to write to the response
-                        // output stream and the cache pseudo-simultaneously.
-                        // Restlet will close outputStream, but
-                        // cacheOutputStream is our responsibility. (teeStream
-                        // doesn't matter, although the finalizer may close it,
-                        // so it's important that these two output streams'
-                        // close() methods can deal with being called twice.)
-                        try (OutputStream cacheOutputStream =
-                                     cache.newDerivativeImageOutputStream(opList)) {
-                            OutputStream teeStream = new TeeOutputStream(
-                                    outputStream, cacheOutputStream);
-                            doWrite(teeStream);
-                        } catch (Exception e) {
-                            // This typically happens when the connection has
-                            // been closed prematurely, as in the case of e.g.
-                            // the client hitting the stop button. The cached
-                            // image has been incompletely written and is
-                            // corrupt, so it must be purged.
-                            logger.info("write(): {}", e.getMessage());
-                            cache.purge(opList);
-                        }
+                        writeCoalesced(outputStream, cache);
                     }
                 } catch (Exception e) {
                     throw new IOException(e);
@@ -130,6 +254,143 @@ public class ImageRepresentation extends OutputRepresentation {
         }
     }
 
+    /**
+     * <p>Handles a cache miss. If no other request is currently producing the
+     * same derivative image, the image is produced into the cache and into
+     * an in-memory buffer, which is then written to the response and shared
+     * with any identical requests that arrived in the meantime. Otherwise,
+     * this method waits for the other request to produce the image and writes
+     * its result, so that concurrent identical requests (e.g. for a tile of a
+     * popular image) are only processed once. As the result is shared
+     * directly, this doesn't depend on when, or whether, the cache makes it
+     * available to readers, and as it is shared before being written to any
+     * response, no request waits on another request's client.</p>
+     *
+     * <p>If the other request fails, or its image is too large to share, or
+     * it doesn't produce it within {@link #SHARED_WAIT_TIMEOUT_SECONDS}, the
+     * image is produced as usual.</p>
+     *
+     * @param outputStream Response body output stream.
+     * @param cache        Derivative cache.
+     */
+    private void writeCoalesced(OutputStream outputStream,
+                                DerivativeCache cache) throws Exception {
+        final String key = opList.toString();
+        // If another request is already producing the image, this one will
+        // most likely not need to process it, so it should not occupy a place
+        // in the queue while it waits.
+        if (derivativeCoalescer.isInFlight(key)) {
+            closeTicketAndReservation();
+        }
+        final AtomicBoolean isProducer = new AtomicBoolean(false);
+        final byte[] data = derivativeCoalescer.execute(key, () -> {
+            isProducer.set(true);
+            return produceAndCache(outputStream, cache);
+        }, SHARED_WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        if (data != null) {
+            closeTicketAndReservation();
+            outputStream.write(data);
+            if (!isProducer.get()) {
+                logger.debug("Wrote the result of a coalesced request: {}",
+                        opList);
+            }
+        } else if (!isProducer.get()) {
+            writeAndCache(outputStream, cache);
+        }
+    }
+
+    /**
+     * Produces the image into the cache and into an in-memory buffer, unless
+     * it turns out to be larger than {@link #MAX_SHARED_SIZE}, in which case
+     * it is written to the response instead of the buffer.
+     *
+     * @param outputStream Response body output stream.
+     * @param cache        Derivative cache.
+     * @return             Image data, or <code>null</code> if the image was
+     *                     too large to buffer, or could not be produced.
+     */
+    private byte[] produceAndCache(OutputStream outputStream,
+                                   DerivativeCache cache)
+            throws CacheException {
+        final SpillingOutputStream bufferStream =
+                new SpillingOutputStream(outputStream, MAX_SHARED_SIZE);
+        if (writeAndCache(bufferStream, cache) && !bufferStream.isSpilled()) {
+            return bufferStream.toByteArray();
+        }
+        return null;
+    }
+
+    /**
+     * Writes the image from the cache, if it is there. If the cache stores it
+     * in a file, it is written using {@link FileTransfer}.
+     *
+     * @param outputStream Response body output stream.
+     * @param cache        Derivative cache.
+     * @return             Whether the image was found and written.
+     */
+    private boolean writeFromCache(OutputStream outputStream,
+                                   DerivativeCache cache)
+            throws IOException, CacheException {
+        final File file = cache.getDerivativeImageFile(opList);
+        if (file != null) {
+            try (FileChannel channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.READ)) {
+                // No processing will be needed, and the client may be slow.
+                closeTicketAndReservation();
+                FileTransfer.transfer(channel, 0, channel.size(),
+                        outputStream);
+                return true;
+            } catch (NoSuchFileException e) {
+                // It was purged in the meantime.
+                return false;
+            }
+        }
+        try (InputStream inputStream =
+                     cache.newDerivativeImageInputStream(opList)) {
+            if (inputStream != null) {
+                closeTicketAndReservation();
+                IOUtils.copy(inputStream, outputStream);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the image to the given output stream and the cache
+     * pseudo-simultaneously.
+     *
+     * @param outputStream Response body output stream.
+     * @param cache        Derivative cache.
+     * @return             Whether the image was written completely.
+     */
+    private boolean writeAndCache(OutputStream outputStream,
+                                  DerivativeCache cache)
+            throws CacheException {
+        // Create a TeeOutputStream to write to the response output stream and
+        // the cache pseudo-simultaneously. Restlet will close outputStream,
+        // but cacheOutputStream is our responsibility. (teeStream doesn't
+        // matter, although the finalizer may close it, so it's important that
+        // these two output streams' close() methods can deal with being
+        // called twice.)
+        try (OutputStream cacheOutputStream =
+                     cache.newDerivativeImageOutputStream(opList)) {
+            OutputStream teeStream = new TeeOutputStream(
+                    outputStream, cacheOutputStream);
+            doWrite(teeStream);
+        } catch (Exception e) {
+            // This typically happens when the connection has been closed
+            // prematurely, as in the case of e.g. the client hitting the stop
+            // button. The cached image has been incompletely written and is
+            // corrupt, so it must be purged.
+            logger.info("write(): {}", e.getMessage());
+            cache.purge(opList);
+            return false;
+        }
+        return true;
+    }
+
     /**
      * @param outputStream Either the response output stream, or a tee stream
      *                     for writing to the response and the cache
@@ -145,8 +406,10 @@ public class ImageRepresentation extends OutputRepresentation {
                     ((FileProcessor) processor).getSourceFile() != null) {
                 final File sourceFile =
                         ((FileProcessor) processor).getSourceFile();
-                try (InputStream inputStream = new FileInputStream(sourceFile)) {
-                    IOUtils.copy(inputStream, outputStream);
+                try (FileChannel channel = FileChannel.open(
+                        sourceFile.toPath(), StandardOpenOption.READ)) {
+                    FileTransfer.transfer(channel, 0, channel.size(),
+                            outputStream);
                 }
             } else {
                 final StreamSource streamSource =
@@ -158,7 +421,35 @@ public class ImageRepresentation extends OutputRepresentation {
             logger.debug("Streamed with no processing in {} msec: {}",
                     watch.timeElapsed(), opList);
         } else {
-            processor.process(opList, imageInfo, outputStream);
+            // A request that was expected not to need processing, because
+            // another request was producing the same image, has no place in
+            // the queue yet. Its response has already been committed, so it
+            // can't be rejected cleanly anymore; instead, it is queued even
+            // if the queue is full, and waits for a slot for a bounded time.
+            if (ticket == null) {
+                ticket = ProcessingQueue.forProcessor(processor).
+                        admitWithoutLimit();
+            }
+            // Wait for a processing slot, if necessary. The estimated
+            // decoding footprint has normally been reserved in the shared
+            // memory budget before the response was committed, but a late
+            // request like the above has to wait for it now. The slot, the
+            // memory, and the place in the queue are all given up as soon as
+            // the processing is done. N.B.: unless the image is being
+            // buffered for identical requests (see writeCoalesced()), the
+            // processor writes straight into the response, so a slow client
+            // holds them for the duration of the processing.
+            try {
+                if (reservation == null) {
+                    reservation = MemoryBudget.getInstance().reserve(
+                            MemoryBudget.estimateFootprint(opList, imageInfo,
+                                    processor.getMaxReductionFactor()));
+                }
+                ticket.acquireSlot();
+                processor.process(opList, imageInfo, outputStream);
+            } finally {
+                closeTicketAndReservation();
+            }
 
             logger.debug("{} processed in {} msec: {}",
                     processor.getClass().getSimpleName(),
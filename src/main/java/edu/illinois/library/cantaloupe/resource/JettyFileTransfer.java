@@ -0,0 +1,47 @@
+package edu.illinois.library.cantaloupe.resource;
+
+import org.eclipse.jetty.server.HttpOutput;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Jetty-specific half of {@link FileTransfer}, kept separate so that it is
+ * only loaded when Jetty is available.
+ */
+final class JettyFileTransfer {
+
+    /**
+     * Files are mapped in regions of this size, to bound the amount of
+     * address space used by each transfer.
+     */
+    static final long MAX_REGION_SIZE = 32 * 1024 * 1024;
+
+    /**
+     * @return Whether the file was written, which will be <code>false</code>
+     *         if the stream is not Jetty's response stream.
+     */
+    static boolean transfer(FileChannel channel, long position, long count,
+                            OutputStream os) throws IOException {
+        if (!(os instanceof HttpOutput)) {
+            return false;
+        }
+        final HttpOutput output = (HttpOutput) os;
+        final long end = Math.min(position + count, channel.size());
+        while (position < end) {
+            final long size = Math.min(MAX_REGION_SIZE, end - position);
+            final ByteBuffer region =
+                    channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            // HttpOutput writes large direct buffers straight to the
+            // connection, without aggregating them.
+            output.write(region);
+            position += size;
+        }
+        return true;
+    }
+
+    private JettyFileTransfer() {}
+
+}
@@ -1,18 +1,13 @@
 package edu.illinois.library.cantaloupe.resource.api;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import edu.illinois.library.cantaloupe.cache.Cache;
-import edu.illinois.library.cantaloupe.cache.CacheFactory;
 import edu.illinois.library.cantaloupe.config.Configuration;
 import edu.illinois.library.cantaloupe.config.ConfigurationFactory;
-import edu.illinois.library.cantaloupe.image.Identifier;
 import edu.illinois.library.cantaloupe.resource.AbstractResource;
 import edu.illinois.library.cantaloupe.resource.EndpointDisabledException;
 import edu.illinois.library.cantaloupe.resource.JSONRepresentation;
-import org.restlet.data.Reference;
 import org.restlet.representation.EmptyRepresentation;
 import org.restlet.representation.Representation;
-import org.restlet.resource.Delete;
 import org.restlet.resource.Get;
 import org.restlet.resource.Put;
 import org.restlet.resource.ResourceException;
@@ -23,6 +18,11 @@ import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+/**
+ * Provides access to the application configuration.
+ *
+ * @see CacheResource
+ */
 public class APIResource extends AbstractResource {
 
     private static org.slf4j.Logger logger = LoggerFactory.
@@ -39,23 +39,6 @@ public class APIResource extends AbstractResource {
         super.doInit();
     }
 
-    /**
-     * @throws Exception
-     */
-    @Delete
-    public Representation doPurge() throws Exception {
-        final Cache cache = CacheFactory.getDerivativeCache();
-        if (cache != null) {
-            final String idStr = (String) this.getRequest().getAttributes().
-                    get("identifier");
-            final Identifier identifier =
-                    new Identifier(decodeSlashes(Reference.decode(idStr)));
-
-            cache.purge(identifier);
-        }
-        return new EmptyRepresentation();
-    }
-
     /**
      * @throws Exception
      */
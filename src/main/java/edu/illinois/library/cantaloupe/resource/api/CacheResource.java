@@ -0,0 +1,64 @@
+package edu.illinois.library.cantaloupe.resource.api;
+
+import edu.illinois.library.cantaloupe.WebApplication;
+import edu.illinois.library.cantaloupe.cache.Cache;
+import edu.illinois.library.cantaloupe.cache.CacheFactory;
+import edu.illinois.library.cantaloupe.cache.PurgeJob;
+import edu.illinois.library.cantaloupe.config.ConfigurationFactory;
+import edu.illinois.library.cantaloupe.image.Identifier;
+import edu.illinois.library.cantaloupe.resource.AbstractResource;
+import edu.illinois.library.cantaloupe.resource.EndpointDisabledException;
+import edu.illinois.library.cantaloupe.resource.JSONRepresentation;
+import org.restlet.data.Reference;
+import org.restlet.data.Status;
+import org.restlet.representation.EmptyRepresentation;
+import org.restlet.representation.Representation;
+import org.restlet.resource.Delete;
+import org.restlet.resource.ResourceException;
+
+/**
+ * Provides the ability to purge the derivative cache. This is a resource of
+ * its own, rather than a method of {@link APIResource}, so that it is only
+ * reachable at {@link WebApplication#CACHE_PATH}.
+ */
+public class CacheResource extends AbstractResource {
+
+    @Override
+    protected void doInit() throws ResourceException {
+        if (!ConfigurationFactory.getInstance().
+                getBoolean(APIResource.ENABLED_CONFIG_KEY, true)) {
+            throw new EndpointDisabledException();
+        }
+        super.doInit();
+    }
+
+    /**
+     * <p>Purges the derivative cache, or only the content related to the
+     * identifier in the URI path, if present.</p>
+     *
+     * <p>The purge runs in the background. The response is a <code>202
+     * Accepted</code> with a <code>Location</code> of a
+     * {@link PurgeJobResource} that can be polled for its progress.</p>
+     *
+     * @throws Exception
+     */
+    @Delete
+    public Representation doPurge() throws Exception {
+        final Cache cache = CacheFactory.getDerivativeCache();
+        if (cache != null) {
+            final String idStr = (String) this.getRequest().getAttributes().
+                    get("identifier");
+            final Identifier identifier = (idStr != null) ?
+                    new Identifier(decodeSlashes(Reference.decode(idStr))) :
+                    null;
+
+            final PurgeJob job = PurgeJob.submit(cache, identifier);
+            getResponse().setLocationRef(getPublicRootRef(getRequest()) +
+                    WebApplication.CACHE_PATH + "/jobs/" + job.getID());
+            getResponse().setStatus(Status.SUCCESS_ACCEPTED);
+            return new JSONRepresentation(job.toMap());
+        }
+        return new EmptyRepresentation();
+    }
+
+}
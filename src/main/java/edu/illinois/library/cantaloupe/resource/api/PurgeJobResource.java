@@ -0,0 +1,58 @@
+package edu.illinois.library.cantaloupe.resource.api;
+
+import edu.illinois.library.cantaloupe.cache.PurgeJob;
+import edu.illinois.library.cantaloupe.config.ConfigurationFactory;
+import edu.illinois.library.cantaloupe.resource.AbstractResource;
+import edu.illinois.library.cantaloupe.resource.EndpointDisabledException;
+import edu.illinois.library.cantaloupe.resource.JSONRepresentation;
+import org.restlet.data.Status;
+import org.restlet.representation.Representation;
+import org.restlet.resource.Delete;
+import org.restlet.resource.Get;
+import org.restlet.resource.ResourceException;
+
+/**
+ * Provides the status of, and the ability to cancel, a {@link PurgeJob}
+ * started by {@link CacheResource#doPurge()}.
+ */
+public class PurgeJobResource extends AbstractResource {
+
+    private PurgeJob job;
+
+    @Override
+    protected void doInit() throws ResourceException {
+        if (!ConfigurationFactory.getInstance().
+                getBoolean(APIResource.ENABLED_CONFIG_KEY, true)) {
+            throw new EndpointDisabledException();
+        }
+        super.doInit();
+
+        final String id = (String) getRequest().getAttributes().get("id");
+        job = PurgeJob.get(id);
+        if (job == null) {
+            throw new ResourceException(Status.CLIENT_ERROR_NOT_FOUND,
+                    "No such job: " + id);
+        }
+    }
+
+    /**
+     * Requests cancellation of the job.
+     *
+     * @throws Exception
+     */
+    @Delete("json")
+    public Representation doCancel() throws Exception {
+        job.cancel();
+        getResponse().setStatus(Status.SUCCESS_ACCEPTED);
+        return new JSONRepresentation(job.toMap());
+    }
+
+    /**
+     * @throws Exception
+     */
+    @Get("json")
+    public Representation getStatus() throws Exception {
+        return new JSONRepresentation(job.toMap());
+    }
+
+}
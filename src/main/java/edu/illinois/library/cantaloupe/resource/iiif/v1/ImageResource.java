@@ -2,7 +2,6 @@ package edu.illinois.library.cantaloupe.resource.iiif.v1;
 
 import edu.illinois.library.cantaloupe.cache.Cache;
 import edu.illinois.library.cantaloupe.cache.CacheFactory;
-import edu.illinois.library.cantaloupe.cache.DerivativeCache;
 import edu.illinois.library.cantaloupe.config.ConfigurationFactory;
 import edu.illinois.library.cantaloupe.image.Format;
 import edu.illinois.library.cantaloupe.image.Identifier;
@@ -13,7 +12,6 @@ import edu.illinois.library.cantaloupe.processor.ProcessorFactory;
 import edu.illinois.library.cantaloupe.processor.UnsupportedSourceFormatException;
 import edu.illinois.library.cantaloupe.resolver.Resolver;
 import edu.illinois.library.cantaloupe.resolver.ResolverFactory;
-import edu.illinois.library.cantaloupe.resource.CachedImageRepresentation;
 import edu.illinois.library.cantaloupe.resource.SourceImageWrangler;
 import org.apache.commons.lang3.StringUtils;
 import org.restlet.data.Disposition;
@@ -26,7 +24,6 @@ import org.restlet.resource.ResourceException;
 
 import java.awt.Dimension;
 import java.io.FileNotFoundException;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -48,6 +45,9 @@ public class ImageResource extends IIIF1Resource {
     @Override
     protected void doInit() throws ResourceException {
         super.doInit();
+        // Conditional requests are handled by getImageRepresentation() and
+        // getCachedRepresentation(), before any processing takes place.
+        setConditional(false);
         getResponseCacheDirectives().addAll(getCacheDirectives());
     }
 
@@ -129,14 +129,10 @@ public class ImageResource extends IIIF1Resource {
         // just return the cached image.
         if (!ConfigurationFactory.getInstance().
                 getBoolean(Cache.RESOLVE_FIRST_CONFIG_KEY, true)) {
-            DerivativeCache cache = CacheFactory.getDerivativeCache();
-            if (cache != null) {
-                InputStream inputStream = cache.newDerivativeImageInputStream(ops);
-                if (inputStream != null) {
-                    return new CachedImageRepresentation(
-                            ops.getOutputFormat().getPreferredMediaType(),
-                            disposition, inputStream);
-                }
+            final Representation cachedRep =
+                    getCachedRepresentation(ops, disposition);
+            if (cachedRep != null) {
+                return cachedRep;
             }
         }
 
@@ -171,7 +167,7 @@ public class ImageResource extends IIIF1Resource {
             throw new UnsupportedSourceFormatException(msg);
         }
 
-        return getRepresentation(ops, format, disposition, processor);
+        return getImageRepresentation(ops, format, disposition, processor);
     }
 
     /**
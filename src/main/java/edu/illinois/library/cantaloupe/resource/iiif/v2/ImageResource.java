@@ -3,7 +3,6 @@ package edu.illinois.library.cantaloupe.resource.iiif.v2;
 import edu.illinois.library.cantaloupe.WebApplication;
 import edu.illinois.library.cantaloupe.cache.Cache;
 import edu.illinois.library.cantaloupe.cache.CacheFactory;
-import edu.illinois.library.cantaloupe.cache.DerivativeCache;
 import edu.illinois.library.cantaloupe.config.ConfigurationFactory;
 import edu.illinois.library.cantaloupe.image.Format;
 import edu.illinois.library.cantaloupe.image.Identifier;
@@ -13,7 +12,6 @@ import edu.illinois.library.cantaloupe.processor.ProcessorFactory;
 import edu.illinois.library.cantaloupe.processor.UnsupportedOutputFormatException;
 import edu.illinois.library.cantaloupe.resolver.Resolver;
 import edu.illinois.library.cantaloupe.resolver.ResolverFactory;
-import edu.illinois.library.cantaloupe.resource.CachedImageRepresentation;
 import edu.illinois.library.cantaloupe.resource.SourceImageWrangler;
 import edu.illinois.library.cantaloupe.resource.iiif.SizeRestrictedException;
 import org.restlet.data.Disposition;
@@ -24,7 +22,6 @@ import org.restlet.resource.ResourceException;
 
 import java.awt.Dimension;
 import java.io.FileNotFoundException;
-import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -45,6 +42,9 @@ public class ImageResource extends IIIF2Resource {
     @Override
     protected void doInit() throws ResourceException {
         super.doInit();
+        // Conditional requests are handled by getImageRepresentation() and
+        // getCachedRepresentation(), before any processing takes place.
+        setConditional(false);
         getResponseCacheDirectives().addAll(getCacheDirectives());
     }
 
@@ -79,15 +79,11 @@ public class ImageResource extends IIIF2Resource {
         // just return the cached image.
         if (!ConfigurationFactory.getInstance().
                 getBoolean(Cache.RESOLVE_FIRST_CONFIG_KEY, true)) {
-            DerivativeCache cache = CacheFactory.getDerivativeCache();
-            if (cache != null) {
-                InputStream inputStream = cache.newDerivativeImageInputStream(ops);
-                if (inputStream != null) {
-                    this.addLinkHeader(params);
-                    return new CachedImageRepresentation(
-                            params.getOutputFormat().getPreferredMediaType(),
-                            disposition, inputStream);
-                }
+            final Representation cachedRep =
+                    getCachedRepresentation(ops, disposition);
+            if (cachedRep != null) {
+                this.addLinkHeader(params);
+                return cachedRep;
             }
         }
 
@@ -166,7 +162,7 @@ public class ImageResource extends IIIF2Resource {
 
         this.addLinkHeader(params);
 
-        return getRepresentation(ops, format, disposition, processor);
+        return getImageRepresentation(ops, format, disposition, processor);
     }
 
     private void addLinkHeader(Parameters params) {
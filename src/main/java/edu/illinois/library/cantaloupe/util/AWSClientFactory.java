@@ -3,6 +3,7 @@ package edu.illinois.library.cantaloupe.util;
 import com.amazonaws.ClientConfiguration;
 import com.amazonaws.auth.AWSCredentials;
 import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.client.builder.AwsClientBuilder;
 import com.amazonaws.regions.Regions;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
@@ -36,6 +37,7 @@ public class AWSClientFactory {
     }
 
     private String accessKeyId;
+    private String endpoint;
     private String region;
     private String secretKey;
 
@@ -50,6 +52,16 @@ public class AWSClientFactory {
         this.region = region;
     }
 
+    /**
+     * @param endpoint URL of an S3-compatible service to use instead of AWS.
+     *                 May be <code>null</code>.
+     */
+    public AWSClientFactory(String accessKeyId, String secretKey,
+                            String region, String endpoint) {
+        this(accessKeyId, secretKey, region);
+        this.endpoint = endpoint;
+    }
+
     public AmazonS3 newClient() {
         final AWSCredentialsProvider credsProvider =
                 new CustomCredentialsProvider();
@@ -63,10 +75,19 @@ public class AWSClientFactory {
             regionStr = Regions.DEFAULT_REGION.getName();
         }
 
-        return AmazonS3ClientBuilder.standard().
-                withRegion(regionStr).
+        final AmazonS3ClientBuilder builder = AmazonS3ClientBuilder.standard().
                 withCredentials(credsProvider).
-                withClientConfiguration(clientConfig).build();
+                withClientConfiguration(clientConfig);
+        if (endpoint != null && endpoint.length() > 0) {
+            // S3-compatible services generally don't support
+            // virtual-hosted-style bucket addressing.
+            builder.withEndpointConfiguration(
+                    new AwsClientBuilder.EndpointConfiguration(endpoint, regionStr)).
+                    withPathStyleAccessEnabled(true);
+        } else {
+            builder.withRegion(regionStr);
+        }
+        return builder.build();
     }
 
 }
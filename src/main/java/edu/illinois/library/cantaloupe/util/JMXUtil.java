@@ -0,0 +1,50 @@
+package edu.illinois.library.cantaloupe.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Registers application objects with the platform MBean server, so that
+ * their statistics can be monitored using any JMX client (e.g. JConsole or
+ * VisualVM).
+ */
+public abstract class JMXUtil {
+
+    private static final Logger logger = LoggerFactory.getLogger(JMXUtil.class);
+
+    static final String DOMAIN = "edu.illinois.library.cantaloupe";
+
+    /**
+     * Registers the given standard MBean under the name
+     * <code>edu.illinois.library.cantaloupe:type={type},name={name}</code>,
+     * replacing any other MBean already registered under that name. Failures
+     * are logged and otherwise ignored, as monitoring is not essential to the
+     * functioning of the application.
+     *
+     * @param mbean Object implementing an interface whose name is the
+     *              object's class name followed by <code>MBean</code>.
+     * @param type  MBean type, typically the simple class name.
+     * @param name  Name distinguishing the instance from others of the same
+     *              type.
+     */
+    public static void registerMBean(Object mbean, String type, String name) {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName objectName = new ObjectName(
+                    DOMAIN + ":type=" + type + ",name=" + name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(mbean, objectName);
+        } catch (JMException e) {
+            logger.warn("registerMBean(): failed to register {}/{}: {}",
+                    type, name, e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,133 @@
+package edu.illinois.library.cantaloupe.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Coalesces concurrent executions of equivalent tasks, identified by equal
+ * keys, into a single execution ("single-flight"). The first caller for a
+ * given key executes its task; callers that arrive with the same key while
+ * that execution is in progress wait for it to complete and receive its
+ * result (or exception) instead of executing their own task. Optionally,
+ * they wait for no longer than a given timeout, after which they execute
+ * their own task after all.</p>
+ *
+ * <p>Results are not retained after an execution completes; this is not a
+ * cache.</p>
+ *
+ * <p>Instances are thread-safe.</p>
+ *
+ * @param <K> Key type.
+ * @param <V> Result type.
+ */
+public class RequestCoalescer<K, V> implements RequestCoalescerMBean {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight =
+            new ConcurrentHashMap<>();
+    private final AtomicLong coalescedCount = new AtomicLong(0);
+    private final AtomicLong executedCount = new AtomicLong(0);
+    private final AtomicLong timedOutCount = new AtomicLong(0);
+
+    /**
+     * @param key  Key identifying the task.
+     * @param task Task to execute if no equivalent task is already in
+     *             progress.
+     * @return Result of either the given task or the equivalent in-progress
+     *         task.
+     * @throws Exception Whatever the executed task threw.
+     */
+    public V execute(K key, Callable<V> task) throws Exception {
+        return execute(key, task, 0, null);
+    }
+
+    /**
+     * Variant of {@link #execute(Object, Callable)} in which a caller that
+     * finds an equivalent task in progress waits for it for no longer than
+     * the given timeout. If it times out, it executes its own task, without
+     * coalescing it with anything, so that a stalled execution can't hold
+     * up every equivalent request indefinitely.
+     *
+     * @param key     Key identifying the task.
+     * @param task    Task to execute if no equivalent task is already in
+     *                progress, or if it doesn't complete in time.
+     * @param timeout Maximum time to wait for an equivalent task. If 0, the
+     *                wait is unbounded.
+     * @param unit    Unit of <code>timeout</code>.
+     * @return Result of either the given task or the equivalent in-progress
+     *         task.
+     * @throws Exception Whatever the executed task threw.
+     */
+    public V execute(K key, Callable<V> task, long timeout, TimeUnit unit)
+            throws Exception {
+        final CompletableFuture<V> future = new CompletableFuture<>();
+        final CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            try {
+                final V result = (timeout > 0) ?
+                        existing.get(timeout, unit) : existing.get();
+                coalescedCount.incrementAndGet();
+                return result;
+            } catch (ExecutionException e) {
+                coalescedCount.incrementAndGet();
+                final Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                throw e;
+            } catch (TimeoutException e) {
+                timedOutCount.incrementAndGet();
+                executedCount.incrementAndGet();
+                return task.call();
+            }
+        }
+
+        executedCount.incrementAndGet();
+        try {
+            final V result = task.call();
+            future.complete(result);
+            return result;
+        } catch (Exception | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * @param key Key identifying a task.
+     * @return Whether a task with the given key is currently executing. The
+     *         result is only advisory, as the execution may start or finish
+     *         at any time.
+     */
+    public boolean isInFlight(K key) {
+        return inFlight.containsKey(key);
+    }
+
+    @Override
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    @Override
+    public long getExecutedCount() {
+        return executedCount.get();
+    }
+
+    @Override
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    @Override
+    public long getTimedOutCount() {
+        return timedOutCount.get();
+    }
+
+}
@@ -0,0 +1,30 @@
+package edu.illinois.library.cantaloupe.util;
+
+/**
+ * JMX management interface of {@link RequestCoalescer}.
+ */
+public interface RequestCoalescerMBean {
+
+    /**
+     * @return Number of requests that were satisfied by waiting on another
+     *         request's execution rather than executing themselves.
+     */
+    long getCoalescedCount();
+
+    /**
+     * @return Number of requests that were executed.
+     */
+    long getExecutedCount();
+
+    /**
+     * @return Number of executions currently in progress.
+     */
+    int getInFlightCount();
+
+    /**
+     * @return Number of requests that gave up waiting on another request's
+     *         execution and executed themselves.
+     */
+    long getTimedOutCount();
+
+}
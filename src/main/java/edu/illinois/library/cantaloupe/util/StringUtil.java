@@ -2,6 +2,48 @@ package edu.illinois.library.cantaloupe.util;
 
 public abstract class StringUtil {
 
+    /**
+     * @param humanSize Number of bytes, optionally followed by a unit of
+     *                  <code>B</code>, <code>K</code>, <code>KB</code>,
+     *                  <code>M</code>, <code>MB</code>, <code>G</code>,
+     *                  <code>GB</code>, etc., e.g. <code>1.5G</code>. Units
+     *                  are binary (<code>1K</code> = 1024 bytes) and
+     *                  case-insensitive.
+     * @return Number of bytes.
+     * @throws NumberFormatException If the argument can't be parsed.
+     */
+    public static long parseByteSize(String humanSize) {
+        String str = humanSize.trim().toUpperCase();
+        if (str.endsWith("B")) {
+            str = str.substring(0, str.length() - 1);
+        }
+        short exponent = 0;
+        if (!str.isEmpty()) {
+            switch (str.charAt(str.length() - 1)) {
+                case 'K':
+                    exponent = 1;
+                    break;
+                case 'M':
+                    exponent = 2;
+                    break;
+                case 'G':
+                    exponent = 3;
+                    break;
+                case 'T':
+                    exponent = 4;
+                    break;
+                case 'P': // you never know
+                    exponent = 5;
+                    break;
+            }
+            if (exponent > 0) {
+                str = str.substring(0, str.length() - 1);
+            }
+        }
+        final double number = Double.parseDouble(str.trim());
+        return Math.round(number * Math.pow(1024, exponent));
+    }
+
     /**
      * @param f
      * @return String representation of the given float with trailing zeroes
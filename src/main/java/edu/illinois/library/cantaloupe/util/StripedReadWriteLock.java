@@ -0,0 +1,63 @@
+package edu.illinois.library.cantaloupe.util;
+
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <p>Fixed-size table of read/write locks, one of which is assigned to any
+ * given key based on its hash code.</p>
+ *
+ * <p>This allows for locking on individual keys without having to maintain
+ * a lock per key, which would either grow without bound or require tracking
+ * when each lock can safely be removed. Two different keys may share a lock,
+ * in which case they will contend with each other, but the probability of
+ * this decreases as the number of stripes increases.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+public class StripedReadWriteLock {
+
+    private final ReadWriteLock[] locks;
+    private final int mask;
+
+    /**
+     * @param minStripes Minimum number of locks. Will be rounded up to the
+     *                   nearest power of two.
+     */
+    public StripedReadWriteLock(int minStripes) {
+        if (minStripes < 1) {
+            throw new IllegalArgumentException("minStripes must be positive");
+        }
+        int stripes = Integer.highestOneBit(minStripes);
+        if (stripes < minStripes) {
+            stripes <<= 1;
+        }
+        locks = new ReadWriteLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+        mask = stripes - 1;
+    }
+
+    /**
+     * @param key Key to lock on. Must have a well-distributed
+     *            {@link Object#hashCode()} that is consistent with
+     *            {@link Object#equals(Object)}.
+     * @return Lock for the given key. Equal keys always get the same lock.
+     */
+    public ReadWriteLock get(Object key) {
+        int h = key.hashCode();
+        // Spread the higher bits downward, as in HashMap, since only the
+        // lower bits are used.
+        h ^= (h >>> 16);
+        return locks[h & mask];
+    }
+
+    /**
+     * @return Number of locks in the table.
+     */
+    public int getStripeCount() {
+        return locks.length;
+    }
+
+}
@@ -21,12 +21,14 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.List;
+import java.util.Random;
 
 import static org.junit.Assert.*;
 
 public class AmazonS3CacheTest extends BaseTest {
 
-    private final int S3_UPLOAD_WAIT = 3000;
+    private static final int S3_UPLOAD_WAIT = 10000;
 
     private Identifier identifier = new Identifier("jpg-rgb-64x56x8-baseline.jpg");
     private Info imageInfo = new Info(64, 56, Format.JPG);
@@ -45,6 +47,16 @@ public class AmazonS3CacheTest extends BaseTest {
         return testConfig.getString(ConfigurationConstants.S3_BUCKET.getKey());
     }
 
+    /**
+     * @return Endpoint of a local S3-compatible server (e.g. Minio) to test
+     *         against, or <code>null</code> to test against AWS.
+     */
+    private static String getEndpoint() {
+        org.apache.commons.configuration.Configuration testConfig =
+                TestUtil.getTestConfig();
+        return testConfig.getString(ConfigurationConstants.S3_ENDPOINT.getKey());
+    }
+
     private static String getRegion() {
         org.apache.commons.configuration.Configuration testConfig =
                 TestUtil.getTestConfig();
@@ -68,6 +80,7 @@ public class AmazonS3CacheTest extends BaseTest {
         config.setProperty(AmazonS3Cache.BUCKET_NAME_CONFIG_KEY, getBucket());
         config.setProperty(AmazonS3Cache.SECRET_KEY_CONFIG_KEY, getSecretKey());
         config.setProperty(AmazonS3Cache.BUCKET_REGION_CONFIG_KEY, getRegion());
+        config.setProperty(AmazonS3Cache.ENDPOINT_CONFIG_KEY, getEndpoint());
 
         instance = new AmazonS3Cache();
     }
@@ -77,6 +90,19 @@ public class AmazonS3CacheTest extends BaseTest {
         instance.purge();
     }
 
+    /**
+     * Waits for all pending uploads to complete.
+     */
+    private void awaitUploads() throws InterruptedException {
+        final long start = System.currentTimeMillis();
+        while (instance.getPendingUploadCount() > 0) {
+            if (System.currentTimeMillis() - start > S3_UPLOAD_WAIT) {
+                fail("Uploads did not complete in time");
+            }
+            Thread.sleep(50);
+        }
+    }
+
     private void assertObjectCount(int count) {
         S3Objects objects = S3Objects.inBucket(
                 AmazonS3Cache.getClientInstance(),
@@ -125,7 +151,7 @@ public class AmazonS3CacheTest extends BaseTest {
         outputStream.close();
 
         // wait for it to upload
-        Thread.sleep(S3_UPLOAD_WAIT);
+        awaitUploads();
 
         // download the image
         InputStream s3InputStream = instance.newDerivativeImageInputStream(opList);
@@ -158,11 +184,49 @@ public class AmazonS3CacheTest extends BaseTest {
         inputStream.close();
         outputStream.close();
 
-        Thread.sleep(S3_UPLOAD_WAIT);
+        awaitUploads();
 
         assertObjectCount(1);
     }
 
+    @Test
+    public void testNewDerivativeImageOutputStreamWithMultipartUpload()
+            throws Exception {
+        // Write a little more than two parts.
+        final byte[] data = new byte[AmazonS3Cache.PART_SIZE * 2 + 1000];
+        new Random().nextBytes(data);
+        try (OutputStream os = instance.newDerivativeImageOutputStream(opList)) {
+            // Write in uneven chunks to exercise part boundaries.
+            for (int i = 0; i < data.length; i += 100000) {
+                os.write(data, i, Math.min(100000, data.length - i));
+            }
+        }
+        awaitUploads();
+
+        try (InputStream is = instance.newDerivativeImageInputStream(opList)) {
+            assertArrayEquals(data, IOUtils.toByteArray(is));
+        }
+    }
+
+    @Test
+    public void testNewDerivativeImageOutputStreamUpdatesMetrics()
+            throws Exception {
+        final long completedCount = instance.getCompletedUploadCount();
+        final long byteCount = instance.getUploadedByteCount();
+        final File fixture = TestUtil.getImage(identifier.toString());
+
+        try (InputStream is = new FileInputStream(fixture);
+             OutputStream os = instance.newDerivativeImageOutputStream(opList)) {
+            IOUtils.copy(is, os);
+        }
+        awaitUploads();
+
+        assertEquals(completedCount + 1, instance.getCompletedUploadCount());
+        assertEquals(byteCount + fixture.length(),
+                instance.getUploadedByteCount());
+        assertEquals(0, instance.getPendingUploadCount());
+    }
+
     /* getObjectKey(Identifier) */
 
     @Test
@@ -200,8 +264,38 @@ public class AmazonS3CacheTest extends BaseTest {
         assertEquals("cats/", instance.getObjectKeyPrefix());
     }
 
+    /* getPartitionBoundaries() */
+
+    @Test
+    public void testGetPartitionBoundaries() {
+        final String prefix = instance.getObjectKeyPrefix();
+        final List<String> boundaries = instance.getPartitionBoundaries();
+        assertEquals(32, boundaries.size());
+        for (int i = 1; i < boundaries.size(); i++) {
+            assertTrue(boundaries.get(i - 1).compareTo(boundaries.get(i)) < 0);
+        }
+        for (String boundary : boundaries) {
+            assertTrue(boundary.startsWith(prefix + "image/") ||
+                    boundary.startsWith(prefix + "info/"));
+        }
+    }
+
     /* purge() */
 
+    @Test
+    public void testPurgeDeletesAcrossPartitions() throws Exception {
+        final String[] identifiers = { "!cats", "0cats", "4", "Cats", "cats",
+                "zcats", "~cats", "cats dogs", "日本" };
+        for (String id : identifiers) {
+            instance.put(new Identifier(id), imageInfo);
+        }
+        assertObjectCount(identifiers.length);
+
+        instance.purge();
+
+        assertObjectCount(0);
+    }
+
     @Test
     public void testPurge() throws Exception {
         // add an image
@@ -211,6 +305,7 @@ public class AmazonS3CacheTest extends BaseTest {
         IOUtils.copy(inputStream, outputStream);
         inputStream.close();
         outputStream.close();
+        awaitUploads();
 
         // add an Info
         instance.put(identifier, imageInfo);
@@ -245,7 +340,7 @@ public class AmazonS3CacheTest extends BaseTest {
         inputStream.close();
         outputStream.close();
 
-        Thread.sleep(S3_UPLOAD_WAIT);
+        awaitUploads();
 
         // add an Info
         instance.put(identifier, imageInfo);
@@ -258,6 +353,23 @@ public class AmazonS3CacheTest extends BaseTest {
         assertObjectCount(2);
     }
 
+    @Test
+    public void testPurgeWithOperationListCancelsPendingUpload()
+            throws Exception {
+        // This is what ImageRepresentation does when a write fails: close
+        // the stream, and then immediately purge what it wrote.
+        try (InputStream is = new FileInputStream(
+                TestUtil.getImage(identifier.toString()));
+             OutputStream os = instance.newDerivativeImageOutputStream(opList)) {
+            IOUtils.copy(is, os);
+        }
+        instance.purge(opList);
+
+        awaitUploads();
+
+        assertObjectCount(0);
+    }
+
     /* purgeExpired() */
 
     @Test
@@ -274,6 +386,7 @@ public class AmazonS3CacheTest extends BaseTest {
 
         // add an Info
         instance.put(identifier, imageInfo);
+        awaitUploads();
 
         Thread.sleep(2000);
 
@@ -292,7 +405,7 @@ public class AmazonS3CacheTest extends BaseTest {
         Info otherInfo = new Info(64, 56, Format.GIF);
         instance.put(otherId, otherInfo);
 
-        Thread.sleep(S3_UPLOAD_WAIT);
+        awaitUploads();
 
         assertObjectCount(4);
 
@@ -321,6 +434,7 @@ public class AmazonS3CacheTest extends BaseTest {
         Identifier otherId = new Identifier("cats");
         Info otherInfo = new Info(64, 56, Format.GIF);
         instance.put(otherId, otherInfo);
+        awaitUploads();
 
         assertObjectCount(3);
 
@@ -330,6 +444,30 @@ public class AmazonS3CacheTest extends BaseTest {
         assertObjectCount(1);
     }
 
+    @Test
+    public void testPurgeWithIdentifierDoesNotPurgeIdentifiersWithTheSamePrefix()
+            throws Exception {
+        OperationList otherOpList = new OperationList(
+                new Identifier(identifier.toString() + "2"), Format.JPG);
+        for (OperationList ops : new OperationList[] { opList, otherOpList }) {
+            try (InputStream inputStream = new FileInputStream(
+                         TestUtil.getImage(identifier.toString()));
+                 OutputStream outputStream =
+                         instance.newDerivativeImageOutputStream(ops)) {
+                IOUtils.copy(inputStream, outputStream);
+            }
+        }
+        awaitUploads();
+
+        instance.purge(identifier);
+
+        assertNull(instance.newDerivativeImageInputStream(opList));
+        try (InputStream inputStream =
+                     instance.newDerivativeImageInputStream(otherOpList)) {
+            assertNotNull(inputStream);
+        }
+    }
+
     /* put(Info) */
 
     @Test
@@ -23,6 +23,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.List;
 import java.net.URISyntaxException;
 
 import static org.junit.Assert.*;
@@ -189,8 +190,34 @@ public class AzureStorageCacheTest extends BaseTest {
         assertEquals("cats/", instance.getObjectKeyPrefix());
     }
 
+    /* getPartitionPrefixes() */
+
+    @Test
+    public void testGetPartitionPrefixes() {
+        final String prefix = instance.getObjectKeyPrefix();
+        final List<String> prefixes = instance.getPartitionPrefixes();
+        assertTrue(prefixes.contains(prefix + "image/A"));
+        assertTrue(prefixes.contains(prefix + "image/%"));
+        assertTrue(prefixes.contains(prefix + "info/z"));
+        assertTrue(prefixes.contains(prefix + "info/_"));
+    }
+
     /* purge() */
 
+    @Test
+    public void testPurgeDeletesAcrossPartitions() throws Exception {
+        final String[] identifiers = { "0cats", "Cats", "cats", "_cats",
+                "-cats", ".cats", "*cats", "cats dogs", "日本" };
+        for (String id : identifiers) {
+            instance.put(new Identifier(id), imageInfo);
+        }
+        assertObjectCount(identifiers.length);
+
+        instance.purge();
+
+        assertObjectCount(0);
+    }
+
     @Test
     public void testPurge() throws Exception {
         // add an image
@@ -307,10 +334,33 @@ public class AzureStorageCacheTest extends BaseTest {
 
         assertObjectCount(3);
 
-        // purge an info
+        // purge the info and image
         instance.purge(identifier);
 
-        assertObjectCount(2);
+        assertObjectCount(1);
+    }
+
+    @Test
+    public void testPurgeWithIdentifierDoesNotPurgeIdentifiersWithTheSamePrefix()
+            throws Exception {
+        OperationList otherOpList = new OperationList(
+                new Identifier(identifier.toString() + "2"), Format.JPG);
+        for (OperationList ops : new OperationList[] { opList, otherOpList }) {
+            try (InputStream inputStream = new FileInputStream(
+                         TestUtil.getImage(identifier.toString()));
+                 OutputStream outputStream =
+                         instance.newDerivativeImageOutputStream(ops)) {
+                IOUtils.copy(inputStream, outputStream);
+            }
+        }
+
+        instance.purge(identifier);
+
+        assertNull(instance.newDerivativeImageInputStream(opList));
+        try (InputStream inputStream =
+                     instance.newDerivativeImageInputStream(otherOpList)) {
+            assertNotNull(inputStream);
+        }
     }
 
     /* put(Info) */
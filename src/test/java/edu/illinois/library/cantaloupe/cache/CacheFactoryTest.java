@@ -12,7 +12,7 @@ public class CacheFactoryTest extends BaseTest {
 
     @Test
     public void testGetAllDerivativeCaches() {
-        assertEquals(6, CacheFactory.getAllDerivativeCaches().size());
+        assertEquals(7, CacheFactory.getAllDerivativeCaches().size());
     }
 
     /* getAllSourceCaches() */
@@ -70,6 +70,22 @@ public class CacheFactoryTest extends BaseTest {
         assertTrue(cache1.isShutdownCalled());
     }
 
+    @Test
+    public void testGetDerivativeCacheWithWriteBehindEnabled() {
+        Configuration config = Configuration.getInstance();
+        config.setProperty(CacheFactory.DERIVATIVE_CACHE_ENABLED_CONFIG_KEY, true);
+        config.setProperty(CacheFactory.DERIVATIVE_CACHE_CONFIG_KEY, "MockCache");
+        config.setProperty(WriteBehindCache.ENABLED_CONFIG_KEY, true);
+
+        DerivativeCache cache = CacheFactory.getDerivativeCache();
+        assertTrue(cache instanceof WriteBehindCache);
+        assertTrue(((WriteBehindCache) cache).getBackingCache() instanceof MockCache);
+        assertSame(cache, CacheFactory.getDerivativeCache());
+
+        config.setProperty(WriteBehindCache.ENABLED_CONFIG_KEY, false);
+        assertTrue(CacheFactory.getDerivativeCache() instanceof MockCache);
+    }
+
     /* getSourceCache() */
 
     @Test
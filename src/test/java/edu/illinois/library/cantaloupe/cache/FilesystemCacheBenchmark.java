@@ -0,0 +1,127 @@
+package edu.illinois.library.cantaloupe.cache;
+
+import edu.illinois.library.cantaloupe.config.Configuration;
+import edu.illinois.library.cantaloupe.config.ConfigurationFactory;
+import edu.illinois.library.cantaloupe.image.Format;
+import edu.illinois.library.cantaloupe.image.Identifier;
+import edu.illinois.library.cantaloupe.image.Info;
+import edu.illinois.library.cantaloupe.operation.OperationList;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * <p>Measures the throughput of {@link FilesystemCache} under contention:
+ * 1, 4, and 16 threads concurrently looking up source images and reading and
+ * writing infos and derivative images of random identifiers, first on their
+ * own, and then while another identifier's source image is being written.
+ * Reads and writes of unrelated identifiers should neither serialize on each
+ * other nor wait for the source image write to complete, as they used
+ * to.</p>
+ *
+ * <p>This is not a test, and is not run by the build. Run its {@link
+ * #main} method manually, with the test classpath.</p>
+ */
+public class FilesystemCacheBenchmark {
+
+    private static final int IDENTIFIERS = 1000;
+    private static final int OPERATIONS_PER_THREAD = 20000;
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty(ConfigurationFactory.CONFIG_VM_ARGUMENT, "memory");
+        final Configuration config = ConfigurationFactory.getInstance();
+        final File path = Files.createTempDirectory("benchmark").toFile();
+        config.setProperty(FilesystemCache.PATHNAME_CONFIG_KEY,
+                path.getAbsolutePath());
+        config.setProperty(Cache.TTL_CONFIG_KEY, 0);
+
+        try {
+            final FilesystemCache cache = new FilesystemCache();
+            for (int threads : new int[] { 1, 4, 16 }) {
+                System.out.printf("%d threads:%n", threads);
+                run("  idle", cache, threads);
+
+                try (OutputStream os = cache.newSourceImageOutputStream(
+                        new Identifier("downloading"))) {
+                    os.write(new byte[1024]);
+                    run("  source image write open", cache, threads);
+                }
+            }
+        } finally {
+            FileUtils.deleteDirectory(path);
+        }
+    }
+
+    private static void run(String name,
+                            FilesystemCache cache,
+                            int numThreads) throws Exception {
+        final ExecutorService executor =
+                Executors.newFixedThreadPool(numThreads);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            final long start = System.nanoTime();
+            for (int t = 0; t < numThreads; t++) {
+                final Random random = new Random(t);
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                        operate(cache, random);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            final double sec = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%s: %.0f operations/sec%n", name,
+                    numThreads * OPERATIONS_PER_THREAD / sec);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Performs a random one of: a source image lookup, an info read, an info
+     * write, a derivative image read, and a derivative image write.
+     */
+    private static void operate(FilesystemCache cache,
+                                Random random) throws Exception {
+        final Identifier identifier =
+                new Identifier("image" + random.nextInt(IDENTIFIERS));
+        switch (random.nextInt(5)) {
+            case 0:
+                cache.getSourceImageFile(identifier);
+                break;
+            case 1:
+                cache.getImageInfo(identifier);
+                break;
+            case 2:
+                cache.put(identifier, new Info(640, 480));
+                break;
+            case 3:
+                try (InputStream is = cache.newDerivativeImageInputStream(
+                        new OperationList(identifier, Format.JPG))) {
+                    if (is != null) {
+                        is.read();
+                    }
+                }
+                break;
+            default:
+                try (OutputStream os = cache.newDerivativeImageOutputStream(
+                        new OperationList(identifier, Format.JPG))) {
+                    os.write(new byte[1024]);
+                }
+                break;
+        }
+    }
+
+}
@@ -0,0 +1,239 @@
+package edu.illinois.library.cantaloupe.cache;
+
+import edu.illinois.library.cantaloupe.image.Identifier;
+import edu.illinois.library.cantaloupe.test.BaseTest;
+import edu.illinois.library.cantaloupe.test.TestUtil;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FilesystemCacheIndexTest extends BaseTest {
+
+    private File rootDir;
+    private FilesystemCacheIndex instance;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        rootDir = new File(TestUtil.getTempFolder(), "index");
+        rootDir.mkdirs();
+        instance = new FilesystemCacheIndex();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(rootDir);
+    }
+
+    private File createFile(String subdir, String name, int size)
+            throws IOException {
+        File file = new File(new File(rootDir, subdir), name);
+        file.getParentFile().mkdirs();
+        FileUtils.writeByteArrayToFile(file, new byte[size]);
+        return file;
+    }
+
+    /* clear() */
+
+    @Test
+    public void testClear() {
+        instance.put(new File(rootDir, "cats"), 10);
+        instance.clear();
+        assertEquals(0, instance.getCount());
+        assertEquals(0, instance.getSize());
+    }
+
+    /* beginEviction() */
+
+    @Test
+    public void testBeginEvictionIsExclusive() {
+        assertTrue(instance.beginEviction());
+        assertFalse(instance.beginEviction());
+        instance.endEviction();
+        assertTrue(instance.beginEviction());
+    }
+
+    /* getEldest() */
+
+    @Test
+    public void testGetEldest() {
+        assertNull(instance.getEldest());
+        File file1 = new File(rootDir, "cats");
+        File file2 = new File(rootDir, "dogs");
+        instance.put(file1, 10);
+        instance.put(file2, 10);
+        assertSame(instance.get(file1), instance.getEldest());
+    }
+
+    /* getFiles() */
+
+    @Test
+    public void testGetFilesGroupsFilesByIdentifier() {
+        final String key1 = new Identifier("cats").toFilename();
+        final String key2 = new Identifier("dogs").toFilename();
+        instance.put(new File(rootDir, key1), 10);
+        instance.put(new File(rootDir, key1 + ".json"), 10);
+        instance.put(new File(rootDir, key1 + "_abc.jpg"), 10);
+        instance.put(new File(rootDir, key2 + "_abc.jpg"), 10);
+
+        assertEquals(3, instance.getFiles(key1).size());
+        assertEquals(1, instance.getFiles(key2).size());
+        assertTrue(instance.getFiles("bogus").isEmpty());
+    }
+
+    /* put() */
+
+    @Test
+    public void testPut() {
+        File file = new File(rootDir, "cats");
+        instance.put(file, 10);
+        assertEquals(10, instance.get(file).getSize());
+        assertEquals(1, instance.getCount());
+        assertEquals(10, instance.getSize());
+    }
+
+    @Test
+    public void testPutReplacesExistingEntry() {
+        File file = new File(rootDir, "cats");
+        instance.put(file, 10);
+        instance.put(file, 25);
+        assertEquals(1, instance.getCount());
+        assertEquals(25, instance.getSize());
+    }
+
+    /* rebuild() */
+
+    @Test
+    public void testRebuild() throws Exception {
+        final String key = new Identifier("cats").toFilename();
+        createFile("a/b", key, 10);
+        createFile("a/c", key + ".json", 20);
+        createFile("d", key + "_abc.jpg", 30);
+        createFile("d", key + "_def.jpg_thread.tmp", 40);
+
+        assertFalse(instance.isReady());
+        instance.rebuild(Collections.singletonList(rootDir));
+
+        assertTrue(instance.isReady());
+        assertEquals(3, instance.getCount());
+        assertEquals(60, instance.getSize());
+        assertEquals(3, instance.getFiles(key).size());
+    }
+
+    @Test
+    public void testRebuildOrdersEntriesByAccessTime() throws Exception {
+        File file1 = createFile("a", "cats", 10);
+        File file2 = createFile("b", "dogs", 10);
+        File file3 = createFile("c", "pigs", 10);
+        final long now = System.currentTimeMillis();
+        Files.setAttribute(file1.toPath(), "lastAccessTime",
+                FileTime.fromMillis(now - 1000));
+        Files.setAttribute(file2.toPath(), "lastAccessTime",
+                FileTime.fromMillis(now - 3000));
+        Files.setAttribute(file3.toPath(), "lastAccessTime",
+                FileTime.fromMillis(now - 2000));
+
+        instance.rebuild(Collections.singletonList(rootDir));
+
+        assertSame(instance.get(file2), instance.getEldest());
+        instance.remove(file2);
+        assertSame(instance.get(file3), instance.getEldest());
+        instance.remove(file3);
+        assertSame(instance.get(file1), instance.getEldest());
+    }
+
+    @Test
+    public void testRebuildWithMissingDirectory() {
+        instance.rebuild(Collections.singletonList(new File(rootDir, "bogus")));
+        assertTrue(instance.isReady());
+        assertEquals(0, instance.getCount());
+    }
+
+    @Test
+    public void testRebuildDoesNotReplaceNewerEntries() throws Exception {
+        File file = createFile("a", "cats", 10);
+        instance.put(file, 99);
+        instance.rebuild(Collections.singletonList(rootDir));
+        assertEquals(99, instance.get(file).getSize());
+    }
+
+    @Test
+    public void testRebuildDoesNotAddFilesRemovedWhileWalking()
+            throws Exception {
+        final List<File> files = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            files.add(createFile("d" + (i % 20), "file" + i, 1));
+        }
+
+        Thread rebuilder = new Thread(() ->
+                instance.rebuild(Collections.singletonList(rootDir)));
+        rebuilder.start();
+        for (File file : files) {
+            Files.delete(file.toPath());
+            instance.remove(file);
+        }
+        rebuilder.join();
+
+        assertEquals(0, instance.getCount());
+        assertEquals(0, instance.getSize());
+    }
+
+    /* remove() */
+
+    @Test
+    public void testRemove() {
+        final String key = new Identifier("cats").toFilename();
+        File file = new File(rootDir, key);
+        instance.put(file, 10);
+        assertNotNull(instance.remove(file));
+        assertNull(instance.get(file));
+        assertEquals(0, instance.getSize());
+        assertTrue(instance.getFiles(key).isEmpty());
+        assertNull(instance.remove(file));
+    }
+
+    @Test
+    public void testRemoveWithEntry() {
+        File file = new File(rootDir, "cats");
+        instance.put(file, 10);
+        FilesystemCacheIndex.Entry entry = instance.get(file);
+        assertTrue(instance.remove(entry));
+        assertNull(instance.getEldest());
+        assertEquals(0, instance.getSize());
+        assertFalse(instance.remove(entry));
+    }
+
+    @Test
+    public void testRemoveWithReplacedEntry() {
+        File file = new File(rootDir, "cats");
+        instance.put(file, 10);
+        FilesystemCacheIndex.Entry entry = instance.get(file);
+        instance.put(file, 20);
+        assertFalse(instance.remove(entry));
+        assertEquals(20, instance.getSize());
+    }
+
+    /* touch() */
+
+    @Test
+    public void testTouchMovesEntryToEnd() {
+        File file1 = new File(rootDir, "cats");
+        File file2 = new File(rootDir, "dogs");
+        instance.put(file1, 10);
+        instance.put(file2, 10);
+        instance.touch(instance.get(file1));
+        assertSame(instance.get(file2), instance.getEldest());
+    }
+
+}
@@ -20,9 +20,13 @@ import org.junit.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
 
 import static edu.illinois.library.cantaloupe.cache.FilesystemCache.getHashedStringBasedSubdirectory;
 import static edu.illinois.library.cantaloupe.cache.FilesystemCache.rootDerivativeImagePathname;
@@ -69,9 +73,24 @@ public class FilesystemCacheTest extends BaseTest {
 
     @After
     public void tearDown() throws IOException {
+        FilesystemCache.clearIndexes();
         FileUtils.deleteDirectory(fixturePath);
     }
 
+    private FilesystemCacheIndex enableIndex() throws Exception {
+        ConfigurationFactory.getInstance().setProperty(
+                FilesystemCache.INDEX_ENABLED_CONFIG_KEY, true);
+        final FilesystemCacheIndex index = instance.getIndex();
+        final long start = System.currentTimeMillis();
+        while (!index.isReady()) {
+            if (System.currentTimeMillis() - start > 5000) {
+                fail("Index was not built in time");
+            }
+            Thread.sleep(10);
+        }
+        return index;
+    }
+
     /* getHashedStringBasedSubdirectory(String) */
 
     @Test
@@ -364,6 +383,53 @@ public class FilesystemCacheTest extends BaseTest {
         assertFalse(cacheFile.exists());
     }
 
+    @Test
+    public void testGetSourceImageFileDoesNotWaitForWritesOfOtherIdentifiers()
+            throws Exception {
+        final Identifier identifier = new Identifier("cats");
+        File cacheFile = instance.sourceImageFile(identifier);
+        cacheFile.getParentFile().mkdirs();
+        cacheFile.createNewFile();
+
+        try (OutputStream os = instance.newSourceImageOutputStream(
+                new Identifier("dogs"))) {
+            os.write(new byte[] { 1, 2, 3 });
+            final CountDownLatch done = new CountDownLatch(1);
+            new Thread(() -> {
+                try {
+                    if (instance.getSourceImageFile(identifier) != null) {
+                        done.countDown();
+                    }
+                } catch (CacheException e) {
+                    e.printStackTrace();
+                }
+            }).start();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testGetSourceImageFileWaitsForWriteOfSameIdentifier()
+            throws Exception {
+        final Identifier identifier = new Identifier("cats");
+        final CountDownLatch done = new CountDownLatch(1);
+
+        try (OutputStream os = instance.newSourceImageOutputStream(identifier)) {
+            os.write(new byte[] { 1, 2, 3 });
+            new Thread(() -> {
+                try {
+                    if (instance.getSourceImageFile(identifier) != null) {
+                        done.countDown();
+                    }
+                } catch (CacheException e) {
+                    e.printStackTrace();
+                }
+            }).start();
+            assertFalse(done.await(200, TimeUnit.MILLISECONDS));
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
     /* infoFile(Identifier) */
 
     @Test
@@ -619,6 +685,183 @@ public class FilesystemCacheTest extends BaseTest {
         assertEquals(0, FileUtils.listFiles(infoPath, null, true).size());
     }
 
+    @Test
+    public void testPurgeWithIdentifierWithIndex() throws Exception {
+        final Identifier id = new Identifier("cats");
+        final OperationList ops = TestUtil.newOperationList();
+        ops.setIdentifier(id);
+
+        File sourceImageFile = instance.sourceImageFile(id);
+        sourceImageFile.getParentFile().mkdirs();
+        sourceImageFile.createNewFile();
+        File derivativeImageFile = instance.derivativeImageFile(ops);
+        derivativeImageFile.getParentFile().mkdirs();
+        derivativeImageFile.createNewFile();
+        instance.put(id, new Info(52, 42));
+
+        final FilesystemCacheIndex index = enableIndex();
+        assertEquals(3, index.getCount());
+
+        instance.purge(id);
+        assertEquals(0, index.getCount());
+        assertEquals(0, FileUtils.listFiles(sourceImagePath, null, true).size());
+        assertEquals(0, FileUtils.listFiles(derivativeImagePath, null, true).size());
+        assertEquals(0, FileUtils.listFiles(infoPath, null, true).size());
+    }
+
+    /* evictExcess() */
+
+    private void writeSourceImage(Identifier identifier, int size)
+            throws IOException {
+        try (OutputStream os = instance.newSourceImageOutputStream(identifier)) {
+            os.write(new byte[size]);
+        }
+    }
+
+    @Test
+    public void testEvictExcessEvictsLeastRecentlyUsedFiles() throws Exception {
+        final Identifier cats = new Identifier("cats");
+        final Identifier dogs = new Identifier("dogs");
+        final Identifier pigs = new Identifier("pigs");
+        final FilesystemCacheIndex index = enableIndex();
+        writeSourceImage(cats, 100);
+        writeSourceImage(dogs, 100);
+        writeSourceImage(pigs, 100);
+        // Access cats so that it becomes the most recently used.
+        assertNotNull(instance.getSourceImageFile(cats));
+
+        final Configuration config = ConfigurationFactory.getInstance();
+        config.setProperty(FilesystemCache.MAX_SIZE_CONFIG_KEY, "250");
+        config.setProperty(FilesystemCache.LOW_WATER_MARK_CONFIG_KEY, 50);
+        instance.evictExcess();
+
+        assertEquals(100, index.getSize());
+        assertTrue(instance.sourceImageFile(cats).exists());
+        assertFalse(instance.sourceImageFile(dogs).exists());
+        assertFalse(instance.sourceImageFile(pigs).exists());
+    }
+
+    @Test
+    public void testEvictExcessWaitsForTheWriteLockOfEachFile()
+            throws Exception {
+        final Identifier cats = new Identifier("cats");
+        enableIndex();
+        writeSourceImage(cats, 100);
+        final File file = instance.sourceImageFile(cats);
+
+        final Configuration config = ConfigurationFactory.getInstance();
+        config.setProperty(FilesystemCache.MAX_SIZE_CONFIG_KEY, "50");
+        config.setProperty(FilesystemCache.LOW_WATER_MARK_CONFIG_KEY, 0);
+
+        final ReadWriteLock lock = instance.fileLock(file);
+        lock.writeLock().lock();
+        final Thread evictor;
+        try {
+            evictor = new Thread(() -> {
+                try {
+                    instance.evictExcess();
+                } catch (CacheException e) {
+                    // the assertion below will fail
+                }
+            });
+            evictor.start();
+            Thread.sleep(200);
+            assertTrue(file.exists());
+        } finally {
+            lock.writeLock().unlock();
+        }
+        evictor.join(5000);
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void testEvictExcessWithNoMaxSize() throws Exception {
+        final Identifier cats = new Identifier("cats");
+        final FilesystemCacheIndex index = enableIndex();
+        writeSourceImage(cats, 100);
+
+        instance.evictExcess();
+
+        assertEquals(100, index.getSize());
+        assertTrue(instance.sourceImageFile(cats).exists());
+    }
+
+    @Test
+    public void testEvictExcessWithSizeBelowMaxSize() throws Exception {
+        final Identifier cats = new Identifier("cats");
+        final FilesystemCacheIndex index = enableIndex();
+        writeSourceImage(cats, 100);
+
+        ConfigurationFactory.getInstance().
+                setProperty(FilesystemCache.MAX_SIZE_CONFIG_KEY, "1M");
+        instance.evictExcess();
+
+        assertEquals(100, index.getSize());
+        assertTrue(instance.sourceImageFile(cats).exists());
+    }
+
+    /* getMaxSize() */
+
+    @Test
+    public void testGetMaxSize() {
+        final Configuration config = ConfigurationFactory.getInstance();
+        assertEquals(0, instance.getMaxSize());
+        config.setProperty(FilesystemCache.MAX_SIZE_CONFIG_KEY, "2G");
+        assertEquals(2L * 1024 * 1024 * 1024, instance.getMaxSize());
+        config.setProperty(FilesystemCache.MAX_SIZE_CONFIG_KEY, "bogus");
+        assertEquals(0, instance.getMaxSize());
+    }
+
+    /* getIndex() */
+
+    @Test
+    public void testGetIndexWhenDisabled() throws Exception {
+        assertNull(instance.getIndex());
+    }
+
+    @Test
+    public void testIndexIsConsultedForLookups() throws Exception {
+        final Identifier id = new Identifier("cats");
+        final FilesystemCacheIndex index = enableIndex();
+
+        // Files created behind the cache's back are not known to the index.
+        File infoFile = instance.infoFile(id);
+        infoFile.getParentFile().mkdirs();
+        FileUtils.writeStringToFile(infoFile, new Info(52, 42).toJson());
+        assertNull(instance.getImageInfo(id));
+
+        // Files written through the cache are.
+        instance.put(id, new Info(52, 42));
+        assertNotNull(index.get(infoFile));
+        assertEquals(new Info(52, 42), instance.getImageInfo(id));
+    }
+
+    @Test
+    public void testIndexIsUpdatedWhenStreamsAreClosed() throws Exception {
+        final Identifier id = new Identifier("cats");
+        final FilesystemCacheIndex index = enableIndex();
+
+        try (OutputStream os = instance.newSourceImageOutputStream(id)) {
+            os.write(new byte[] { 1, 2, 3 });
+        }
+        assertEquals(3, index.get(instance.sourceImageFile(id)).getSize());
+        assertNotNull(instance.getSourceImageFile(id));
+    }
+
+    @Test
+    public void testPurgeExpiredWithIndex() throws Exception {
+        final Identifier id = new Identifier("cats");
+        final FilesystemCacheIndex index = enableIndex();
+        ConfigurationFactory.getInstance().setProperty(Cache.TTL_CONFIG_KEY, 1);
+
+        instance.put(id, new Info(52, 42));
+        Thread.sleep(1100);
+        instance.purgeExpired();
+
+        assertEquals(0, index.getCount());
+        assertFalse(instance.infoFile(id).exists());
+    }
+
     /* put(Identifier, Info) */
 
     @Test
@@ -0,0 +1,82 @@
+package edu.illinois.library.cantaloupe.cache;
+
+import edu.illinois.library.cantaloupe.config.Configuration;
+import edu.illinois.library.cantaloupe.config.ConfigurationFactory;
+import edu.illinois.library.cantaloupe.image.Format;
+import edu.illinois.library.cantaloupe.image.Identifier;
+import edu.illinois.library.cantaloupe.operation.OperationList;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * <p>Measures the per-operation cost of {@link HeapCache} insertions, hits,
+ * and evictions with 10,000, 100,000, and 1,000,000 small items in the
+ * cache. These should stay roughly constant as the cache grows, as each of
+ * them takes constant time, whereas hits used to scan the whole cache and
+ * purges used to sort it.</p>
+ *
+ * <p>This is not a test, and is not run by the build. Run its {@link
+ * #main} method manually, with the test classpath and a heap of at least
+ * 2 GB.</p>
+ */
+public class HeapCacheBenchmark {
+
+    private static final int HITS = 1000000;
+    private static final int ITEM_SIZE = 64;
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty(ConfigurationFactory.CONFIG_VM_ARGUMENT, "memory");
+        final Configuration config = ConfigurationFactory.getInstance();
+
+        for (int count : new int[] { 10000, 100000, 1000000 }) {
+            // Not initialized, so there is no worker purging it.
+            final HeapCache cache = new HeapCache();
+            final OperationList[] opLists = new OperationList[count];
+            for (int i = 0; i < count; i++) {
+                opLists[i] = new OperationList(
+                        new Identifier("image" + i), Format.JPG);
+            }
+            System.out.printf("%d items:%n", count);
+
+            // Insert
+            final byte[] data = new byte[ITEM_SIZE];
+            long start = System.nanoTime();
+            for (OperationList opList : opLists) {
+                try (OutputStream os =
+                             cache.newDerivativeImageOutputStream(opList)) {
+                    os.write(data);
+                }
+            }
+            print("  insert", start, count);
+
+            // Hit, in random order, so that every hit moves an item
+            final Random random = new Random(count);
+            start = System.nanoTime();
+            for (int i = 0; i < HITS; i++) {
+                try (InputStream is = cache.newDerivativeImageInputStream(
+                        opLists[random.nextInt(count)])) {
+                    is.read();
+                }
+            }
+            print("  hit", start, HITS);
+
+            // Evict half
+            config.setProperty(HeapCache.TARGET_SIZE_CONFIG_KEY,
+                    cache.getByteSize() / 2);
+            final long sizeBefore = cache.size();
+            start = System.nanoTime();
+            cache.purgeExcess();
+            print("  evict", start, sizeBefore - cache.size());
+
+            cache.purge();
+        }
+    }
+
+    private static void print(String name, long startNanos, long count) {
+        final double usec = (System.nanoTime() - startNanos) / 1e3;
+        System.out.printf("%s: %.3f usec/item%n", name, usec / count);
+    }
+
+}
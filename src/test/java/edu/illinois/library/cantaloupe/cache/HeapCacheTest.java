@@ -1,5 +1,6 @@
 package edu.illinois.library.cantaloupe.cache;
 
+import com.google.protobuf.ByteString;
 import edu.illinois.library.cantaloupe.config.ConfigurationException;
 import edu.illinois.library.cantaloupe.image.Format;
 import edu.illinois.library.cantaloupe.image.Info;
@@ -14,9 +15,12 @@ import org.junit.Test;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 
 import static org.junit.Assert.*;
 
@@ -109,6 +113,41 @@ public class HeapCacheTest extends BaseTest {
         }
     }
 
+    @Test
+    public void testDumpToPersistentStoreRetainsItemsUponFailure()
+            throws Exception {
+        Configuration config = Configuration.getInstance();
+        config.setProperty(HeapCache.PERSIST_CONFIG_KEY, true);
+
+        // A non-empty directory at the path will make the final move fail.
+        Path cacheDir = Files.createTempDirectory("cantaloupe");
+        Path blocker = Files.createFile(cacheDir.resolve("file"));
+        try {
+            config.setProperty(HeapCache.PATHNAME_CONFIG_KEY,
+                    cacheDir.toString());
+
+            Identifier id1 = new Identifier("cats");
+            Identifier id2 = new Identifier("dogs");
+            instance.put(id1, new Info(52, 42));
+            instance.put(id2, new Info(42, 52));
+
+            try {
+                instance.dumpToPersistentStore();
+                fail("Expected exception");
+            } catch (IOException e) {
+                // pass
+            }
+
+            assertEquals(2, instance.size());
+            assertEquals(new Info(52, 42), instance.getImageInfo(id1));
+            assertEquals(new Info(42, 52), instance.getImageInfo(id2));
+            assertFalse(Files.exists(Paths.get(cacheDir + ".tmp")));
+        } finally {
+            Files.deleteIfExists(blocker);
+            Files.deleteIfExists(cacheDir);
+        }
+    }
+
     /* getByteSize() */
 
     @Test
@@ -234,6 +273,133 @@ public class HeapCacheTest extends BaseTest {
         }
     }
 
+    @Test
+    public void testLoadFromPersistentStoreRestoresAccessOrder()
+            throws Exception {
+        Configuration config = Configuration.getInstance();
+        config.setProperty(HeapCache.PERSIST_CONFIG_KEY, true);
+
+        Path cacheFile = Files.createTempFile("cantaloupe", "tmp");
+        try {
+            Files.delete(cacheFile);
+            config.setProperty(HeapCache.PATHNAME_CONFIG_KEY,
+                    cacheFile.toString());
+
+            // Seed two images, and access the first one so that the second
+            // one becomes the least recently accessed.
+            Identifier id1 = new Identifier("cats");
+            OperationList ops1 = new OperationList(id1, Format.JPG);
+            OutputStream os = instance.newDerivativeImageOutputStream(ops1);
+            IOUtils.copy(new FileInputStream(TestUtil.getImage(IMAGE)), os);
+            os.close();
+
+            OperationList ops2 = new OperationList(id1, Format.PNG);
+            os = instance.newDerivativeImageOutputStream(ops2);
+            IOUtils.copy(new FileInputStream(TestUtil.getImage(IMAGE)), os);
+            os.close();
+
+            instance.newDerivativeImageInputStream(ops1).close();
+
+            instance.dumpToPersistentStore();
+            assertEquals(0, instance.size());
+
+            instance = new HeapCache();
+            instance.loadFromPersistentStore();
+            assertEquals(2, instance.size());
+
+            config.setProperty(HeapCache.TARGET_SIZE_CONFIG_KEY, 6000);
+            instance.purgeExcess();
+
+            assertNotNull(instance.newDerivativeImageInputStream(ops1));
+            assertNull(instance.newDerivativeImageInputStream(ops2));
+        } finally {
+            Files.deleteIfExists(cacheFile);
+        }
+    }
+
+    @Test
+    public void testDumpToPersistentStoreRetainsRecordsNotLoadedBeforeShutdown()
+            throws Exception {
+        Configuration config = Configuration.getInstance();
+        config.setProperty(HeapCache.PERSIST_CONFIG_KEY, true);
+
+        Path cacheFile = Files.createTempFile("cantaloupe", "tmp");
+        try {
+            Files.delete(cacheFile);
+            config.setProperty(HeapCache.PATHNAME_CONFIG_KEY,
+                    cacheFile.toString());
+
+            // Seed two images
+            Identifier id1 = new Identifier("cats");
+            OperationList ops1 = new OperationList(id1, Format.JPG);
+            OutputStream os = instance.newDerivativeImageOutputStream(ops1);
+            IOUtils.copy(new FileInputStream(TestUtil.getImage(IMAGE)), os);
+            os.close();
+
+            OperationList ops2 = new OperationList(id1, Format.PNG);
+            os = instance.newDerivativeImageOutputStream(ops2);
+            IOUtils.copy(new FileInputStream(TestUtil.getImage(IMAGE)), os);
+            os.close();
+
+            instance.dumpToPersistentStore();
+
+            // Shut down a new instance before it has loaded anything, and
+            // then add an info to it.
+            instance = new HeapCache();
+            instance.shutdown();
+            instance.loadFromPersistentStore();
+            assertEquals(0, instance.size());
+            instance.put(new Identifier("dogs"), new Info(64, 56));
+            instance.dumpToPersistentStore();
+
+            instance = new HeapCache();
+            instance.loadFromPersistentStore();
+            assertEquals(3, instance.size());
+            assertNotNull(instance.newDerivativeImageInputStream(ops1));
+            assertNotNull(instance.newDerivativeImageInputStream(ops2));
+            assertNotNull(instance.getImageInfo(new Identifier("dogs")));
+        } finally {
+            Files.deleteIfExists(cacheFile);
+        }
+    }
+
+    @Test
+    public void testLoadFromPersistentStoreWithLegacyFormat() throws Exception {
+        Configuration config = Configuration.getInstance();
+        config.setProperty(HeapCache.PERSIST_CONFIG_KEY, true);
+
+        Path cacheFile = Files.createTempFile("cantaloupe", "tmp");
+        try {
+            config.setProperty(HeapCache.PATHNAME_CONFIG_KEY,
+                    cacheFile.toString());
+
+            Identifier id1 = new Identifier("cats");
+            OperationList ops1 = new OperationList(id1, Format.JPG);
+            HeapCacheProtos.Cache protoCache = HeapCacheProtos.Cache.newBuilder().
+                    addImage(HeapCacheProtos.Image.newBuilder().
+                            setIdentifier(id1.toString()).
+                            setOperationList(ops1.toString()).
+                            setLastAccessed(System.currentTimeMillis()).
+                            setData(ByteString.copyFrom(Files.readAllBytes(
+                                    TestUtil.getImage(IMAGE).toPath())))).
+                    addInfo(HeapCacheProtos.Info.newBuilder().
+                            setIdentifier(id1.toString()).
+                            setLastAccessed(System.currentTimeMillis()).
+                            setJson(new Info(64, 56).toJson())).
+                    build();
+            try (OutputStream os = Files.newOutputStream(cacheFile)) {
+                protoCache.writeTo(os);
+            }
+
+            instance.loadFromPersistentStore();
+            assertEquals(2, instance.size());
+            assertNotNull(instance.newDerivativeImageInputStream(ops1));
+            assertEquals(new Info(64, 56), instance.getImageInfo(id1));
+        } finally {
+            Files.deleteIfExists(cacheFile);
+        }
+    }
+
     /* newDerivativeImageInputStream(OperationList) */
 
     @Test
@@ -254,6 +420,58 @@ public class HeapCacheTest extends BaseTest {
         assertNotNull(instance.newDerivativeImageInputStream(ops));
     }
 
+    @Test
+    public void testNewDerivativeImageInputStreamWithOffHeapStorage()
+            throws Exception {
+        Configuration config = Configuration.getInstance();
+        config.setProperty(HeapCache.STORAGE_CONFIG_KEY,
+                HeapCache.OFFHEAP_STORAGE);
+
+        OperationList ops = new OperationList(new Identifier("cats"), Format.JPG);
+        File image = TestUtil.getImage(IMAGE);
+
+        try (FileInputStream is = new FileInputStream(image);
+             OutputStream os = instance.newDerivativeImageOutputStream(ops)) {
+            IOUtils.copy(is, os);
+        }
+
+        // The 5439-byte image occupies one whole block.
+        assertEquals(OffHeapStore.BLOCK_SIZE, instance.getByteSize());
+        try (InputStream is = instance.newDerivativeImageInputStream(ops)) {
+            assertArrayEquals(Files.readAllBytes(image.toPath()),
+                    IOUtils.toByteArray(is));
+        }
+    }
+
+    @Test
+    public void testNewDerivativeImageOutputStreamWithOffHeapStorageDiscardsFailedWrites()
+            throws Exception {
+        Configuration config = Configuration.getInstance();
+        config.setProperty(HeapCache.STORAGE_CONFIG_KEY,
+                HeapCache.OFFHEAP_STORAGE);
+
+        OperationList ops = new OperationList(new Identifier("cats"), Format.JPG);
+        try (OutputStream os = instance.newDerivativeImageOutputStream(ops)) {
+            os.write(new byte[] { 1, 2, 3 });
+            try {
+                // Fails after the writer has allocated a block.
+                os.write(new byte[10], 0, 100);
+                fail("Expected exception");
+            } catch (IOException e) {
+                // pass
+            }
+            try {
+                os.write(4);
+                fail("Expected exception");
+            } catch (IOException e) {
+                // pass
+            }
+        }
+
+        assertNull(instance.newDerivativeImageInputStream(ops));
+        assertEquals(0, instance.getByteSize());
+    }
+
     /* newDerivativeImageOutputStream(OperationList) */
 
     @Test
@@ -290,6 +508,8 @@ public class HeapCacheTest extends BaseTest {
         // assert that only the expired derivative images were purged
         assertNull(instance.getImageInfo(id1));
         assertNull(instance.newDerivativeImageInputStream(ops1));
+        assertEquals(0, instance.size());
+        assertEquals(0, instance.getByteSize());
     }
 
     /* purge(OperationList) */
@@ -328,6 +548,7 @@ public class HeapCacheTest extends BaseTest {
 
         assertNull(instance.getImageInfo(id1));
         assertNull(instance.newDerivativeImageInputStream(ops));
+        assertEquals(0, instance.getByteSize());
     }
 
     /* purgeExcess() */
@@ -373,6 +594,58 @@ public class HeapCacheTest extends BaseTest {
         assertEquals(size, instance.getByteSize());
     }
 
+    @Test
+    public void testPurgeExcessPurgesLeastRecentlyAccessedItemsFirst()
+            throws Exception {
+        Configuration config = Configuration.getInstance();
+        config.setProperty(HeapCache.TARGET_SIZE_CONFIG_KEY, 6000);
+
+        // Seed two images
+        Identifier id1 = new Identifier("cats");
+        OperationList ops1 = new OperationList(id1, Format.JPG);
+        OutputStream os = instance.newDerivativeImageOutputStream(ops1);
+        IOUtils.copy(new FileInputStream(TestUtil.getImage(IMAGE)), os);
+        os.close();
+
+        OperationList ops2 = new OperationList(id1, Format.PNG);
+        os = instance.newDerivativeImageOutputStream(ops2);
+        IOUtils.copy(new FileInputStream(TestUtil.getImage(IMAGE)), os);
+        os.close();
+
+        // Access the first one so that the second one becomes the least
+        // recently accessed.
+        instance.newDerivativeImageInputStream(ops1).close();
+
+        instance.purgeExcess();
+
+        assertEquals(1, instance.size());
+        assertEquals(5439, instance.getByteSize());
+        assertNotNull(instance.newDerivativeImageInputStream(ops1));
+        assertNull(instance.newDerivativeImageInputStream(ops2));
+    }
+
+    @Test
+    public void testPurgeExcessWithOffHeapStorage() throws Exception {
+        Configuration config = Configuration.getInstance();
+        config.setProperty(HeapCache.TARGET_SIZE_CONFIG_KEY, 5000);
+        config.setProperty(HeapCache.STORAGE_CONFIG_KEY,
+                HeapCache.OFFHEAP_STORAGE);
+
+        // Seed an image
+        Identifier id1 = new Identifier("cats");
+        OperationList ops1 = new OperationList(id1, Format.JPG);
+        OutputStream os = instance.newDerivativeImageOutputStream(ops1);
+        IOUtils.copy(new FileInputStream(TestUtil.getImage(IMAGE)), os);
+        os.close();
+
+        assertEquals(OffHeapStore.BLOCK_SIZE, instance.getByteSize());
+
+        instance.purgeExcess();
+
+        assertEquals(0, instance.getByteSize());
+        assertNull(instance.newDerivativeImageInputStream(ops1));
+    }
+
     @Test
     public void testPurgeExcessThrowsConfigurationExceptionWhenMaxSizeIsInvalid()
             throws Exception {
@@ -17,6 +17,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.FileInputStream;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.sql.Connection;
 import java.sql.Date;
@@ -25,6 +26,7 @@ import java.sql.ResultSet;
 import java.sql.Timestamp;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Random;
 
 import static org.junit.Assert.*;
 
@@ -62,7 +64,7 @@ public class JdbcCacheTest extends BaseTest {
     private void createTables(Connection connection) throws Exception {
         // derivative image table
         String sql = String.format("CREATE TABLE IF NOT EXISTS %s (" +
-                "%s VARCHAR(4096) NOT NULL, " +
+                "%s VARCHAR(4096) NOT NULL PRIMARY KEY, " +
                 "%s BLOB, " +
                 "%s DATETIME);",
                 JdbcCache.getDerivativeImageTableName(),
@@ -75,7 +77,7 @@ public class JdbcCacheTest extends BaseTest {
         // info table
         sql = String.format(
                 "CREATE TABLE IF NOT EXISTS %s (" +
-                        "%s VARCHAR(4096) NOT NULL, " +
+                        "%s VARCHAR(4096) NOT NULL PRIMARY KEY, " +
                         "%s VARCHAR(8192) NOT NULL, " +
                         "%s DATETIME);",
                 JdbcCache.getInfoTableName(),
@@ -232,6 +234,7 @@ public class JdbcCacheTest extends BaseTest {
 
             // update the last-accessed time
             instance.getImageInfo(identifier);
+            instance.flushAccessTimes();
 
             // get the new last-accessed time
             resultSet = statement.executeQuery();
@@ -243,6 +246,48 @@ public class JdbcCacheTest extends BaseTest {
         }
     }
 
+    @Test
+    public void testGetImageInfoDefersLastAccessedTimeUpdate()
+            throws Exception {
+        final Identifier identifier = new Identifier("cats");
+        final Timestamp time1 = getInfoLastAccessedTime(identifier);
+
+        Thread.sleep(10);
+        instance.getImageInfo(identifier);
+
+        assertEquals(time1, getInfoLastAccessedTime(identifier));
+    }
+
+    @Test
+    public void testGetImageInfoWithPendingLastAccessedTime()
+            throws Exception {
+        ConfigurationFactory.getInstance().setProperty(Cache.TTL_CONFIG_KEY, 1);
+        final Identifier identifier = new Identifier("cats");
+
+        Thread.sleep(600);
+        assertNotNull(instance.getImageInfo(identifier));
+        Thread.sleep(600);
+
+        // The last-accessed time in the database has expired, but the
+        // pending one hasn't.
+        assertNotNull(instance.getImageInfo(identifier));
+    }
+
+    private Timestamp getInfoLastAccessedTime(Identifier identifier)
+            throws Exception {
+        try (Connection connection = JdbcCache.getConnection()) {
+            String sql = String.format("SELECT %s FROM %s WHERE %s = ?;",
+                    JdbcCache.INFO_TABLE_LAST_ACCESSED_COLUMN,
+                    JdbcCache.getInfoTableName(),
+                    JdbcCache.INFO_TABLE_IDENTIFIER_COLUMN);
+            PreparedStatement statement = connection.prepareStatement(sql);
+            statement.setString(1, identifier.toString());
+            ResultSet resultSet = statement.executeQuery();
+            resultSet.next();
+            return resultSet.getTimestamp(1);
+        }
+    }
+
     /* newDerivativeImageInputStream(OperationList) */
 
     @Test
@@ -308,6 +353,7 @@ public class JdbcCacheTest extends BaseTest {
 
             // update the last-accessed time
             instance.newDerivativeImageInputStream(opList);
+            instance.flushAccessTimes();
 
             // get the new last-accessed time
             resultSet = statement.executeQuery();
@@ -329,6 +375,39 @@ public class JdbcCacheTest extends BaseTest {
         assertNotNull(instance.newDerivativeImageOutputStream(ops));
     }
 
+    @Test
+    public void testNewDerivativeImageOutputStreamReplacesExistingImage()
+            throws Exception {
+        final OperationList ops = TestUtil.newOperationList();
+        ops.setIdentifier(new Identifier("cats"));
+        final byte[] data = new byte[] { 1, 2, 3 };
+
+        try (OutputStream os = instance.newDerivativeImageOutputStream(ops)) {
+            os.write(data);
+        }
+        try (InputStream is = instance.newDerivativeImageInputStream(ops)) {
+            assertArrayEquals(data, IOUtils.toByteArray(is));
+        }
+    }
+
+    @Test
+    public void testNewDerivativeImageOutputStreamWithImageLargerThanSpoolThreshold()
+            throws Exception {
+        final OperationList ops = TestUtil.newOperationList();
+        ops.setIdentifier(new Identifier("whales"));
+        final byte[] data = new byte[JdbcCache.SPOOL_MEMORY_THRESHOLD * 3];
+        new Random(1).nextBytes(data);
+
+        try (OutputStream os = instance.newDerivativeImageOutputStream(ops)) {
+            for (int i = 0; i < data.length; i += 8192) {
+                os.write(data, i, Math.min(8192, data.length - i));
+            }
+        }
+        try (InputStream is = instance.newDerivativeImageInputStream(ops)) {
+            assertArrayEquals(data, IOUtils.toByteArray(is));
+        }
+    }
+
     /* oldestValidDate() */
 
     @Test
@@ -445,6 +524,59 @@ public class JdbcCacheTest extends BaseTest {
         }
     }
 
+    @Test
+    public void testPurgeExpiredWithMoreThanOneBatch() throws Exception {
+        Configuration config = ConfigurationFactory.getInstance();
+        config.setProperty(Cache.TTL_CONFIG_KEY, 60);
+
+        // insert more expired infos than fit in one batch
+        final int numExpired = JdbcCache.PURGE_BATCH_SIZE + 5;
+        try (Connection connection = JdbcCache.getConnection()) {
+            String sql = String.format(
+                    "INSERT INTO %s (%s, %s, %s) VALUES (?, ?, ?)",
+                    JdbcCache.getInfoTableName(),
+                    JdbcCache.INFO_TABLE_IDENTIFIER_COLUMN,
+                    JdbcCache.INFO_TABLE_INFO_COLUMN,
+                    JdbcCache.INFO_TABLE_LAST_ACCESSED_COLUMN);
+            PreparedStatement statement = connection.prepareStatement(sql);
+            final Timestamp expired = new Timestamp(
+                    System.currentTimeMillis() - 3600 * 1000);
+            for (int i = 0; i < numExpired; i++) {
+                statement.setString(1, "expired" + i);
+                statement.setString(2, new Info(50, 40).toJson());
+                statement.setTimestamp(3, expired);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+
+        instance.purgeExpired();
+
+        try (Connection connection = JdbcCache.getConnection()) {
+            // assert that only the seed infos remain
+            String sql = String.format("SELECT COUNT(%s) AS count FROM %s",
+                    JdbcCache.INFO_TABLE_IDENTIFIER_COLUMN,
+                    config.getString(JdbcCache.INFO_TABLE_CONFIG_KEY));
+            PreparedStatement statement = connection.prepareStatement(sql);
+            ResultSet resultSet = statement.executeQuery();
+            resultSet.next();
+            assertEquals(3, resultSet.getInt("count"));
+        }
+    }
+
+    @Test
+    public void testPurgeExpiredFlushesLastAccessedTimes() throws Exception {
+        ConfigurationFactory.getInstance().setProperty(Cache.TTL_CONFIG_KEY, 1);
+        final Identifier identifier = new Identifier("cats");
+
+        Thread.sleep(600);
+        instance.getImageInfo(identifier);
+        Thread.sleep(600);
+
+        instance.purgeExpired();
+        assertNotNull(instance.getImageInfo(identifier));
+    }
+
     /* purge(Identifier) */
 
     @Test
@@ -484,6 +616,14 @@ public class JdbcCacheTest extends BaseTest {
         assertEquals(info, instance.getImageInfo(identifier));
     }
 
+    @Test
+    public void testPutWithExistingImageInfo() throws CacheException {
+        Identifier identifier = new Identifier("cats");
+        Info info = new Info(52, 52);
+        instance.put(identifier, info);
+        assertEquals(info, instance.getImageInfo(identifier));
+    }
+
     @Test
     public void testPutWithImageInfoSetsLastAccessedTime() throws Exception {
         final Configuration config = ConfigurationFactory.getInstance();
@@ -0,0 +1,104 @@
+package edu.illinois.library.cantaloupe.cache;
+
+import edu.illinois.library.cantaloupe.test.BaseTest;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class OffHeapStoreTest extends BaseTest {
+
+    private OffHeapStore instance;
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        instance = new OffHeapStore();
+    }
+
+    /* allocate() */
+
+    @Test
+    public void testAllocateWithMultipleBlocks() throws Exception {
+        byte[] data = randomBytes(OffHeapStore.BLOCK_SIZE * 3 + 17);
+        OffHeapStore.Allocation allocation = instance.allocate(data);
+
+        assertEquals(data.length, allocation.length());
+        assertEquals(OffHeapStore.BLOCK_SIZE * 4,
+                allocation.getAllocatedSize());
+        assertArrayEquals(data, allocation.toByteArray());
+        assertEquals(OffHeapStore.SLAB_SIZE, instance.getCapacity());
+    }
+
+    @Test
+    public void testAllocateWithEmptyData() throws Exception {
+        OffHeapStore.Allocation allocation = instance.allocate(new byte[0]);
+        assertEquals(0, allocation.length());
+        try (InputStream is = allocation.newInputStream()) {
+            assertEquals(-1, is.read());
+        }
+    }
+
+    /* Allocation.newInputStream() */
+
+    @Test
+    public void testNewInputStream() throws Exception {
+        byte[] data = randomBytes(OffHeapStore.BLOCK_SIZE * 2 + 5);
+        OffHeapStore.Allocation allocation = instance.allocate(data);
+        try (InputStream is = allocation.newInputStream()) {
+            assertArrayEquals(data, IOUtils.toByteArray(is));
+        }
+    }
+
+    @Test
+    public void testNewInputStreamReturnsNullAfterRelease() {
+        OffHeapStore.Allocation allocation = instance.allocate(randomBytes(10));
+        allocation.release();
+        assertNull(allocation.newInputStream());
+    }
+
+    @Test
+    public void testOpenInputStreamDefersRelease() throws Exception {
+        byte[] data = randomBytes(OffHeapStore.BLOCK_SIZE + 1);
+        OffHeapStore.Allocation allocation = instance.allocate(data);
+        try (InputStream is = allocation.newInputStream()) {
+            allocation.release();
+            // The blocks must not have been reused yet.
+            instance.allocate(randomBytes(OffHeapStore.BLOCK_SIZE * 2));
+            assertArrayEquals(data, IOUtils.toByteArray(is));
+        }
+    }
+
+    /* trim() */
+
+    @Test
+    public void testTrim() {
+        OffHeapStore.Allocation allocation = instance.allocate(randomBytes(100));
+        assertEquals(0, instance.trim());
+
+        allocation.release();
+        assertEquals(1, instance.trim());
+        assertEquals(0, instance.getCapacity());
+    }
+
+    /* Writer */
+
+    @Test
+    public void testWriterAbortFreesBlocks() {
+        OffHeapStore.Writer writer = instance.newWriter();
+        writer.write(randomBytes(1000), 0, 1000);
+        writer.abort();
+        assertEquals(1, instance.trim());
+    }
+
+}
@@ -0,0 +1,152 @@
+package edu.illinois.library.cantaloupe.cache;
+
+import edu.illinois.library.cantaloupe.image.Identifier;
+import edu.illinois.library.cantaloupe.test.BaseTest;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PurgeJobTest extends BaseTest {
+
+    private static class RecordingCache extends MockCache {
+
+        private volatile Identifier purgedIdentifier;
+        private volatile boolean isPurged = false;
+
+        @Override
+        public void purge() throws CacheException {
+            isPurged = true;
+        }
+
+        @Override
+        public void purge(Identifier identifier) throws CacheException {
+            purgedIdentifier = identifier;
+        }
+
+    }
+
+    private static void awaitCompletion(PurgeJob job) throws Exception {
+        final long start = System.currentTimeMillis();
+        while (job.getStatus() == PurgeJob.Status.QUEUED ||
+                job.getStatus() == PurgeJob.Status.RUNNING) {
+            if (System.currentTimeMillis() - start > 5000) {
+                fail("Job did not complete in time");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /* cancel() */
+
+    @Test
+    public void testCancelWhileRunning() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final MockCache cache = new MockCache() {
+            @Override
+            public void purge() throws CacheException {
+                final PurgeJob job = PurgeJob.current();
+                job.addDeletedCount(1);
+                started.countDown();
+                while (!job.isCancelled()) {
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        };
+        final PurgeJob job = PurgeJob.submit(cache, null);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(PurgeJob.Status.RUNNING, job.getStatus());
+
+        job.cancel();
+        awaitCompletion(job);
+        assertEquals(PurgeJob.Status.CANCELLED, job.getStatus());
+        assertEquals(1, job.getDeletedCount());
+    }
+
+    /* current() */
+
+    @Test
+    public void testCurrentOutsideOfJob() {
+        final PurgeJob job = PurgeJob.current();
+        assertNotNull(job);
+        job.cancel();
+        job.addDeletedCount(5);
+        assertFalse(job.isCancelled());
+        assertEquals(0, job.getDeletedCount());
+    }
+
+    /* get() */
+
+    @Test
+    public void testGet() throws Exception {
+        final PurgeJob job = PurgeJob.submit(new RecordingCache(), null);
+        assertSame(job, PurgeJob.get(job.getID()));
+        assertNull(PurgeJob.get("bogus"));
+        awaitCompletion(job);
+    }
+
+    /* run() */
+
+    @Test
+    public void testRunPurgesEntireCache() throws Exception {
+        final RecordingCache cache = new RecordingCache();
+        final PurgeJob job = PurgeJob.submit(cache, null);
+        awaitCompletion(job);
+
+        assertEquals(PurgeJob.Status.SUCCEEDED, job.getStatus());
+        assertTrue(cache.isPurged);
+        assertNull(cache.purgedIdentifier);
+    }
+
+    @Test
+    public void testRunPurgesIdentifier() throws Exception {
+        final RecordingCache cache = new RecordingCache();
+        final Identifier identifier = new Identifier("cats");
+        final PurgeJob job = PurgeJob.submit(cache, identifier);
+        awaitCompletion(job);
+
+        assertEquals(PurgeJob.Status.SUCCEEDED, job.getStatus());
+        assertFalse(cache.isPurged);
+        assertEquals(identifier, cache.purgedIdentifier);
+    }
+
+    @Test
+    public void testRunWithFailure() throws Exception {
+        final MockCache cache = new MockCache() {
+            @Override
+            public void purge() throws CacheException {
+                throw new CacheException("it broke");
+            }
+        };
+        final PurgeJob job = PurgeJob.submit(cache, null);
+        awaitCompletion(job);
+
+        assertEquals(PurgeJob.Status.FAILED, job.getStatus());
+        assertEquals("it broke", job.toMap().get("error"));
+    }
+
+    /* toMap() */
+
+    @Test
+    public void testToMap() throws Exception {
+        final PurgeJob job = PurgeJob.submit(new RecordingCache(),
+                new Identifier("cats"));
+        awaitCompletion(job);
+
+        final Map<String, Object> map = job.toMap();
+        assertEquals(job.getID(), map.get("id"));
+        assertEquals("cats", map.get("target"));
+        assertEquals("succeeded", map.get("status"));
+        assertEquals(0L, map.get("deleted_count"));
+        assertNotNull(map.get("start_time"));
+        assertNotNull(map.get("end_time"));
+    }
+
+}
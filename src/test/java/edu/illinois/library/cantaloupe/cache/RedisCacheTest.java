@@ -81,6 +81,15 @@ public class RedisCacheTest extends BaseTest {
         instance.purge();
     }
 
+    /* escapePattern() */
+
+    @Test
+    public void testEscapePattern() {
+        assertEquals("cats", RedisCache.escapePattern("cats"));
+        assertEquals("c\\*a\\?t\\[s\\]\\\\",
+                RedisCache.escapePattern("c*a?t[s]\\"));
+    }
+
     /* getImageInfo(Identifier) */
 
     @Test
@@ -95,6 +104,20 @@ public class RedisCacheTest extends BaseTest {
         assertEquals(info, instance.getImageInfo(identifier));
     }
 
+    @Test
+    public void testGetImageInfoResetsExpiration() throws Exception {
+        Configuration.getInstance().setProperty(Cache.TTL_CONFIG_KEY, 300);
+        Identifier identifier = new Identifier("birds");
+        instance.put(identifier, new Info(52, 52));
+        getConnection().sync().expire(RedisCache.infoKey(identifier), 5);
+
+        instance.getImageInfo(identifier);
+
+        // Commands on the same connection are executed in order.
+        long ttl = getConnection().sync().ttl(RedisCache.infoKey(identifier));
+        assertTrue(ttl > 5 && ttl <= 300);
+    }
+
     /* newDerivativeImageInputStream(OperationList) */
 
     @Test
@@ -132,6 +155,19 @@ public class RedisCacheTest extends BaseTest {
         // tested in testNewDerivativeImageInputStream()
     }
 
+    @Test
+    public void testNewDerivativeImageOutputStreamCloseIsIdempotent()
+            throws Exception {
+        OperationList opList = new OperationList(new Identifier("cats"), Format.JPG);
+        OutputStream outputStream = instance.newDerivativeImageOutputStream(opList);
+        outputStream.write(new byte[] { 1, 2, 3 });
+        outputStream.close();
+        instance.purge(opList);
+        outputStream.close();
+
+        assertNull(instance.newDerivativeImageInputStream(opList));
+    }
+
     /* purge() */
 
     @Test
@@ -151,24 +187,37 @@ public class RedisCacheTest extends BaseTest {
 
         // ...image 1
         OperationList opList1 = new OperationList(id1, Format.JPG);
-        getConnection().sync().hset(RedisCache.IMAGE_HASH_KEY,
-                opList1.toString(), imageBytes);
+        getConnection().sync().set(RedisCache.imageKey(opList1), imageBytes);
         // ...image 2
         OperationList opList2 = new OperationList(id2, Format.JPG);
-        getConnection().sync().hset(RedisCache.IMAGE_HASH_KEY,
-                opList2.toString(), imageBytes);
+        getConnection().sync().set(RedisCache.imageKey(opList2), imageBytes);
         // ...image 3
         OperationList opList3 = new OperationList(id3, Format.JPG);
-        getConnection().sync().hset(RedisCache.IMAGE_HASH_KEY,
-                opList3.toString(), imageBytes);
+        getConnection().sync().set(RedisCache.imageKey(opList3), imageBytes);
 
         instance.purge();
 
-        final String[] keys = new String[] { RedisCache.IMAGE_HASH_KEY,
-                RedisCache.INFO_HASH_KEY };
+        final String[] keys = new String[] {
+                RedisCache.imageKey(opList1), RedisCache.imageKey(opList2),
+                RedisCache.imageKey(opList3), RedisCache.infoKey(id1),
+                RedisCache.infoKey(id2), RedisCache.infoKey(id3) };
         assertEquals(0, (long) getConnection().sync().exists(keys));
     }
 
+    @Test
+    public void testPurgeDeletesLegacyHashes() throws Exception {
+        getConnection().sync().hset(RedisCache.LEGACY_INFO_HASH_KEY,
+                "cats", new byte[] { 1, 2, 3 });
+        getConnection().sync().hset(RedisCache.LEGACY_IMAGE_HASH_KEY,
+                "cats", new byte[] { 1, 2, 3 });
+
+        instance.purge();
+
+        assertEquals(0, (long) getConnection().sync().exists(
+                RedisCache.LEGACY_INFO_HASH_KEY,
+                RedisCache.LEGACY_IMAGE_HASH_KEY));
+    }
+
     /* purge(OperationList) */
 
     @Test
@@ -188,16 +237,13 @@ public class RedisCacheTest extends BaseTest {
 
         // ...image 1
         OperationList opList1 = new OperationList(id1, Format.JPG);
-        getConnection().sync().hset(RedisCache.IMAGE_HASH_KEY,
-                opList1.toString(), imageBytes);
+        getConnection().sync().set(RedisCache.imageKey(opList1), imageBytes);
         // ...image 2
         OperationList opList2 = new OperationList(id2, Format.JPG);
-        getConnection().sync().hset(RedisCache.IMAGE_HASH_KEY,
-                opList2.toString(), imageBytes);
+        getConnection().sync().set(RedisCache.imageKey(opList2), imageBytes);
         // ...image 3
         OperationList opList3 = new OperationList(id3, Format.JPG);
-        getConnection().sync().hset(RedisCache.IMAGE_HASH_KEY,
-                opList3.toString(), imageBytes);
+        getConnection().sync().set(RedisCache.imageKey(opList3), imageBytes);
 
         instance.purge(opList2);
 
@@ -236,16 +282,13 @@ public class RedisCacheTest extends BaseTest {
 
         // ...image 1
         OperationList opList1 = new OperationList(id1, Format.JPG);
-        getConnection().sync().hset(RedisCache.IMAGE_HASH_KEY,
-                opList1.toString(), imageBytes);
+        getConnection().sync().set(RedisCache.imageKey(opList1), imageBytes);
         // ...image 2
         OperationList opList2 = new OperationList(id2, Format.JPG);
-        getConnection().sync().hset(RedisCache.IMAGE_HASH_KEY,
-                opList2.toString(), imageBytes);
+        getConnection().sync().set(RedisCache.imageKey(opList2), imageBytes);
         // ...image 3
         OperationList opList3 = new OperationList(id3, Format.JPG);
-        getConnection().sync().hset(RedisCache.IMAGE_HASH_KEY,
-                opList3.toString(), imageBytes);
+        getConnection().sync().set(RedisCache.imageKey(opList3), imageBytes);
 
         // Purge one of the identifiers
         instance.purge(id2);
@@ -259,6 +302,45 @@ public class RedisCacheTest extends BaseTest {
         assertNotNull(instance.newDerivativeImageInputStream(opList3));
     }
 
+    @Test
+    public void testPurgeWithIdentifierDeletesAllPages() throws Exception {
+        final Identifier identifier = new Identifier("cats");
+        final byte[] imageBytes = new byte[] { 1, 2, 3 };
+        final int count = 2500; // several SCAN pages
+        for (int i = 0; i < count; i++) {
+            OperationList opList = new OperationList(
+                    new Identifier("cats"), Format.JPG);
+            opList.getOptions().put("index", i);
+            getConnection().sync().set(RedisCache.imageKey(opList), imageBytes);
+        }
+
+        instance.purge(identifier);
+
+        for (int i = 0; i < count; i++) {
+            OperationList opList = new OperationList(
+                    new Identifier("cats"), Format.JPG);
+            opList.getOptions().put("index", i);
+            assertNull(instance.newDerivativeImageInputStream(opList));
+        }
+    }
+
+    @Test
+    public void testPurgeWithIdentifierContainingPatternCharacters()
+            throws Exception {
+        final Identifier id1 = new Identifier("cat*");
+        final Identifier id2 = new Identifier("cats");
+        final byte[] imageBytes = new byte[] { 1, 2, 3 };
+        OperationList opList1 = new OperationList(id1, Format.JPG);
+        OperationList opList2 = new OperationList(id2, Format.JPG);
+        getConnection().sync().set(RedisCache.imageKey(opList1), imageBytes);
+        getConnection().sync().set(RedisCache.imageKey(opList2), imageBytes);
+
+        instance.purge(id1);
+
+        assertNull(instance.newDerivativeImageInputStream(opList1));
+        assertNotNull(instance.newDerivativeImageInputStream(opList2));
+    }
+
     /* put(Identifier, Info) */
 
     @Test
@@ -273,4 +355,26 @@ public class RedisCacheTest extends BaseTest {
         assertEquals(info, instance.getImageInfo(identifier));
     }
 
+    @Test
+    public void testPutSetsExpiration() throws Exception {
+        Configuration.getInstance().setProperty(Cache.TTL_CONFIG_KEY, 300);
+        Identifier identifier = new Identifier("birds");
+        instance.put(identifier, new Info(52, 52));
+        instance.getImageInfo(identifier); // wait for the write to complete
+
+        long ttl = getConnection().sync().ttl(RedisCache.infoKey(identifier));
+        assertTrue(ttl > 0 && ttl <= 300);
+    }
+
+    @Test
+    public void testPutWithNoTTLDoesNotSetExpiration() throws Exception {
+        Configuration.getInstance().setProperty(Cache.TTL_CONFIG_KEY, 0);
+        Identifier identifier = new Identifier("birds");
+        instance.put(identifier, new Info(52, 52));
+        instance.getImageInfo(identifier); // wait for the write to complete
+
+        assertEquals(-1, (long) getConnection().sync().
+                ttl(RedisCache.infoKey(identifier)));
+    }
+
 }
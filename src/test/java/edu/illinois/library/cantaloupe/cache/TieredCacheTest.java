@@ -0,0 +1,277 @@
+package edu.illinois.library.cantaloupe.cache;
+
+import edu.illinois.library.cantaloupe.config.Configuration;
+import edu.illinois.library.cantaloupe.image.Format;
+import edu.illinois.library.cantaloupe.image.Identifier;
+import edu.illinois.library.cantaloupe.image.Info;
+import edu.illinois.library.cantaloupe.operation.OperationList;
+import edu.illinois.library.cantaloupe.test.BaseTest;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static org.junit.Assert.*;
+
+public class TieredCacheTest extends BaseTest {
+
+    private static final byte[] IMAGE_DATA = new byte[] { 1, 2, 3, 4, 5 };
+
+    private HeapCache l1, l2;
+    private TieredCache instance;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+
+        Configuration config = Configuration.getInstance();
+        config.setProperty(HeapCache.TARGET_SIZE_CONFIG_KEY, Math.pow(1024, 2));
+        config.setProperty(Cache.TTL_CONFIG_KEY, 0);
+
+        l1 = new HeapCache();
+        l2 = new HeapCache();
+        instance = new TieredCache(l1, l2);
+    }
+
+    private static void write(DerivativeCache cache, OperationList opList)
+            throws Exception {
+        try (OutputStream os = cache.newDerivativeImageOutputStream(opList)) {
+            os.write(IMAGE_DATA);
+        }
+    }
+
+    /* getImageInfo() */
+
+    @Test
+    public void testGetImageInfoWithL1Hit() throws Exception {
+        final Identifier identifier = new Identifier("cats");
+        final Info info = new Info(52, 42);
+        l1.put(identifier, info);
+
+        assertEquals(info, instance.getImageInfo(identifier));
+        assertEquals(1, instance.getL1HitCount());
+        assertEquals(0, instance.getL2HitCount());
+    }
+
+    @Test
+    public void testGetImageInfoWithL2HitPromotesToL1() throws Exception {
+        final Identifier identifier = new Identifier("cats");
+        final Info info = new Info(52, 42);
+        l2.put(identifier, info);
+
+        assertEquals(info, instance.getImageInfo(identifier));
+        assertEquals(1, instance.getL2HitCount());
+        assertEquals(1, instance.getPromotionCount());
+        assertEquals(info, l1.getImageInfo(identifier));
+    }
+
+    @Test
+    public void testGetImageInfoWithMiss() throws Exception {
+        assertNull(instance.getImageInfo(new Identifier("cats")));
+        assertEquals(1, instance.getMissCount());
+    }
+
+    /* getL1HitRatio(), getL2HitRatio() */
+
+    @Test
+    public void testGetHitRatios() throws Exception {
+        final Identifier identifier = new Identifier("cats");
+        l2.put(identifier, new Info(52, 42));
+
+        instance.getImageInfo(new Identifier("dogs")); // miss
+        instance.getImageInfo(identifier);             // L2 hit
+        instance.getImageInfo(identifier);             // L1 hit
+        instance.getImageInfo(identifier);             // L1 hit
+
+        assertEquals(0.5, instance.getL1HitRatio(), 0.00001);
+        assertEquals(0.5, instance.getL2HitRatio(), 0.00001);
+    }
+
+    @Test
+    public void testGetHitRatiosWithNoRequests() {
+        assertEquals(0, instance.getL1HitRatio(), 0.00001);
+        assertEquals(0, instance.getL2HitRatio(), 0.00001);
+    }
+
+    /* initialize() */
+
+    @Test
+    public void testInitialize() {
+        Configuration config = Configuration.getInstance();
+        config.setProperty(TieredCache.L2_CONFIG_KEY, "HeapCache");
+
+        instance = new TieredCache();
+        instance.initialize();
+        try {
+            assertTrue(instance.getL1() instanceof HeapCache);
+            assertTrue(instance.getL2() instanceof HeapCache);
+        } finally {
+            instance.shutdown();
+        }
+    }
+
+    @Test
+    public void testInitializeWithInvalidL2() {
+        Configuration config = Configuration.getInstance();
+        config.setProperty(TieredCache.L2_CONFIG_KEY, "TieredCache");
+
+        instance = new TieredCache();
+        instance.initialize();
+        try {
+            assertTrue(instance.getL1() instanceof HeapCache);
+            assertNull(instance.getL2());
+        } finally {
+            instance.shutdown();
+        }
+    }
+
+    /* newDerivativeImageInputStream() */
+
+    @Test
+    public void testNewDerivativeImageInputStreamWithL2HitPromotesToL1()
+            throws Exception {
+        final OperationList opList =
+                new OperationList(new Identifier("cats"), Format.JPG);
+        write(l2, opList);
+
+        try (InputStream is = instance.newDerivativeImageInputStream(opList)) {
+            assertArrayEquals(IMAGE_DATA, IOUtils.toByteArray(is));
+        }
+        assertEquals(1, instance.getL2HitCount());
+        assertEquals(1, instance.getPromotionCount());
+
+        try (InputStream is = l1.newDerivativeImageInputStream(opList)) {
+            assertArrayEquals(IMAGE_DATA, IOUtils.toByteArray(is));
+        }
+    }
+
+    @Test
+    public void testNewDerivativeImageInputStreamWithPartialReadDoesNotPromote()
+            throws Exception {
+        final OperationList opList =
+                new OperationList(new Identifier("cats"), Format.JPG);
+        write(l2, opList);
+
+        try (InputStream is = instance.newDerivativeImageInputStream(opList)) {
+            is.read();
+        }
+        assertEquals(0, instance.getPromotionCount());
+        assertNull(l1.newDerivativeImageInputStream(opList));
+    }
+
+    @Test
+    public void testNewDerivativeImageInputStreamWithMiss() throws Exception {
+        final OperationList opList =
+                new OperationList(new Identifier("cats"), Format.JPG);
+        assertNull(instance.newDerivativeImageInputStream(opList));
+        assertEquals(1, instance.getMissCount());
+    }
+
+    /* newDerivativeImageOutputStream() */
+
+    @Test
+    public void testNewDerivativeImageOutputStreamWritesThrough()
+            throws Exception {
+        final OperationList opList =
+                new OperationList(new Identifier("cats"), Format.JPG);
+        write(instance, opList);
+
+        assertNotNull(l1.newDerivativeImageInputStream(opList));
+        assertNotNull(l2.newDerivativeImageInputStream(opList));
+    }
+
+    @Test
+    public void testNewDerivativeImageOutputStreamWritesBehind()
+            throws Exception {
+        Configuration.getInstance().setProperty(
+                TieredCache.WRITE_BEHIND_CONFIG_KEY, true);
+        final OperationList opList =
+                new OperationList(new Identifier("cats"), Format.JPG);
+        write(instance, opList);
+
+        assertNotNull(l1.newDerivativeImageInputStream(opList));
+
+        final long start = System.currentTimeMillis();
+        while (l2.newDerivativeImageInputStream(opList) == null) {
+            if (System.currentTimeMillis() - start > 5000) {
+                fail("Image was not written to L2 in time");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /* purge() */
+
+    @Test
+    public void testPurge() throws Exception {
+        final Identifier identifier = new Identifier("cats");
+        instance.put(identifier, new Info(52, 42));
+
+        instance.purge();
+        assertNull(l1.getImageInfo(identifier));
+        assertNull(l2.getImageInfo(identifier));
+    }
+
+    /* purge(Identifier) */
+
+    @Test
+    public void testPurgeWithIdentifier() throws Exception {
+        final Identifier identifier = new Identifier("cats");
+        final OperationList opList = new OperationList(identifier, Format.JPG);
+        instance.put(identifier, new Info(52, 42));
+        write(instance, opList);
+
+        instance.purge(identifier);
+        assertNull(l1.getImageInfo(identifier));
+        assertNull(l2.getImageInfo(identifier));
+        assertNull(l1.newDerivativeImageInputStream(opList));
+        assertNull(l2.newDerivativeImageInputStream(opList));
+    }
+
+    /* purge(OperationList) */
+
+    @Test
+    public void testPurgeWithOperationList() throws Exception {
+        final OperationList opList =
+                new OperationList(new Identifier("cats"), Format.JPG);
+        write(instance, opList);
+
+        instance.purge(opList);
+        assertNull(l1.newDerivativeImageInputStream(opList));
+        assertNull(l2.newDerivativeImageInputStream(opList));
+    }
+
+    @Test
+    public void testPurgeWithOperationListCancelsPendingWriteBehind()
+            throws Exception {
+        Configuration.getInstance().setProperty(
+                TieredCache.WRITE_BEHIND_CONFIG_KEY, true);
+        final OperationList opList =
+                new OperationList(new Identifier("cats"), Format.JPG);
+
+        // This is what ImageRepresentation does when a write fails: close
+        // the stream, and then immediately purge what it wrote. Whether or
+        // not the L2 write has started yet, it must not outlive the purge.
+        write(instance, opList);
+        instance.purge(opList);
+
+        Thread.sleep(200);
+        assertNull(l1.newDerivativeImageInputStream(opList));
+        assertNull(l2.newDerivativeImageInputStream(opList));
+    }
+
+    /* put() */
+
+    @Test
+    public void testPutWritesToBothTiers() throws Exception {
+        final Identifier identifier = new Identifier("cats");
+        final Info info = new Info(52, 42);
+        instance.put(identifier, info);
+
+        assertEquals(info, l1.getImageInfo(identifier));
+        assertEquals(info, l2.getImageInfo(identifier));
+    }
+
+}
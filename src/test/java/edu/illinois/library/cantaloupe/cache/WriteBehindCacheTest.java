@@ -0,0 +1,232 @@
+package edu.illinois.library.cantaloupe.cache;
+
+import edu.illinois.library.cantaloupe.config.Configuration;
+import edu.illinois.library.cantaloupe.image.Format;
+import edu.illinois.library.cantaloupe.image.Identifier;
+import edu.illinois.library.cantaloupe.image.Info;
+import edu.illinois.library.cantaloupe.operation.OperationList;
+import edu.illinois.library.cantaloupe.test.BaseTest;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class WriteBehindCacheTest extends BaseTest {
+
+    private static final byte[] IMAGE_DATA = new byte[] { 1, 2, 3, 4, 5 };
+
+    private HeapCache backingCache;
+    private WriteBehindCache instance;
+    private OperationList opList;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+
+        Configuration config = Configuration.getInstance();
+        config.setProperty(HeapCache.TARGET_SIZE_CONFIG_KEY, Math.pow(1024, 2));
+        config.setProperty(Cache.TTL_CONFIG_KEY, 0);
+
+        backingCache = new HeapCache();
+        instance = new WriteBehindCache(backingCache);
+        opList = new OperationList(new Identifier("cats"), Format.JPG);
+    }
+
+    private void awaitPendingWrites() throws Exception {
+        final long start = System.currentTimeMillis();
+        while (instance.getPendingWriteCount() > 0) {
+            if (System.currentTimeMillis() - start > 5000) {
+                fail("Writes did not complete in time");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static void write(DerivativeCache cache, OperationList opList,
+                              byte[] data) throws Exception {
+        try (OutputStream os = cache.newDerivativeImageOutputStream(opList)) {
+            os.write(data);
+        }
+    }
+
+    /* getImageInfo() */
+
+    @Test
+    public void testGetImageInfo() throws Exception {
+        final Identifier identifier = new Identifier("cats");
+        final Info info = new Info(52, 42);
+        backingCache.put(identifier, info);
+        assertEquals(info, instance.getImageInfo(identifier));
+    }
+
+    /* newDerivativeImageOutputStream() */
+
+    @Test
+    public void testNewDerivativeImageOutputStreamWritesToBackingCache()
+            throws Exception {
+        write(instance, opList, IMAGE_DATA);
+        awaitPendingWrites();
+
+        try (InputStream is = backingCache.newDerivativeImageInputStream(opList)) {
+            assertArrayEquals(IMAGE_DATA, IOUtils.toByteArray(is));
+        }
+        assertEquals(1, instance.getCompletedWriteCount());
+        assertEquals(0, instance.getBufferedByteCount());
+    }
+
+    @Test
+    public void testNewDerivativeImageOutputStreamReturnsBeforeBackingCacheWrite()
+            throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final MockCache slowCache = new MockCache() {
+            @Override
+            public OutputStream newDerivativeImageOutputStream(OperationList opList)
+                    throws CacheException {
+                try {
+                    latch.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new CacheException(e.getMessage(), e);
+                }
+                return new NullOutputStream();
+            }
+        };
+        instance = new WriteBehindCache(slowCache);
+
+        write(instance, opList, IMAGE_DATA);
+        assertEquals(1, instance.getPendingWriteCount());
+        assertEquals(IMAGE_DATA.length, instance.getBufferedByteCount());
+
+        latch.countDown();
+        awaitPendingWrites();
+        assertEquals(0, instance.getBufferedByteCount());
+    }
+
+    @Test
+    public void testNewDerivativeImageOutputStreamWithDropPolicy()
+            throws Exception {
+        Configuration config = Configuration.getInstance();
+        config.setProperty(WriteBehindCache.MAX_BUFFER_SIZE_CONFIG_KEY, "4");
+        config.setProperty(WriteBehindCache.POLICY_CONFIG_KEY, "drop");
+        instance = new WriteBehindCache(backingCache);
+
+        write(instance, opList, IMAGE_DATA);
+        awaitPendingWrites();
+
+        assertEquals(1, instance.getDroppedWriteCount());
+        assertEquals(0, instance.getCompletedWriteCount());
+        assertEquals(0, instance.getBufferedByteCount());
+        assertNull(backingCache.newDerivativeImageInputStream(opList));
+    }
+
+    @Test
+    public void testNewDerivativeImageOutputStreamWithBlockPolicy()
+            throws Exception {
+        Configuration config = Configuration.getInstance();
+        config.setProperty(WriteBehindCache.MAX_BUFFER_SIZE_CONFIG_KEY, "8");
+        config.setProperty(WriteBehindCache.POLICY_CONFIG_KEY, "block");
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final MockCache slowCache = new MockCache() {
+            @Override
+            public OutputStream newDerivativeImageOutputStream(OperationList opList)
+                    throws CacheException {
+                try {
+                    latch.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new CacheException(e.getMessage(), e);
+                }
+                return new NullOutputStream();
+            }
+        };
+        instance = new WriteBehindCache(slowCache);
+
+        // Fill most of the buffer with a write that can't complete yet.
+        write(instance, opList, IMAGE_DATA);
+
+        // The second write has to wait for the first to be written out.
+        final OperationList opList2 =
+                new OperationList(new Identifier("dogs"), Format.JPG);
+        final Thread thread = new Thread(() -> {
+            try {
+                write(instance, opList2, IMAGE_DATA);
+            } catch (Exception e) {
+                // the count assertions below will fail
+            }
+        });
+        thread.start();
+        Thread.sleep(100);
+        assertTrue(thread.isAlive());
+
+        latch.countDown();
+        thread.join(5000);
+        awaitPendingWrites();
+
+        assertEquals(0, instance.getDroppedWriteCount());
+        assertEquals(2, instance.getCompletedWriteCount());
+    }
+
+    /* purge(OperationList) */
+
+    @Test
+    public void testPurgeWithOperationListDuringPendingWrite()
+            throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final HeapCache slowCache = new HeapCache() {
+            @Override
+            public OutputStream newDerivativeImageOutputStream(OperationList opList)
+                    throws CacheException {
+                try {
+                    latch.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new CacheException(e.getMessage(), e);
+                }
+                return super.newDerivativeImageOutputStream(opList);
+            }
+        };
+        instance = new WriteBehindCache(slowCache);
+
+        write(instance, opList, IMAGE_DATA);
+        final Thread thread = new Thread(() -> {
+            try {
+                instance.purge(opList);
+            } catch (CacheException e) {
+                // the assertion below will fail
+            }
+        });
+        thread.start();
+
+        latch.countDown();
+        thread.join(5000);
+        awaitPendingWrites();
+
+        // Whether the purge cancelled the write or waited for it to finish,
+        // the image must not end up in the cache.
+        assertNull(slowCache.newDerivativeImageInputStream(opList));
+    }
+
+    @Test
+    public void testPurgeWithOperationListPurgesBackingCache()
+            throws Exception {
+        write(backingCache, opList, IMAGE_DATA);
+        instance.purge(opList);
+        assertNull(backingCache.newDerivativeImageInputStream(opList));
+    }
+
+    /* put() */
+
+    @Test
+    public void testPut() throws Exception {
+        final Identifier identifier = new Identifier("cats");
+        final Info info = new Info(52, 42);
+        instance.put(identifier, info);
+        assertEquals(info, backingCache.getImageInfo(identifier));
+    }
+
+}
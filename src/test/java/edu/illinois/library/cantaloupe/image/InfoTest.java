@@ -158,6 +158,9 @@ public class InfoTest extends BaseTest {
         assertFalse(info1.equals(info2));
         info2 = new Info(100, 80, Format.JPG);
         assertFalse(info1.equals(info2));
+        info2 = new Info(100, 80, 50, 40, Format.JPG);
+        info2.setNumPages(2);
+        assertFalse(info1.equals(info2));
     }
 
     @Test
@@ -198,6 +201,23 @@ public class InfoTest extends BaseTest {
         assertEquals(new Dimension(25, 20), instance.getSize(2));
     }
 
+    @Test
+    public void testGetNumPages() {
+        assertEquals(1, instance.getNumPages());
+
+        instance.setNumPages(5);
+        assertEquals(5, instance.getNumPages());
+    }
+
+    @Test
+    public void testNumPagesSerialization() throws Exception {
+        assertFalse(instance.toJson().contains("numPages"));
+
+        instance.setNumPages(5);
+        assertTrue(instance.toJson().contains("\"numPages\":5"));
+        assertEquals(5, Info.fromJson(instance.toJson()).getNumPages());
+    }
+
     @Test
     public void testGetSourceFormat() {
         assertEquals(Format.JPG, instance.getSourceFormat());
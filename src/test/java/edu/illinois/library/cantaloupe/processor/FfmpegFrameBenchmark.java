@@ -0,0 +1,83 @@
+package edu.illinois.library.cantaloupe.processor;
+
+import edu.illinois.library.cantaloupe.config.Configuration;
+import edu.illinois.library.cantaloupe.config.ConfigurationFactory;
+import edu.illinois.library.cantaloupe.image.Format;
+import edu.illinois.library.cantaloupe.image.Info;
+import edu.illinois.library.cantaloupe.operation.OperationList;
+import edu.illinois.library.cantaloupe.test.TestUtil;
+import org.apache.commons.io.output.NullOutputStream;
+
+/**
+ * <p>Measures the latency of the frame requests made by a viewer scrubbing
+ * through each of the test videos, one second at a time, with
+ * {@link FfmpegProcessor}: seeking to the exact frame with a new ffmpeg
+ * process each time; seeking to the nearest keyframe with a new process each
+ * time; and seeking to the nearest keyframe with the decoder pool.</p>
+ *
+ * <p>This is not a test, and is not run by the build. Run its {@link
+ * #main} method manually, with the test classpath and with ffmpeg and
+ * ffprobe on the PATH.</p>
+ */
+public class FfmpegFrameBenchmark {
+
+    private static final Format[] FORMATS = {
+            Format.AVI, Format.MOV, Format.MP4, Format.MPG, Format.WEBM };
+    private static final int ITERATIONS = 10;
+    private static final int MAX_SECONDS = 4;
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty(ConfigurationFactory.CONFIG_VM_ARGUMENT, "memory");
+        final Configuration config = ConfigurationFactory.getInstance();
+
+        for (Format format : FORMATS) {
+            System.out.printf("%s, %d requests:%n", format,
+                    ITERATIONS * (MAX_SECONDS + 1));
+
+            config.setProperty(
+                    FfmpegProcessor.KEYFRAME_SEEK_ENABLED_CONFIG_KEY, false);
+            run("  exact seek", format);
+
+            config.setProperty(
+                    FfmpegProcessor.KEYFRAME_SEEK_ENABLED_CONFIG_KEY, true);
+            config.setProperty(
+                    FfmpegDecoderPool.IDLE_TIMEOUT_CONFIG_KEY, 0);
+            run("  keyframe seek", format);
+
+            config.setProperty(
+                    FfmpegDecoderPool.IDLE_TIMEOUT_CONFIG_KEY, 10);
+            run("  keyframe seek + decoder pool", format);
+            FfmpegDecoderPool.getInstance().shutdown();
+        }
+    }
+
+    private static void run(String name, Format format) throws Exception {
+        final FfmpegProcessor processor = new FfmpegProcessor();
+        processor.setSourceFile(
+                TestUtil.getImage(format.getPreferredExtension()));
+        processor.setSourceFormat(format);
+        final Info info = processor.readImageInfo();
+        final OperationList ops = TestUtil.newOperationList();
+
+        // Warm up, which also builds the keyframe index.
+        scrub(processor, info, ops);
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            scrub(processor, info, ops);
+        }
+        final double msec = (System.nanoTime() - start) / 1e6;
+        System.out.printf("%s: %.1f msec/request%n", name,
+                msec / (ITERATIONS * (MAX_SECONDS + 1)));
+    }
+
+    private static void scrub(FfmpegProcessor processor,
+                              Info info,
+                              OperationList ops) throws Exception {
+        for (int sec = 0; sec <= MAX_SECONDS; sec++) {
+            ops.getOptions().put("time", String.format("00:00:%02d", sec));
+            processor.process(ops, info, new NullOutputStream());
+        }
+    }
+
+}
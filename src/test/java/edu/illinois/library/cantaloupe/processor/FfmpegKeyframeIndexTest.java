@@ -0,0 +1,65 @@
+package edu.illinois.library.cantaloupe.processor;
+
+import edu.illinois.library.cantaloupe.test.BaseTest;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class FfmpegKeyframeIndexTest extends BaseTest {
+
+    private static final double DELTA = 0.000001;
+
+    private FfmpegKeyframeIndex instance;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        instance = FfmpegKeyframeIndex.parse(Arrays.asList(
+                "packet,0.500000,K_",
+                "packet,0.533367,__",
+                "packet,N/A,__",
+                "packet,4.500000,K_",
+                "packet,2.500000,K",
+                "packet,2.533367,_",
+                "stream,0.500000"));
+    }
+
+    @Test
+    public void testParse() {
+        assertEquals(3, instance.size());
+        // Times are sorted, and relative to the stream start time.
+        assertEquals(0, instance.getTime(0), DELTA);
+        assertEquals(2, instance.getTime(1), DELTA);
+        assertEquals(4, instance.getTime(2), DELTA);
+    }
+
+    @Test
+    public void testParseWithNoKeyframes() {
+        instance = FfmpegKeyframeIndex.parse(Collections.emptyList());
+        assertEquals(0, instance.size());
+        assertEquals(-1, instance.nearest(5));
+    }
+
+    @Test
+    public void testGetSeekTime() {
+        assertEquals(1, instance.getSeekTime(0), DELTA);
+        assertEquals(3, instance.getSeekTime(1), DELTA);
+        assertEquals(4.5, instance.getSeekTime(2), DELTA);
+    }
+
+    @Test
+    public void testNearest() {
+        assertEquals(0, instance.nearest(0));
+        assertEquals(0, instance.nearest(0.9));
+        assertEquals(0, instance.nearest(1));
+        assertEquals(1, instance.nearest(1.1));
+        assertEquals(1, instance.nearest(2));
+        assertEquals(2, instance.nearest(3.5));
+        assertEquals(2, instance.nearest(100));
+    }
+
+}
@@ -1,5 +1,6 @@
 package edu.illinois.library.cantaloupe.processor;
 
+import edu.illinois.library.cantaloupe.config.ConfigurationFactory;
 import edu.illinois.library.cantaloupe.image.Format;
 import edu.illinois.library.cantaloupe.image.Info;
 import edu.illinois.library.cantaloupe.operation.OperationList;
@@ -142,6 +143,43 @@ public class FfmpegProcessorTest extends ProcessorTest {
         assertFalse(Arrays.equals(frame1, frame2));
     }
 
+    @Test
+    public void testProcessWithFrameOptionAndKeyframeSeekEnabled()
+            throws Exception {
+        ConfigurationFactory.getInstance().setProperty(
+                FfmpegProcessor.KEYFRAME_SEEK_ENABLED_CONFIG_KEY, true);
+        final Info imageInfo = instance.readImageInfo();
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        OperationList ops = TestUtil.newOperationList();
+        instance.process(ops, imageInfo, outputStream);
+        final byte[] frame1 = outputStream.toByteArray();
+
+        ops.getOptions().put("time", "00:00:05");
+        outputStream = new ByteArrayOutputStream();
+        instance.process(ops, imageInfo, outputStream);
+        final byte[] frame2 = outputStream.toByteArray();
+
+        assertFalse(Arrays.equals(frame1, frame2));
+    }
+
+    @Test
+    public void testProcessWithSequentialFrameOptionsReusesDecoder()
+            throws Exception {
+        final FfmpegDecoderPool pool = FfmpegDecoderPool.getInstance();
+        pool.shutdown();
+        final Info imageInfo = instance.readImageInfo();
+
+        OperationList ops = TestUtil.newOperationList();
+        ops.getOptions().put("time", "00:00:01");
+        instance.process(ops, imageInfo, new NullOutputStream());
+        assertEquals(1, pool.getIdleCount());
+
+        ops.getOptions().put("time", "00:00:02");
+        instance.process(ops, imageInfo, new NullOutputStream());
+        assertEquals(1, pool.getIdleCount());
+    }
+
     @Test
     public void testProcessWithInvalidFrameOptionThrowsException()
             throws Exception {
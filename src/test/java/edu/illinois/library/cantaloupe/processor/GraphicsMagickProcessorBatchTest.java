@@ -0,0 +1,25 @@
+package edu.illinois.library.cantaloupe.processor;
+
+import edu.illinois.library.cantaloupe.config.Configuration;
+import edu.illinois.library.cantaloupe.config.ConfigurationFactory;
+import org.junit.Before;
+
+/**
+ * Runs all of the {@link GraphicsMagickProcessorTest} tests through
+ * {@link GraphicsMagickWorkerPool}.
+ *
+ * For this to work, the GraphicsMagick binaries must be on the PATH.
+ */
+public class GraphicsMagickProcessorBatchTest
+        extends GraphicsMagickProcessorTest {
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        Configuration config = ConfigurationFactory.getInstance();
+        config.setProperty(GraphicsMagickProcessor.BATCH_ENABLED_CONFIG_KEY,
+                true);
+        config.setProperty(GraphicsMagickWorkerPool.POOL_SIZE_CONFIG_KEY, 2);
+    }
+
+}
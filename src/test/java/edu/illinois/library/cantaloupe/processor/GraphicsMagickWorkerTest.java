@@ -0,0 +1,31 @@
+package edu.illinois.library.cantaloupe.processor;
+
+import edu.illinois.library.cantaloupe.test.BaseTest;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class GraphicsMagickWorkerTest extends BaseTest {
+
+    @Test
+    public void testToCommandLine() {
+        assertEquals("\"convert\" \"jpg:/tmp/in\" \"-resize\" \"50%\"",
+                GraphicsMagickWorker.toCommandLine(Arrays.asList(
+                        "convert", "jpg:/tmp/in", "-resize", "50%")));
+    }
+
+    @Test
+    public void testToCommandLineEscapesQuotesAndBackslashes() {
+        assertEquals("\"a b\" \"c\\\"d\" \"e\\\\f\"",
+                GraphicsMagickWorker.toCommandLine(Arrays.asList(
+                        "a b", "c\"d", "e\\f")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testToCommandLineWithLineBreak() {
+        GraphicsMagickWorker.toCommandLine(Arrays.asList("a\nb"));
+    }
+
+}
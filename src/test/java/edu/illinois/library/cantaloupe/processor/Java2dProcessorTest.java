@@ -46,6 +46,16 @@ public class Java2dProcessorTest extends ProcessorTest {
         assertEquals(expectedFormats, instance.getAvailableOutputFormats());
     }
 
+    @Test
+    public void testGetMaxReductionFactor() {
+        instance.setSourceFormat(Format.JPG);
+        assertTrue(instance.getMaxReductionFactor() > 0);
+        instance.setSourceFormat(Format.PNG);
+        assertTrue(instance.getMaxReductionFactor() > 0);
+        instance.setSourceFormat(Format.TIF);
+        assertEquals(0, instance.getMaxReductionFactor());
+    }
+
     /**
      * Tile-aware override.
      *
@@ -0,0 +1,69 @@
+package edu.illinois.library.cantaloupe.processor;
+
+import edu.illinois.library.cantaloupe.test.BaseTest;
+import edu.illinois.library.cantaloupe.test.TestUtil;
+import org.junit.Test;
+
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class Jpeg2000MetadataReaderTest extends BaseTest {
+
+    @Test
+    public void testReadWithUntiledImage() throws Exception {
+        Jpeg2000MetadataReader reader = Jpeg2000MetadataReader.read(
+                TestUtil.getImage("jp2-rgb-64x56x8-monotiled-lossy.jp2"));
+        assertEquals(64, reader.getWidth());
+        assertEquals(56, reader.getHeight());
+        assertEquals(64, reader.getTileWidth());
+        assertEquals(56, reader.getTileHeight());
+        assertEquals(3, reader.getNumComponents());
+        assertEquals(4, reader.getNumDecompositionLevels());
+    }
+
+    @Test
+    public void testReadWithTiledImage() throws Exception {
+        Jpeg2000MetadataReader reader = Jpeg2000MetadataReader.read(
+                TestUtil.getImage("jp2-rgba-64x56x8-multitiled-lossy.jp2"));
+        assertEquals(64, reader.getWidth());
+        assertEquals(56, reader.getHeight());
+        assertEquals(28, reader.getTileWidth());
+        assertEquals(32, reader.getTileHeight());
+        assertEquals(4, reader.getNumComponents());
+        assertEquals(5, reader.getNumDecompositionLevels());
+    }
+
+    @Test
+    public void testReadWithRawCodestream() throws Exception {
+        final byte[] jp2 = Files.readAllBytes(TestUtil.
+                getImage("jp2-rgb-64x56x8-multitiled-lossy.jp2").toPath());
+        // Find the SOC and SIZ markers at the start of the codestream.
+        int offset = 0;
+        while (!(jp2[offset] == (byte) 0xff && jp2[offset + 1] == 0x4f &&
+                jp2[offset + 2] == (byte) 0xff && jp2[offset + 3] == 0x51)) {
+            offset++;
+        }
+        final byte[] codestream = Arrays.copyOfRange(jp2, offset, jp2.length);
+
+        try (ImageInputStream is = new MemoryCacheImageInputStream(
+                new ByteArrayInputStream(codestream))) {
+            Jpeg2000MetadataReader reader = Jpeg2000MetadataReader.read(is);
+            assertEquals(64, reader.getWidth());
+            assertEquals(56, reader.getHeight());
+            assertEquals(28, reader.getTileWidth());
+            assertEquals(32, reader.getTileHeight());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadWithNonJpeg2000Image() throws Exception {
+        Jpeg2000MetadataReader.read(TestUtil.getImage("jpg"));
+    }
+
+}
@@ -48,8 +48,8 @@ public class KakaduProcessorTest extends ProcessorTest {
         // tiled image
         instance.setSourceFile(TestUtil.getImage("jp2-rgb-64x56x8-multitiled-lossy.jp2"));
         expectedInfo = new Info(64, 56, Format.JP2);
-        expectedInfo.getImages().get(0).tileWidth = 32;
-        expectedInfo.getImages().get(0).tileHeight = 28;
+        expectedInfo.getImages().get(0).tileWidth = 28;
+        expectedInfo.getImages().get(0).tileHeight = 32;
         assertEquals(expectedInfo, instance.readImageInfo());
     }
 
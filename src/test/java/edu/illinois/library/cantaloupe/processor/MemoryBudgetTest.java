@@ -0,0 +1,185 @@
+package edu.illinois.library.cantaloupe.processor;
+
+import edu.illinois.library.cantaloupe.config.Configuration;
+import edu.illinois.library.cantaloupe.image.Identifier;
+import edu.illinois.library.cantaloupe.image.Info;
+import edu.illinois.library.cantaloupe.operation.Crop;
+import edu.illinois.library.cantaloupe.operation.OperationList;
+import edu.illinois.library.cantaloupe.operation.Scale;
+import edu.illinois.library.cantaloupe.test.BaseTest;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MemoryBudgetTest extends BaseTest {
+
+    private static final long MB = 1024 * 1024;
+
+    private MemoryBudget instance;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        Configuration config = Configuration.getInstance();
+        config.setProperty(MemoryBudget.BUDGET_CONFIG_KEY, 10);
+        config.setProperty(MemoryBudget.TIMEOUT_CONFIG_KEY, 0);
+        instance = new MemoryBudget();
+    }
+
+    /* estimateFootprint() */
+
+    @Test
+    public void testEstimateFootprintWithNoOperations() {
+        OperationList opList = new OperationList(new Identifier("cats"));
+        Info info = new Info(1000, 500);
+        // decoded + output
+        assertEquals(2 * 1000 * 500 * MemoryBudget.BYTES_PER_PIXEL,
+                MemoryBudget.estimateFootprint(opList, info, 0));
+    }
+
+    @Test
+    public void testEstimateFootprintWithCrop() {
+        OperationList opList = new OperationList(new Identifier("cats"));
+        opList.add(new Crop(0, 0, 100, 50));
+        Info info = new Info(1000, 500);
+        assertEquals(2 * 100 * 50 * MemoryBudget.BYTES_PER_PIXEL,
+                MemoryBudget.estimateFootprint(opList, info, 0));
+    }
+
+    @Test
+    public void testEstimateFootprintWithScaleAndNoReductionAvailable() {
+        OperationList opList = new OperationList(new Identifier("cats"));
+        opList.add(new Scale(0.25f));
+        Info info = new Info(1000, 500);
+        assertEquals((1000 * 500 + 250 * 125) * MemoryBudget.BYTES_PER_PIXEL,
+                MemoryBudget.estimateFootprint(opList, info, 0));
+    }
+
+    @Test
+    public void testEstimateFootprintWithScaleAndProcessorReduction() {
+        OperationList opList = new OperationList(new Identifier("cats"));
+        opList.add(new Scale(0.25f));
+        Info info = new Info(1000, 500);
+        assertEquals((250 * 125 + 250 * 125) * MemoryBudget.BYTES_PER_PIXEL,
+                MemoryBudget.estimateFootprint(opList, info, 5));
+    }
+
+    @Test
+    public void testEstimateFootprintWithScaleAndPyramidLevels() {
+        OperationList opList = new OperationList(new Identifier("cats"));
+        opList.add(new Scale(0.25f));
+        Info info = new Info(1000, 500);
+        info.getImages().add(new Info.Image(500, 250));
+        // Only one level of reduction is available.
+        assertEquals((500 * 250 + 250 * 125) * MemoryBudget.BYTES_PER_PIXEL,
+                MemoryBudget.estimateFootprint(opList, info, 0));
+    }
+
+    /* getCapacity() */
+
+    @Test
+    public void testGetCapacity() {
+        assertEquals(10 * MB, instance.getCapacity());
+    }
+
+    @Test
+    public void testGetCapacityWithNoConfigurationValue() {
+        Configuration.getInstance().clearProperty(MemoryBudget.BUDGET_CONFIG_KEY);
+        assertEquals(Runtime.getRuntime().maxMemory() / 2,
+                instance.getCapacity());
+    }
+
+    /* getRetryAfterSeconds() */
+
+    @Test
+    public void testGetRetryAfterSecondsWithNoReleases() {
+        Configuration.getInstance().setProperty(
+                ProcessingQueue.RETRY_AFTER_CONFIG_KEY, 7);
+        assertEquals(7, instance.getRetryAfterSeconds());
+    }
+
+    @Test
+    public void testGetRetryAfterSecondsIsBasedOnHoldTime() throws Exception {
+        Configuration.getInstance().setProperty(
+                ProcessingQueue.RETRY_AFTER_CONFIG_KEY, 7);
+        instance.reserve(MB).close();
+        // Held for less than a second, which is rounded up.
+        assertEquals(1, instance.getRetryAfterSeconds());
+    }
+
+    /* reserve() */
+
+    @Test
+    public void testReserve() throws Exception {
+        MemoryBudget.Reservation r1 = instance.reserve(4 * MB);
+        MemoryBudget.Reservation r2 = instance.reserve(6 * MB);
+        assertEquals(10 * MB, instance.getReservedSize());
+
+        r1.close();
+        r1.close();
+        assertEquals(6 * MB, instance.getReservedSize());
+        r2.close();
+        assertEquals(0, instance.getReservedSize());
+    }
+
+    @Test
+    public void testReserveReducesOversizedReservationsToCapacity()
+            throws Exception {
+        try (MemoryBudget.Reservation r = instance.reserve(50 * MB)) {
+            assertEquals(10 * MB, r.getSize());
+        }
+    }
+
+    @Test
+    public void testReserveRejectsWhenExhausted() throws Exception {
+        try (MemoryBudget.Reservation r = instance.reserve(8 * MB)) {
+            try {
+                instance.reserve(4 * MB);
+                fail("Expected exception");
+            } catch (ProcessorSaturatedException e) {
+                // Not the timeout, which is 0.
+                assertEquals(instance.getRetryAfterSeconds(),
+                        e.getRetryAfterSeconds());
+                assertTrue(e.getRetryAfterSeconds() > 0);
+            }
+            assertEquals(1, instance.getRejectedCount());
+            assertEquals(8 * MB, instance.getReservedSize());
+        }
+    }
+
+    @Test
+    public void testReserveWaitsForRelease() throws Exception {
+        Configuration.getInstance().setProperty(
+                MemoryBudget.TIMEOUT_CONFIG_KEY, 10);
+        final MemoryBudget.Reservation r1 = instance.reserve(8 * MB);
+        final CountDownLatch reserved = new CountDownLatch(1);
+
+        new Thread(() -> {
+            try (MemoryBudget.Reservation r2 = instance.reserve(4 * MB)) {
+                reserved.countDown();
+            } catch (ProcessorException e) {
+                // the assertion below will fail
+            }
+        }).start();
+
+        assertFalse(reserved.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, instance.getWaitingCount());
+        r1.close();
+        assertTrue(reserved.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testReserveWithNoBudget() throws Exception {
+        Configuration.getInstance().setProperty(
+                MemoryBudget.BUDGET_CONFIG_KEY, 0);
+        try (MemoryBudget.Reservation r = instance.reserve(50 * MB)) {
+            assertEquals(0, r.getSize());
+            assertEquals(0, instance.getReservedSize());
+        }
+    }
+
+}
@@ -4,15 +4,20 @@ import edu.illinois.library.cantaloupe.config.Configuration;
 import edu.illinois.library.cantaloupe.config.ConfigurationFactory;
 import edu.illinois.library.cantaloupe.image.Format;
 import edu.illinois.library.cantaloupe.image.Info;
+import edu.illinois.library.cantaloupe.operation.Crop;
 import edu.illinois.library.cantaloupe.operation.OperationList;
 import edu.illinois.library.cantaloupe.operation.ValidationException;
 import edu.illinois.library.cantaloupe.resource.iiif.ProcessorFeature;
 import edu.illinois.library.cantaloupe.test.TestUtil;
 import org.apache.commons.io.output.NullOutputStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
 import org.junit.Before;
 import org.junit.Test;
 
+import javax.imageio.ImageIO;
 import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.OutputStream;
 import java.util.Arrays;
@@ -43,6 +48,20 @@ public class PdfBoxProcessorTest extends ProcessorTest {
         return proc;
     }
 
+    @Test
+    public void testGetPageSize() throws Exception {
+        try (PDDocument doc = PDDocument.load(
+                TestUtil.getImage("pdf-multipage.pdf"))) {
+            assertEquals(new Dimension(100, 88),
+                    PdfBoxProcessor.getPageSize(doc.getPage(0), 72));
+            assertEquals(new Dimension(200, 176),
+                    PdfBoxProcessor.getPageSize(doc.getPage(0), 144));
+            // This page is rotated 90 degrees.
+            assertEquals(new Dimension(88, 100),
+                    PdfBoxProcessor.getPageSize(doc.getPage(1), 72));
+        }
+    }
+
     @Test
     public void testGetSupportedFeatures() throws Exception {
         Set<ProcessorFeature> expectedFeatures = new HashSet<>();
@@ -82,6 +101,53 @@ public class PdfBoxProcessorTest extends ProcessorTest {
         assertFalse(Arrays.equals(page1, page2));
     }
 
+    @Test
+    public void testProcessWithCropRendersOnlyTheRegion() throws Exception {
+        instance.setSourceFile(TestUtil.getImage("pdf.pdf"));
+        final Info imageInfo = instance.readImageInfo();
+
+        OperationList ops = TestUtil.newOperationList();
+        ops.add(new Crop(0, 0, imageInfo.getSize().width,
+                imageInfo.getSize().height));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        instance.process(ops, imageInfo, outputStream);
+        final BufferedImage fullImage = ImageIO.read(
+                new ByteArrayInputStream(outputStream.toByteArray()));
+
+        ops = TestUtil.newOperationList();
+        ops.add(new Crop(10, 20, 50, 40));
+        outputStream = new ByteArrayOutputStream();
+        instance.process(ops, imageInfo, outputStream);
+        final BufferedImage regionImage = ImageIO.read(
+                new ByteArrayInputStream(outputStream.toByteArray()));
+
+        assertEquals(50, regionImage.getWidth());
+        assertEquals(40, regionImage.getHeight());
+        // Compare a pixel of the region to the corresponding pixel of the
+        // full page, allowing for JPEG artifacts.
+        final int regionRGB = regionImage.getRGB(25, 20);
+        final int fullRGB = fullImage.getRGB(35, 40);
+        for (int shift = 0; shift <= 16; shift += 8) {
+            assertEquals((fullRGB >> shift) & 0xff,
+                    (regionRGB >> shift) & 0xff, 48);
+        }
+    }
+
+    @Test
+    public void testProcessWithDocumentCache() throws Exception {
+        final PdfDocumentCache cache = PdfDocumentCache.getInstance();
+        cache.purge();
+        instance.setSourceFile(TestUtil.getImage("pdf-multipage.pdf"));
+        final Info imageInfo = instance.readImageInfo();
+        assertEquals(1, cache.size());
+
+        OperationList ops = TestUtil.newOperationList();
+        ops.getOptions().put("page", "2");
+        instance.validate(ops, imageInfo.getSize());
+        instance.process(ops, imageInfo, new NullOutputStream());
+        assertEquals(1, cache.size());
+    }
+
     @Test
     public void testProcessWithIllegalPageOptionThrowsException()
             throws Exception {
@@ -109,6 +175,23 @@ public class PdfBoxProcessorTest extends ProcessorTest {
         assertEquals(expectedInfo, instance.readImageInfo());
     }
 
+    @Test
+    public void testReadImageInfoWithMultiPagePdf() throws Exception {
+        instance.setSourceFile(TestUtil.getImage("pdf-multipage.pdf"));
+        final Info info = instance.readImageInfo();
+        assertEquals(new Dimension(100, 88), info.getSize());
+        assertEquals(2, info.getNumPages());
+    }
+
+    @Test
+    public void testReadImageInfoWithDpi() throws Exception {
+        ConfigurationFactory.getInstance().setProperty(
+                PdfBoxProcessor.DPI_CONFIG_KEY, 144);
+        instance.setSourceFile(TestUtil.getImage("pdf.pdf"));
+        assertEquals(new Dimension(200, 176),
+                instance.readImageInfo().getSize());
+    }
+
     @Test
     public void testValidate() throws Exception {
         instance.setSourceFile(TestUtil.getImage("pdf.pdf"));
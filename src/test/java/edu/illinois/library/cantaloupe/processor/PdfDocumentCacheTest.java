@@ -0,0 +1,86 @@
+package edu.illinois.library.cantaloupe.processor;
+
+import edu.illinois.library.cantaloupe.config.Configuration;
+import edu.illinois.library.cantaloupe.config.ConfigurationFactory;
+import edu.illinois.library.cantaloupe.test.BaseTest;
+import edu.illinois.library.cantaloupe.test.TestUtil;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class PdfDocumentCacheTest extends BaseTest {
+
+    private File file;
+    private PdfDocumentCache instance;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        file = TestUtil.getImage("pdf-multipage.pdf");
+        instance = new PdfDocumentCache();
+    }
+
+    @After
+    public void tearDown() {
+        instance.purge();
+    }
+
+    @Test
+    public void testBorrowReturnsReleasedDocument() throws Exception {
+        final PDDocument doc = instance.borrow(file);
+        instance.release(file, doc);
+        assertEquals(1, instance.size());
+
+        assertSame(doc, instance.borrow(file));
+        assertEquals(0, instance.size());
+    }
+
+    @Test
+    public void testBorrowLendsDocumentsExclusively() throws Exception {
+        final PDDocument doc1 = instance.borrow(file);
+        final PDDocument doc2 = instance.borrow(file);
+        assertNotSame(doc1, doc2);
+        instance.release(file, doc1);
+        instance.release(file, doc2);
+        assertEquals(2, instance.size());
+    }
+
+    @Test
+    public void testReleaseRespectsMaxSize() throws Exception {
+        ConfigurationFactory.getInstance().setProperty(
+                PdfDocumentCache.MAX_SIZE_CONFIG_KEY, 1);
+        final PDDocument doc1 = instance.borrow(file);
+        final PDDocument doc2 = instance.borrow(file);
+        instance.release(file, doc1);
+        instance.release(file, doc2);
+        assertEquals(1, instance.size());
+        assertSame(doc2, instance.borrow(file));
+    }
+
+    @Test
+    public void testReleaseWithZeroTtlClosesDocument() throws Exception {
+        ConfigurationFactory.getInstance().setProperty(
+                PdfDocumentCache.TTL_CONFIG_KEY, 0);
+        instance.release(file, instance.borrow(file));
+        assertEquals(0, instance.size());
+    }
+
+    @Test
+    public void testCloseExpired() throws Exception {
+        final Configuration config = ConfigurationFactory.getInstance();
+        config.setProperty(PdfDocumentCache.TTL_CONFIG_KEY, 1);
+        instance.release(file, instance.borrow(file));
+        instance.closeExpired();
+        assertEquals(1, instance.size());
+
+        Thread.sleep(1100);
+        instance.closeExpired();
+        assertEquals(0, instance.size());
+    }
+
+}
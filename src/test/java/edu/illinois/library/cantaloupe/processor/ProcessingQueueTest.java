@@ -0,0 +1,143 @@
+package edu.illinois.library.cantaloupe.processor;
+
+import edu.illinois.library.cantaloupe.config.Configuration;
+import edu.illinois.library.cantaloupe.test.BaseTest;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ProcessingQueueTest extends BaseTest {
+
+    private ProcessingQueue instance;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        Configuration config = Configuration.getInstance();
+        config.setProperty(ProcessingQueue.MAX_CONCURRENT_CONFIG_KEY, 1);
+        config.setProperty(ProcessingQueue.QUEUE_SIZE_CONFIG_KEY, 1);
+        config.setProperty(ProcessingQueue.RETRY_AFTER_CONFIG_KEY, 7);
+        instance = new ProcessingQueue("TestProcessor");
+    }
+
+    @Test
+    public void testForProcessorReturnsSameInstancePerClass() {
+        assertSame(ProcessingQueue.forProcessor(new Java2dProcessor()),
+                ProcessingQueue.forProcessor(new Java2dProcessor()));
+        assertNotSame(ProcessingQueue.forProcessor(new Java2dProcessor()),
+                ProcessingQueue.forProcessor(new JaiProcessor()));
+    }
+
+    @Test
+    public void testAdmitRejectsWhenQueueIsFull() throws Exception {
+        ProcessingQueue.Ticket t1 = instance.admit();
+        ProcessingQueue.Ticket t2 = instance.admit();
+        try {
+            instance.admit();
+            fail("Expected exception");
+        } catch (ProcessorSaturatedException e) {
+            assertEquals(7, e.getRetryAfterSeconds());
+        }
+        assertEquals(1, instance.getRejectedCount());
+
+        t1.close();
+        instance.admit().close();
+        t2.close();
+    }
+
+    @Test
+    public void testAdmitWithNoMaximum() throws Exception {
+        Configuration.getInstance().setProperty(
+                ProcessingQueue.MAX_CONCURRENT_CONFIG_KEY, 0);
+        for (int i = 0; i < 10; i++) {
+            instance.admit().acquireSlot();
+        }
+        assertEquals(10, instance.getActiveCount());
+    }
+
+    @Test
+    public void testMaxConcurrentCanBeOverriddenPerProcessor() {
+        Configuration.getInstance().setProperty(
+                "TestProcessor.max_concurrent", 3);
+        assertEquals(3, instance.getMaxConcurrent());
+    }
+
+    @Test
+    public void testAcquireSlotBlocksUntilSlotIsReleased() throws Exception {
+        final ProcessingQueue.Ticket t1 = instance.admit();
+        final ProcessingQueue.Ticket t2 = instance.admit();
+        t1.acquireSlot();
+        assertEquals(1, instance.getActiveCount());
+        assertEquals(1, instance.getQueuedCount());
+
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            try {
+                t2.acquireSlot();
+                acquired.countDown();
+            } catch (ProcessorException e) {
+                // fail below
+            }
+        });
+        thread.start();
+
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+        t1.close();
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        assertEquals(1, instance.getActiveCount());
+        assertEquals(0, instance.getQueuedCount());
+
+        t2.close();
+        assertEquals(0, instance.getActiveCount());
+    }
+
+    @Test
+    public void testAcquireSlotTimesOut() throws Exception {
+        Configuration.getInstance().setProperty(
+                ProcessingQueue.TIMEOUT_CONFIG_KEY, 0);
+        final ProcessingQueue.Ticket t1 = instance.admit();
+        final ProcessingQueue.Ticket t2 = instance.admit();
+        t1.acquireSlot();
+        try {
+            t2.acquireSlot();
+            fail("Expected exception");
+        } catch (ProcessorSaturatedException e) {
+            assertEquals(7, e.getRetryAfterSeconds());
+        }
+        assertEquals(1, instance.getRejectedCount());
+        assertEquals(1, instance.getActiveCount());
+
+        t2.close();
+        t1.close();
+        assertEquals(0, instance.getActiveCount());
+    }
+
+    @Test
+    public void testAdmitWithoutLimitAdmitsWhenQueueIsFull() throws Exception {
+        ProcessingQueue.Ticket t1 = instance.admit();
+        ProcessingQueue.Ticket t2 = instance.admit();
+        ProcessingQueue.Ticket t3 = instance.admitWithoutLimit();
+        assertEquals(3, instance.getQueuedCount());
+        assertEquals(0, instance.getRejectedCount());
+
+        t1.close();
+        t2.close();
+        t3.close();
+        assertEquals(0, instance.getQueuedCount());
+    }
+
+    @Test
+    public void testTicketCloseIsIdempotent() throws Exception {
+        ProcessingQueue.Ticket ticket = instance.admit();
+        ticket.acquireSlot();
+        ticket.close();
+        ticket.close();
+        assertEquals(0, instance.getActiveCount());
+        assertEquals(0, instance.getQueuedCount());
+    }
+
+}
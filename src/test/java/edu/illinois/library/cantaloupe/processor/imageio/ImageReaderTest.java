@@ -129,6 +129,87 @@ public class ImageReaderTest extends BaseTest {
         assertTrue(hints.contains(ImageReader.Hint.ALREADY_CROPPED));
     }
 
+    @Test
+    public void testReadWithMonoResolutionImageAndScaleFactor()
+            throws Exception {
+        OperationList ops = new OperationList();
+        Crop crop = new Crop();
+        crop.setX(8f);
+        crop.setY(8f);
+        crop.setWidth(48f);
+        crop.setHeight(40f);
+        ops.add(crop);
+        Scale scale = new Scale(12, 10, Scale.Mode.ASPECT_FIT_INSIDE);
+        ops.add(scale);
+        ReductionFactor rf = new ReductionFactor();
+        Set<ImageReader.Hint> hints = new HashSet<>();
+
+        BufferedImage image = reader.read(ops, Orientation.ROTATE_0, rf,
+                hints);
+
+        assertEquals(12, image.getWidth());
+        assertEquals(10, image.getHeight());
+        assertEquals(2, rf.factor);
+        assertTrue(hints.contains(ImageReader.Hint.ALREADY_CROPPED));
+    }
+
+    @Test
+    public void testReadWithMonoResolutionPNGAndScalePercent()
+            throws Exception {
+        reader = new ImageReader(TestUtil.getImage("png-rgb-64x56x8.png"),
+                Format.PNG);
+        OperationList ops = new OperationList();
+        Scale scale = new Scale(0.5f);
+        ops.add(scale);
+        ReductionFactor rf = new ReductionFactor();
+        Set<ImageReader.Hint> hints = new HashSet<>();
+
+        BufferedImage image = reader.read(ops, Orientation.ROTATE_0, rf,
+                hints);
+
+        assertEquals(32, image.getWidth());
+        assertEquals(28, image.getHeight());
+        assertEquals(1, rf.factor);
+    }
+
+    @Test
+    public void testReadWithMonoResolutionImageAndIgnoreCropHint()
+            throws Exception {
+        OperationList ops = new OperationList();
+        Scale scale = new Scale(0.25f);
+        ops.add(scale);
+        ReductionFactor rf = new ReductionFactor();
+        Set<ImageReader.Hint> hints = new HashSet<>();
+        hints.add(ImageReader.Hint.IGNORE_CROP);
+
+        BufferedImage image = reader.read(ops, Orientation.ROTATE_0, rf,
+                hints);
+
+        assertEquals(64, image.getWidth());
+        assertEquals(56, image.getHeight());
+        assertEquals(0, rf.factor);
+    }
+
+    @Test
+    public void testReadWithMonoResolutionTIFFAndScaleFactor()
+            throws Exception {
+        reader = new ImageReader(
+                TestUtil.getImage("tif-rgb-monores-64x56x8-striped-uncompressed.tif"),
+                Format.TIF);
+        OperationList ops = new OperationList();
+        Scale scale = new Scale(0.25f);
+        ops.add(scale);
+        ReductionFactor rf = new ReductionFactor();
+        Set<ImageReader.Hint> hints = new HashSet<>();
+
+        BufferedImage image = reader.read(ops, Orientation.ROTATE_0, rf,
+                hints);
+
+        assertEquals(64, image.getWidth());
+        assertEquals(56, image.getHeight());
+        assertEquals(0, rf.factor);
+    }
+
     @Test
     public void testReadWithMultiResolutionImage() {
         // TODO: write this
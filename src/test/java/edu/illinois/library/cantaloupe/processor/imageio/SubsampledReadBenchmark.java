@@ -0,0 +1,100 @@
+package edu.illinois.library.cantaloupe.processor.imageio;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.File;
+import java.util.Iterator;
+
+/**
+ * <p>Compares reading a region of a large single-resolution JPEG and PNG
+ * image with ImageIO in full, as {@link AbstractImageReader} did before it
+ * learned to subsample, with reading it subsampled, for a full-image
+ * thumbnail and for a tile. For each, it prints the latency and the size of
+ * the decoded raster, which is what is held on the heap until the image has
+ * been scaled.</p>
+ *
+ * <p>This is not a test, and is not run by the build. Run its {@link
+ * #main} method manually, with the test classpath.</p>
+ */
+public class SubsampledReadBenchmark {
+
+    private static final int ITERATIONS = 5;
+    private static final int WIDTH = 6000;
+    private static final int HEIGHT = 4000;
+
+    public static void main(String[] args) throws Exception {
+        for (String format : new String[] { "jpeg", "png" }) {
+            final File file = File.createTempFile("benchmark", "." + format);
+            file.deleteOnExit();
+            ImageIO.write(newImage(), format, file);
+
+            System.out.printf("%s, %dx%d:%n", format, WIDTH, HEIGHT);
+            final Rectangle full = new Rectangle(0, 0, WIDTH, HEIGHT);
+            run("  full image to 1/8, region only", file, full, 1);
+            run("  full image to 1/8, subsampled ", file, full, 8);
+            final Rectangle tile = new Rectangle(2048, 1024, 2048, 2048);
+            run("  2048px tile to 1/4, region only", file, tile, 1);
+            run("  2048px tile to 1/4, subsampled ", file, tile, 4);
+        }
+    }
+
+    private static BufferedImage newImage() {
+        final BufferedImage image =
+                new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g = image.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.ORANGE, WIDTH, HEIGHT,
+                Color.BLUE));
+        g.fillRect(0, 0, WIDTH, HEIGHT);
+        g.dispose();
+        return image;
+    }
+
+    private static void run(String name,
+                            File file,
+                            Rectangle region,
+                            int subsampling) throws Exception {
+        // Warm up.
+        read(file, region, subsampling);
+
+        long rasterBytes = 0;
+        final long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            final BufferedImage image = read(file, region, subsampling);
+            final DataBuffer buffer = image.getRaster().getDataBuffer();
+            rasterBytes = (long) buffer.getSize() * buffer.getNumBanks() *
+                    DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+        }
+        final double msec = (System.nanoTime() - start) / 1e6;
+        System.out.printf("%s: %.1f msec/read, %.1f MB decoded%n", name,
+                msec / ITERATIONS, rasterBytes / (1024.0 * 1024.0));
+    }
+
+    private static BufferedImage read(File file,
+                                      Rectangle region,
+                                      int subsampling) throws Exception {
+        try (ImageInputStream is = ImageIO.createImageInputStream(file)) {
+            final Iterator<javax.imageio.ImageReader> it =
+                    ImageIO.getImageReaders(is);
+            final javax.imageio.ImageReader reader = it.next();
+            try {
+                reader.setInput(is);
+                final ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceRegion(region);
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+}
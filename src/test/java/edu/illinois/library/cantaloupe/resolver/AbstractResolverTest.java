@@ -0,0 +1,46 @@
+package edu.illinois.library.cantaloupe.resolver;
+
+import edu.illinois.library.cantaloupe.config.Configuration;
+import edu.illinois.library.cantaloupe.config.ConfigurationFactory;
+import edu.illinois.library.cantaloupe.test.BaseTest;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AbstractResolverTest extends BaseTest {
+
+    @Test
+    public void testGetByteSize() {
+        final Configuration config = ConfigurationFactory.getInstance();
+        assertEquals(64 * 1024,
+                AbstractResolver.getByteSize("test.size", "64K"));
+        config.setProperty("test.size", "2M");
+        assertEquals(2 * 1024 * 1024,
+                AbstractResolver.getByteSize("test.size", "64K"));
+    }
+
+    @Test
+    public void testGetByteSizeWithInvalidValue() {
+        final Configuration config = ConfigurationFactory.getInstance();
+        config.setProperty("test.size", "cats");
+        assertEquals(64 * 1024,
+                AbstractResolver.getByteSize("test.size", "64K"));
+    }
+
+    @Test
+    public void testAmazonS3ResolverGetChunkSize() {
+        assertEquals(512 * 1024, AmazonS3Resolver.getChunkSize());
+        ConfigurationFactory.getInstance().setProperty(
+                AmazonS3Resolver.CHUNK_SIZE_CONFIG_KEY, "1M");
+        assertEquals(1024 * 1024, AmazonS3Resolver.getChunkSize());
+    }
+
+    @Test
+    public void testAzureStorageResolverGetChunkSize() {
+        assertEquals(512 * 1024, AzureStorageResolver.getChunkSize());
+        ConfigurationFactory.getInstance().setProperty(
+                AzureStorageResolver.CHUNK_SIZE_CONFIG_KEY, "256KB");
+        assertEquals(256 * 1024, AzureStorageResolver.getChunkSize());
+    }
+
+}
@@ -18,10 +18,12 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import javax.imageio.stream.ImageInputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.file.Files;
 
 import static org.junit.Assert.*;
 
@@ -129,6 +131,33 @@ public class AzureStorageResolverTest extends BaseTest {
         }
     }
 
+    @Test
+    public void testNewStreamSourceNewImageInputStream() throws Exception {
+        final byte[] expected = Files.readAllBytes(
+                TestUtil.getImage("jpg-rgb-64x56x8-line.jpg").toPath());
+        try (ImageInputStream is =
+                     instance.newStreamSource().newImageInputStream()) {
+            assertEquals(expected.length, is.length());
+            final byte[] actual = new byte[expected.length];
+            is.seek(100);
+            is.readFully(actual, 100, expected.length - 100);
+            is.seek(0);
+            is.readFully(actual, 0, 100);
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testNewStreamSourceNewImageInputStreamWithChunkingDisabled()
+            throws Exception {
+        Configuration config = ConfigurationFactory.getInstance();
+        config.setProperty(AzureStorageResolver.CHUNKING_ENABLED_CONFIG_KEY, false);
+        try (ImageInputStream is =
+                     instance.newStreamSource().newImageInputStream()) {
+            assertEquals(0xffd8, is.readUnsignedShort());
+        }
+    }
+
     @Test
     public void testNewStreamSourceWithScriptLookupStrategy() throws Exception {
         Configuration config = ConfigurationFactory.getInstance();
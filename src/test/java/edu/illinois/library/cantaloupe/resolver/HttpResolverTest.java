@@ -8,15 +8,27 @@ import edu.illinois.library.cantaloupe.image.Format;
 import edu.illinois.library.cantaloupe.image.Identifier;
 import edu.illinois.library.cantaloupe.script.ScriptEngineFactory;
 import edu.illinois.library.cantaloupe.test.BaseTest;
+import edu.illinois.library.cantaloupe.test.RangeRecordingWebServer;
 import edu.illinois.library.cantaloupe.test.WebServer;
 import edu.illinois.library.cantaloupe.test.TestUtil;
+import org.apache.commons.io.IOUtils;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.restlet.data.Reference;
 
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 
 public class HttpResolverTest extends BaseTest {
 
@@ -104,6 +116,129 @@ public class HttpResolverTest extends BaseTest {
         }
     }
 
+    @Test
+    public void testGetSourceFormatAndNewStreamSourceIssueOneRequest()
+            throws Exception {
+        final long headCount = instance.getHeadRequestCount();
+        final long getCount = instance.getGetRequestCount();
+
+        instance.getSourceFormat();
+        instance.newStreamSource();
+
+        assertEquals(headCount + 1, instance.getHeadRequestCount());
+        assertEquals(getCount, instance.getGetRequestCount());
+    }
+
+    @Test
+    public void testNewStreamSourceNewInputStream() throws Exception {
+        final byte[] expected = Files.readAllBytes(
+                TestUtil.getImage(IDENTIFIER.toString()).toPath());
+        try (InputStream is = instance.newStreamSource().newInputStream()) {
+            assertArrayEquals(expected, IOUtils.toByteArray(is));
+        }
+    }
+
+    @Test
+    public void testNewStreamSourceNewImageInputStreamReadsOnlyNeededRanges()
+            throws Exception {
+        final byte[] data = new byte[4 * 1024 * 1024];
+        new Random(42).nextBytes(data);
+        final File root = Files.createTempDirectory("cantaloupe").toFile();
+        final File file = new File(root, "large.bin");
+        Files.write(file.toPath(), data);
+
+        final RangeRecordingWebServer rangeServer =
+                new RangeRecordingWebServer(root);
+        rangeServer.start();
+        try {
+            Configuration config = ConfigurationFactory.getInstance();
+            config.setProperty(HttpResolver.URL_PREFIX_CONFIG_KEY,
+                    rangeServer.getUri() + "/");
+            config.setProperty(HttpResolver.CHUNK_SIZE_CONFIG_KEY, "64K");
+            instance.setIdentifier(new Identifier("large.bin"));
+
+            try (ImageInputStream is =
+                         instance.newStreamSource().newImageInputStream()) {
+                assertEquals(data.length, is.length());
+                is.seek(3000000);
+                final byte[] actual = new byte[100];
+                is.readFully(actual);
+                assertArrayEquals(
+                        Arrays.copyOfRange(data, 3000000, 3000100), actual);
+            }
+
+            assertTrue(rangeServer.getUnrangedRequests().isEmpty());
+            final List<RangeRecordingWebServer.Range> ranges =
+                    rangeServer.getRequestedRanges();
+            assertEquals(1, ranges.size());
+            // One 64K-aligned block of exactly 64K.
+            assertEquals(3000000 / 65536 * 65536, ranges.get(0).start);
+            assertEquals(65536, ranges.get(0).getLength());
+        } finally {
+            rangeServer.stop();
+            file.delete();
+            root.delete();
+        }
+    }
+
+    @Test
+    public void testNewStreamSourceNewImageInputStreamWithTiledTIFF()
+            throws Exception {
+        final RangeRecordingWebServer rangeServer =
+                new RangeRecordingWebServer();
+        rangeServer.start();
+        try {
+            Configuration config = ConfigurationFactory.getInstance();
+            config.setProperty(HttpResolver.URL_PREFIX_CONFIG_KEY,
+                    rangeServer.getUri() + "/");
+            config.setProperty(HttpResolver.CHUNK_SIZE_CONFIG_KEY, "1K");
+            instance.setIdentifier(new Identifier(
+                    "tif-rgb-monores-64x56x8-tiled-uncompressed.tif"));
+
+            try (ImageInputStream is =
+                         instance.newStreamSource().newImageInputStream()) {
+                final ImageReader reader = ImageIO.getImageReaders(is).next();
+                try {
+                    reader.setInput(is);
+                    final BufferedImage image = reader.read(0);
+                    assertEquals(64, image.getWidth());
+                    assertEquals(56, image.getHeight());
+                } finally {
+                    reader.dispose();
+                }
+            }
+            assertTrue(rangeServer.getUnrangedRequests().isEmpty());
+            assertFalse(rangeServer.getRequestedRanges().isEmpty());
+        } finally {
+            rangeServer.stop();
+        }
+    }
+
+    @Test
+    public void testNewStreamSourceNewImageInputStreamWithChunkingDisabled()
+            throws Exception {
+        final RangeRecordingWebServer rangeServer =
+                new RangeRecordingWebServer();
+        rangeServer.start();
+        try {
+            Configuration config = ConfigurationFactory.getInstance();
+            config.setProperty(HttpResolver.URL_PREFIX_CONFIG_KEY,
+                    rangeServer.getUri() + "/");
+            config.setProperty(HttpResolver.CHUNKING_ENABLED_CONFIG_KEY,
+                    false);
+            instance.setIdentifier(IDENTIFIER);
+
+            try (ImageInputStream is =
+                         instance.newStreamSource().newImageInputStream()) {
+                is.readInt();
+            }
+            assertEquals(1, rangeServer.getUnrangedRequests().size());
+            assertTrue(rangeServer.getRequestedRanges().isEmpty());
+        } finally {
+            rangeServer.stop();
+        }
+    }
+
     @Test
     public void testGetUrlWithBasicLookupStrategy() throws Exception {
         Configuration config = ConfigurationFactory.getInstance();
@@ -0,0 +1,184 @@
+package edu.illinois.library.cantaloupe.resolver;
+
+import edu.illinois.library.cantaloupe.test.BaseTest;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RangedImageInputStreamTest extends BaseTest {
+
+    private static final int BLOCK_SIZE = 1024;
+
+    private byte[] data;
+    /** Pairs of offset and length passed to the reader. */
+    private List<long[]> reads;
+
+    private RangedImageInputStream.RangeReader reader = (offset, length) -> {
+        reads.add(new long[] { offset, length });
+        return Arrays.copyOfRange(data, (int) offset, (int) offset + length);
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        data = new byte[100 * BLOCK_SIZE + 100];
+        new Random(42).nextBytes(data);
+        reads = new ArrayList<>();
+    }
+
+    private RangedImageInputStream newInstance(int maxCachedBlocks,
+                                               int readAheadBlocks) {
+        return new RangedImageInputStream(reader, data.length, BLOCK_SIZE,
+                maxCachedBlocks * BLOCK_SIZE, readAheadBlocks);
+    }
+
+    @Test
+    public void testLength() throws Exception {
+        assertEquals(data.length, newInstance(4, 0).length());
+    }
+
+    @Test
+    public void testReadAll() throws Exception {
+        try (RangedImageInputStream instance = newInstance(4, 2)) {
+            final byte[] actual = new byte[data.length];
+            instance.readFully(actual);
+            assertArrayEquals(data, actual);
+            assertEquals(-1, instance.read());
+        }
+    }
+
+    @Test
+    public void testReadSingleBytes() throws Exception {
+        try (RangedImageInputStream instance = newInstance(4, 0)) {
+            for (int i = 0; i < 3 * BLOCK_SIZE; i++) {
+                assertEquals(data[i] & 0xff, instance.read());
+            }
+            assertEquals(3, instance.getRequestCount());
+        }
+    }
+
+    @Test
+    public void testSeekReadsOnlyNeededBlocks() throws Exception {
+        try (RangedImageInputStream instance = newInstance(4, 0)) {
+            instance.seek(50 * BLOCK_SIZE + 10);
+            final byte[] actual = new byte[20];
+            instance.readFully(actual);
+            assertArrayEquals(Arrays.copyOfRange(data, 50 * BLOCK_SIZE + 10,
+                    50 * BLOCK_SIZE + 30), actual);
+
+            assertEquals(1, reads.size());
+            assertEquals(50 * BLOCK_SIZE, reads.get(0)[0]);
+            assertEquals(BLOCK_SIZE, reads.get(0)[1]);
+        }
+    }
+
+    @Test
+    public void testReadSpanningBlocksIsCoalesced() throws Exception {
+        try (RangedImageInputStream instance = newInstance(8, 0)) {
+            instance.seek(10 * BLOCK_SIZE + 500);
+            final byte[] actual = new byte[3 * BLOCK_SIZE];
+            instance.readFully(actual);
+            assertArrayEquals(Arrays.copyOfRange(data, 10 * BLOCK_SIZE + 500,
+                    13 * BLOCK_SIZE + 500), actual);
+
+            assertEquals(1, reads.size());
+            assertEquals(10 * BLOCK_SIZE, reads.get(0)[0]);
+            assertEquals(4 * BLOCK_SIZE, reads.get(0)[1]);
+        }
+    }
+
+    @Test
+    public void testReadLargerThanCache() throws Exception {
+        try (RangedImageInputStream instance = newInstance(2, 0)) {
+            final byte[] actual = new byte[10 * BLOCK_SIZE];
+            instance.readFully(actual);
+            assertArrayEquals(Arrays.copyOf(data, 10 * BLOCK_SIZE), actual);
+            assertEquals(5, reads.size());
+        }
+    }
+
+    @Test
+    public void testCachedBlocksAreNotFetchedAgain() throws Exception {
+        try (RangedImageInputStream instance = newInstance(4, 0)) {
+            instance.seek(5 * BLOCK_SIZE);
+            instance.readInt();
+            instance.seek(0);
+            instance.readInt();
+            instance.seek(5 * BLOCK_SIZE + 100);
+            instance.readInt();
+            instance.seek(10);
+            instance.readInt();
+            assertEquals(2, reads.size());
+        }
+    }
+
+    @Test
+    public void testLeastRecentlyUsedBlocksAreEvicted() throws Exception {
+        try (RangedImageInputStream instance = newInstance(2, 0)) {
+            instance.seek(0);
+            instance.read();
+            instance.seek(10 * BLOCK_SIZE);
+            instance.read();
+            instance.seek(0);
+            instance.read();
+            // Evicts block 10, which was used less recently than block 0.
+            instance.seek(20 * BLOCK_SIZE);
+            instance.read();
+            assertEquals(3, reads.size());
+
+            instance.seek(0);
+            instance.read();
+            assertEquals(3, reads.size());
+            instance.seek(10 * BLOCK_SIZE);
+            instance.read();
+            assertEquals(4, reads.size());
+        }
+    }
+
+    @Test
+    public void testSequentialReadsReadAhead() throws Exception {
+        try (RangedImageInputStream instance = newInstance(8, 2)) {
+            final byte[] buffer = new byte[BLOCK_SIZE];
+            for (int i = 0; i < 6; i++) {
+                instance.readFully(buffer);
+            }
+            // Each request fetches the needed block plus two more.
+            assertEquals(2, reads.size());
+            assertEquals(3 * BLOCK_SIZE, reads.get(0)[1]);
+            assertEquals(3 * BLOCK_SIZE, reads.get(1)[0]);
+        }
+    }
+
+    @Test
+    public void testRandomReadsDoNotReadAhead() throws Exception {
+        try (RangedImageInputStream instance = newInstance(8, 2)) {
+            instance.seek(0);
+            instance.read();
+            reads.clear();
+
+            instance.seek(50 * BLOCK_SIZE);
+            instance.read();
+            assertEquals(BLOCK_SIZE, reads.get(0)[1]);
+        }
+    }
+
+    @Test
+    public void testReadAtEndOfStream() throws Exception {
+        try (RangedImageInputStream instance = newInstance(4, 2)) {
+            instance.seek(data.length - 10);
+            final byte[] buffer = new byte[100];
+            assertEquals(10, instance.read(buffer, 0, 100));
+            assertEquals(data[data.length - 1], buffer[9]);
+            assertEquals(-1, instance.read(buffer, 0, 100));
+            // The last block is short.
+            assertEquals(100, reads.get(0)[1]);
+        }
+    }
+
+}
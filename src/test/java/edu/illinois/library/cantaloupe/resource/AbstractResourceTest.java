@@ -3,6 +3,7 @@ package edu.illinois.library.cantaloupe.resource;
 import edu.illinois.library.cantaloupe.test.BaseTest;
 
 import org.junit.Test;
+import org.restlet.data.Range;
 
 import static org.junit.Assert.*;
 
@@ -13,6 +14,45 @@ public class AbstractResourceTest extends BaseTest {
 
     private TestResource resource = new TestResource();
 
+    /* resolveRange() */
+
+    @Test
+    public void testResolveRangeWithBoundedRange() {
+        Range range = AbstractResource.resolveRange(new Range(10, 20), 100);
+        assertEquals(10, range.getIndex());
+        assertEquals(20, range.getSize());
+    }
+
+    @Test
+    public void testResolveRangeWithRangeExceedingSize() {
+        Range range = AbstractResource.resolveRange(new Range(90, 20), 100);
+        assertEquals(90, range.getIndex());
+        assertEquals(10, range.getSize());
+    }
+
+    @Test
+    public void testResolveRangeWithOpenRange() {
+        Range range = AbstractResource.resolveRange(
+                new Range(40, Range.SIZE_MAX), 100);
+        assertEquals(40, range.getIndex());
+        assertEquals(60, range.getSize());
+    }
+
+    @Test
+    public void testResolveRangeWithSuffixRange() {
+        Range range = AbstractResource.resolveRange(
+                new Range(Range.INDEX_LAST, 30), 100);
+        assertEquals(70, range.getIndex());
+        assertEquals(30, range.getSize());
+    }
+
+    @Test
+    public void testResolveRangeWithUnsatisfiableRange() {
+        assertNull(AbstractResource.resolveRange(new Range(100, 10), 100));
+    }
+
+    /* template() */
+
     @Test
     public void testTemplateWithValidTemplate() {
         assertNotNull(resource.template("/error.vm"));
@@ -0,0 +1,120 @@
+package edu.illinois.library.cantaloupe.resource;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * <p>Compares the throughput of the ways that files can be written to a
+ * response: copying through a heap buffer (as was formerly done for cache
+ * hits and no-op requests), {@link FileTransfer#transferTo} into a socket
+ * channel, and writing memory-mapped regions to a socket channel (which is
+ * what Jetty does with them via {@link JettyFileTransfer}).</p>
+ *
+ * <p>The "client" is a loopback socket that discards what it reads.</p>
+ *
+ * <p>This is not a test, and is not run by the build. Run its {@link
+ * #main} method manually, with the test classpath.</p>
+ */
+public class FileTransferBenchmark {
+
+    private interface Method {
+        void write(File file, SocketChannel socket) throws Exception;
+    }
+
+    private static final int ITERATIONS_MB = 2000;
+
+    public static void main(String[] args) throws Exception {
+        for (int sizeMB : new int[] { 1, 50 }) {
+            final File file = File.createTempFile("benchmark", "tmp");
+            file.deleteOnExit();
+            final byte[] data = new byte[sizeMB * 1024 * 1024];
+            new Random().nextBytes(data);
+            Files.write(file.toPath(), data);
+
+            final int iterations = Math.max(ITERATIONS_MB / sizeMB, 20);
+            System.out.printf("%d MB file, %d iterations:%n", sizeMB,
+                    iterations);
+
+            run("  heap buffer copy", file, iterations, (f, socket) -> {
+                try (InputStream is = new FileInputStream(f)) {
+                    OutputStream os = Channels.newOutputStream(socket);
+                    IOUtils.copy(is, os);
+                }
+            });
+            run("  transferTo", file, iterations, (f, socket) -> {
+                try (FileChannel channel = FileChannel.open(f.toPath(),
+                        StandardOpenOption.READ)) {
+                    FileTransfer.transferTo(channel, 0, channel.size(),
+                            socket);
+                }
+            });
+            run("  mapped buffers", file, iterations, (f, socket) -> {
+                try (FileChannel channel = FileChannel.open(f.toPath(),
+                        StandardOpenOption.READ)) {
+                    long position = 0;
+                    while (position < channel.size()) {
+                        final long size = Math.min(
+                                JettyFileTransfer.MAX_REGION_SIZE,
+                                channel.size() - position);
+                        ByteBuffer region = channel.map(
+                                FileChannel.MapMode.READ_ONLY, position, size);
+                        while (region.hasRemaining()) {
+                            socket.write(region);
+                        }
+                        position += size;
+                    }
+                }
+            });
+            file.delete();
+        }
+    }
+
+    private static void run(String name, File file, int iterations,
+                            Method method) throws Exception {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress("127.0.0.1", 0));
+            final Thread drain = new Thread(() -> {
+                try (SocketChannel client = SocketChannel.open(
+                        server.getLocalAddress())) {
+                    final ByteBuffer buffer = ByteBuffer.allocateDirect(65536);
+                    while (client.read(buffer) >= 0) {
+                        buffer.clear();
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+            drain.start();
+
+            try (SocketChannel socket = server.accept()) {
+                // Warm up.
+                for (int i = 0; i < Math.max(iterations / 10, 2); i++) {
+                    method.write(file, socket);
+                }
+                final long start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    method.write(file, socket);
+                }
+                final double seconds = (System.nanoTime() - start) / 1e9;
+                final double mb = file.length() * (double) iterations /
+                        (1024 * 1024);
+                System.out.printf("%s: %.0f MB/s%n", name, mb / seconds);
+            }
+            drain.join();
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+package edu.illinois.library.cantaloupe.resource;
+
+import edu.illinois.library.cantaloupe.test.BaseTest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FileTransferTest extends BaseTest {
+
+    private byte[] data;
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        data = new byte[200 * 1024];
+        new Random(42).nextBytes(data);
+        file = File.createTempFile("cantaloupe", "test");
+        Files.write(file.toPath(), data);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        super.tearDown();
+        file.delete();
+    }
+
+    @Test
+    public void testTransfer() throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            FileTransfer.transfer(channel, 0, channel.size(), os);
+        }
+        assertArrayEquals(data, os.toByteArray());
+    }
+
+    @Test
+    public void testTransferWithRange() throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            FileTransfer.transfer(channel, 1000, 50000, os);
+        }
+        assertArrayEquals(Arrays.copyOfRange(data, 1000, 51000),
+                os.toByteArray());
+    }
+
+    @Test
+    public void testTransferWithCountExceedingSize() throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            FileTransfer.transfer(channel, 100, channel.size(), os);
+        }
+        assertArrayEquals(Arrays.copyOfRange(data, 100, data.length),
+                os.toByteArray());
+    }
+
+}
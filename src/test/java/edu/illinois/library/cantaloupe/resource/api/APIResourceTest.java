@@ -2,6 +2,7 @@ package edu.illinois.library.cantaloupe.resource.api;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import edu.illinois.library.cantaloupe.WebApplication;
+import edu.illinois.library.cantaloupe.cache.CacheFactory;
 import edu.illinois.library.cantaloupe.config.Configuration;
 import edu.illinois.library.cantaloupe.config.ConfigurationFactory;
 import edu.illinois.library.cantaloupe.resource.ResourceTest;
@@ -20,7 +21,7 @@ import java.util.Map;
 import static org.junit.Assert.*;
 
 /**
- * Functional test of APIResource.
+ * Functional test of APIResource, CacheResource, and PurgeJobResource.
  */
 public class APIResourceTest extends ResourceTest {
 
@@ -39,6 +40,14 @@ public class APIResourceTest extends ResourceTest {
         config.setProperty(WebApplication.API_SECRET_CONFIG_KEY, SECRET);
     }
 
+    private void enableDerivativeCache() {
+        final Configuration config = ConfigurationFactory.getInstance();
+        config.setProperty(CacheFactory.DERIVATIVE_CACHE_ENABLED_CONFIG_KEY,
+                true);
+        config.setProperty(CacheFactory.DERIVATIVE_CACHE_CONFIG_KEY,
+                "HeapCache");
+    }
+
     /* doPurge() */
 
     @Test
@@ -88,6 +97,85 @@ public class APIResourceTest extends ResourceTest {
         // TODO: assert that relevant cache files have been deleted
     }
 
+    @Test
+    public void testDoPurgeWithDerivativeCacheStartsJob() throws Exception {
+        enableDerivativeCache();
+
+        ClientResource client = getClientForUriPath(
+                WebApplication.CACHE_PATH + "/" + IDENTIFIER, USERNAME, SECRET);
+        client.delete();
+        assertEquals(Status.SUCCESS_ACCEPTED, client.getStatus());
+        assertTrue(client.getLocationRef().getPath().startsWith(
+                WebApplication.CACHE_PATH + "/jobs/"));
+        assertTrue(client.getResponseEntity().getText().contains("\"id\""));
+    }
+
+    @Test
+    public void testDoPurgeWithoutIdentifierStartsJob() throws Exception {
+        enableDerivativeCache();
+
+        ClientResource client = getClientForUriPath(
+                WebApplication.CACHE_PATH, USERNAME, SECRET);
+        client.delete();
+        assertEquals(Status.SUCCESS_ACCEPTED, client.getStatus());
+    }
+
+    @Test
+    public void testDeleteConfigurationIsNotAllowed() throws Exception {
+        enableDerivativeCache();
+
+        ClientResource client = getClientForUriPath(
+                WebApplication.CONFIGURATION_PATH, USERNAME, SECRET);
+        try {
+            client.delete();
+            fail("Expected exception");
+        } catch (ResourceException e) {
+            assertEquals(Status.CLIENT_ERROR_METHOD_NOT_ALLOWED,
+                    client.getStatus());
+        }
+    }
+
+    /* PurgeJobResource */
+
+    @Test
+    public void testGetPurgeJob() throws Exception {
+        enableDerivativeCache();
+
+        ClientResource client = getClientForUriPath(
+                WebApplication.CACHE_PATH + "/" + IDENTIFIER, USERNAME, SECRET);
+        client.delete();
+        final String jobPath = client.getLocationRef().getPath();
+
+        client = getClientForUriPath(jobPath, USERNAME, SECRET);
+        client.get();
+        assertEquals(Status.SUCCESS_OK, client.getStatus());
+        assertTrue(client.getResponseEntity().getText().contains("\"status\""));
+    }
+
+    @Test
+    public void testGetPurgeJobWithNoCredentials() throws Exception {
+        ClientResource client = getClientForUriPath(
+                WebApplication.CACHE_PATH + "/jobs/bogus");
+        try {
+            client.get();
+            fail("Expected exception");
+        } catch (ResourceException e) {
+            assertEquals(Status.CLIENT_ERROR_UNAUTHORIZED, client.getStatus());
+        }
+    }
+
+    @Test
+    public void testGetPurgeJobWithNonexistentJob() throws Exception {
+        ClientResource client = getClientForUriPath(
+                WebApplication.CACHE_PATH + "/jobs/bogus", USERNAME, SECRET);
+        try {
+            client.get();
+            fail("Expected exception");
+        } catch (ResourceException e) {
+            assertEquals(Status.CLIENT_ERROR_NOT_FOUND, client.getStatus());
+        }
+    }
+
     /* getConfiguration() */
 
     @Test
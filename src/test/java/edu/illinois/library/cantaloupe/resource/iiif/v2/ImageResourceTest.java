@@ -7,23 +7,28 @@ import edu.illinois.library.cantaloupe.config.Configuration;
 import edu.illinois.library.cantaloupe.config.ConfigurationFactory;
 import edu.illinois.library.cantaloupe.image.Format;
 import edu.illinois.library.cantaloupe.image.Identifier;
+import edu.illinois.library.cantaloupe.processor.MemoryBudget;
 import edu.illinois.library.cantaloupe.processor.ProcessorFactory;
 import edu.illinois.library.cantaloupe.resolver.ResolverFactory;
 import edu.illinois.library.cantaloupe.resource.AbstractResource;
 import edu.illinois.library.cantaloupe.resource.ResourceTest;
 import edu.illinois.library.cantaloupe.test.TestUtil;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 import org.restlet.data.CacheDirective;
 import org.restlet.data.ChallengeResponse;
 import org.restlet.data.ChallengeScheme;
 import org.restlet.data.Disposition;
 import org.restlet.data.Header;
+import org.restlet.data.Range;
 import org.restlet.data.Status;
+import org.restlet.data.Tag;
 import org.restlet.resource.ClientResource;
 import org.restlet.resource.ResourceException;
 
 import java.io.File;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -245,6 +250,138 @@ public class ImageResourceTest extends ResourceTest {
         assertFalse(imageCacheFolder.exists());
     }
 
+    /**
+     * Configures a FilesystemCache with resolve-first disabled, requests an
+     * image to cache it, and waits for it to appear in the cache.
+     *
+     * @return Cached image file.
+     */
+    private File cacheImage(String path) throws Exception {
+        File cacheFolder = TestUtil.getTempFolder();
+        cacheFolder = new File(cacheFolder.getAbsolutePath() + "/cache");
+        File imageCacheFolder = new File(cacheFolder.getAbsolutePath() + "/image");
+        if (cacheFolder.exists()) {
+            FileUtils.cleanDirectory(cacheFolder);
+        } else {
+            cacheFolder.mkdir();
+        }
+
+        Configuration config = Configuration.getInstance();
+        config.setProperty(CacheFactory.DERIVATIVE_CACHE_ENABLED_CONFIG_KEY,
+                true);
+        config.setProperty(CacheFactory.DERIVATIVE_CACHE_CONFIG_KEY,
+                "FilesystemCache");
+        config.setProperty("FilesystemCache.pathname",
+                cacheFolder.getAbsolutePath());
+        config.setProperty(Cache.TTL_CONFIG_KEY, 10);
+        config.setProperty(Cache.RESOLVE_FIRST_CONFIG_KEY, false);
+
+        getClientForUriPath(path).get();
+
+        final long start = System.currentTimeMillis();
+        while (!imageCacheFolder.exists() ||
+                FileUtils.listFiles(imageCacheFolder, null, true).isEmpty()) {
+            if (System.currentTimeMillis() - start > 5000) {
+                fail("Image was not cached in time");
+            }
+            Thread.sleep(10);
+        }
+        return FileUtils.listFiles(imageCacheFolder, null, true).
+                iterator().next();
+    }
+
+    @Test
+    public void testConditionalGetWithMatchingETag() throws Exception {
+        ClientResource client = getClientForUriPath(
+                "/" + IMAGE + "/full/full/0/default.jpg");
+        client.get();
+        final Tag tag = client.getResponseEntity().getTag();
+        assertNotNull(tag);
+        assertFalse(tag.isWeak());
+
+        client = getClientForUriPath("/" + IMAGE + "/full/full/0/default.jpg");
+        client.getConditions().getNoneMatch().add(tag);
+        client.get();
+        assertEquals(Status.REDIRECTION_NOT_MODIFIED, client.getStatus());
+    }
+
+    @Test
+    public void testConditionalGetWithNonMatchingETag() throws Exception {
+        ClientResource client = getClientForUriPath(
+                "/" + IMAGE + "/full/full/0/default.jpg");
+        client.getConditions().getNoneMatch().add(new Tag("bogus", false));
+        client.get();
+        assertEquals(Status.SUCCESS_OK, client.getStatus());
+    }
+
+    @Test
+    public void testConditionalGetWithCacheHit() throws Exception {
+        final String path = "/" + IMAGE + "/full/full/0/default.jpg";
+        cacheImage(path);
+
+        ClientResource client = getClientForUriPath(path);
+        client.get();
+        final Tag tag = client.getResponseEntity().getTag();
+        assertNotNull(tag);
+
+        client = getClientForUriPath(path);
+        client.getConditions().getNoneMatch().add(tag);
+        client.get();
+        assertEquals(Status.REDIRECTION_NOT_MODIFIED, client.getStatus());
+    }
+
+    @Test
+    public void testCacheHitWithoutCachedInfoHasETag() throws Exception {
+        final String path = "/" + IMAGE + "/full/full/0/default.jpg";
+        final File imageFile = cacheImage(path);
+        final File infoCacheFolder = new File(TestUtil.getTempFolder(),
+                "cache/info");
+        FileUtils.deleteDirectory(infoCacheFolder);
+        assertTrue(imageFile.exists());
+
+        ClientResource client = getClientForUriPath(path);
+        client.get();
+        assertEquals(Status.SUCCESS_OK, client.getStatus());
+        assertNotNull(client.getResponseEntity().getTag());
+    }
+
+    @Test
+    public void testETagDiffersAmongDerivatives() throws Exception {
+        ClientResource client = getClientForUriPath(
+                "/" + IMAGE + "/full/full/0/default.jpg");
+        client.get();
+        final Tag tag1 = client.getResponseEntity().getTag();
+
+        client = getClientForUriPath("/" + IMAGE + "/full/full/90/default.jpg");
+        client.get();
+        final Tag tag2 = client.getResponseEntity().getTag();
+
+        assertNotEquals(tag1, tag2);
+    }
+
+    @Test
+    public void testRangeRequestWithCacheHit() throws Exception {
+        final String path = "/" + IMAGE + "/full/full/0/default.jpg";
+        final byte[] expected = FileUtils.readFileToByteArray(cacheImage(path));
+
+        ClientResource client = getClientForUriPath(path);
+        client.getRanges().add(new Range(10, 20));
+        client.get();
+        assertEquals(Status.SUCCESS_PARTIAL_CONTENT, client.getStatus());
+        final byte[] actual =
+                IOUtils.toByteArray(client.getResponseEntity().getStream());
+        assertArrayEquals(Arrays.copyOfRange(expected, 10, 30), actual);
+    }
+
+    @Test
+    public void testRangeRequestWithCacheMissIsIgnored() throws Exception {
+        ClientResource client = getClientForUriPath(
+                "/" + IMAGE + "/full/full/0/default.jpg");
+        client.getRanges().add(new Range(10, 20));
+        client.get();
+        assertEquals(Status.SUCCESS_OK, client.getStatus());
+    }
+
     @Test
     public void testContentDispositionHeader() throws Exception {
         // no header
@@ -351,6 +488,26 @@ public class ImageResourceTest extends ResourceTest {
         assertEquals(Status.SUCCESS_OK, client.getStatus());
     }
 
+    @Test
+    public void testMemoryBudgetExhaustion() throws Exception {
+        Configuration config = ConfigurationFactory.getInstance();
+        config.setProperty("processor.memory_budget", 1);
+        config.setProperty("processor.memory_budget.timeout", 0);
+        ClientResource client = getClientForUriPath(
+                "/" + IMAGE + "/full/full/0/default.png");
+
+        // Take up the whole budget.
+        try (MemoryBudget.Reservation reservation =
+                     MemoryBudget.getInstance().reserve(Long.MAX_VALUE)) {
+            client.get();
+            fail("Expected exception");
+        } catch (ResourceException e) {
+            assertEquals(Status.SERVER_ERROR_SERVICE_UNAVAILABLE,
+                    client.getStatus());
+            assertNotNull(client.getResponse().getRetryAfter());
+        }
+    }
+
     @Test
     public void testNotFound() throws Exception {
         ClientResource client = getClientForUriPath("/invalid");
@@ -0,0 +1,169 @@
+package edu.illinois.library.cantaloupe.test;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * HTTP server that serves static content from a root directory, supports
+ * single byte range requests, and records the ranges that are requested.
+ * Unlike {@link WebServer}, it advertises range support in responses to HEAD
+ * requests. Call {@link #start()} and then {@link #getUri()} to get its URL.
+ */
+public class RangeRecordingWebServer {
+
+    /**
+     * A requested range of bytes.
+     */
+    public static class Range {
+        public final long start;
+        public final long end;
+
+        Range(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public long getLength() {
+            return end - start + 1;
+        }
+
+        @Override
+        public String toString() {
+            return start + "-" + end;
+        }
+    }
+
+    private static final Pattern RANGE_PATTERN =
+            Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+    private int port = TestUtil.getOpenPort();
+    private final List<Range> ranges =
+            Collections.synchronizedList(new ArrayList<>());
+    private final List<String> unrangedRequests =
+            Collections.synchronizedList(new ArrayList<>());
+    private File root;
+    private Server server;
+
+    /**
+     * Initializes a server using the fixture image path as its root.
+     */
+    public RangeRecordingWebServer() throws IOException {
+        this(new File(TestUtil.getFixturePath().toAbsolutePath() + "/images"));
+    }
+
+    public RangeRecordingWebServer(File root) {
+        this.root = root;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * @return All ranges requested by GET requests since the server was
+     *         started or {@link #reset()} was called.
+     */
+    public List<Range> getRequestedRanges() {
+        synchronized (ranges) {
+            return new ArrayList<>(ranges);
+        }
+    }
+
+    /**
+     * @return Paths of GET requests without a Range header since the server
+     *         was started or {@link #reset()} was called.
+     */
+    public List<String> getUnrangedRequests() {
+        synchronized (unrangedRequests) {
+            return new ArrayList<>(unrangedRequests);
+        }
+    }
+
+    public String getUri() {
+        return "http://localhost:" + getPort();
+    }
+
+    public void reset() {
+        ranges.clear();
+        unrangedRequests.clear();
+    }
+
+    public void start() throws Exception {
+        server = new Server(port);
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest,
+                               HttpServletRequest request,
+                               HttpServletResponse response)
+                    throws IOException {
+                handleRequest(target, request, response);
+                baseRequest.setHandled(true);
+            }
+        });
+        server.start();
+    }
+
+    public void stop() throws Exception {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    private void handleRequest(String target,
+                               HttpServletRequest request,
+                               HttpServletResponse response)
+            throws IOException {
+        final File file = new File(root, target);
+        if (!file.isFile()) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        final long length = file.length();
+        response.setHeader("Accept-Ranges", "bytes");
+        response.setContentType("application/octet-stream");
+
+        if ("HEAD".equals(request.getMethod())) {
+            response.setContentLengthLong(length);
+            return;
+        }
+
+        long start = 0, end = length - 1;
+        final String rangeHeader = request.getHeader("Range");
+        if (rangeHeader != null) {
+            final Matcher matcher = RANGE_PATTERN.matcher(rangeHeader);
+            if (!matcher.matches()) {
+                response.setStatus(
+                        HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            start = Long.parseLong(matcher.group(1));
+            end = Math.min(Long.parseLong(matcher.group(2)), length - 1);
+            ranges.add(new Range(start, end));
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader("Content-Range",
+                    "bytes " + start + "-" + end + "/" + length);
+        } else {
+            unrangedRequests.add(target);
+        }
+
+        final byte[] data = Files.readAllBytes(file.toPath());
+        response.setContentLengthLong(end - start + 1);
+        try (OutputStream os = response.getOutputStream()) {
+            os.write(data, (int) start, (int) (end - start + 1));
+        }
+    }
+
+}
@@ -0,0 +1,139 @@
+package edu.illinois.library.cantaloupe.util;
+
+import edu.illinois.library.cantaloupe.test.BaseTest;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RequestCoalescerTest extends BaseTest {
+
+    private RequestCoalescer<String, String> instance;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        instance = new RequestCoalescer<>();
+    }
+
+    @Test
+    public void testExecuteReturnsResult() throws Exception {
+        assertEquals("cats", instance.execute("key", () -> "cats"));
+        assertEquals(1, instance.getExecutedCount());
+        assertEquals(0, instance.getCoalescedCount());
+        assertEquals(0, instance.getInFlightCount());
+    }
+
+    @Test
+    public void testExecuteDoesNotRetainResults() throws Exception {
+        instance.execute("key", () -> "cats");
+        assertEquals("dogs", instance.execute("key", () -> "dogs"));
+        assertEquals(2, instance.getExecutedCount());
+    }
+
+    @Test
+    public void testExecuteCoalescesConcurrentRequests() throws Exception {
+        final int numThreads = 8;
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger executions = new AtomicInteger(0);
+        final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            // Start one execution and block it until all the others have
+            // had a chance to join it.
+            final Future<String> first = executor.submit(() ->
+                    instance.execute("key", () -> {
+                        executions.incrementAndGet();
+                        started.countDown();
+                        release.await();
+                        return "cats";
+                    }));
+            started.await();
+
+            final List<Future<String>> others = new ArrayList<>();
+            for (int i = 1; i < numThreads; i++) {
+                others.add(executor.submit(() ->
+                        instance.execute("key", () -> {
+                            executions.incrementAndGet();
+                            return "dogs";
+                        })));
+            }
+            while (instance.getCoalescedCount() < numThreads - 1) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            assertEquals("cats", first.get(5, TimeUnit.SECONDS));
+            for (Future<String> future : others) {
+                assertEquals("cats", future.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, executions.get());
+            assertEquals(numThreads - 1, instance.getCoalescedCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testExecuteWithTimeoutExecutesOwnTaskAfterTimingOut()
+            throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<String> first = executor.submit(() ->
+                    instance.execute("key", () -> {
+                        started.countDown();
+                        release.await();
+                        return "cats";
+                    }));
+            started.await();
+
+            assertEquals("dogs", instance.execute("key", () -> "dogs",
+                    50, TimeUnit.MILLISECONDS));
+            assertEquals(1, instance.getTimedOutCount());
+            assertEquals(0, instance.getCoalescedCount());
+            assertEquals(2, instance.getExecutedCount());
+
+            release.countDown();
+            assertEquals("cats", first.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testIsInFlight() throws Exception {
+        assertFalse(instance.isInFlight("key"));
+        instance.execute("key", () -> {
+            assertTrue(instance.isInFlight("key"));
+            assertFalse(instance.isInFlight("other"));
+            return "cats";
+        });
+        assertFalse(instance.isInFlight("key"));
+    }
+
+    @Test
+    public void testExecutePropagatesExceptions() throws Exception {
+        try {
+            instance.execute("key", () -> {
+                throw new IOException("failed");
+            });
+            fail("Expected exception");
+        } catch (IOException e) {
+            assertEquals("failed", e.getMessage());
+        }
+        assertEquals(0, instance.getInFlightCount());
+    }
+
+}
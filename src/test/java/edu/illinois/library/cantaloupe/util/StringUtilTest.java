@@ -7,6 +7,31 @@ import static org.junit.Assert.*;
 
 public class StringUtilTest extends BaseTest {
 
+    @Test
+    public void testParseByteSize() {
+        assertEquals(1000, StringUtil.parseByteSize("1000"));
+        assertEquals(1000, StringUtil.parseByteSize("1000B"));
+        assertEquals(64 * 1024, StringUtil.parseByteSize("64K"));
+        assertEquals(64 * 1024, StringUtil.parseByteSize("64KB"));
+        assertEquals(512 * 1024, StringUtil.parseByteSize("512k"));
+        assertEquals(1536, StringUtil.parseByteSize("1.5K"));
+        assertEquals(1024 * 1024, StringUtil.parseByteSize("1M"));
+        assertEquals(1024 * 1024, StringUtil.parseByteSize("1MB"));
+        assertEquals(1536L * 1024 * 1024, StringUtil.parseByteSize("1.5G"));
+        assertEquals(2L * 1024 * 1024 * 1024 * 1024,
+                StringUtil.parseByteSize("2TB"));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testParseByteSizeWithInvalidArgument() {
+        StringUtil.parseByteSize("cats");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testParseByteSizeWithUnitOnly() {
+        StringUtil.parseByteSize("KB");
+    }
+
     @Test
     public void testRemoveTrailingZeroes() {
         assertEquals("0", StringUtil.removeTrailingZeroes(0.0f));
@@ -0,0 +1,42 @@
+package edu.illinois.library.cantaloupe.util;
+
+import edu.illinois.library.cantaloupe.test.BaseTest;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import static org.junit.Assert.*;
+
+public class StripedReadWriteLockTest extends BaseTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorWithZeroStripes() {
+        new StripedReadWriteLock(0);
+    }
+
+    @Test
+    public void testGetStripeCountRoundsUpToPowerOfTwo() {
+        assertEquals(1, new StripedReadWriteLock(1).getStripeCount());
+        assertEquals(64, new StripedReadWriteLock(64).getStripeCount());
+        assertEquals(128, new StripedReadWriteLock(65).getStripeCount());
+    }
+
+    @Test
+    public void testGetReturnsSameLockForEqualKeys() {
+        StripedReadWriteLock instance = new StripedReadWriteLock(16);
+        assertSame(instance.get("cats"), instance.get(new String("cats")));
+    }
+
+    @Test
+    public void testGetDistributesKeys() {
+        StripedReadWriteLock instance = new StripedReadWriteLock(16);
+        Set<ReadWriteLock> locks = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            locks.add(instance.get("key" + i));
+        }
+        assertEquals(16, locks.size());
+    }
+
+}